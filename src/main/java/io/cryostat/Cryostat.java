@@ -49,6 +49,9 @@ import io.cryostat.messaging.MessagingServer;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.WebServer;
 import io.cryostat.platform.PlatformClient;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveChunkStore;
+import io.cryostat.recordings.ArchiveRetentionEngine;
 import io.cryostat.rules.RuleProcessor;
 import io.cryostat.rules.RuleRegistry;
 
@@ -72,6 +75,9 @@ class Cryostat {
         client.httpServer().addShutdownListener(() -> future.complete(null));
 
         client.credentialsManager().load();
+        client.archiveChunkStore().load();
+        client.archiveCatalog().start();
+        client.archiveRetentionEngine().start();
         client.ruleRegistry().loadRules();
         client.ruleProcessor().enable();
         client.httpServer().start();
@@ -87,6 +93,12 @@ class Cryostat {
     interface Client {
         CredentialsManager credentialsManager();
 
+        ArchiveChunkStore archiveChunkStore();
+
+        ArchiveCatalog archiveCatalog();
+
+        ArchiveRetentionEngine archiveRetentionEngine();
+
         RuleRegistry ruleRegistry();
 
         RuleProcessor ruleProcessor();
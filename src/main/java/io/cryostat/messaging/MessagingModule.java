@@ -37,8 +37,8 @@
  */
 package io.cryostat.messaging;
 
+import java.time.Duration;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -60,14 +60,26 @@ import dagger.Provides;
         })
 public abstract class MessagingModule {
 
-    static final String WS_WORKER_POOL = "WS_WORKER_POOL";
     static final String WS_MAX_CONNECTIONS = "WS_MAX_CONNECTIONS";
 
     static final String MAX_CONNECTIONS_ENV_VAR = "CRYOSTAT_MAX_WS_CONNECTIONS";
     static final int MIN_CONNECTIONS = 1;
-    static final int MAX_CONNECTIONS = 64;
     static final int DEFAULT_MAX_CONNECTIONS = 2;
 
+    static final String WS_MAX_QUEUED_MESSAGES = "WS_MAX_QUEUED_MESSAGES";
+    static final String MAX_QUEUED_MESSAGES_ENV_VAR = "CRYOSTAT_WS_MAX_QUEUED_MESSAGES";
+    static final int DEFAULT_MAX_QUEUED_MESSAGES = 256;
+    static final String SLOW_CONSUMER_POLICY_ENV_VAR = "CRYOSTAT_WS_SLOW_CONSUMER_POLICY";
+
+    static final String WS_REPLAY_BUFFER_SIZE = "WS_REPLAY_BUFFER_SIZE";
+    static final String REPLAY_BUFFER_SIZE_ENV_VAR = "CRYOSTAT_WS_REPLAY_BUFFER_SIZE";
+    static final int DEFAULT_REPLAY_BUFFER_SIZE = 1024;
+
+    static final String WS_AUTH_REVALIDATION_PERIOD = "WS_AUTH_REVALIDATION_PERIOD";
+    static final String AUTH_REVALIDATION_PERIOD_ENV_VAR =
+            "CRYOSTAT_WS_AUTH_REVALIDATION_PERIOD_SECONDS";
+    static final long DEFAULT_AUTH_REVALIDATION_PERIOD_SECONDS = 60;
+
     @Provides
     @Singleton
     static MessagingServer provideWebSocketMessagingServer(
@@ -76,25 +88,89 @@ public abstract class MessagingModule {
             AuthManager authManager,
             NotificationFactory notificationFactory,
             @Named(WS_MAX_CONNECTIONS) int maxConnections,
+            @Named(WS_MAX_QUEUED_MESSAGES) int maxQueuedMessages,
+            WsClient.SlowConsumerPolicy slowConsumerPolicy,
+            @Named(WS_REPLAY_BUFFER_SIZE) int replayBufferSize,
+            @Named(WS_AUTH_REVALIDATION_PERIOD) Duration authRevalidationPeriod,
             Logger logger,
-            Gson gson,
-            @Named(WS_WORKER_POOL) ScheduledExecutorService workerPool) {
+            Gson gson) {
         return new MessagingServer(
                 server,
                 env,
                 authManager,
                 notificationFactory,
                 maxConnections,
-                workerPool,
+                maxQueuedMessages,
+                slowConsumerPolicy,
+                replayBufferSize,
+                authRevalidationPeriod,
+                Executors.newSingleThreadScheduledExecutor(),
                 logger,
                 gson);
     }
 
     @Provides
-    @Named(WS_WORKER_POOL)
-    static ScheduledExecutorService provideWorkerPool(
-            @Named(WS_MAX_CONNECTIONS) int maxConnections) {
-        return Executors.newScheduledThreadPool(maxConnections);
+    @Named(WS_AUTH_REVALIDATION_PERIOD)
+    static Duration provideWebSocketAuthRevalidationPeriod(Environment env, Logger logger) {
+        try {
+            return Duration.ofSeconds(
+                    Long.parseLong(
+                            env.getEnv(
+                                    AUTH_REVALIDATION_PERIOD_ENV_VAR,
+                                    String.valueOf(DEFAULT_AUTH_REVALIDATION_PERIOD_SECONDS))));
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return Duration.ofSeconds(DEFAULT_AUTH_REVALIDATION_PERIOD_SECONDS);
+        }
+    }
+
+    @Provides
+    @Named(WS_REPLAY_BUFFER_SIZE)
+    static int provideWebSocketReplayBufferSize(Environment env, Logger logger) {
+        try {
+            return Math.max(
+                    0,
+                    Integer.parseInt(
+                            env.getEnv(
+                                    REPLAY_BUFFER_SIZE_ENV_VAR,
+                                    String.valueOf(DEFAULT_REPLAY_BUFFER_SIZE))));
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return DEFAULT_REPLAY_BUFFER_SIZE;
+        }
+    }
+
+    @Provides
+    @Named(WS_MAX_QUEUED_MESSAGES)
+    static int provideWebSocketMaxQueuedMessages(Environment env, Logger logger) {
+        try {
+            int maxQueued =
+                    Integer.parseInt(
+                            env.getEnv(
+                                    MAX_QUEUED_MESSAGES_ENV_VAR,
+                                    String.valueOf(DEFAULT_MAX_QUEUED_MESSAGES)));
+            if (maxQueued < 0) {
+                logger.info(
+                        "Requested maximum queued WebSocket messages {} is too small.", maxQueued);
+                return 0;
+            }
+            return maxQueued;
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return DEFAULT_MAX_QUEUED_MESSAGES;
+        }
+    }
+
+    @Provides
+    static WsClient.SlowConsumerPolicy provideSlowConsumerPolicy(Environment env, Logger logger) {
+        String policy =
+                env.getEnv(SLOW_CONSUMER_POLICY_ENV_VAR, WsClient.SlowConsumerPolicy.DROP.name());
+        try {
+            return WsClient.SlowConsumerPolicy.valueOf(policy.toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            logger.warn(iae);
+            return WsClient.SlowConsumerPolicy.DROP;
+        }
     }
 
     @Provides
@@ -106,10 +182,6 @@ public abstract class MessagingModule {
                             env.getEnv(
                                     MAX_CONNECTIONS_ENV_VAR,
                                     String.valueOf(DEFAULT_MAX_CONNECTIONS)));
-            if (maxConn > MAX_CONNECTIONS) {
-                logger.info("Requested maximum WebSocket connections {} is too large.", maxConn);
-                return MAX_CONNECTIONS;
-            }
             if (maxConn < MIN_CONNECTIONS) {
                 logger.info("Requested maximum WebSocket connections {} is too small.", maxConn);
                 return MIN_CONNECTIONS;
@@ -39,38 +39,87 @@ package io.cryostat.messaging;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Named;
 
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.Environment;
+import io.cryostat.messaging.notifications.Notification;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.http.HttpMimeType;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.vertx.core.http.ServerWebSocket;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
 
 public class MessagingServer implements AutoCloseable {
 
-    private final BlockingQueue<String> inQ = new LinkedBlockingQueue<>();
-    private final Map<WsClient, ScheduledFuture<?>> connections = new HashMap<>();
+    static final String RESYNC_NOTIFICATION_CATEGORY = "NotificationsMissed";
+    // subscription requests are the only messages clients send, so anything else is answered
+    // with this rather than silently ignored
+    static final String UNSUPPORTED_MESSAGE_REPLY =
+            "{\"type\":\"error\",\"message\":\"Unsupported message, expected a subscription"
+                    + " request\"}";
+    private static final long AUTH_TIMEOUT_SECONDS = 15;
+    private static final String SEQUENCED_NOTIFICATION_PREFIX = "{\"meta\":{\"seq\":";
+
+    // copy-on-write so that broadcasts iterate a stable snapshot without taking a lock, since
+    // messages are written far more often than clients come and go
+    private final List<WsClient> connections = new CopyOnWriteArrayList<>();
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
+    // sequence numbers are assigned, and notifications are logged and handed to the outbox, while
+    // holding this lock. Notifications are serialized before taking it and delivered after
+    // releasing it
+    private final NotificationLog notificationLog;
+    // sequenced notifications waiting to be delivered, in sequence order. Whichever thread claims
+    // "delivering" delivers them, so that every client receives notifications in sequence order
+    // without a lock being held while they are written out
+    private final Queue<Outgoing> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean delivering = new AtomicBoolean();
     private final HttpServer server;
     private final AuthManager authManager;
     private final NotificationFactory notificationFactory;
     private final int maxConnections;
-    private final ScheduledExecutorService workerPool;
+    private final int maxQueuedMessages;
+    private final WsClient.SlowConsumerPolicy slowConsumerPolicy;
     private final Logger logger;
     private final Gson gson;
+    // totals from clients which have since disconnected. Guarded by "connections"
+    private long retiredSentCount;
+    private long retiredDroppedCount;
+    private long slowConsumerDisconnects;
+    // clients which have connected but are not yet authenticated. Guarded by "connections"
+    private int pendingConnections;
+    private final Duration authRevalidationPeriod;
+    private final ScheduledExecutorService authRevalidationTimer;
+    private final Runnable metricsEventHook = this::emitMetricsEvent;
 
     MessagingServer(
             HttpServer server,
@@ -78,20 +127,30 @@ public class MessagingServer implements AutoCloseable {
             AuthManager authManager,
             NotificationFactory notificationFactory,
             @Named(MessagingModule.WS_MAX_CONNECTIONS) int maxConnections,
-            @Named(MessagingModule.WS_WORKER_POOL) ScheduledExecutorService workerPool,
+            @Named(MessagingModule.WS_MAX_QUEUED_MESSAGES) int maxQueuedMessages,
+            WsClient.SlowConsumerPolicy slowConsumerPolicy,
+            @Named(MessagingModule.WS_REPLAY_BUFFER_SIZE) int replayBufferSize,
+            @Named(MessagingModule.WS_AUTH_REVALIDATION_PERIOD) Duration authRevalidationPeriod,
+            ScheduledExecutorService authRevalidationTimer,
             Logger logger,
             Gson gson) {
+        this.notificationLog =
+                new NotificationLog(replayBufferSize, UUID.randomUUID().toString());
+        this.authRevalidationPeriod = authRevalidationPeriod;
+        this.authRevalidationTimer = authRevalidationTimer;
         this.server = server;
         this.authManager = authManager;
         this.notificationFactory = notificationFactory;
         this.maxConnections = maxConnections;
-        this.workerPool = workerPool;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.slowConsumerPolicy = slowConsumerPolicy;
         this.logger = logger;
         this.gson = gson;
     }
 
     public void start() throws SocketException, UnknownHostException {
         logger.info("Max concurrent WebSocket connections: {}", maxConnections);
+        FlightRecorder.addPeriodicEvent(MessagingStatistics.class, metricsEventHook);
 
         server.websocketHandler(
                 (sws) -> {
@@ -104,7 +163,7 @@ public class MessagingServer implements AutoCloseable {
                     }
                     String remoteAddress = sws.remoteAddress().toString();
                     synchronized (connections) {
-                        if (connections.size() >= maxConnections) {
+                        if (connections.size() + pendingConnections >= maxConnections) {
                             logger.info(
                                     "Dropping remote client {} due to too many concurrent connections",
                                     remoteAddress);
@@ -112,107 +171,312 @@ public class MessagingServer implements AutoCloseable {
                             sendClientActivityNotification(remoteAddress, "dropped");
                             return;
                         }
-                        logger.info("Connected remote client {}", remoteAddress);
-
-                        WsClient crw = new WsClient(this.logger, sws);
-                        sws.closeHandler(
-                                (unused) -> {
-                                    logger.info("Disconnected remote client {}", remoteAddress);
-                                    sendClientActivityNotification(remoteAddress, "disconnected");
-                                    removeConnection(crw);
-                                });
-                        sws.textMessageHandler(
-                                msg -> {
-                                    try {
-                                        String proto = sws.subProtocol();
-                                        authManager
-                                                .doAuthenticated(
-                                                        () -> proto,
-                                                        authManager::validateWebSocketSubProtocol)
-                                                .onSuccess(() -> crw.handle(msg))
-                                                // 1002: WebSocket "Protocol Error" close reason
-                                                .onFailure(
-                                                        () ->
-                                                                sws.close(
-                                                                        (short) 1002,
-                                                                        String.format(
-                                                                                "Invalid subprotocol \"%s\"",
-                                                                                proto)))
-                                                .execute();
-                                    } catch (InterruptedException
-                                            | ExecutionException
-                                            | TimeoutException e) {
-                                        logger.info(e);
-                                        // 1011: WebSocket "Internal Error" close reason
-                                        sws.close(
-                                                (short) 1011,
-                                                String.format(
-                                                        "Internal error: \"%s\"", e.getMessage()));
-                                    }
-                                });
-                        // FIXME connection should only be added after client sends a message to
-                        // authenticate itself
-                        addConnection(crw);
-                        sendClientActivityNotification(remoteAddress, "connected");
-                        sws.accept();
+                        pendingConnections++;
                     }
+                    WsClient crw =
+                            new WsClient(
+                                    this.logger,
+                                    sws,
+                                    this::handleInbound,
+                                    maxQueuedMessages,
+                                    slowConsumerPolicy);
+                    sws.closeHandler(
+                            (unused) -> {
+                                logger.info("Disconnected remote client {}", remoteAddress);
+                                sendClientActivityNotification(remoteAddress, "disconnected");
+                                removeConnection(crw);
+                                crw.close();
+                            });
+                    // the session was authenticated when it was opened, so messages are not
+                    // re-authenticated individually. Messages arriving before that completes are
+                    // held by the client until it is accepted
+                    sws.textMessageHandler(crw::receive);
+                    sws.accept();
+                    String proto = sws.subProtocol();
+                    validate(proto)
+                            .whenComplete(
+                                    (valid, t) -> {
+                                        boolean authenticated = t == null && valid;
+                                        if (t != null) {
+                                            logger.info(t);
+                                            // 1011: WebSocket "Internal Error" close reason
+                                            sws.close(
+                                                    (short) 1011,
+                                                    String.format(
+                                                            "Internal error: \"%s\"",
+                                                            t.getMessage()));
+                                        } else if (!authenticated) {
+                                            // 1002: WebSocket "Protocol Error" close reason
+                                            sws.close(
+                                                    (short) 1002,
+                                                    String.format(
+                                                            "Invalid subprotocol \"%s\"", proto));
+                                        }
+                                        synchronized (connections) {
+                                            pendingConnections--;
+                                            if (!authenticated || crw.isClosed()) {
+                                                return;
+                                            }
+                                            logger.info(
+                                                    "Connected remote client {}", remoteAddress);
+                                            crw.authenticated(proto);
+                                            synchronized (notificationLog) {
+                                                addConnection(crw);
+                                                replayMissed(crw, sws);
+                                            }
+                                        }
+                                        crw.acceptInbound();
+                                        sendClientActivityNotification(remoteAddress, "connected");
+                                    });
                 });
+
+        if (!authRevalidationPeriod.isZero() && !authRevalidationPeriod.isNegative()) {
+            authRevalidationTimer.scheduleAtFixedRate(
+                    this::revalidateConnections,
+                    authRevalidationPeriod.toMillis(),
+                    authRevalidationPeriod.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
-    public String readMessage() {
+    // checks each session's credentials again, so that sessions do not outlive their tokens
+    void revalidateConnections() {
+        for (WsClient client : connections) {
+            String proto = client.getSubProtocol();
+            validate(proto)
+                    .whenComplete(
+                            (valid, t) -> {
+                                if (t != null) {
+                                    // could not tell, try again next time
+                                    logger.warn(t);
+                                } else if (!valid) {
+                                    logger.info("WebSocket client credentials no longer valid");
+                                    // 1008: WebSocket "Policy Violation" close reason
+                                    client.closeSocket((short) 1008, "Authentication expired");
+                                }
+                            });
+        }
+    }
+
+    private CompletableFuture<Boolean> validate(String subProtocol) {
+        Future<Boolean> future = authManager.validateWebSocketSubProtocol(() -> subProtocol);
+        if (future instanceof CompletableFuture) {
+            return (CompletableFuture<Boolean>) future;
+        }
+        // don't wait on the event loop for auth managers which are not already asynchronous
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return future.get(AUTH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    // subscription requests are applied here, anything else is rejected
+    void handleInbound(WsClient client, String msg) {
+        Subscription.Request request;
         try {
-            return inQ.take();
-        } catch (InterruptedException e) {
-            logger.warn(e);
-            return null;
+            request = gson.fromJson(msg, Subscription.Request.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+        if (request == null || !request.isSubscription()) {
+            logger.debug("Rejecting unsupported inbound WebSocket message");
+            client.writeMessage(UNSUPPORTED_MESSAGE_REPLY);
+            return;
         }
+        Subscription subscription = request.toSubscription();
+        synchronized (connections) {
+            // the client may have disconnected while this message was in flight
+            if (!connections.contains(client)) {
+                return;
+            }
+            subscriptions.put(client, subscription);
+        }
+        logger.debug(
+                "Client subscribed to categories {} for targets {}",
+                subscription.getCategories(),
+                subscription.getTargetIds());
     }
 
     public void writeMessage(WsMessage message) {
+        if (message instanceof Notification) {
+            writeNotification((Notification<?>) message);
+            return;
+        }
+        if (connections.isEmpty()) {
+            return;
+        }
+        // serialize once and hand every client the same immutable string
         String json = gson.toJson(message);
-        logger.info("Outgoing WS message: {}", json);
-        synchronized (connections) {
-            connections.keySet().forEach(c -> c.writeMessage(json));
+        logger.trace("Outgoing WS message: {}", json);
+        broadcast(connections, json);
+    }
+
+    private void writeNotification(Notification<?> notification) {
+        // everything but the sequence number, which is spliced in at the start of the meta object
+        // once it is assigned, so that serialization happens outside the lock
+        JsonObject tree = gson.toJsonTree(notification).getAsJsonObject();
+        JsonObject meta = tree.remove("meta").getAsJsonObject();
+        meta.addProperty("epoch", notificationLog.getEpoch());
+        String sequenced =
+                ","
+                        + gson.toJson(meta).substring(1)
+                        + (tree.size() == 0 ? "}" : "," + gson.toJson(tree).substring(1));
+        String json;
+        synchronized (notificationLog) {
+            long seq = notificationLog.nextSequence();
+            json = SEQUENCED_NOTIFICATION_PREFIX + seq + sequenced;
+            notificationLog.append(seq, json);
+            // recipients are looked up here so that a client connecting concurrently either
+            // receives this notification in its replay or from the outbox, never both
+            outbox.add(
+                    new Outgoing(
+                            subscriptions.lookup(
+                                    notification.getCategory(), notification.getTargetId()),
+                            json));
+        }
+        logger.trace("Outgoing WS message: {}", json);
+        deliver();
+    }
+
+    private void deliver() {
+        while (!outbox.isEmpty() && delivering.compareAndSet(false, true)) {
+            try {
+                Outgoing next;
+                while ((next = outbox.poll()) != null) {
+                    broadcast(next.recipients, next.json);
+                }
+            } finally {
+                delivering.set(false);
+            }
+            // anything added after the last poll but before the flag was cleared is picked up by
+            // the next pass, since the thread which added it may have seen the flag still set
+        }
+    }
+
+    String getNotificationEpoch() {
+        return notificationLog.getEpoch();
+    }
+
+    private void broadcast(Collection<WsClient> recipients, String json) {
+        for (WsClient client : recipients) {
+            client.writeMessage(json);
+        }
+    }
+
+    // a reconnecting client passes the last sequence number it saw, and the epoch it was from, as
+    // ?since=<seq>&epoch=<epoch>
+    private void replayMissed(WsClient client, ServerWebSocket sws) {
+        String query = sws.query();
+        if (query == null) {
+            return;
+        }
+        Long since = null;
+        String epoch = null;
+        for (String param : query.split("&")) {
+            String[] kv = param.split("=", 2);
+            if (kv.length != 2) {
+                continue;
+            }
+            if ("since".equals(kv[0])) {
+                try {
+                    since = Long.parseLong(kv[1]);
+                } catch (NumberFormatException nfe) {
+                    logger.warn(nfe);
+                }
+            } else if ("epoch".equals(kv[0])) {
+                epoch = kv[1];
+            }
+        }
+        if (since == null) {
+            return;
         }
+        Optional<List<String>> missed = notificationLog.since(epoch, since);
+        // the replay goes through the client's queue like any other message, so a replay the
+        // queue could not hold would be cut short by the slow consumer policy
+        if (missed.isPresent() && missed.get().size() <= maxQueuedMessages) {
+            logger.info("Replaying {} missed notifications", missed.get().size());
+            missed.get().forEach(client::writeMessage);
+            return;
+        }
+        // too far behind, or from before a restart, the client has to fetch current state afresh
+        Notification<Map<String, Long>> resync =
+                notificationFactory
+                        .<Map<String, Long>>createBuilder()
+                        .metaCategory(RESYNC_NOTIFICATION_CATEGORY)
+                        .metaType(HttpMimeType.JSON)
+                        .message(Map.of("since", since, "last", notificationLog.getLastSequence()))
+                        .build();
+        JsonObject tree = gson.toJsonTree(resync).getAsJsonObject();
+        JsonObject meta = tree.getAsJsonObject("meta");
+        meta.addProperty("seq", notificationLog.getLastSequence());
+        meta.addProperty("epoch", notificationLog.getEpoch());
+        client.writeMessage(gson.toJson(tree));
     }
 
     void addConnection(WsClient crw) {
         synchronized (connections) {
-            ScheduledFuture<?> task =
-                    workerPool.scheduleWithFixedDelay(
-                            () -> {
-                                String msg = crw.readMessage();
-                                if (msg != null) {
-                                    inQ.add(msg);
-                                }
-                            },
-                            0,
-                            10,
-                            TimeUnit.MILLISECONDS);
-            connections.put(crw, task);
+            connections.add(crw);
+            // clients receive everything until they subscribe to something narrower
+            subscriptions.put(crw, Subscription.ALL);
         }
     }
 
     void removeConnection(WsClient crw) {
         synchronized (connections) {
-            ScheduledFuture<?> task = connections.remove(crw);
-            if (task != null) {
-                task.cancel(false);
+            if (connections.remove(crw)) {
+                subscriptions.remove(crw);
                 crw.close();
+                retiredSentCount += crw.getSentCount();
+                retiredDroppedCount += crw.getDroppedCount();
+                if (crw.isSlowConsumerDisconnected()) {
+                    slowConsumerDisconnects++;
+                }
             }
         }
     }
 
+    public Metrics getMetrics() {
+        synchronized (connections) {
+            long sent = retiredSentCount;
+            long dropped = retiredDroppedCount;
+            long queued = 0;
+            for (WsClient client : connections) {
+                sent += client.getSentCount();
+                dropped += client.getDroppedCount();
+                queued += client.getQueuedCount();
+            }
+            return new Metrics(
+                    connections.size(), queued, sent, dropped, slowConsumerDisconnects);
+        }
+    }
+
+    void emitMetricsEvent() {
+        Metrics metrics = getMetrics();
+        new MessagingStatistics(
+                        metrics.getConnections(),
+                        metrics.getQueuedMessages(),
+                        metrics.getSentMessages(),
+                        metrics.getDroppedMessages(),
+                        metrics.getSlowConsumerDisconnects())
+                .commit();
+    }
+
     @Override
     public void close() {
+        FlightRecorder.removePeriodicEvent(metricsEventHook);
+        authRevalidationTimer.shutdownNow();
         closeConnections();
     }
 
     private void closeConnections() {
         synchronized (connections) {
-            workerPool.shutdown();
-            connections.keySet().forEach(WsClient::close);
+            connections.forEach(WsClient::close);
             connections.clear();
+            subscriptions.clear();
         }
     }
 
@@ -225,4 +489,83 @@ public class MessagingServer implements AutoCloseable {
                 .build()
                 .send();
     }
+
+    private static class Outgoing {
+        final Collection<WsClient> recipients;
+        final String json;
+
+        Outgoing(Collection<WsClient> recipients, String json) {
+            this.recipients = recipients;
+            this.json = json;
+        }
+    }
+
+    public static class Metrics {
+        private final int connections;
+        private final long queuedMessages;
+        private final long sentMessages;
+        private final long droppedMessages;
+        private final long slowConsumerDisconnects;
+
+        Metrics(
+                int connections,
+                long queuedMessages,
+                long sentMessages,
+                long droppedMessages,
+                long slowConsumerDisconnects) {
+            this.connections = connections;
+            this.queuedMessages = queuedMessages;
+            this.sentMessages = sentMessages;
+            this.droppedMessages = droppedMessages;
+            this.slowConsumerDisconnects = slowConsumerDisconnects;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public long getQueuedMessages() {
+            return queuedMessages;
+        }
+
+        public long getSentMessages() {
+            return sentMessages;
+        }
+
+        public long getDroppedMessages() {
+            return droppedMessages;
+        }
+
+        public long getSlowConsumerDisconnects() {
+            return slowConsumerDisconnects;
+        }
+    }
+
+    @Name("io.cryostat.messaging.MessagingServer.MessagingStatistics")
+    @Label("WebSocket Messaging Statistics")
+    @Category("Cryostat")
+    @Period("10 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "Event fields are recorded with JFR instead of accessed directly")
+    public static class MessagingStatistics extends Event {
+        int connections;
+        long queuedMessages;
+        long sentMessages;
+        long droppedMessages;
+        long slowConsumerDisconnects;
+
+        MessagingStatistics(
+                int connections,
+                long queuedMessages,
+                long sentMessages,
+                long droppedMessages,
+                long slowConsumerDisconnects) {
+            this.connections = connections;
+            this.queuedMessages = queuedMessages;
+            this.sentMessages = sentMessages;
+            this.droppedMessages = droppedMessages;
+            this.slowConsumerDisconnects = slowConsumerDisconnects;
+        }
+    }
 }
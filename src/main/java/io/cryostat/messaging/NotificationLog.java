@@ -0,0 +1,121 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bounded log of the most recently sent notifications, in their serialized form, so that a client
+ * which reconnects can be sent only what it missed. Sequence numbers restart with every log, so
+ * each log has its own epoch which clients pass back along with the last sequence number they saw.
+ * Not thread-safe, callers synchronize on the log instance.
+ */
+class NotificationLog {
+
+    private final int capacity;
+    private final String epoch;
+    private final Deque<Entry> entries;
+    private long lastSequence;
+
+    NotificationLog(int capacity, String epoch) {
+        this.capacity = capacity;
+        this.epoch = epoch;
+        this.entries = new ArrayDeque<>(Math.max(capacity, 1));
+    }
+
+    String getEpoch() {
+        return epoch;
+    }
+
+    long nextSequence() {
+        return ++lastSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    void append(long sequence, String message) {
+        if (capacity <= 0) {
+            return;
+        }
+        if (entries.size() >= capacity) {
+            entries.removeFirst();
+        }
+        entries.addLast(new Entry(sequence, message));
+    }
+
+    /**
+     * @return the messages sent after the given sequence number of the given epoch, oldest first,
+     *     or empty if some of them are no longer held and the client must fully resynchronize
+     *     instead
+     */
+    Optional<List<String>> since(String epoch, long sequence) {
+        if (!this.epoch.equals(epoch) || sequence > lastSequence || sequence < 0) {
+            // the client is from before a restart, its sequence numbers mean nothing here
+            return Optional.empty();
+        }
+        if (sequence == lastSequence) {
+            return Optional.of(List.of());
+        }
+        if (entries.isEmpty() || entries.peekFirst().sequence > sequence + 1) {
+            return Optional.empty();
+        }
+        List<String> missed = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.sequence > sequence) {
+                missed.add(entry.message);
+            }
+        }
+        return Optional.of(missed);
+    }
+
+    private static class Entry {
+        final long sequence;
+        final String message;
+
+        Entry(long sequence, String message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
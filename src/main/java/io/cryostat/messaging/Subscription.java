@@ -0,0 +1,131 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import io.cryostat.net.TargetConnectionManager;
+
+/**
+ * The notification categories and target IDs a WebSocket client wants to receive. An empty set
+ * of categories or of target IDs means that the client is interested in all of them. Target IDs
+ * are held as JMX service URLs, as notifications are.
+ */
+class Subscription {
+
+    static final Subscription ALL = new Subscription(Set.of(), Set.of());
+
+    private final Set<String> categories;
+    private final Set<String> targetIds;
+
+    Subscription(Set<String> categories, Set<String> targetIds) {
+        this.categories = Set.copyOf(categories);
+        this.targetIds = Set.copyOf(targetIds);
+    }
+
+    Set<String> getCategories() {
+        return categories;
+    }
+
+    Set<String> getTargetIds() {
+        return targetIds;
+    }
+
+    boolean isAllCategories() {
+        return categories.isEmpty();
+    }
+
+    boolean isAllTargets() {
+        return targetIds.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Subscription)) {
+            return false;
+        }
+        Subscription other = (Subscription) o;
+        return categories.equals(other.categories) && targetIds.equals(other.targetIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(categories, targetIds);
+    }
+
+    /**
+     * Inbound WebSocket message, ex. {"type":"subscribe","categories":["RecordingCreated"],
+     * "targetIds":["localhost:9091"]}. Omitted or empty lists subscribe to everything. Target IDs
+     * may be given as host[:port] pairs or as JMX service URLs.
+     */
+    static class Request {
+        static final String TYPE = "subscribe";
+
+        String type;
+        List<String> categories;
+        List<String> targetIds;
+
+        boolean isSubscription() {
+            return TYPE.equals(type);
+        }
+
+        Subscription toSubscription() {
+            Set<String> normalized = new HashSet<>();
+            for (String targetId : toSet(targetIds)) {
+                normalized.add(TargetConnectionManager.normalizeTargetId(targetId));
+            }
+            return new Subscription(toSet(categories), normalized);
+        }
+
+        private static Set<String> toSet(List<String> list) {
+            if (list == null) {
+                return Collections.emptySet();
+            }
+            Set<String> set = new HashSet<>(list);
+            set.remove(null);
+            return set;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from notification category and target ID to subscribed clients, so that routing a
+ * notification costs a few map lookups rather than a pass over every client's filter.
+ * Subscriptions change rarely compared to how often notifications are sent, so every change
+ * rebuilds an immutable snapshot which lookups read without locking.
+ */
+class SubscriptionIndex {
+
+    // guarded by "this"
+    private final Map<WsClient, Subscription> subscriptions = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    synchronized void put(WsClient client, Subscription subscription) {
+        subscriptions.put(client, subscription);
+        snapshot = Snapshot.of(subscriptions);
+    }
+
+    synchronized void remove(WsClient client) {
+        if (subscriptions.remove(client) != null) {
+            snapshot = Snapshot.of(subscriptions);
+        }
+    }
+
+    synchronized void clear() {
+        subscriptions.clear();
+        snapshot = Snapshot.EMPTY;
+    }
+
+    synchronized Subscription get(WsClient client) {
+        return subscriptions.get(client);
+    }
+
+    /**
+     * @param targetId the target the message concerns, or null if it is not specific to a target,
+     *     in which case subscribers' target filters are not applied
+     */
+    List<WsClient> lookup(String category, String targetId) {
+        Snapshot s = this.snapshot;
+        List<WsClient> recipients = new ArrayList<>();
+        Set<WsClient> forCategory = s.byCategory.getOrDefault(category, Collections.emptySet());
+        addMatching(recipients, s.anyCategory, s, targetId);
+        addMatching(recipients, forCategory, s, targetId);
+        return recipients;
+    }
+
+    private static void addMatching(
+            List<WsClient> recipients, Set<WsClient> candidates, Snapshot s, String targetId) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        if (targetId == null) {
+            recipients.addAll(candidates);
+            return;
+        }
+        Set<WsClient> forTarget = s.byTarget.getOrDefault(targetId, Collections.emptySet());
+        for (WsClient client : candidates) {
+            if (s.anyTarget.contains(client) || forTarget.contains(client)) {
+                recipients.add(client);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Set.of(), Map.of(), Set.of());
+
+        final Map<String, Set<WsClient>> byCategory;
+        final Set<WsClient> anyCategory;
+        final Map<String, Set<WsClient>> byTarget;
+        final Set<WsClient> anyTarget;
+
+        Snapshot(
+                Map<String, Set<WsClient>> byCategory,
+                Set<WsClient> anyCategory,
+                Map<String, Set<WsClient>> byTarget,
+                Set<WsClient> anyTarget) {
+            this.byCategory = byCategory;
+            this.anyCategory = anyCategory;
+            this.byTarget = byTarget;
+            this.anyTarget = anyTarget;
+        }
+
+        static Snapshot of(Map<WsClient, Subscription> subscriptions) {
+            Map<String, Set<WsClient>> byCategory = new HashMap<>();
+            Set<WsClient> anyCategory = new HashSet<>();
+            Map<String, Set<WsClient>> byTarget = new HashMap<>();
+            Set<WsClient> anyTarget = new HashSet<>();
+            for (Map.Entry<WsClient, Subscription> entry : subscriptions.entrySet()) {
+                WsClient client = entry.getKey();
+                Subscription subscription = entry.getValue();
+                if (subscription.isAllCategories()) {
+                    anyCategory.add(client);
+                }
+                for (String category : subscription.getCategories()) {
+                    byCategory.computeIfAbsent(category, k -> new HashSet<>()).add(client);
+                }
+                if (subscription.isAllTargets()) {
+                    anyTarget.add(client);
+                }
+                for (String targetId : subscription.getTargetIds()) {
+                    byTarget.computeIfAbsent(targetId, k -> new HashSet<>()).add(client);
+                }
+            }
+            return new Snapshot(byCategory, anyCategory, byTarget, anyTarget);
+        }
+    }
+}
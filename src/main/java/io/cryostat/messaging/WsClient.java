@@ -37,8 +37,10 @@
  */
 package io.cryostat.messaging;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import io.cryostat.core.log.Logger;
 
@@ -52,65 +54,211 @@ import jdk.jfr.Name;
 
 class WsClient implements AutoCloseable, Handler<String> {
 
-    private final Logger logger;
-    private final BlockingQueue<String> inQ = new LinkedBlockingQueue<>();
+    // 1008: WebSocket "Policy Violation" close reason
+    static final short SLOW_CONSUMER_CLOSE_CODE = 1008;
+    // messages sent before the session is authenticated are held, up to this many, and handled
+    // in order once it is
+    static final int MAX_PENDING_INBOUND = 16;
+    static final String PENDING_INBOUND_OVERFLOW_REPLY =
+            "{\"type\":\"error\",\"message\":\"Too many messages before authentication"
+                    + " completed\"}";
 
+    private final Logger logger;
     private final ServerWebSocket sws;
-    private final Object threadLock = new Object();
-    private Thread readingThread;
+    private final BiConsumer<WsClient, String> inboundListener;
+    private final int maxQueuedMessages;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    // messages waiting for the socket's write queue to drain. Guarded by "this"
+    private final Queue<String> sendQ = new ArrayDeque<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    // inbound messages waiting for the session to be accepted. Guarded by itself
+    private final Queue<String> pendingInbound = new ArrayDeque<>();
+    private boolean acceptingInbound;
+    private volatile boolean closed;
+    private volatile boolean slowConsumerDisconnected;
+    // the credentials the session was authenticated with, kept to re-validate them later
+    private volatile String subProtocol;
 
-    WsClient(Logger logger, ServerWebSocket sws) {
+    WsClient(
+            Logger logger,
+            ServerWebSocket sws,
+            BiConsumer<WsClient, String> inboundListener,
+            int maxQueuedMessages,
+            SlowConsumerPolicy slowConsumerPolicy) {
         this.logger = logger;
         this.sws = sws;
+        this.inboundListener = inboundListener;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.sws.drainHandler(v -> drain());
     }
 
+    // called on the Vert.x event loop as each text frame arrives, so this must never block
     @Override
     public void handle(String msg) {
+        if (closed) {
+            return;
+        }
         logger.info("({}): CMD {}", this.sws.remoteAddress().toString(), msg);
-        inQ.add(msg);
+        inboundListener.accept(this, msg);
     }
 
-    String readMessage() {
-        try {
-            synchronized (threadLock) {
-                readingThread = Thread.currentThread();
+    /**
+     * Called as each text frame arrives. Until {@link #acceptInbound()} the message is held
+     * rather than handled, so that a request sent straight after connecting is not lost while
+     * the session is being authenticated.
+     */
+    void receive(String msg) {
+        synchronized (pendingInbound) {
+            if (!acceptingInbound) {
+                if (closed) {
+                    return;
+                }
+                if (pendingInbound.size() < MAX_PENDING_INBOUND) {
+                    pendingInbound.add(msg);
+                } else {
+                    writeMessage(PENDING_INBOUND_OVERFLOW_REPLY);
+                }
+                return;
             }
-            return inQ.take();
-        } catch (InterruptedException e) {
-            return null;
-        } finally {
-            synchronized (threadLock) {
-                readingThread = null;
+        }
+        handle(msg);
+    }
+
+    /**
+     * Handle the messages held since the client connected, in order, and then every message as
+     * it arrives. Messages arriving meanwhile are held until those before them are handled.
+     */
+    void acceptInbound() {
+        while (true) {
+            String msg;
+            synchronized (pendingInbound) {
+                msg = pendingInbound.poll();
+                if (msg == null) {
+                    acceptingInbound = true;
+                    return;
+                }
+            }
+            handle(msg);
+        }
+    }
+
+    /**
+     * Send a message to this client without blocking. If the socket cannot keep up the message is
+     * queued, and once the queue holds maxQueuedMessages the slow consumer policy applies.
+     *
+     * @return false if the message was dropped rather than sent or queued
+     */
+    boolean writeMessage(String message) {
+        if (closed || this.sws.isClosed()) {
+            return false;
+        }
+        boolean disconnect = false;
+        synchronized (this) {
+            if (sendQ.isEmpty() && !sws.writeQueueFull()) {
+                send(message);
+                return true;
+            }
+            if (sendQ.size() < maxQueuedMessages) {
+                sendQ.add(message);
+                return true;
             }
+            droppedCount.incrementAndGet();
+            if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT) {
+                sendQ.clear();
+                closed = true;
+                slowConsumerDisconnected = true;
+                disconnect = true;
+            }
+        }
+        WsMessageDropped evt =
+                new WsMessageDropped(
+                        sws.remoteAddress().host(),
+                        sws.remoteAddress().port(),
+                        message.length(),
+                        slowConsumerPolicy.name());
+        if (evt.shouldCommit()) {
+            evt.commit();
         }
+        if (disconnect) {
+            logger.warn(
+                    "Disconnecting slow WebSocket client {}", this.sws.remoteAddress().toString());
+            this.sws.close(SLOW_CONSUMER_CLOSE_CODE, "Slow consumer");
+        }
+        return false;
     }
 
-    void writeMessage(String message) {
-        if (!this.sws.isClosed()) {
-            WsMessageEmitted evt =
-                    new WsMessageEmitted(
-                            sws.remoteAddress().host(),
-                            sws.remoteAddress().port(),
-                            sws.uri(),
-                            message.length());
-            evt.begin();
+    private synchronized void drain() {
+        while (!sendQ.isEmpty() && !sws.writeQueueFull()) {
+            send(sendQ.poll());
+        }
+    }
 
-            try {
-                this.sws.writeTextMessage(message);
+    private void send(String message) {
+        WsMessageEmitted evt =
+                new WsMessageEmitted(
+                        sws.remoteAddress().host(),
+                        sws.remoteAddress().port(),
+                        sws.uri(),
+                        message.length());
+        evt.begin();
 
-            } catch (Exception e) {
-                logger.warn(e);
-                evt.setExceptionThrown(true);
+        try {
+            this.sws.writeTextMessage(message);
+            sentCount.incrementAndGet();
 
-            } finally {
-                evt.end();
-                if (evt.shouldCommit()) {
-                    evt.commit();
-                }
+        } catch (Exception e) {
+            logger.warn(e);
+            evt.setExceptionThrown(true);
+
+        } finally {
+            evt.end();
+            if (evt.shouldCommit()) {
+                evt.commit();
             }
         }
     }
 
+    long getSentCount() {
+        return sentCount.get();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    void authenticated(String subProtocol) {
+        this.subProtocol = subProtocol;
+    }
+
+    String getSubProtocol() {
+        return subProtocol;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void closeSocket(short statusCode, String reason) {
+        close();
+        this.sws.close(statusCode, reason);
+    }
+
+    boolean isSlowConsumerDisconnected() {
+        return slowConsumerDisconnected;
+    }
+
+    synchronized int getQueuedCount() {
+        return sendQ.size();
+    }
+
+    enum SlowConsumerPolicy {
+        DROP,
+        DISCONNECT,
+        ;
+    }
+
     @Name("io.cryostat.messaging.WsClient.WsMessageEmitted")
     @Label("WebSocket Message Emitted")
     @Category("Cryostat")
@@ -137,13 +285,34 @@ class WsClient implements AutoCloseable, Handler<String> {
         }
     }
 
+    @Name("io.cryostat.messaging.WsClient.WsMessageDropped")
+    @Label("WebSocket Message Dropped")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "Event fields are recorded with JFR instead of accessed directly")
+    public static class WsMessageDropped extends Event {
+        String host;
+        int port;
+        int msgLen;
+        String policy;
+
+        public WsMessageDropped(String host, int port, int msgLen, String policy) {
+            this.host = host;
+            this.port = port;
+            this.msgLen = msgLen;
+            this.policy = policy;
+        }
+    }
+
     @Override
     public void close() {
-        inQ.clear();
-        synchronized (threadLock) {
-            if (readingThread != null) {
-                readingThread.interrupt();
-            }
+        closed = true;
+        synchronized (this) {
+            sendQ.clear();
+        }
+        synchronized (pendingInbound) {
+            pendingInbound.clear();
         }
     }
 }
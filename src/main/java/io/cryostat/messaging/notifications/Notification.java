@@ -41,6 +41,7 @@ import java.time.Instant;
 
 import io.cryostat.messaging.MessagingServer;
 import io.cryostat.messaging.WsMessage;
+import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.web.http.HttpMimeType;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -49,16 +50,31 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 public class Notification<T> extends WsMessage {
 
     private final transient MessagingServer server;
+    // used only to route the notification to subscribers, not sent to clients
+    private final transient String targetId;
 
     private final Notification.Meta meta;
     private final T message;
 
     Notification(Notification.Builder<T> builder) {
         this.server = builder.server;
+        this.targetId = builder.targetId;
         this.meta = new Meta(builder.category, builder.type);
         this.message = builder.message;
     }
 
+    public String getCategory() {
+        return meta.category;
+    }
+
+    /**
+     * @return the JMX service URL of the target this notification concerns, or null if it is not
+     *     specific to a target
+     */
+    public String getTargetId() {
+        return targetId;
+    }
+
     public void send() {
         this.server.writeMessage(this);
     }
@@ -67,6 +83,7 @@ public class Notification<T> extends WsMessage {
         private final MessagingServer server;
         private String category = "generic";
         private MetaType type = new MetaType(HttpMimeType.JSON);
+        private String targetId;
         private T message;
 
         Builder(MessagingServer server) {
@@ -93,6 +110,16 @@ public class Notification<T> extends WsMessage {
             return metaType(new MetaType(mime));
         }
 
+        /**
+         * @param targetId the target this notification concerns, as a JMX service URL or a
+         *     host[:port] pair. Either form is normalized to the JMX service URL, which is what
+         *     subscriptions are matched against
+         */
+        public Builder<T> targetId(String targetId) {
+            this.targetId = TargetConnectionManager.normalizeTargetId(targetId);
+            return this;
+        }
+
         public Builder<T> message(T t) {
             this.message = t;
             return this;
@@ -0,0 +1,127 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging.notifications;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Collects events over a short window and sends them as one notification. Events with the same
+ * key are coalesced as they arrive, so a burst of changes to one object is sent as at most one
+ * entry. The coalescing function may return null to indicate that two events cancel out, ex. a
+ * target which is lost and then found again within the window.
+ */
+public class NotificationBatcher<E> implements Consumer<E> {
+
+    private final NotificationFactory notificationFactory;
+    private final String category;
+    private final long windowMs;
+    private final ScheduledExecutorService timer;
+    private final Function<E, ?> keyFunction;
+    private final BinaryOperator<E> coalesceFunction;
+    private final Function<List<E>, ?> messageFunction;
+
+    // guarded by "this"
+    private Map<Object, E> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param coalesceFunction given the pending and the newly arrived event for a key, returns the
+     *     event to keep, or null to drop both
+     * @param messageFunction converts a non-empty batch into the notification message body
+     */
+    public NotificationBatcher(
+            NotificationFactory notificationFactory,
+            String category,
+            Duration window,
+            ScheduledExecutorService timer,
+            Function<E, ?> keyFunction,
+            BinaryOperator<E> coalesceFunction,
+            Function<List<E>, ?> messageFunction) {
+        this.notificationFactory = notificationFactory;
+        this.category = category;
+        this.windowMs = window.toMillis();
+        this.timer = timer;
+        this.keyFunction = keyFunction;
+        this.coalesceFunction = coalesceFunction;
+        this.messageFunction = messageFunction;
+    }
+
+    @Override
+    public void accept(E event) {
+        Object key = keyFunction.apply(event);
+        synchronized (this) {
+            E previous = pending.remove(key);
+            E next = previous == null ? event : coalesceFunction.apply(previous, event);
+            if (next != null) {
+                // re-inserted at the end so the batch keeps the order of the latest changes
+                pending.put(key, next);
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                timer.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void flush() {
+        List<E> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+        }
+        notificationFactory
+                .createBuilder()
+                .metaCategory(category)
+                .message(messageFunction.apply(batch))
+                .build()
+                .send();
+    }
+}
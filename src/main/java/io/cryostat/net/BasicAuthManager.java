@@ -37,12 +37,24 @@
  */
 package io.cryostat.net;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -53,6 +65,8 @@ import java.util.regex.Pattern;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -60,15 +74,35 @@ class BasicAuthManager extends AbstractAuthManager {
 
     static final String USER_PROPERTIES_FILENAME = "cryostat-users.properties";
 
+    private static final Duration VERIFIED_CREDENTIALS_TTL = Duration.ofSeconds(30);
+    private static final long MAX_VERIFIED_CREDENTIALS = 256;
+
+    private static final Pattern CREDENTIALS_PATTERN = Pattern.compile("([\\S]+):([\\S]+)");
+    private static final Pattern HEADER_PATTERN = Pattern.compile("Basic[\\s]+(.*)");
+    private static final Pattern SUBPROTOCOL_PATTERN =
+            Pattern.compile(
+                    "basic\\.authorization\\.cryostat\\.([\\S]+)", Pattern.CASE_INSENSITIVE);
+
     private final FileSystem fs;
-    private final Properties users;
+    // username -> SHA-256 password hash, replaced as a whole whenever the properties are reloaded
+    private volatile Map<String, String> users = Map.of();
     private volatile boolean configLoaded = false;
+    private boolean watchingConfig = false;
+    // SHA-256 digests of "user:pass" credentials which recently passed validation, so that
+    // repeated requests from scripted clients do not need to verify the password again. The
+    // plaintext credentials are never kept. Entries are only added while holding this manager's
+    // lock, which loadConfig also holds while it replaces the users and empties the cache
+    private final Cache<String, Boolean> verifiedCredentials;
 
     // TODO salted hashes
     BasicAuthManager(Logger logger, FileSystem fs) {
         super(logger);
         this.fs = fs;
-        this.users = new Properties();
+        this.verifiedCredentials =
+                Caffeine.newBuilder()
+                        .expireAfterWrite(VERIFIED_CREDENTIALS_TTL)
+                        .maximumSize(MAX_VERIFIED_CREDENTIALS)
+                        .build();
     }
 
     @Override
@@ -82,16 +116,30 @@ class BasicAuthManager extends AbstractAuthManager {
             this.loadConfig();
         }
         String credentials = tokenProvider.get();
-        Pattern credentialsPattern = Pattern.compile("([\\S]+):([\\S]+)");
-        Matcher matcher = credentialsPattern.matcher(credentials);
+        String credentialsHash = DigestUtils.sha256Hex(credentials);
+        if (verifiedCredentials.getIfPresent(credentialsHash) != null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        Matcher matcher = CREDENTIALS_PATTERN.matcher(credentials);
         if (!matcher.matches()) {
             return CompletableFuture.completedFuture(false);
         }
         String user = matcher.group(1);
         String pass = matcher.group(2);
         String passHashHex = DigestUtils.sha256Hex(pass);
-        return CompletableFuture.completedFuture(
-                Objects.equals(users.getProperty(user), passHashHex));
+        Map<String, String> snapshot = this.users;
+        boolean valid = Objects.equals(snapshot.get(user), passHashHex);
+        // only successes are cached, so failed attempts cannot push out valid entries
+        if (valid) {
+            synchronized (this) {
+                // skip caching if the properties were reloaded in the meantime. Checking and adding
+                // under the lock means a reload cannot slip in between and be missed
+                if (snapshot == this.users) {
+                    verifiedCredentials.put(credentialsHash, true);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(valid);
     }
 
     @Override
@@ -100,8 +148,7 @@ class BasicAuthManager extends AbstractAuthManager {
         if (StringUtils.isBlank(authorization)) {
             return CompletableFuture.completedFuture(false);
         }
-        Pattern basicPattern = Pattern.compile("Basic[\\s]+(.*)");
-        Matcher matcher = basicPattern.matcher(authorization);
+        Matcher matcher = HEADER_PATTERN.matcher(authorization);
         if (!matcher.matches()) {
             return CompletableFuture.completedFuture(false);
         }
@@ -121,10 +168,7 @@ class BasicAuthManager extends AbstractAuthManager {
         if (StringUtils.isBlank(subprotocol)) {
             return CompletableFuture.completedFuture(false);
         }
-        Pattern pattern =
-                Pattern.compile(
-                        "basic\\.authorization\\.cryostat\\.([\\S]+)", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(subprotocol);
+        Matcher matcher = SUBPROTOCOL_PATTERN.matcher(subprotocol);
         if (!matcher.matches()) {
             return CompletableFuture.completedFuture(false);
         }
@@ -140,23 +184,84 @@ class BasicAuthManager extends AbstractAuthManager {
 
     synchronized void loadConfig() {
         Path properties = fs.pathOf(System.getProperty("user.home"), USER_PROPERTIES_FILENAME);
+        watchConfig(properties);
+        // once the file is watched, any later change triggers a reload, so there is no need to
+        // retry on each request until the file can be read
+        try {
+            Optional<Map<String, String>> loaded = readUsers(properties);
+            this.users = loaded.orElse(Map.of());
+            this.configLoaded = loaded.isPresent() || watchingConfig;
+        } catch (IOException e) {
+            logger.error(e);
+            this.configLoaded = watchingConfig;
+        }
+        // credentials verified against the previous properties may no longer be valid
+        verifiedCredentials.invalidateAll();
+    }
+
+    private Optional<Map<String, String>> readUsers(Path properties) throws IOException {
         if (!fs.exists(properties)) {
             logger.warn("User properties file \"{}\" does not exist", properties);
-            return;
+            return Optional.empty();
         }
         if (!fs.isRegularFile(properties)) {
             logger.warn("User properties path \"{}\" is not a file", properties);
-            return;
+            return Optional.empty();
         }
         if (!fs.isReadable(properties)) {
             logger.warn("User properties file \"{}\" is not readable", properties);
-            return;
+            return Optional.empty();
         }
         try (Reader br = fs.readFile(properties)) {
-            users.load(br);
-            this.configLoaded = true;
-        } catch (IOException e) {
-            logger.error(e);
+            Properties props = new Properties();
+            props.load(br);
+            Map<String, String> map = new HashMap<>();
+            props.stringPropertyNames().forEach(user -> map.put(user, props.getProperty(user)));
+            return Optional.of(Map.copyOf(map));
+        }
+    }
+
+    private void watchConfig(Path properties) {
+        if (watchingConfig || properties == null || properties.getParent() == null) {
+            return;
+        }
+        Path dir = properties.getParent();
+        Path filename = properties.getFileName();
+        try {
+            WatchService watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            Thread watcher =
+                    new Thread(
+                            () -> pollConfigChanges(watchService, filename),
+                            "cryostat-user-properties-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            this.watchingConfig = true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Unable to watch user properties file \"{}\" for changes", properties);
+            logger.warn(e);
+        }
+    }
+
+    private void pollConfigChanges(WatchService watchService, Path filename) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == OVERFLOW || filename.equals(event.context());
+                }
+                if (changed) {
+                    logger.info("User properties file changed, reloading");
+                    loadConfig();
+                }
+                if (!key.reset()) {
+                    logger.warn("User properties directory is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
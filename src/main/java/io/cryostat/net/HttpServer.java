@@ -74,14 +74,21 @@ public class HttpServer {
         this.sslConf = sslConf;
         this.shutdownListeners = new HashSet<>();
         this.logger = logger;
-        this.server =
-                vertx.createHttpServer(
-                        sslConf.applyToHttpServerOptions(
-                                new HttpServerOptions()
-                                        .setPort(netConf.getInternalWebServerPort())
-                                        .addWebSocketSubProtocol("*")
-                                        .setCompressionSupported(true)
-                                        .setLogActivity(true)));
+        HttpServerOptions options =
+                new HttpServerOptions()
+                        .setPort(netConf.getInternalWebServerPort())
+                        .addWebSocketSubProtocol("*")
+                        .setCompressionSupported(true)
+                        .setLogActivity(true);
+        // permessage-deflate is only used with clients which offer it in the handshake. The
+        // server keeps its compression context between messages so that the repeated structure
+        // of consecutive notifications compresses to a few bytes each
+        int wsCompressionLevel = netConf.getWebSocketCompressionLevel();
+        options.setPerMessageWebSocketCompressionSupported(wsCompressionLevel > 0);
+        if (wsCompressionLevel > 0) {
+            options.setWebSocketCompressionLevel(wsCompressionLevel);
+        }
+        this.server = vertx.createHttpServer(sslConf.applyToHttpServerOptions(options));
 
         if (!sslConf.enabled()) {
             this.logger.warn("No available SSL certificates. Fallback to plain HTTP.");
@@ -40,16 +40,19 @@ package io.cryostat.net;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 
+import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.Environment;
 
 public class NetworkConfiguration {
 
     private final Environment env;
     private final NetworkResolver resolver;
+    private final Logger logger;
 
-    NetworkConfiguration(Environment env, NetworkResolver resolver) {
+    NetworkConfiguration(Environment env, NetworkResolver resolver, Logger logger) {
         this.env = env;
         this.resolver = resolver;
+        this.logger = logger;
     }
 
     public String getWebServerHost() throws SocketException, UnknownHostException {
@@ -70,6 +73,35 @@ public class NetworkConfiguration {
                 env.getEnv("CRYOSTAT_EXT_WEB_PORT", String.valueOf(getInternalWebServerPort())));
     }
 
+    public int getDefaultWebSocketCompressionLevel() {
+        return 6;
+    }
+
+    /**
+     * @return the deflate level, 1-9, used for WebSocket clients which negotiate
+     *     permessage-deflate, or 0 if WebSocket compression is disabled. Values which are not
+     *     numbers fall back to the default, and values out of range are clamped to 0-9
+     */
+    public int getWebSocketCompressionLevel() {
+        int level;
+        try {
+            level =
+                    Integer.parseInt(
+                            env.getEnv(
+                                    "CRYOSTAT_WS_COMPRESSION_LEVEL",
+                                    String.valueOf(getDefaultWebSocketCompressionLevel())));
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return getDefaultWebSocketCompressionLevel();
+        }
+        int clamped = Math.max(0, Math.min(9, level));
+        if (clamped != level) {
+            logger.warn(
+                    "CRYOSTAT_WS_COMPRESSION_LEVEL {} is out of range, using {}", level, clamped);
+        }
+        return clamped;
+    }
+
     public boolean isSslProxied() {
         return env.hasEnv("CRYOSTAT_SSL_PROXIED");
     }
@@ -76,8 +76,8 @@ public abstract class NetworkModule {
     @Provides
     @Singleton
     static NetworkConfiguration provideNetworkConfiguration(
-            Environment env, NetworkResolver resolver) {
-        return new NetworkConfiguration(env, resolver);
+            Environment env, NetworkResolver resolver, Logger logger) {
+        return new NetworkConfiguration(env, resolver, logger);
     }
 
     @Provides
@@ -40,10 +40,13 @@ package io.cryostat.net;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -51,25 +54,69 @@ import java.util.regex.Pattern;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
 import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
 import io.fabric8.openshift.client.DefaultOpenShiftClient;
 import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.openshift.client.OpenShiftConfig;
 import io.fabric8.openshift.client.OpenShiftConfigBuilder;
 import jdk.jfr.Category;
 import jdk.jfr.Event;
 import jdk.jfr.Label;
 import jdk.jfr.Name;
+import okhttp3.OkHttpClient;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
 public class OpenShiftAuthManager extends AbstractAuthManager {
 
+    static final Duration VALID_TOKEN_TTL = Duration.ofMinutes(1);
+    static final Duration INVALID_TOKEN_TTL = Duration.ofSeconds(10);
+    static final long MAX_CACHED_TOKENS = 1024;
+    private static final long VALIDATION_TIMEOUT_SECONDS = 15;
+
     private final FileSystem fs;
+    private final Function<String, OpenShiftClient> clientFactory;
+    // keyed by token hash so that raw tokens are not retained. Only definite answers from the API
+    // server are cached: a failed or timed-out check is retried on the next request
+    private final AsyncCache<String, Boolean> tokenCache;
+    private volatile String namespace;
 
     public OpenShiftAuthManager(Logger logger, FileSystem fs) {
+        this(
+                logger,
+                fs,
+                new SharedClientFactory(),
+                VALID_TOKEN_TTL,
+                INVALID_TOKEN_TTL,
+                MAX_CACHED_TOKENS,
+                Ticker.systemTicker());
+    }
+
+    OpenShiftAuthManager(
+            Logger logger,
+            FileSystem fs,
+            Function<String, OpenShiftClient> clientFactory,
+            Duration validTokenTtl,
+            Duration invalidTokenTtl,
+            long maxCachedTokens,
+            Ticker ticker) {
         super(logger);
         this.fs = fs;
+        this.clientFactory = clientFactory;
+        this.tokenCache =
+                Caffeine.newBuilder()
+                        .ticker(ticker)
+                        .maximumSize(maxCachedTokens)
+                        .expireAfter(new ResultExpiry(validTokenTtl, invalidTokenTtl))
+                        .buildAsync();
     }
 
     @Override
@@ -83,37 +130,109 @@ public class OpenShiftAuthManager extends AbstractAuthManager {
         if (StringUtils.isBlank(token)) {
             return CompletableFuture.completedFuture(false);
         }
-        return CompletableFuture.supplyAsync(
-                        () -> {
-                            AuthRequest evt = new AuthRequest();
-                            evt.begin();
-
-                            try (OpenShiftClient authClient =
-                                    new DefaultOpenShiftClient(
-                                            new OpenShiftConfigBuilder()
-                                                    .withOauthToken(token)
-                                                    .build())) {
-                                // only an authenticated user should be allowed to list routes
-                                // in the namespace
-                                // TODO find a better way to authenticate tokens
-                                authClient.routes().inNamespace(getNamespace()).list();
-
-                                evt.setRequestSuccessful(true);
-                                return true;
-                            } catch (KubernetesClientException e) {
-                                logger.info(e);
-                            } catch (Exception e) {
-                                logger.error(e);
-                            } finally {
-                                if (evt.shouldCommit()) {
-                                    evt.end();
-                                    evt.commit();
-                                }
-                            }
-
-                            return false;
-                        })
-                .orTimeout(15, TimeUnit.SECONDS);
+        return tokenCache
+                .get(
+                        DigestUtils.sha256Hex(token),
+                        (k, executor) ->
+                                CompletableFuture.supplyAsync(() -> checkToken(token), executor)
+                                        .orTimeout(VALIDATION_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .handle((valid, t) -> t == null && valid);
+    }
+
+    private boolean checkToken(String token) {
+        AuthRequest evt = new AuthRequest();
+        evt.begin();
+
+        try {
+            // only an authenticated user should be allowed to list routes in the namespace. A
+            // single item is enough to tell
+            // TODO find a better way to authenticate tokens
+            clientFactory
+                    .apply(token)
+                    .routes()
+                    .inNamespace(getNamespace())
+                    .list(new ListOptionsBuilder().withLimit(1L).build());
+
+            evt.setRequestSuccessful(true);
+            return true;
+        } catch (KubernetesClientException e) {
+            logger.info(e);
+            if (e.getCode() == 401 || e.getCode() == 403) {
+                return false;
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error(e);
+            throw e;
+        } catch (IOException e) {
+            logger.error(e);
+            throw new CompletionException(e);
+        } finally {
+            if (evt.shouldCommit()) {
+                evt.end();
+                evt.commit();
+            }
+        }
+    }
+
+    private static class ResultExpiry implements Expiry<String, Boolean> {
+        private final long validNanos;
+        private final long invalidNanos;
+
+        ResultExpiry(Duration validTokenTtl, Duration invalidTokenTtl) {
+            this.validNanos = validTokenTtl.toNanos();
+            this.invalidNanos = invalidTokenTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Boolean valid, long currentTime) {
+            return valid ? validNanos : invalidNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                String key, Boolean valid, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, valid, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                String key, Boolean valid, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    // all validation requests share one connection pool, only the bearer token differs. The
+    // per-token clients are deliberately never closed, since closing would shut down the pool
+    private static class SharedClientFactory implements Function<String, OpenShiftClient> {
+        private OpenShiftConfig config;
+        private OkHttpClient httpClient;
+
+        @Override
+        public OpenShiftClient apply(String token) {
+            OkHttpClient tokenClient =
+                    getHttpClient()
+                            .newBuilder()
+                            .addInterceptor(
+                                    chain ->
+                                            chain.proceed(
+                                                    chain.request()
+                                                            .newBuilder()
+                                                            .header(
+                                                                    "Authorization",
+                                                                    "Bearer " + token)
+                                                            .build()))
+                            .build();
+            return new DefaultOpenShiftClient(tokenClient, config);
+        }
+
+        private synchronized OkHttpClient getHttpClient() {
+            if (httpClient == null) {
+                config = new OpenShiftConfigBuilder().withOauthToken(null).build();
+                httpClient = HttpClientUtils.createHttpClient(config);
+            }
+            return httpClient;
+        }
     }
 
     @Name("io.cryostat.net.OpenShiftAuthManager.AuthRequest")
@@ -177,10 +296,15 @@ public class OpenShiftAuthManager extends AbstractAuthManager {
             value = "DMI_HARDCODED_ABSOLUTE_FILENAME",
             justification = "Kubernetes namespace file path is well-known and absolute")
     private String getNamespace() throws IOException {
-        return fs.readFile(Paths.get(Config.KUBERNETES_NAMESPACE_PATH))
-                .lines()
-                .filter(StringUtils::isNotBlank)
-                .findFirst()
-                .get();
+        // the namespace file cannot change for the lifetime of the pod
+        if (namespace == null) {
+            namespace =
+                    fs.readFile(Paths.get(Config.KUBERNETES_NAMESPACE_PATH))
+                            .lines()
+                            .filter(StringUtils::isNotBlank)
+                            .findFirst()
+                            .get();
+        }
+        return namespace;
     }
 }
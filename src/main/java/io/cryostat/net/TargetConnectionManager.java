@@ -67,6 +67,7 @@ public class TargetConnectionManager {
 
     public static final Pattern HOST_PORT_PAIR_PATTERN =
             Pattern.compile("^([^:\\s]+)(?::(\\d{1,5}))?$");
+    private static final String DEFAULT_JMX_PORT = "9091";
 
     static final Duration DEFAULT_TTL = Duration.ofSeconds(90);
 
@@ -145,6 +146,33 @@ public class TargetConnectionManager {
         return connections.getIfPresent(connectionDescriptor) != null;
     }
 
+    /**
+     * @return the JMX service URL which a target ID resolves to when connecting, whether the ID
+     *     is given as a JMX service URL or as a host[:port] pair, so that IDs naming the same
+     *     target compare equal. IDs which are neither are returned unchanged
+     */
+    public static String normalizeTargetId(String targetId) {
+        if (targetId == null) {
+            return null;
+        }
+        try {
+            return new JMXServiceURL(targetId).toString();
+        } catch (MalformedURLException mue) {
+            Matcher m = HOST_PORT_PAIR_PATTERN.matcher(targetId);
+            if (!m.find()) {
+                return targetId;
+            }
+            String port = m.group(2) == null ? DEFAULT_JMX_PORT : m.group(2);
+            try {
+                return new JMXServiceURL(
+                                "rmi", "", 0, "/jndi/rmi://" + m.group(1) + ":" + port + "/jmxrmi")
+                        .toString();
+            } catch (MalformedURLException e) {
+                return targetId;
+            }
+        }
+    }
+
     private JFRConnection connect(ConnectionDescriptor connectionDescriptor) throws Exception {
         try {
             return attemptConnectAsJMXServiceURL(connectionDescriptor);
@@ -171,7 +199,7 @@ public class TargetConnectionManager {
         String host = m.group(1);
         String port = m.group(2);
         if (port == null) {
-            port = "9091";
+            port = DEFAULT_JMX_PORT;
         }
         return connect(
                 connectionDescriptor,
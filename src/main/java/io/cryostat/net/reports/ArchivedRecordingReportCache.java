@@ -38,8 +38,11 @@
 package io.cryostat.net.reports;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
@@ -47,32 +50,42 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.inject.Named;
 import javax.inject.Provider;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.reports.ReportService.RecordingNotFoundException;
 import io.cryostat.net.web.WebModule;
 import io.cryostat.net.web.http.generic.TimeoutHandler;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.ArchiveStorage;
+
+import dagger.Lazy;
 
 class ArchivedRecordingReportCache {
 
-    protected final Path savedRecordingsPath;
+    protected final ArchiveStorage storage;
     protected final Path archivedRecordingsReportPath;
     protected final FileSystem fs;
+    protected final ArchiveCatalog catalog;
+    protected final Lazy<RecordingArchiveHelper> recordingArchiveHelper;
     protected final Provider<SubprocessReportGenerator> subprocessReportGeneratorProvider;
     protected final ReentrantLock generationLock;
     protected final Logger logger;
 
     ArchivedRecordingReportCache(
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath,
+            ArchiveStorage storage,
             @Named(WebModule.WEBSERVER_TEMP_DIR_PATH) Path webServerTempPath,
             FileSystem fs,
+            ArchiveCatalog catalog,
+            Lazy<RecordingArchiveHelper> recordingArchiveHelper,
             Provider<SubprocessReportGenerator> subprocessReportGeneratorProvider,
             @Named(ReportsModule.REPORT_GENERATION_LOCK) ReentrantLock generationLock,
             Logger logger) {
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.storage = storage;
         this.archivedRecordingsReportPath = webServerTempPath;
         this.fs = fs;
+        this.catalog = catalog;
+        this.recordingArchiveHelper = recordingArchiveHelper;
         this.subprocessReportGeneratorProvider = subprocessReportGeneratorProvider;
         this.generationLock = generationLock;
         this.logger = logger;
@@ -93,41 +106,51 @@ class ArchivedRecordingReportCache {
                 return f;
             }
 
-            fs.listDirectoryChildren(savedRecordingsPath).stream()
-                    .filter(name -> name.equals(recordingName))
-                    .map(savedRecordingsPath::resolve)
-                    .findFirst()
-                    .ifPresentOrElse(
-                            recording -> {
-                                logger.trace("Archived report cache miss for {}", recordingName);
-                                try {
-                                    Path saveFile =
-                                            subprocessReportGeneratorProvider
-                                                    .get()
-                                                    .exec(
-                                                            recording,
-                                                            dest,
-                                                            Duration.ofMillis(
-                                                                    TimeoutHandler.TIMEOUT_MS))
-                                                    .get();
-                                    f.complete(saveFile);
-                                } catch (Exception e) {
-                                    logger.error(e);
-                                    f.completeExceptionally(e);
-                                    try {
-                                        fs.deleteIfExists(dest);
-                                    } catch (IOException ioe) {
-                                        logger.warn(ioe);
-                                    }
-                                }
-                            },
-                            () ->
-                                    f.completeExceptionally(
-                                            new RecordingNotFoundException(
-                                                    "archives", recordingName)));
-        } catch (IOException ioe) {
-            logger.warn(ioe);
-            f.completeExceptionally(ioe);
+            if (!catalog.contains(recordingName)) {
+                f.completeExceptionally(new RecordingNotFoundException("archives", recordingName));
+                return f;
+            }
+            logger.trace("Archived report cache miss for {}", recordingName);
+            Path download = null;
+            try {
+                Path recording;
+                Optional<Path> localPath = storage.getLocalPath(recordingName);
+                if (localPath.isPresent()
+                        && recordingArchiveHelper.get().getManifest(recordingName).isEmpty()) {
+                    recording = localPath.get();
+                } else {
+                    // the report generator subprocess reads from a local file, and a
+                    // differential archive's file only holds its newest chunks
+                    download = getDownloadPath(recordingName);
+                    try (InputStream stream =
+                            recordingArchiveHelper.get().openArchive(recordingName)) {
+                        fs.copy(stream, download, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    recording = download;
+                }
+                Path saveFile =
+                        subprocessReportGeneratorProvider
+                                .get()
+                                .exec(recording, dest, Duration.ofMillis(TimeoutHandler.TIMEOUT_MS))
+                                .get();
+                f.complete(saveFile);
+            } catch (Exception e) {
+                logger.error(e);
+                f.completeExceptionally(e);
+                try {
+                    fs.deleteIfExists(dest);
+                } catch (IOException ioe) {
+                    logger.warn(ioe);
+                }
+            } finally {
+                if (download != null) {
+                    try {
+                        fs.deleteIfExists(download);
+                    } catch (IOException ioe) {
+                        logger.warn(ioe);
+                    }
+                }
+            }
         } finally {
             generationLock.unlock();
         }
@@ -144,6 +167,10 @@ class ArchivedRecordingReportCache {
         }
     }
 
+    private Path getDownloadPath(String recordingName) {
+        return archivedRecordingsReportPath.resolve(recordingName + ".download").toAbsolutePath();
+    }
+
     protected Path getCachedReportPath(String recordingName) {
         String fileName = recordingName + ".report.html";
         return archivedRecordingsReportPath.resolve(fileName).toAbsolutePath();
@@ -47,15 +47,18 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.reports.ReportTransformer;
 import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.web.WebModule;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.ArchiveStorage;
 import io.cryostat.util.JavaProcess;
 
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
 
@@ -126,16 +129,20 @@ public abstract class ReportsModule {
     @Provides
     @Singleton
     static ArchivedRecordingReportCache provideArchivedRecordingReportCache(
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath,
+            ArchiveStorage storage,
             @Named(WebModule.WEBSERVER_TEMP_DIR_PATH) Path webServerTempDir,
             FileSystem fs,
+            ArchiveCatalog catalog,
+            Lazy<RecordingArchiveHelper> recordingArchiveHelper,
             Provider<SubprocessReportGenerator> subprocessReportGeneratorProvider,
             @Named(REPORT_GENERATION_LOCK) ReentrantLock generationLock,
             Logger logger) {
         return new ArchivedRecordingReportCache(
-                savedRecordingsPath,
+                storage,
                 webServerTempDir,
                 fs,
+                catalog,
+                recordingArchiveHelper,
                 subprocessReportGeneratorProvider,
                 generationLock,
                 logger);
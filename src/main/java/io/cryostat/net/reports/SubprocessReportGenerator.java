@@ -72,6 +72,7 @@ import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.ConnectionDescriptor;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.reports.ReportService.RecordingNotFoundException;
+import io.cryostat.recordings.ArchiveChunkStore;
 import io.cryostat.util.JavaProcess;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -329,7 +330,9 @@ public class SubprocessReportGenerator {
         if (!fs.isRegularFile(recording)) {
             throw new ReportGenerationException(ExitStatus.NO_SUCH_RECORDING);
         }
-        try (InputStream stream = fs.newInputStream(recording)) {
+        // archives may be stored compressed or deduplicated, so decode while parsing rather than
+        // via a temp copy
+        try (InputStream stream = ArchiveChunkStore.openArchive(recording)) {
             return new ReportGenerator(Logger.INSTANCE, transformers).generateReport(stream);
         } catch (IOException ioe) {
             ioe.printStackTrace();
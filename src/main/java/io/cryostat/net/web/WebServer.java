@@ -59,6 +59,7 @@ import io.cryostat.core.net.JFRConnection;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.NetworkConfiguration;
+import io.cryostat.net.web.http.AuthenticationFilter;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.RequestHandler;
 import io.cryostat.net.web.http.api.ApiData;
@@ -94,6 +95,7 @@ public class WebServer {
     private final Gson gson;
     private final AuthManager auth;
     private final Logger logger;
+    private volatile URI hostUri;
 
     WebServer(
             HttpServer server,
@@ -179,6 +181,7 @@ public class WebServer {
                     }
                 };
 
+        AuthenticationFilter authFilter = new AuthenticationFilter(auth);
         requestHandlers.forEach(
                 handler -> {
                     logger.trace(
@@ -186,13 +189,18 @@ public class WebServer {
                             handler.getPriority(),
                             handler.httpMethod(),
                             handler.path());
-                    Route route;
-                    if (RequestHandler.ALL_PATHS.equals(handler.path())) {
-                        route = router.route();
-                    } else {
-                        route = router.route(handler.httpMethod(), handler.path());
+                    if (handler.requiresAuthentication()) {
+                        // registered first, so it runs ahead of the handler at the same priority
+                        Route authRoute =
+                                route(router, handler)
+                                        .order(handler.getPriority())
+                                        .handler(authFilter)
+                                        .failureHandler(failureHandler);
+                        if (!handler.isAvailable()) {
+                            authRoute.disable();
+                        }
                     }
-                    route = route.order(handler.getPriority());
+                    Route route = route(router, handler).order(handler.getPriority());
                     if (handler.isAsync()) {
                         route = route.handler(handler);
                     } else {
@@ -237,6 +245,13 @@ public class WebServer {
                 });
     }
 
+    private static Route route(Router router, RequestHandler handler) {
+        if (RequestHandler.ALL_PATHS.equals(handler.path())) {
+            return router.route();
+        }
+        return router.route(handler.httpMethod(), handler.path());
+    }
+
     @Name("io.cryostat.net.web.WebServer.WebServerRequest")
     @Label("Web Server Request")
     @Category("Cryostat")
@@ -273,15 +288,22 @@ public class WebServer {
     }
 
     URI getHostUri() throws SocketException, UnknownHostException, URISyntaxException {
-        // FIXME replace URIBuilder with another implementation. This is the only
-        // remaining use
-        // of the Apache HttpComponents dependency
-        return new URIBuilder()
-                .setScheme(server.isSsl() ? "https" : "http")
-                .setHost(netConf.getWebServerHost())
-                .setPort(netConf.getExternalWebServerPort())
-                .build()
-                .normalize();
+        // resolved once rather than for each URL, since listings build URLs for every archive
+        URI uri = hostUri;
+        if (uri == null) {
+            // FIXME replace URIBuilder with another implementation. This is the only
+            // remaining use
+            // of the Apache HttpComponents dependency
+            uri =
+                    new URIBuilder()
+                            .setScheme(server.isSsl() ? "https" : "http")
+                            .setHost(netConf.getWebServerHost())
+                            .setPort(netConf.getExternalWebServerPort())
+                            .build()
+                            .normalize();
+            hostUri = uri;
+        }
+        return uri;
     }
 
     public String getArchivedDownloadURL(String recordingName)
@@ -74,10 +74,19 @@ public abstract class AbstractAuthenticatedRequestHandler implements RequestHand
 
     public abstract void handleAuthenticated(RoutingContext ctx) throws Exception;
 
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
     @Override
     public void handle(RoutingContext ctx) {
         try {
-            if (!validateRequestAuthorization(ctx.request()).get()) {
+            Future<Boolean> authorization = AuthenticationFilter.getAuthorizationResult(ctx);
+            if (authorization == null) {
+                authorization = validateRequestAuthorization(ctx.request());
+            }
+            if (!authorization.get()) {
                 throw new HttpStatusException(401);
             }
             handleAuthenticated(ctx);
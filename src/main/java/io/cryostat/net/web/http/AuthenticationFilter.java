@@ -0,0 +1,119 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import io.cryostat.net.AuthManager;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Route handler installed by the WebServer in front of each {@link RequestHandler} which {@link
+ * RequestHandler#requiresAuthentication() requires authentication}. The request's Authorization
+ * header is validated without blocking the event loop or a worker thread, and the completed result
+ * is stored on the {@link RoutingContext} so that the request handlers (and any further routes the
+ * same request passes through, ex. body handlers) can check it without waiting on auth I/O.
+ */
+public class AuthenticationFilter implements Handler<RoutingContext> {
+
+    public static final String AUTHORIZATION_RESULT_KEY = "cryostat.auth.result";
+
+    private final AuthManager auth;
+
+    public AuthenticationFilter(AuthManager auth) {
+        this.auth = auth;
+    }
+
+    /**
+     * @return the completed authorization result for this request, or null if the request did not
+     *     pass through an AuthenticationFilter
+     */
+    public static Future<Boolean> getAuthorizationResult(RoutingContext ctx) {
+        return ctx.get(AUTHORIZATION_RESULT_KEY);
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        if (getAuthorizationResult(ctx) != null) {
+            ctx.next();
+            return;
+        }
+        HttpServerRequest req = ctx.request();
+        Future<Boolean> result =
+                auth.validateHttpHeader(() -> req.getHeader(HttpHeaders.AUTHORIZATION));
+        if (result.isDone()) {
+            ctx.put(AUTHORIZATION_RESULT_KEY, result);
+            ctx.next();
+            return;
+        }
+
+        // body handlers further down the chain must not miss any request data while we wait
+        req.pause();
+        Context context = ctx.vertx().getOrCreateContext();
+        if (result instanceof CompletableFuture) {
+            ((CompletableFuture<Boolean>) result)
+                    .whenComplete((v, t) -> context.runOnContext(n -> resume(ctx, result)));
+        } else {
+            // don't wait on the event loop for auth managers which are not already asynchronous
+            ctx.vertx()
+                    .<Void>executeBlocking(
+                            promise -> {
+                                try {
+                                    result.get();
+                                } catch (Exception e) {
+                                    // the handler sees the failure when it checks the result
+                                }
+                                promise.complete();
+                            },
+                            false,
+                            ar -> resume(ctx, result));
+        }
+    }
+
+    private void resume(RoutingContext ctx, Future<Boolean> result) {
+        ctx.put(AUTHORIZATION_RESULT_KEY, result);
+        ctx.request().resume();
+        ctx.next();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Presents a blocking InputStream, such as an archive being decompressed or reassembled, as a
+ * Vert.x {@link ReadStream} of Buffers which can be pumped into a WriteStream such as an HTTP
+ * response. Each buffer is read on a worker thread and handed to the data handler on the stream's
+ * context, and no further read is started while the stream is paused, so a slow client slows down
+ * reading without a worker thread waiting for it to catch up. The InputStream is opened with the
+ * first read, and closed once it is exhausted, fails, or this stream is closed. Must be
+ * constructed, and used, on the context it is to be read on.
+ */
+public class InputStreamReadStream implements ReadStream<Buffer> {
+
+    private final Context context;
+    private final Opener opener;
+    private final int bufferSize;
+    private final boolean limited;
+    // only touched by the single read in flight, or on the context while none is
+    private InputStream stream;
+    private long remaining;
+
+    private Handler<Buffer> handler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+    private long demand = Long.MAX_VALUE;
+    private boolean reading;
+    private boolean ended;
+    private boolean closed;
+
+    /**
+     * @param length the number of bytes to read, failing with an EOFException if the InputStream
+     *     is any shorter, or negative to read the whole InputStream
+     */
+    public InputStreamReadStream(Context context, Opener opener, long length, int bufferSize) {
+        this.context = context;
+        this.opener = opener;
+        this.bufferSize = bufferSize;
+        this.limited = length >= 0;
+        this.remaining = limited ? length : Long.MAX_VALUE;
+    }
+
+    @Override
+    public InputStreamReadStream handler(Handler<Buffer> handler) {
+        this.handler = handler;
+        readMore();
+        return this;
+    }
+
+    @Override
+    public InputStreamReadStream endHandler(Handler<Void> endHandler) {
+        this.endHandler = endHandler;
+        return this;
+    }
+
+    @Override
+    public InputStreamReadStream exceptionHandler(Handler<Throwable> exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+        return this;
+    }
+
+    @Override
+    public InputStreamReadStream pause() {
+        demand = 0;
+        return this;
+    }
+
+    @Override
+    public InputStreamReadStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStreamReadStream fetch(long amount) {
+        demand = Long.MAX_VALUE - demand < amount ? Long.MAX_VALUE : demand + amount;
+        readMore();
+        return this;
+    }
+
+    /**
+     * Stop reading and close the InputStream without calling the end handler, ex. when the client
+     * the data was being sent to has gone away.
+     */
+    public void close() {
+        closed = true;
+        if (!reading) {
+            closeStream();
+        }
+    }
+
+    private void readMore() {
+        if (reading || ended || closed || demand == 0 || handler == null) {
+            return;
+        }
+        reading = true;
+        context.<Buffer>executeBlocking(
+                promise -> {
+                    try {
+                        promise.complete(read());
+                    } catch (Exception e) {
+                        promise.fail(e);
+                    }
+                },
+                false,
+                this::handleRead);
+    }
+
+    /** @return the next buffer, or null once the requested bytes have all been read */
+    private Buffer read() throws IOException {
+        if (stream == null) {
+            stream = opener.open();
+        }
+        if (remaining == 0) {
+            return null;
+        }
+        byte[] buf = new byte[(int) Math.min(bufferSize, remaining)];
+        int n = stream.read(buf, 0, buf.length);
+        if (n < 0) {
+            if (limited) {
+                throw new EOFException("Stream shorter than expected");
+            }
+            return null;
+        }
+        if (limited) {
+            remaining -= n;
+        }
+        return Buffer.buffer(n == buf.length ? buf : Arrays.copyOf(buf, n));
+    }
+
+    private void handleRead(AsyncResult<Buffer> ar) {
+        reading = false;
+        if (closed) {
+            closeStream();
+            return;
+        }
+        if (ar.failed()) {
+            ended = true;
+            closeStream();
+            if (exceptionHandler != null) {
+                exceptionHandler.handle(ar.cause());
+            }
+            return;
+        }
+        if (ar.result() == null) {
+            ended = true;
+            closeStream();
+            if (endHandler != null) {
+                endHandler.handle(null);
+            }
+            return;
+        }
+        if (demand != Long.MAX_VALUE) {
+            demand--;
+        }
+        if (handler != null) {
+            handler.handle(ar.result());
+        }
+        readMore();
+    }
+
+    private void closeStream() {
+        InputStream s = stream;
+        stream = null;
+        if (s == null) {
+            return;
+        }
+        context.<Void>executeBlocking(
+                promise -> {
+                    try {
+                        s.close();
+                    } catch (IOException e) {
+                        // everything wanted from the stream has already been read
+                    }
+                    promise.complete();
+                },
+                false,
+                null);
+    }
+
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+}
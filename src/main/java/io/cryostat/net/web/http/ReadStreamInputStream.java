@@ -0,0 +1,195 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Presents a Vert.x {@link ReadStream} of Buffers, such as an upload in a request body, as a
+ * blocking InputStream which can be consumed on a worker thread while the data is still arriving.
+ * The ReadStream is paused while more than a given number of bytes are waiting to be read, and
+ * resumed once the reader has caught up, so a slow reader slows down the sender instead of the
+ * data piling up in memory. Must be constructed on the ReadStream's context.
+ */
+public class ReadStreamInputStream extends InputStream {
+
+    private final ReadStream<Buffer> stream;
+    private final Context context;
+    private final long highWaterMark;
+    private final Deque<Buffer> queue = new ArrayDeque<>();
+
+    private long queuedBytes;
+    private Buffer current;
+    private int currentPosition;
+    private boolean paused;
+    private boolean resumeScheduled;
+    private boolean ended;
+    private boolean closed;
+    private Throwable failure;
+
+    public ReadStreamInputStream(ReadStream<Buffer> stream, Context context, long highWaterMark) {
+        this.stream = stream;
+        this.context = context;
+        this.highWaterMark = highWaterMark;
+        stream.handler(this::handleData);
+        stream.endHandler(v -> handleEnd());
+        stream.exceptionHandler(this::fail);
+    }
+
+    /**
+     * Fail the stream, so that the reader gets an IOException instead of the rest of the data.
+     * Used when the source fails in some way the ReadStream itself does not report, ex. the
+     * connection carrying it is closed.
+     */
+    public synchronized void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        while (current == null || currentPosition == current.length()) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (failure != null) {
+                throw failure instanceof IOException
+                        ? (IOException) failure
+                        : new IOException(failure);
+            }
+            current = queue.poll();
+            currentPosition = 0;
+            if (current != null) {
+                queuedBytes -= current.length();
+                scheduleResume();
+                continue;
+            }
+            if (ended) {
+                return -1;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        int n = Math.min(len, current.length() - currentPosition);
+        current.getBytes(currentPosition, currentPosition + n, b, off);
+        currentPosition += n;
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        long remaining = queuedBytes + (current == null ? 0 : current.length() - currentPosition);
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stop reading. Data still to arrive is discarded, rather than left to hold the ReadStream
+     * paused.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        queuedBytes = 0;
+        current = null;
+        notifyAll();
+        scheduleResume();
+    }
+
+    private synchronized void handleData(Buffer data) {
+        if (closed) {
+            return;
+        }
+        queue.add(data);
+        queuedBytes += data.length();
+        if (!paused && queuedBytes > highWaterMark) {
+            paused = true;
+            stream.pause();
+        }
+        notifyAll();
+    }
+
+    private synchronized void handleEnd() {
+        ended = true;
+        notifyAll();
+    }
+
+    // pause and resume only happen on the stream's context, so they cannot be reordered
+    private void scheduleResume() {
+        if (paused && !resumeScheduled && queuedBytes <= highWaterMark / 2) {
+            resumeScheduled = true;
+            context.runOnContext(v -> resumeIfDrained());
+        }
+    }
+
+    private synchronized void resumeIfDrained() {
+        resumeScheduled = false;
+        if (paused && queuedBytes <= highWaterMark / 2) {
+            paused = false;
+            stream.resume();
+        }
+    }
+}
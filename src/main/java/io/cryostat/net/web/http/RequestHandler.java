@@ -68,6 +68,14 @@ public interface RequestHandler extends Handler<RoutingContext> {
 
     HttpMethod httpMethod();
 
+    /**
+     * Handlers requiring authentication are preceded in the router by an {@link
+     * AuthenticationFilter}, which resolves the request's authorization before the handler runs.
+     */
+    default boolean requiresAuthentication() {
+        return false;
+    }
+
     default boolean isAvailable() {
         return true;
     }
@@ -127,10 +127,6 @@ public abstract class HttpApiV1Module {
     @IntoSet
     abstract RequestHandler bindRecordingsGetHandler(RecordingsGetHandler handler);
 
-    @Binds
-    @IntoSet
-    abstract RequestHandler bindRecordingsPostBodyHandler(RecordingsPostBodyHandler handler);
-
     @Binds
     @IntoSet
     abstract RequestHandler bindRecordingsPostHandler(RecordingsPostHandler handler);
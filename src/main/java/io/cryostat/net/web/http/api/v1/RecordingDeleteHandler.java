@@ -38,20 +38,17 @@
 package io.cryostat.net.web.http.api.v1;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.Map;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 
-import io.cryostat.MainModule;
-import io.cryostat.core.sys.FileSystem;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.AuthManager;
-import io.cryostat.net.reports.ReportService;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.RecordingArchiveHelper;
 
 import io.vertx.core.http.HttpMethod;
 import io.vertx.ext.web.RoutingContext;
@@ -59,23 +56,20 @@ import io.vertx.ext.web.handler.impl.HttpStatusException;
 
 public class RecordingDeleteHandler extends AbstractAuthenticatedRequestHandler {
 
-    private final ReportService reportService;
-    private final FileSystem fs;
-    private final Path savedRecordingsPath;
+    private final ArchiveCatalog catalog;
+    private final RecordingArchiveHelper recordingArchiveHelper;
     private final NotificationFactory notificationFactory;
     private static final String NOTIFICATION_CATEGORY = "RecordingDeleted";
 
     @Inject
     RecordingDeleteHandler(
             AuthManager auth,
-            ReportService reportService,
-            FileSystem fs,
-            NotificationFactory notificationFactory,
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath) {
+            ArchiveCatalog catalog,
+            RecordingArchiveHelper recordingArchiveHelper,
+            NotificationFactory notificationFactory) {
         super(auth);
-        this.reportService = reportService;
-        this.fs = fs;
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.catalog = catalog;
+        this.recordingArchiveHelper = recordingArchiveHelper;
         this.notificationFactory = notificationFactory;
     }
 
@@ -102,29 +96,24 @@ public class RecordingDeleteHandler extends AbstractAuthenticatedRequestHandler
     @Override
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
         String recordingName = ctx.pathParam("recordingName");
-        fs.listDirectoryChildren(savedRecordingsPath).stream()
-                .filter(saved -> saved.equals(recordingName))
-                .map(savedRecordingsPath::resolve)
-                .findFirst()
+        catalog.get(recordingName)
+                .map(ArchiveCatalog.Entry::getName)
                 .ifPresentOrElse(
-                        path -> {
+                        name -> {
                             try {
-                                if (!fs.exists(path)) {
+                                if (!recordingArchiveHelper.deleteArchivedRecording(name)) {
                                     throw new HttpStatusException(404, recordingName);
                                 }
-                                fs.deleteIfExists(path);
-                                notificationFactory
-                                        .createBuilder()
-                                        .metaCategory(NOTIFICATION_CATEGORY)
-                                        .metaType(HttpMimeType.JSON)
-                                        .message(Map.of("recording", recordingName))
-                                        .build()
-                                        .send();
                             } catch (IOException e) {
                                 throw new HttpStatusException(500, e.getMessage(), e);
-                            } finally {
-                                reportService.delete(recordingName);
                             }
+                            notificationFactory
+                                    .createBuilder()
+                                    .metaCategory(NOTIFICATION_CATEGORY)
+                                    .metaType(HttpMimeType.JSON)
+                                    .message(Map.of("recording", recordingName))
+                                    .build()
+                                    .send();
                             ctx.response().setStatusCode(200);
                             ctx.response().end();
                         },
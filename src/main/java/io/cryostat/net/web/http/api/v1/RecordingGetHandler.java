@@ -37,28 +37,95 @@
  */
 package io.cryostat.net.web.http.api.v1;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import io.cryostat.MainModule;
+import io.cryostat.core.log.Logger;
 import io.cryostat.net.AuthManager;
+import io.cryostat.net.web.WebModule;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.InputStreamReadStream;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveChunkStore;
+import io.cryostat.recordings.ArchiveCodec;
+import io.cryostat.recordings.ArchiveManifest;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.ArchiveObject;
+import io.cryostat.recordings.storage.ArchiveStorage;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.streams.Pump;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.impl.HttpStatusException;
+import org.apache.commons.io.IOUtils;
 
 class RecordingGetHandler extends AbstractAuthenticatedRequestHandler {
 
-    private final Path savedRecordingsPath;
+    private static final int MATERIALISED_CACHE_SIZE = 8;
+    // not among Vert.x's predefined header names
+    private static final String RANGE_HEADER = "Range";
+    private static final String IF_RANGE_HEADER = "If-Range";
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+                    .withZone(ZoneOffset.UTC);
+
+    private final ArchiveStorage storage;
+    private final Path webServerTempPath;
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final ArchiveCatalog catalog;
+    private final Logger logger;
+    // complete recordings stitched together from differential archives, keyed by manifest digest
+    private final Cache<String, Materialised> materialised;
 
     @Inject
     RecordingGetHandler(
-            AuthManager auth, @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath) {
+            AuthManager auth,
+            ArchiveStorage storage,
+            @Named(WebModule.WEBSERVER_TEMP_DIR_PATH) Path webServerTempPath,
+            RecordingArchiveHelper recordingArchiveHelper,
+            ArchiveCatalog catalog,
+            Logger logger) {
         super(auth);
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.storage = storage;
+        this.webServerTempPath = webServerTempPath;
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.catalog = catalog;
+        this.logger = logger;
+        this.materialised =
+                Caffeine.newBuilder()
+                        .maximumSize(MATERIALISED_CACHE_SIZE)
+                        .<String, Materialised>removalListener(
+                                (digest, file, cause) -> {
+                                    if (file.evict()) {
+                                        deleteQuietly(file.path);
+                                    }
+                                })
+                        .build();
     }
 
     @Override
@@ -84,16 +151,34 @@ class RecordingGetHandler extends AbstractAuthenticatedRequestHandler {
     @Override
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
         String recordingName = ctx.pathParam("recordingName");
-        String filePath =
-                savedRecordingsPath.resolve(recordingName).normalize().toAbsolutePath().toString();
         ctx.vertx()
-                .fileSystem()
-                .exists(
-                        filePath,
+                .<Optional<StoredArchive>>executeBlocking(
+                        promise -> {
+                            try {
+                                Optional<StoredArchive> archive =
+                                        StoredArchive.inspect(storage, recordingName);
+                                Optional<ArchiveManifest> manifest =
+                                        archive.isPresent()
+                                                ? recordingArchiveHelper.getManifest(recordingName)
+                                                : Optional.empty();
+                                if (manifest.isPresent()) {
+                                    archive =
+                                            Optional.of(
+                                                    materialise(
+                                                            archive.get(), manifest.get()));
+                                }
+                                promise.complete(archive);
+                            } catch (IOException e) {
+                                promise.fail(e);
+                            }
+                        },
+                        false,
                         ar -> {
-                            if (ar.result()) {
-                                ctx.response().sendFile(filePath);
-                            } else {
+                            if (ar.failed()) {
+                                ctx.fail(new HttpStatusException(500, ar.cause()));
+                                return;
+                            }
+                            if (ar.result().isEmpty()) {
                                 ctx.response().setStatusCode(404);
                                 ctx.response()
                                         .setStatusMessage(
@@ -101,7 +186,510 @@ class RecordingGetHandler extends AbstractAuthenticatedRequestHandler {
                                                         "Recording \"%s\" not found",
                                                         recordingName));
                                 ctx.response().end();
+                                return;
+                            }
+                            StoredArchive archive = ar.result().get();
+                            if (archive.pinned != null) {
+                                unpinWhenDone(ctx.response(), archive.pinned);
                             }
+                            catalog.touch(recordingName);
+                            sendArchive(ctx, archive);
                         });
     }
+
+    private void sendArchive(RoutingContext ctx, StoredArchive archive) {
+        HttpServerRequest request = ctx.request();
+        HttpServerResponse response = ctx.response();
+        boolean encoded =
+                archive.format == StoredFormat.GZIP
+                        && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (archive.format == StoredFormat.GZIP) {
+            response.putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        String etag =
+                archive.digest != null
+                        ? String.format("\"%s\"", archive.digest)
+                        : etag(archive.lastModified, archive.size, encoded);
+        response.putHeader(HttpHeaders.ETAG, etag);
+        response.putHeader(HttpHeaders.LAST_MODIFIED, formatHttpDate(archive.lastModified));
+        if (isNotModified(
+                request.getHeader(HttpHeaders.IF_NONE_MATCH),
+                request.getHeader(HttpHeaders.IF_MODIFIED_SINCE),
+                etag,
+                archive.lastModified)) {
+            response.setStatusCode(304).end();
+            return;
+        }
+
+        // the length of a decompressed gzip archive is not known without decompressing it
+        long length = encoded ? archive.size : archive.decodedLength;
+        if (length < 0) {
+            response.putHeader(HttpHeaders.ACCEPT_RANGES, "none");
+            sendDecoded(ctx, archive, 0, -1);
+            return;
+        }
+        response.putHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        ByteRange range = null;
+        String rangeHeader = request.getHeader(RANGE_HEADER);
+        if (rangeHeader != null
+                && ifRangeMatches(
+                        request.getHeader(IF_RANGE_HEADER), etag, archive.lastModified)) {
+            range = ByteRange.parse(rangeHeader, length);
+        }
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.putHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatusCode(416).end();
+            return;
+        }
+        long offset = 0;
+        long count = length;
+        if (range != null) {
+            offset = range.start;
+            count = range.end - range.start + 1;
+            response.setStatusCode(206);
+            response.putHeader(
+                    HttpHeaders.CONTENT_RANGE,
+                    String.format("bytes %d-%d/%d", range.start, range.end, length));
+        }
+
+        if (encoded) {
+            // the stored archive is already in the encoding the client wants
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (encoded || archive.format == StoredFormat.PLAIN) {
+            if (archive.path != null) {
+                response.sendFile(archive.path.toString(), offset, count);
+            } else {
+                sendStream(ctx, () -> storage.open(archive.name, offset, count), count);
+            }
+        } else {
+            // decompressed, or reassembled from the chunk store, on the fly
+            sendDecoded(ctx, archive, offset, count);
+        }
+    }
+
+    /**
+     * Stream the decoded archive, skipping offset bytes and then sending count bytes, or the whole
+     * archive with chunked transfer encoding if count is negative.
+     */
+    private void sendDecoded(RoutingContext ctx, StoredArchive archive, long offset, long count) {
+        sendStream(
+                ctx,
+                () -> {
+                    InputStream stream =
+                            archive.path != null
+                                    ? ArchiveChunkStore.openArchive(archive.path)
+                                    : ArchiveCodec.decode(storage.open(archive.name));
+                    try {
+                        IOUtils.skipFully(stream, offset);
+                    } catch (IOException e) {
+                        stream.close();
+                        throw e;
+                    }
+                    return stream;
+                },
+                count);
+    }
+
+    /**
+     * Send count bytes from the opened stream, or all of it with chunked transfer encoding if
+     * count is negative. The stream is opened and read on worker threads, and only read as fast as
+     * the client takes the data.
+     */
+    private void sendStream(RoutingContext ctx, InputStreamReadStream.Opener opener, long count) {
+        HttpServerResponse response = ctx.response();
+        if (count < 0) {
+            response.setChunked(true);
+        } else {
+            response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(count));
+        }
+        response.putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
+        InputStreamReadStream stream =
+                new InputStreamReadStream(
+                        ctx.vertx().getOrCreateContext(), opener, count, ArchiveCodec.BUFFER_SIZE);
+        response.closeHandler(v -> stream.close());
+        stream.exceptionHandler(
+                t -> {
+                    logger.warn(t);
+                    if (response.headWritten()) {
+                        // too late for an error status, so cut the download short
+                        response.close();
+                    } else {
+                        ctx.fail(new HttpStatusException(500, t));
+                    }
+                });
+        stream.endHandler(
+                v -> {
+                    if (!response.closed()) {
+                        response.end();
+                    }
+                });
+        Pump.pump(stream, response).start();
+    }
+
+    /**
+     * Differential archives only hold the chunks new since the previous archive, so the full
+     * recording is stitched together from its pieces, once per version of the manifest, and sent
+     * as a plain file with the manifest's digest as its entity tag.
+     */
+    private StoredArchive materialise(StoredArchive archive, ArchiveManifest manifest)
+            throws IOException {
+        String digest = manifest.getDigest();
+        while (true) {
+            Materialised file;
+            try {
+                file =
+                        materialised.get(
+                                digest,
+                                k -> {
+                                    Path tmp = null;
+                                    try {
+                                        tmp =
+                                                Files.createTempFile(
+                                                        webServerTempPath, "archive", ".jfr");
+                                        recordingArchiveHelper.materialiseArchive(
+                                                archive.name, tmp);
+                                        return new Materialised(tmp, Files.size(tmp));
+                                    } catch (IOException e) {
+                                        deleteQuietly(tmp);
+                                        throw new UncheckedIOException(e);
+                                    }
+                                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // otherwise it was evicted since the lookup and its file may be gone, so stitch the
+            // recording together again
+            if (file.pin()) {
+                return new StoredArchive(
+                        archive.name,
+                        file.path,
+                        StoredFormat.PLAIN,
+                        file.size,
+                        archive.lastModified,
+                        file.size,
+                        digest,
+                        file);
+            }
+        }
+    }
+
+    /** Keep the materialised file from being deleted until the response has been sent. */
+    private void unpinWhenDone(HttpServerResponse response, Materialised file) {
+        AtomicBoolean done = new AtomicBoolean();
+        Handler<Void> unpin =
+                v -> {
+                    if (done.compareAndSet(false, true) && file.unpin()) {
+                        deleteQuietly(file.path);
+                    }
+                };
+        // called once the response has been sent, or the connection closed before then
+        response.endHandler(unpin);
+        if (response.closed()) {
+            unpin.handle(null);
+        }
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException nfe) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A complete recording stitched together from a differential archive. Its file is only deleted
+     * once it has been evicted from the cache and no download is still sending it.
+     */
+    private static class Materialised {
+        final Path path;
+        final long size;
+        // downloads currently sending the file
+        private int pins;
+        private boolean evicted;
+
+        Materialised(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        /** @return whether the file can be sent, false if it has already been evicted */
+        synchronized boolean pin() {
+            if (evicted) {
+                return false;
+            }
+            pins++;
+            return true;
+        }
+
+        /** @return whether the file should be deleted now */
+        synchronized boolean unpin() {
+            pins--;
+            return evicted && pins == 0;
+        }
+
+        /** @return whether the file should be deleted now */
+        synchronized boolean evict() {
+            evicted = true;
+            return pins == 0;
+        }
+    }
+
+    private enum StoredFormat {
+        PLAIN,
+        GZIP,
+        CHUNKED,
+    }
+
+    private static class StoredArchive {
+        final String name;
+        // the local file holding the archive, or null if it is in remote storage
+        final Path path;
+        final StoredFormat format;
+        // size and modification time of the stored file, which identify this version of it
+        final long size;
+        final long lastModified;
+        // length of the recording once decoded, or -1 if that is not known up front
+        final long decodedLength;
+        // manifest digest of a materialised differential archive, used as its entity tag, or null
+        final String digest;
+        // the materialised file, pinned for this download, or null
+        final Materialised pinned;
+
+        private StoredArchive(
+                String name,
+                Path path,
+                StoredFormat format,
+                long size,
+                long lastModified,
+                long decodedLength) {
+            this(name, path, format, size, lastModified, decodedLength, null, null);
+        }
+
+        private StoredArchive(
+                String name,
+                Path path,
+                StoredFormat format,
+                long size,
+                long lastModified,
+                long decodedLength,
+                String digest,
+                Materialised pinned) {
+            this.name = name;
+            this.path = path;
+            this.format = format;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.decodedLength = decodedLength;
+            this.digest = digest;
+            this.pinned = pinned;
+        }
+
+        static Optional<StoredArchive> inspect(ArchiveStorage storage, String name)
+                throws IOException {
+            Optional<Path> localPath = storage.getLocalPath(name);
+            if (localPath.isPresent()) {
+                return inspect(name, localPath.get().normalize().toAbsolutePath());
+            }
+            Optional<ArchiveObject> object = storage.stat(name);
+            if (object.isEmpty()) {
+                return Optional.empty();
+            }
+            long size = object.get().getSize();
+            long lastModified = object.get().getLastModified();
+            boolean compressed;
+            try (InputStream in = new BufferedInputStream(storage.open(name, 0, 2), 2)) {
+                compressed = ArchiveCodec.isCompressed(in);
+            }
+            if (compressed) {
+                return Optional.of(
+                        new StoredArchive(name, null, StoredFormat.GZIP, size, lastModified, -1));
+            }
+            return Optional.of(
+                    new StoredArchive(name, null, StoredFormat.PLAIN, size, lastModified, size));
+        }
+
+        private static Optional<StoredArchive> inspect(String name, Path path)
+                throws IOException {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            }
+            if (!attrs.isRegularFile()) {
+                return Optional.empty();
+            }
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            Optional<List<ArchiveChunkStore.Chunk>> chunks = ArchiveChunkStore.readManifest(path);
+            if (chunks.isPresent()) {
+                long decodedLength =
+                        chunks.get().stream().mapToLong(ArchiveChunkStore.Chunk::getSize).sum();
+                return Optional.of(
+                        new StoredArchive(
+                                name,
+                                path,
+                                StoredFormat.CHUNKED,
+                                size,
+                                lastModified,
+                                decodedLength));
+            }
+            if (ArchiveCodec.isCompressed(path)) {
+                return Optional.of(
+                        new StoredArchive(name, path, StoredFormat.GZIP, size, lastModified, -1));
+            }
+            return Optional.of(
+                    new StoredArchive(name, path, StoredFormat.PLAIN, size, lastModified, size));
+        }
+    }
+
+    /** A single, satisfiable byte range, with both ends inclusive. */
+    static class ByteRange {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the range requested by the Range header for a representation of the given
+         *     length, {@link #UNSATISFIABLE} if it lies outside of the representation, or null if
+         *     the header should be ignored and the whole representation sent. Requests for
+         *     multiple ranges are ignored.
+         */
+        static ByteRange parse(String header, long length) {
+            if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+                return null;
+            }
+            String spec = header.substring(6).trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0 || spec.indexOf(',') >= 0) {
+                return null;
+            }
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0 || length == 0) {
+                        return UNSATISFIABLE;
+                    }
+                    return new ByteRange(Math.max(0, length - suffix), length - 1);
+                }
+                long start = Long.parseLong(spec.substring(0, dash));
+                String last = spec.substring(dash + 1);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start >= length) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(start, Math.min(end, length - 1));
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+    }
+
+    static String etag(long lastModified, long size, boolean gzipEncoded) {
+        // the gzip-encoded and decoded responses are different representations
+        return String.format("\"%x-%x%s\"", lastModified, size, gzipEncoded ? "-gzip" : "");
+    }
+
+    static String formatHttpDate(long epochMillis) {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * Evaluate If-None-Match, or If-Modified-Since if there is no If-None-Match, as per RFC 7232.
+     */
+    static boolean isNotModified(
+            String ifNoneMatch, String ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if ("*".equals(tag) || weakEquals(tag, etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Optional<Instant> since = parseHttpDate(ifModifiedSince);
+        return since.isPresent()
+                && Instant.ofEpochMilli(lastModified).getEpochSecond()
+                        <= since.get().getEpochSecond();
+    }
+
+    /**
+     * @return whether the Range header should be honoured given the If-Range header. An entity
+     *     tag must match exactly, and a date must be the exact modification time
+     */
+    static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        Optional<Instant> date = parseHttpDate(ifRange);
+        return date.isPresent()
+                && Instant.ofEpochMilli(lastModified).getEpochSecond()
+                        == date.get().getEpochSecond();
+    }
+
+    private static boolean weakEquals(String a, String b) {
+        return stripWeak(a).equals(stripWeak(b));
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static Optional<Instant> parseHttpDate(String date) {
+        if (date == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date)));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioe) {
+            logger.warn(ioe);
+        }
+    }
 }
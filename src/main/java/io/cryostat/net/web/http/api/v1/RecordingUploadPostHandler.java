@@ -37,23 +37,29 @@
  */
 package io.cryostat.net.web.http.api.v1;
 
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.AuthManager;
+import io.cryostat.net.web.WebModule;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveChunkStore;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.ArchiveStorage;
 import io.cryostat.util.HttpStatusCodeIdentifier;
 
 import io.vertx.core.buffer.Buffer;
@@ -70,7 +76,10 @@ class RecordingUploadPostHandler extends AbstractAuthenticatedRequestHandler {
     private final Environment env;
     private final WebClient webClient;
     private final FileSystem fs;
-    private final Path savedRecordingsPath;
+    private final ArchiveStorage storage;
+    private final Path webServerTempPath;
+    private final ArchiveChunkStore chunkStore;
+    private final RecordingArchiveHelper recordingArchiveHelper;
     private static final String GRAFANA_DATASOURCE_ENV = "GRAFANA_DATASOURCE_URL";
 
     @Inject
@@ -79,12 +88,18 @@ class RecordingUploadPostHandler extends AbstractAuthenticatedRequestHandler {
             Environment env,
             WebClient webClient,
             FileSystem fs,
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath) {
+            ArchiveStorage storage,
+            @Named(WebModule.WEBSERVER_TEMP_DIR_PATH) Path webServerTempPath,
+            ArchiveChunkStore chunkStore,
+            RecordingArchiveHelper recordingArchiveHelper) {
         super(auth);
         this.env = env;
         this.webClient = webClient;
         this.fs = fs;
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.storage = storage;
+        this.webServerTempPath = webServerTempPath;
+        this.chunkStore = chunkStore;
+        this.recordingArchiveHelper = recordingArchiveHelper;
     }
 
     @Override
@@ -140,44 +155,88 @@ class RecordingUploadPostHandler extends AbstractAuthenticatedRequestHandler {
     }
 
     private ResponseMessage doPost(String recordingName, URL uploadUrl) throws Exception {
-        Path recordingPath =
-                getRecordingPath(recordingName)
-                        .orElseThrow(() -> new HttpStatusException(404, recordingName));
-
-        MultipartForm form =
-                MultipartForm.create()
-                        .binaryFileUpload(
-                                "file",
-                                recordingName,
-                                recordingPath.toString(),
-                                HttpMimeType.OCTET_STREAM.toString());
-
-        CompletableFuture<ResponseMessage> future = new CompletableFuture<>();
-        webClient
-                .postAbs(uploadUrl.toURI().resolve("/load").normalize().toString())
-                .timeout(30_000L)
-                .sendMultipartForm(
-                        form,
-                        uploadHandler -> {
-                            if (uploadHandler.failed()) {
-                                future.completeExceptionally(uploadHandler.cause());
-                                return;
-                            }
-                            HttpResponse<Buffer> response = uploadHandler.result();
-                            future.complete(
-                                    new ResponseMessage(
-                                            response.statusCode(),
-                                            response.statusMessage(),
-                                            response.bodyAsString()));
-                        });
-        return future.get();
+        Path recordingPath;
+        boolean temporary;
+        if (storage.getLocalDirectory().isPresent()) {
+            recordingPath =
+                    getRecordingPath(recordingName)
+                            .orElseThrow(() -> new HttpStatusException(404, recordingName));
+            if (recordingArchiveHelper.getManifest(recordingName).isPresent()) {
+                // differential archives only hold their newest chunks, so upload the whole
+                // recording their manifest describes
+                recordingPath = copyToTempFile(recordingArchiveHelper.openArchive(recordingName));
+                temporary = true;
+            } else {
+                // deduplicated archives are chunk manifests, so reassemble the recording to upload
+                temporary = !chunkStore.getChunks(recordingPath).isEmpty();
+                if (temporary) {
+                    recordingPath = copyToTempFile(ArchiveChunkStore.openArchive(recordingPath));
+                }
+            }
+        } else {
+            if (!storage.exists(recordingName)) {
+                throw new HttpStatusException(404, recordingName);
+            }
+            // the multipart form is sent from a local file
+            recordingPath = copyToTempFile(storage.open(recordingName));
+            temporary = true;
+        }
+
+        try {
+            MultipartForm form =
+                    MultipartForm.create()
+                            .binaryFileUpload(
+                                    "file",
+                                    recordingName,
+                                    recordingPath.toString(),
+                                    HttpMimeType.OCTET_STREAM.toString());
+
+            CompletableFuture<ResponseMessage> future = new CompletableFuture<>();
+            webClient
+                    .postAbs(uploadUrl.toURI().resolve("/load").normalize().toString())
+                    .timeout(30_000L)
+                    .sendMultipartForm(
+                            form,
+                            uploadHandler -> {
+                                if (uploadHandler.failed()) {
+                                    future.completeExceptionally(uploadHandler.cause());
+                                    return;
+                                }
+                                HttpResponse<Buffer> response = uploadHandler.result();
+                                future.complete(
+                                        new ResponseMessage(
+                                                response.statusCode(),
+                                                response.statusMessage(),
+                                                response.bodyAsString()));
+                            });
+            return future.get();
+        } finally {
+            if (temporary) {
+                fs.deleteIfExists(recordingPath);
+            }
+        }
+    }
+
+    private Path copyToTempFile(InputStream stream) throws Exception {
+        try (stream) {
+            Path temp = Files.createTempFile(webServerTempPath, "upload", ".jfr");
+            try {
+                Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                fs.deleteIfExists(temp);
+                throw e;
+            }
+            return temp;
+        }
     }
 
     Optional<Path> getRecordingPath(String recordingName) throws Exception {
         try {
-            Path archivedRecording = savedRecordingsPath.resolve(recordingName);
-            if (fs.isRegularFile(archivedRecording) && fs.isReadable(archivedRecording)) {
-                return Optional.of(archivedRecording);
+            Optional<Path> archivedRecording = storage.getLocalPath(recordingName);
+            if (archivedRecording.isPresent()
+                    && fs.isRegularFile(archivedRecording.get())
+                    && fs.isReadable(archivedRecording.get())) {
+                return archivedRecording;
             }
             return Optional.empty();
         } catch (InvalidPathException e) {
@@ -44,19 +44,20 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Provider;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.web.WebServer;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.storage.ArchiveStorage;
 
 import com.google.gson.Gson;
 import io.vertx.core.http.HttpMethod;
@@ -65,8 +66,9 @@ import io.vertx.ext.web.handler.impl.HttpStatusException;
 
 class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
 
-    private final Path savedRecordingsPath;
+    private final ArchiveStorage storage;
     private final FileSystem fs;
+    private final ArchiveCatalog catalog;
     private final Provider<WebServer> webServerProvider;
     private final Gson gson;
     private final Logger logger;
@@ -74,14 +76,16 @@ class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
     @Inject
     RecordingsGetHandler(
             AuthManager auth,
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath,
+            ArchiveStorage storage,
             FileSystem fs,
+            ArchiveCatalog catalog,
             Provider<WebServer> webServerProvider,
             Gson gson,
             Logger logger) {
         super(auth);
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.storage = storage;
         this.fs = fs;
+        this.catalog = catalog;
         this.webServerProvider = webServerProvider;
         this.gson = gson;
         this.logger = logger;
@@ -109,28 +113,14 @@ class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
 
     @Override
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
-        if (!fs.exists(savedRecordingsPath)) {
-            throw new HttpStatusException(
-                    501,
-                    String.format(
-                            "Archive path %s does not exist", savedRecordingsPath.toString()));
-        }
-        if (!fs.isReadable(savedRecordingsPath)) {
-            throw new HttpStatusException(
-                    501,
-                    String.format(
-                            "Archive path %s is not readable", savedRecordingsPath.toString()));
-        }
-        if (!fs.isDirectory(savedRecordingsPath)) {
-            throw new HttpStatusException(
-                    501,
-                    String.format(
-                            "Archive path %s is not a directory", savedRecordingsPath.toString()));
+        Optional<Path> localDirectory = storage.getLocalDirectory();
+        if (localDirectory.isPresent()) {
+            checkArchivePath(localDirectory.get());
         }
         WebServer webServer = webServerProvider.get();
-        List<String> names = this.fs.listDirectoryChildren(savedRecordingsPath);
         List<Map<String, String>> result =
-                names.stream()
+                catalog.list().stream()
+                        .map(ArchiveCatalog.Entry::getName)
                         .map(
                                 name -> {
                                     try {
@@ -152,4 +142,25 @@ class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
                         .collect(Collectors.toList());
         ctx.response().end(gson.toJson(result));
     }
+
+    private void checkArchivePath(Path savedRecordingsPath) {
+        if (!fs.exists(savedRecordingsPath)) {
+            throw new HttpStatusException(
+                    501,
+                    String.format(
+                            "Archive path %s does not exist", savedRecordingsPath.toString()));
+        }
+        if (!fs.isReadable(savedRecordingsPath)) {
+            throw new HttpStatusException(
+                    501,
+                    String.format(
+                            "Archive path %s is not readable", savedRecordingsPath.toString()));
+        }
+        if (!fs.isDirectory(savedRecordingsPath)) {
+            throw new HttpStatusException(
+                    501,
+                    String.format(
+                            "Archive path %s is not a directory", savedRecordingsPath.toString()));
+        }
+    }
 }
@@ -37,20 +37,27 @@
  */
 package io.cryostat.net.web.http.api.v1;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipException;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.JfrLoaderToolkit;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.messaging.notifications.NotificationFactory;
@@ -58,31 +65,52 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
 import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.ReadStreamInputStream;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveCodec;
+import io.cryostat.recordings.InvalidRecordingException;
+import io.cryostat.recordings.JfrValidator;
+import io.cryostat.recordings.storage.ArchiveStorage;
 
 import com.google.gson.Gson;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
-import io.vertx.ext.web.FileUpload;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.impl.HttpStatusException;
+import org.apache.commons.io.input.CountingInputStream;
 
+/**
+ * Streams an uploaded recording straight into the archive as the request body arrives, rather
+ * than spooling the whole upload to a temporary file first. The recording is checked as it is
+ * written, so an upload which is not a JFR recording is rejected as soon as that is apparent,
+ * and never appears in the archive.
+ */
 class RecordingsPostHandler extends AbstractAuthenticatedRequestHandler {
 
     private static final Pattern RECORDING_FILENAME_PATTERN =
             Pattern.compile("([A-Za-z\\d-]*)_([A-Za-z\\d-_]*)_([\\d]*T[\\d]*Z)(\\.[\\d]+)?");
 
     static final String PATH = "recordings";
+    static final String VALIDATION_PARAM = "validate";
+    static final String FULL_VALIDATION = "full";
+    // how far the upload may run ahead of the archive write before the sender is paused
+    static final long UPLOAD_BUFFER_BYTES = 1024 * 1024;
+    private static final int UPLOAD_READ_BUFFER_SIZE = 64 * 1024;
 
     private final Vertx vertx;
     private final FileSystem fs;
-    private final Path savedRecordingsPath;
+    private final ArchiveStorage storage;
+    private final ArchiveCatalog catalog;
+    private final ArchiveCodec codec;
     private final Gson gson;
     private final Logger logger;
     private final NotificationFactory notificationFactory;
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet();
     private static final String NOTIFICATION_CATEGORY = "RecordingSaved";
 
     @Inject
@@ -90,14 +118,18 @@ class RecordingsPostHandler extends AbstractAuthenticatedRequestHandler {
             AuthManager auth,
             HttpServer httpServer,
             FileSystem fs,
-            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath,
+            ArchiveStorage storage,
+            ArchiveCatalog catalog,
+            ArchiveCodec codec,
             Gson gson,
             Logger logger,
             NotificationFactory notificationFactory) {
         super(auth);
         this.vertx = httpServer.getVertx();
         this.fs = fs;
-        this.savedRecordingsPath = savedRecordingsPath;
+        this.storage = storage;
+        this.catalog = catalog;
+        this.codec = codec;
         this.gson = gson;
         this.logger = logger;
         this.notificationFactory = notificationFactory;
@@ -125,209 +157,263 @@ class RecordingsPostHandler extends AbstractAuthenticatedRequestHandler {
 
     @Override
     public boolean isAsync() {
-        return false;
-    }
-
-    @Override
-    public boolean isOrdered() {
+        // the upload handlers must be in place before the request body is read
         return true;
     }
 
     @Override
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
-        if (!fs.isDirectory(savedRecordingsPath)) {
+        Optional<Path> savedRecordingsPath = storage.getLocalDirectory();
+        if (savedRecordingsPath.isPresent() && !fs.isDirectory(savedRecordingsPath.get())) {
             throw new HttpStatusException(503, "Recording saving not available");
         }
 
-        FileUpload upload = null;
-        for (FileUpload fu : ctx.fileUploads()) {
-            // ignore unrecognized form fields
-            if ("recording".equals(fu.name())) {
-                upload = fu;
-                break;
-            }
-        }
+        boolean fullValidation =
+                FULL_VALIDATION.equalsIgnoreCase(ctx.request().getParam(VALIDATION_PARAM));
+        new RecordingUpload(ctx, fullValidation).start();
+    }
 
-        if (upload == null) {
-            throw new HttpStatusException(400, "No recording submission");
+    /**
+     * Check the recording as it is written to the archive, and remove it from the archive again
+     * if it turns out to be invalid. Uploads which are already compressed are stored as they are
+     * and checked once stored, since the check needs the uncompressed recording. In local storage
+     * the upload is written under a hidden name and only renamed into the archive once it has
+     * passed the checks, so the catalogue never lists a partial or invalid upload.
+     */
+    private String storeRecording(
+            String basename, int counter, InputStream upload, boolean fullValidation)
+            throws IOException, CouldNotLoadRecordingException {
+        BufferedInputStream in = new BufferedInputStream(upload, UPLOAD_READ_BUFFER_SIZE);
+        boolean compressed = ArchiveCodec.isCompressed(in);
+        InputStream content = compressed ? in : codec.encode(JfrValidator.validating(in));
+        Optional<Path> directory = storage.getLocalDirectory();
+        if (directory.isEmpty()) {
+            String filename =
+                    writeUnderFreeName(basename, counter, new CountingInputStream(content));
+            try {
+                validateStored(filename, compressed, fullValidation);
+            } catch (IOException | CouldNotLoadRecordingException e) {
+                storage.delete(filename);
+                throw e;
+            }
+            catalog.refresh(filename);
+            return filename;
         }
-
-        String fileName = upload.fileName();
-        if (fileName == null || fileName.isEmpty()) {
-            throw new HttpStatusException(400, "Recording name must not be empty");
+        String uploadName = ArchiveCatalog.HIDDEN_PREFIX + UUID.randomUUID() + ".upload";
+        try {
+            storage.write(uploadName, content);
+            validateStored(uploadName, compressed, fullValidation);
+            String filename = moveUnderFreeName(directory.get(), uploadName, basename, counter);
+            catalog.refresh(filename);
+            return filename;
+        } finally {
+            // nothing is left to delete once the upload has been moved into the archive
+            storage.delete(uploadName);
         }
+    }
 
-        if (fileName.endsWith(".jfr")) {
-            fileName = fileName.substring(0, fileName.length() - 4);
+    private void validateStored(String name, boolean compressed, boolean fullValidation)
+            throws IOException, CouldNotLoadRecordingException {
+        if (compressed) {
+            try (InputStream stored = ArchiveCodec.decode(storage.open(name))) {
+                JfrValidator.validate(stored);
+            }
         }
-
-        Matcher m = RECORDING_FILENAME_PATTERN.matcher(fileName);
-        if (!m.matches()) {
-            throw new HttpStatusException(400, "Incorrect recording file name pattern");
+        // loading events needs memory in proportion to the recording's size
+        if (fullValidation) {
+            try (InputStream stored = ArchiveCodec.decode(storage.open(name))) {
+                JfrLoaderToolkit.loadEvents(stored);
+            }
         }
-
-        String targetName = m.group(1);
-        String recordingName = m.group(2);
-        String timestamp = m.group(3);
-        int count =
-                m.group(4) == null || m.group(4).isEmpty()
-                        ? 0
-                        : Integer.parseInt(m.group(4).substring(1));
-
-        final String basename = String.format("%s_%s_%s", targetName, recordingName, timestamp);
-        final String uploadedFileName = upload.uploadedFileName();
-        validateRecording(
-                upload.uploadedFileName(),
-                (res) ->
-                        saveRecording(
-                                basename,
-                                uploadedFileName,
-                                count,
-                                (res2) -> {
-                                    if (res2.failed()) {
-                                        ctx.fail(res2.cause());
-                                        return;
-                                    }
-
-                                    ctx.response()
-                                            .putHeader(
-                                                    HttpHeaders.CONTENT_TYPE,
-                                                    HttpMimeType.JSON.mime())
-                                            .end(gson.toJson(Map.of("name", res2.result())));
-
-                                    logger.info("Recording saved as {}", res2.result());
-
-                                    notificationFactory
-                                            .createBuilder()
-                                            .metaCategory(NOTIFICATION_CATEGORY)
-                                            .metaType(HttpMimeType.JSON)
-                                            .message(Map.of("recording", res2.result()))
-                                            .build()
-                                            .send();
-                                }));
     }
 
-    private void validateRecording(String recordingFile, Handler<AsyncResult<Void>> handler) {
-        vertx.executeBlocking(
-                event -> {
-                    try {
-                        JfrLoaderToolkit.loadEvents(
-                                new File(recordingFile)); // try loading events to see if
-                        // it's a valid file
-                        event.complete();
-                    } catch (CouldNotLoadRecordingException | IOException e) {
-                        event.fail(e);
-                    }
-                },
-                res -> {
-                    if (res.failed()) {
-                        Throwable t;
-                        if (res.cause() instanceof CouldNotLoadRecordingException) {
-                            t =
-                                    new HttpStatusException(
-                                            400, "Not a valid JFR recording file", res.cause());
-                        } else {
-                            t = res.cause();
-                        }
-
-                        handler.handle(makeFailedAsyncResult(t));
-                        return;
-                    }
-
-                    handler.handle(makeAsyncResult(null));
-                });
+    private static String archiveName(String basename, int counter) {
+        return counter > 1 ? basename + "." + counter + ".jfr" : basename + ".jfr";
     }
 
-    private void saveRecording(
-            String basename, String tmpFile, int counter, Handler<AsyncResult<String>> handler) {
+    /**
+     * Rename a stored upload to the first free archive name, counting up from the given counter.
+     * The rename fails rather than replace an archive which already has the name. Names are also
+     * reserved within this process while they are claimed, since the existence check and the
+     * rename are not one atomic step.
+     */
+    private String moveUnderFreeName(
+            Path directory, String uploadName, String basename, int counter) throws IOException {
         // TODO byte-sized rename limit is arbitrary. Probably plenty since recordings
         // are also differentiated by second-resolution timestamp
-        if (counter >= Byte.MAX_VALUE) {
-            handler.handle(
-                    makeFailedAsyncResult(
-                            new IOException(
-                                    "Recording could not be saved. File already exists and rename attempts were exhausted.")));
-            return;
+        for (int i = counter; i < Byte.MAX_VALUE; i++) {
+            String filename = archiveName(basename, i);
+            if (!pendingNames.add(filename)) {
+                continue;
+            }
+            try {
+                Files.move(directory.resolve(uploadName), directory.resolve(filename));
+                return filename;
+            } catch (FileAlreadyExistsException e) {
+                // taken, try the next name
+            } finally {
+                pendingNames.remove(filename);
+            }
         }
-
-        String filename = counter > 1 ? basename + "." + counter + ".jfr" : basename + ".jfr";
-
-        vertx.fileSystem()
-                .exists(
-                        savedRecordingsPath.resolve(filename).toString(),
-                        (res) -> {
-                            if (res.failed()) {
-                                handler.handle(makeFailedAsyncResult(res.cause()));
-                                return;
-                            }
-
-                            if (res.result()) {
-                                saveRecording(basename, tmpFile, counter + 1, handler);
-                                return;
-                            }
-
-                            // verified no name clash at this time
-                            vertx.fileSystem()
-                                    .move(
-                                            tmpFile,
-                                            savedRecordingsPath.resolve(filename).toString(),
-                                            (res2) -> {
-                                                if (res2.failed()) {
-                                                    handler.handle(
-                                                            makeFailedAsyncResult(res2.cause()));
-                                                    return;
-                                                }
-
-                                                handler.handle(makeAsyncResult(filename));
-                                            });
-                        });
+        throw new IOException(
+                "Recording could not be saved. File already exists and rename attempts were exhausted.");
     }
 
-    private <T> AsyncResult<T> makeAsyncResult(T result) {
-        return new AsyncResult<>() {
-            @Override
-            public T result() {
-                return result;
+    /**
+     * Write the content under the first free name, counting up from the given counter, for
+     * storage which cannot rename archives. The name is reserved within this process while it is
+     * written, and the write fails without consuming any content where the storage detects a
+     * clash up front, so concurrent uploads of one recording never overwrite each other.
+     */
+    private String writeUnderFreeName(String basename, int counter, CountingInputStream content)
+            throws IOException {
+        for (int i = counter; i < Byte.MAX_VALUE; i++) {
+            String filename = archiveName(basename, i);
+            if (!pendingNames.add(filename)) {
+                continue;
             }
+            try {
+                if (storage.exists(filename)) {
+                    continue;
+                }
+                storage.write(filename, content);
+                return filename;
+            } catch (FileAlreadyExistsException e) {
+                if (content.getByteCount() > 0) {
+                    // the upload cannot be replayed under another name
+                    throw e;
+                }
+            } finally {
+                pendingNames.remove(filename);
+            }
+        }
+        throw new IOException(
+                "Recording could not be saved. File already exists and rename attempts were exhausted.");
+    }
+
+    /** The state of one upload request, whose body arrives over many event loop turns. */
+    private class RecordingUpload {
+        private final RoutingContext ctx;
+        private final boolean fullValidation;
+        private ReadStreamInputStream recording;
+        private boolean finished;
+
+        RecordingUpload(RoutingContext ctx, boolean fullValidation) {
+            this.ctx = ctx;
+            this.fullValidation = fullValidation;
+        }
 
-            @Override
-            public Throwable cause() {
-                return null;
+        void start() {
+            HttpServerRequest req = ctx.request();
+            req.setExpectMultipart(true);
+            req.uploadHandler(this::handleUpload);
+            req.exceptionHandler(this::handleRequestFailure);
+            req.endHandler(
+                    v -> {
+                        if (recording == null) {
+                            fail(new HttpStatusException(400, "No recording submission"));
+                        }
+                    });
+        }
+
+        private void handleUpload(HttpServerFileUpload upload) {
+            // ignore unrecognized form fields, and any recording after the first
+            if (!"recording".equals(upload.name()) || recording != null || finished) {
+                return;
             }
 
-            @Override
-            public boolean succeeded() {
-                return true;
+            String fileName = upload.filename();
+            if (fileName == null || fileName.isEmpty()) {
+                fail(new HttpStatusException(400, "Recording name must not be empty"));
+                return;
             }
 
-            @Override
-            public boolean failed() {
-                return false;
+            if (fileName.endsWith(".jfr")) {
+                fileName = fileName.substring(0, fileName.length() - 4);
             }
-        };
-    }
 
-    private <T> AsyncResult<T> makeFailedAsyncResult(Throwable cause) {
-        return new AsyncResult<>() {
-            @Override
-            public T result() {
-                return null;
+            Matcher m = RECORDING_FILENAME_PATTERN.matcher(fileName);
+            if (!m.matches()) {
+                fail(new HttpStatusException(400, "Incorrect recording file name pattern"));
+                return;
             }
 
-            @Override
-            public Throwable cause() {
-                return cause;
+            String targetName = m.group(1);
+            String recordingName = m.group(2);
+            String timestamp = m.group(3);
+            int count =
+                    m.group(4) == null || m.group(4).isEmpty()
+                            ? 0
+                            : Integer.parseInt(m.group(4).substring(1));
+
+            String basename = String.format("%s_%s_%s", targetName, recordingName, timestamp);
+            ReadStreamInputStream stream =
+                    new ReadStreamInputStream(
+                            upload, vertx.getOrCreateContext(), UPLOAD_BUFFER_BYTES);
+            recording = stream;
+            vertx.<String>executeBlocking(
+                    promise -> {
+                        // closing discards whatever is left of the upload after a failure
+                        try (InputStream in = stream) {
+                            promise.complete(storeRecording(basename, count, in, fullValidation));
+                        } catch (IOException | CouldNotLoadRecordingException e) {
+                            promise.fail(e);
+                        }
+                    },
+                    false,
+                    this::handleStored);
+        }
+
+        private void handleStored(AsyncResult<String> res) {
+            if (res.failed()) {
+                Throwable cause = res.cause();
+                if (cause instanceof InvalidRecordingException
+                        || cause instanceof CouldNotLoadRecordingException
+                        || cause instanceof ZipException
+                        || cause instanceof EOFException) {
+                    cause = new HttpStatusException(400, "Not a valid JFR recording file", cause);
+                }
+                fail(cause);
+                return;
             }
+            finished = true;
+
+            ctx.response()
+                    .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                    .end(gson.toJson(Map.of("name", res.result())));
+
+            logger.info("Recording saved as {}", res.result());
 
-            @Override
-            public boolean succeeded() {
-                return false;
+            notificationFactory
+                    .createBuilder()
+                    .metaCategory(NOTIFICATION_CATEGORY)
+                    .metaType(HttpMimeType.JSON)
+                    .message(Map.of("recording", res.result()))
+                    .build()
+                    .send();
+        }
+
+        private void handleRequestFailure(Throwable t) {
+            if (recording != null) {
+                // fails the archive write, which then reports the failure
+                recording.fail(t);
+                return;
             }
+            fail(t);
+        }
 
-            @Override
-            public boolean failed() {
-                return true;
+        private void fail(Throwable t) {
+            if (finished) {
+                return;
             }
-        };
+            finished = true;
+            HttpServerRequest req = ctx.request();
+            if (!req.isEnded()) {
+                // stop the sender rather than read the rest of a rejected upload
+                ctx.response().putHeader(HttpHeaders.CONNECTION, "close");
+                ctx.addBodyEndHandler(v -> req.connection().close());
+            }
+            ctx.fail(t);
+        }
     }
 }
@@ -104,6 +104,7 @@ class TargetRecordingDeleteHandler extends AbstractAuthenticatedRequestHandler {
                 .createBuilder()
                 .metaCategory(NOTIFICATION_CATEGORY)
                 .metaType(HttpMimeType.JSON)
+                .targetId(connectionDescriptor.getTargetId())
                 .message(
                         Map.of(
                                 "recording",
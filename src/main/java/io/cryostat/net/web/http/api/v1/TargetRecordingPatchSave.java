@@ -38,6 +38,7 @@
 package io.cryostat.net.web.http.api.v1;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 
@@ -67,26 +68,39 @@ class TargetRecordingPatchSave {
     void handle(RoutingContext ctx, ConnectionDescriptor connectionDescriptor) throws Exception {
         String recordingName = ctx.pathParam("recordingName");
 
+        CompletableFuture<String> save;
         try {
-            String saveName =
-                    recordingArchiveHelper.saveRecording(connectionDescriptor, recordingName);
-
-            ctx.response().setStatusCode(200);
-            ctx.response().end(saveName);
-            notificationFactory
-                    .createBuilder()
-                    .metaCategory(NOTIFICATION_CATEGORY)
-                    .metaType(HttpMimeType.JSON)
-                    .message(
-                            Map.of(
-                                    "recording",
-                                    saveName,
-                                    "target",
-                                    connectionDescriptor.getTargetId()))
-                    .build()
-                    .send();
+            save = recordingArchiveHelper.saveRecordingAsync(connectionDescriptor, recordingName);
         } catch (RecordingNotFoundException e) {
             throw new HttpStatusException(404, e);
         }
+        // the transfer runs on the archival executor, so respond once it is done rather than
+        // holding this worker thread for its duration
+        save.whenComplete(
+                (saveName, t) -> {
+                    if (t != null) {
+                        if (t instanceof RecordingNotFoundException) {
+                            ctx.fail(new HttpStatusException(404, t));
+                        } else {
+                            ctx.fail(new HttpStatusException(500, t.getMessage(), t));
+                        }
+                        return;
+                    }
+                    ctx.response().setStatusCode(200);
+                    ctx.response().end(saveName);
+                    notificationFactory
+                            .createBuilder()
+                            .metaCategory(NOTIFICATION_CATEGORY)
+                            .metaType(HttpMimeType.JSON)
+                            .targetId(connectionDescriptor.getTargetId())
+                            .message(
+                                    Map.of(
+                                            "recording",
+                                            saveName,
+                                            "target",
+                                            connectionDescriptor.getTargetId()))
+                            .build()
+                            .send();
+                });
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.cryostat.net.AuthManager;
+
+import com.google.gson.Gson;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A V2 handler whose response is only ready once work on another thread completes. The handler
+ * runs on a worker thread, so it may connect to targets before it returns its future, and the
+ * response is written, or the failure passed to the failure handler, when that future completes
+ * without holding the worker for the wait.
+ */
+abstract class AbstractDeferredV2RequestHandler<T> extends BaseV2RequestHandler<T> {
+
+    protected AbstractDeferredV2RequestHandler(AuthManager auth, Gson gson) {
+        super(auth, gson);
+    }
+
+    abstract CompletableFuture<IntermediateResponse<T>> handleAsync(
+            RequestParameters requestParams) throws Exception;
+
+    // registered as a blocking handler, so that handleAsync's own I/O is kept off the event loop
+    @Override
+    public final boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    final void respond(RoutingContext ctx, RequestParameters requestParams) throws Exception {
+        handleAsync(requestParams)
+                .whenComplete(
+                        (response, t) -> {
+                            if (t instanceof CompletionException && t.getCause() != null) {
+                                t = t.getCause();
+                            }
+                            if (t != null) {
+                                ctx.fail(toApiException(ctx, t));
+                                return;
+                            }
+                            try {
+                                writeResponse(ctx, response);
+                            } catch (RuntimeException e) {
+                                ctx.fail(toApiException(ctx, e));
+                            }
+                        });
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.web.WebServer;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveCatalog.Entry;
+import io.cryostat.recordings.ArchiveCatalog.SortKey;
+
+import com.google.gson.Gson;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import org.apache.commons.lang3.StringUtils;
+
+class ArchivedRecordingsGetHandler
+        extends AbstractV2RequestHandler<ArchivedRecordingsGetHandler.ArchivedRecordingsPage> {
+
+    static final String PATH = "recordings";
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private final ArchiveCatalog catalog;
+    private final Provider<WebServer> webServerProvider;
+
+    @Inject
+    ArchivedRecordingsGetHandler(
+            AuthManager auth,
+            ArchiveCatalog catalog,
+            Provider<WebServer> webServerProvider,
+            Gson gson) {
+        super(auth, gson);
+        this.catalog = catalog;
+        this.webServerProvider = webServerProvider;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.V2;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.GET;
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public HttpMimeType mimeType() {
+        return HttpMimeType.JSON;
+    }
+
+    @Override
+    public IntermediateResponse<ArchivedRecordingsPage> handle(RequestParameters params)
+            throws Exception {
+        MultiMap query = params.getQueryParams();
+        int limit = parseLimit(query.get("limit"));
+        SortKey sort = parseSort(query.get("sort"));
+        boolean descending = parseDescending(query.get("order"));
+        Entry after = decodeCursor(query.get("cursor"));
+        Predicate<Entry> filter = buildFilter(query);
+
+        // fetch one extra entry to find out whether there is another page after this one
+        List<Entry> entries = catalog.page(sort, descending, after, filter, limit + 1);
+        String nextCursor = null;
+        if (entries.size() > limit) {
+            entries = entries.subList(0, limit);
+            nextCursor = encodeCursor(entries.get(limit - 1));
+        }
+
+        WebServer webServer = webServerProvider.get();
+        List<ArchivedRecording> recordings = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            recordings.add(
+                    new ArchivedRecording(
+                            entry,
+                            webServer.getArchivedDownloadURL(entry.getName()),
+                            webServer.getArchivedReportURL(entry.getName())));
+        }
+        return new IntermediateResponse<ArchivedRecordingsPage>()
+                .body(new ArchivedRecordingsPage(recordings, nextCursor));
+    }
+
+    static int parseLimit(String limit) throws ApiException {
+        if (StringUtils.isBlank(limit)) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            if (value < 1 || value > MAX_LIMIT) {
+                throw new ApiException(
+                        400, String.format("\"limit\" must be between 1 and %d", MAX_LIMIT));
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid \"limit\": " + limit, e);
+        }
+    }
+
+    static SortKey parseSort(String sort) throws ApiException {
+        if (StringUtils.isBlank(sort)) {
+            return SortKey.NAME;
+        }
+        try {
+            return SortKey.valueOf(sort.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid \"sort\": " + sort, e);
+        }
+    }
+
+    static boolean parseDescending(String order) throws ApiException {
+        if (StringUtils.isBlank(order) || "asc".equalsIgnoreCase(order)) {
+            return false;
+        }
+        if ("desc".equalsIgnoreCase(order)) {
+            return true;
+        }
+        throw new ApiException(400, "Invalid \"order\": " + order);
+    }
+
+    static Predicate<Entry> buildFilter(MultiMap query) throws ApiException {
+        Predicate<Entry> filter = entry -> true;
+        String target = query.get("target");
+        if (StringUtils.isNotBlank(target)) {
+            filter = filter.and(entry -> matches(entry.getSourceTarget(), target));
+        }
+        String rule = query.get("rule");
+        if (StringUtils.isNotBlank(rule)) {
+            filter = filter.and(entry -> matches(entry.getRule(), rule));
+        }
+        String prefix = query.get("prefix");
+        if (StringUtils.isNotBlank(prefix)) {
+            filter = filter.and(entry -> entry.getName().startsWith(prefix));
+        }
+        Long since = parseTimestamp("since", query.get("since"));
+        if (since != null) {
+            filter = filter.and(entry -> entry.getLastModified() >= since);
+        }
+        Long until = parseTimestamp("until", query.get("until"));
+        if (until != null) {
+            filter = filter.and(entry -> entry.getLastModified() < until);
+        }
+        return filter;
+    }
+
+    private static boolean matches(Optional<String> value, String expected) {
+        return value.map(expected::equals).orElse(false);
+    }
+
+    private static Long parseTimestamp(String key, String value) throws ApiException {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, String.format("Invalid \"%s\": %s", key, value), e);
+        }
+    }
+
+    // the cursor records the position of the last entry of a page, which is independent of the
+    // sort order requested, so the same cursor can be used with any sort and the listing remains
+    // stable when archives are added or removed between page requests
+    static String encodeCursor(Entry entry) {
+        String position =
+                String.format(
+                        "%d\n%d\n%s", entry.getLastModified(), entry.getSize(), entry.getName());
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Entry decodeCursor(String cursor) throws ApiException {
+        if (StringUtils.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String position =
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split("\n", 3);
+            if (parts.length != 3) {
+                throw new ApiException(400, "Invalid \"cursor\": " + cursor);
+            }
+            return new Entry(
+                    parts[2], Long.parseLong(parts[1]), Long.parseLong(parts[0]), null, null);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid \"cursor\": " + cursor, e);
+        }
+    }
+
+    @SuppressFBWarnings("URF_UNREAD_FIELD")
+    static class ArchivedRecordingsPage {
+        final List<ArchivedRecording> recordings;
+        final String nextCursor;
+
+        ArchivedRecordingsPage(List<ArchivedRecording> recordings, String nextCursor) {
+            this.recordings = recordings;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    @SuppressFBWarnings("URF_UNREAD_FIELD")
+    static class ArchivedRecording {
+        final String name;
+        final String downloadUrl;
+        final String reportUrl;
+        final long size;
+        final long lastModified;
+        final String sourceTarget;
+        final String rule;
+
+        ArchivedRecording(Entry entry, String downloadUrl, String reportUrl) {
+            this.name = entry.getName();
+            this.downloadUrl = downloadUrl;
+            this.reportUrl = reportUrl;
+            this.size = entry.getSize();
+            this.lastModified = entry.getLastModified();
+            this.sourceTarget = entry.getSourceTarget().orElse(null);
+            this.rule = entry.getRule().orElse(null);
+        }
+    }
+}
@@ -76,6 +76,11 @@ public abstract class HttpApiV2Module {
     @IntoSet
     abstract RequestHandler bindTargetSnapshotPostHandler(TargetSnapshotPostHandler handler);
 
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindTargetRecordingsArchivePostHandler(
+            TargetRecordingsArchivePostHandler handler);
+
     @Binds
     @IntoSet
     abstract RequestHandler bindCertificatePostHandler(CertificatePostHandler handler);
@@ -89,6 +94,10 @@ public abstract class HttpApiV2Module {
     @IntoSet
     abstract RequestHandler bindTargetEventsSearchGetHandler(TargetEventsSearchGetHandler handler);
 
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindArchivedRecordingsGetHandler(ArchivedRecordingsGetHandler handler);
+
     @Provides
     @Singleton
     @Named("OutputStreamFunction")
@@ -144,4 +153,12 @@ public abstract class HttpApiV2Module {
     @Binds
     @IntoSet
     abstract RequestHandler bindRulesPostBodyHandler(RulesPostBodyHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRuleDryRunPostHandler(RuleDryRunPostHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRuleDryRunPostBodyHandler(RuleDryRunPostBodyHandler handler);
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import javax.inject.Inject;
+import javax.script.ScriptException;
+
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.rules.MatchExpressionValidationException;
+import io.cryostat.rules.Rule;
+import io.cryostat.rules.RuleDryRunEvaluator;
+import io.cryostat.rules.RuleDryRunEvaluator.DryRunResult;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+
+class RuleDryRunPostHandler extends AbstractV2RequestHandler<DryRunResult> {
+
+    static final String PATH = RulesPostHandler.PATH + "/dry-run";
+
+    // a dry run only needs a match expression, so fill in placeholders for the other attributes
+    // that a real rule definition requires
+    static final String PLACEHOLDER_NAME = "dry-run";
+    static final String PLACEHOLDER_EVENT_SPECIFIER = "template=Continuous";
+
+    private final RuleDryRunEvaluator evaluator;
+
+    @Inject
+    RuleDryRunPostHandler(AuthManager auth, RuleDryRunEvaluator evaluator, Gson gson) {
+        super(auth, gson);
+        this.evaluator = evaluator;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.V2;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public HttpMimeType mimeType() {
+        return HttpMimeType.JSON;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    public IntermediateResponse<DryRunResult> handle(RequestParameters params)
+            throws ApiException {
+        Rule rule;
+        String rawMime = params.getHeaders().get(HttpHeaders.CONTENT_TYPE);
+        if (rawMime == null) {
+            throw new ApiException(415, "Bad content type: null");
+        }
+        String firstMime = rawMime.split(";")[0];
+        HttpMimeType mime = HttpMimeType.fromString(firstMime);
+        if (mime == null) {
+            throw new ApiException(415, "Bad content type: " + rawMime);
+        }
+        try {
+            switch (mime) {
+                case MULTIPART_FORM:
+                case URLENCODED_FORM:
+                    rule = fromForm(params.getFormAttributes());
+                    break;
+                case JSON:
+                    rule = fromJson(params.getBody());
+                    break;
+                default:
+                    throw new ApiException(415, "Bad content type: " + rawMime);
+            }
+        } catch (MatchExpressionValidationException
+                | IllegalArgumentException
+                | JsonSyntaxException e) {
+            throw new ApiException(400, e);
+        }
+
+        try {
+            return new IntermediateResponse<DryRunResult>().body(evaluator.evaluate(rule));
+        } catch (ScriptException e) {
+            throw new ApiException(400, e);
+        }
+    }
+
+    private Rule fromForm(MultiMap form) throws MatchExpressionValidationException {
+        Rule.Builder builder = Rule.Builder.from(form);
+        if (!form.contains(Rule.Attribute.NAME.getSerialKey())) {
+            builder.name(PLACEHOLDER_NAME);
+        }
+        if (!form.contains(Rule.Attribute.EVENT_SPECIFIER.getSerialKey())) {
+            builder.eventSpecifier(PLACEHOLDER_EVENT_SPECIFIER);
+        }
+        return builder.build();
+    }
+
+    private Rule fromJson(String body) throws MatchExpressionValidationException {
+        JsonObject json = gson.fromJson(body, JsonObject.class);
+        if (json == null) {
+            throw new IllegalArgumentException("POST body was null");
+        }
+        if (!json.has(Rule.Attribute.MATCH_EXPRESSION.getSerialKey())) {
+            throw new IllegalArgumentException(
+                    String.format("\"%s\" must be provided", Rule.Attribute.MATCH_EXPRESSION));
+        }
+        setIfAbsent(json, Rule.Attribute.NAME, PLACEHOLDER_NAME);
+        setIfAbsent(json, Rule.Attribute.DESCRIPTION, "");
+        setIfAbsent(json, Rule.Attribute.EVENT_SPECIFIER, PLACEHOLDER_EVENT_SPECIFIER);
+        return Rule.Builder.from(json).build();
+    }
+
+    private static void setIfAbsent(JsonObject json, Rule.Attribute attr, String value) {
+        if (!json.has(attr.getSerialKey())) {
+            json.addProperty(attr.getSerialKey(), value);
+        }
+    }
+}
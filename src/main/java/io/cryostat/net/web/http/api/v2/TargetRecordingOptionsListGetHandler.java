@@ -67,7 +67,7 @@ class TargetRecordingOptionsListGetHandler
     }
 
     @Override
-    boolean requiresAuthentication() {
+    public boolean requiresAuthentication() {
         return true;
     }
 
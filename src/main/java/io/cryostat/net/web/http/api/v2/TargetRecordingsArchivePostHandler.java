@@ -0,0 +1,157 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.inject.Inject;
+
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.ConnectionDescriptor;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingNotFoundException;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpMethod;
+
+class TargetRecordingsArchivePostHandler
+        extends AbstractDeferredV2RequestHandler<Map<String, String>> {
+
+    private static final String NOTIFICATION_CATEGORY = "RecordingArchived";
+
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final NotificationFactory notificationFactory;
+
+    @Inject
+    TargetRecordingsArchivePostHandler(
+            AuthManager auth,
+            RecordingArchiveHelper recordingArchiveHelper,
+            NotificationFactory notificationFactory,
+            Gson gson) {
+        super(auth, gson);
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.notificationFactory = notificationFactory;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.V2;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public String path() {
+        return basePath() + "targets/:targetId/archive";
+    }
+
+    @Override
+    HttpMimeType mimeType() {
+        return HttpMimeType.JSON;
+    }
+
+    @Override
+    CompletableFuture<IntermediateResponse<Map<String, String>>> handleAsync(
+            RequestParameters requestParams) throws Exception {
+        ConnectionDescriptor connectionDescriptor =
+                getConnectionDescriptorFromParams(requestParams);
+        Map<String, CompletableFuture<String>> saves =
+                recordingArchiveHelper.saveAllRecordings(connectionDescriptor);
+        // the transfers run on the archival executor, so respond once they are all done rather
+        // than holding a thread for their duration
+        return CompletableFuture.allOf(saves.values().toArray(new CompletableFuture<?>[0]))
+                .handle((v, t) -> collectResults(connectionDescriptor, saves));
+    }
+
+    private IntermediateResponse<Map<String, String>> collectResults(
+            ConnectionDescriptor connectionDescriptor,
+            Map<String, CompletableFuture<String>> saves) {
+        Map<String, String> archived = new LinkedHashMap<>();
+        List<String> failed = new ArrayList<>();
+        Throwable failure = null;
+        for (Map.Entry<String, CompletableFuture<String>> save : saves.entrySet()) {
+            try {
+                String saveName = save.getValue().join();
+                archived.put(save.getKey(), saveName);
+                notificationFactory
+                        .createBuilder()
+                        .metaCategory(NOTIFICATION_CATEGORY)
+                        .metaType(HttpMimeType.JSON)
+                        .targetId(connectionDescriptor.getTargetId())
+                        .message(
+                                Map.of(
+                                        "recording",
+                                        saveName,
+                                        "target",
+                                        connectionDescriptor.getTargetId()))
+                        .build()
+                        .send();
+            } catch (CompletionException e) {
+                // a recording closed while the others were being archived is simply left out
+                if (e.getCause() instanceof RecordingNotFoundException) {
+                    continue;
+                }
+                failed.add(save.getKey());
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new ApiException(
+                    500, "Failed to archive recordings: " + String.join(", ", failed), failure);
+        }
+        return new IntermediateResponse<Map<String, String>>().body(archived);
+    }
+}
@@ -77,7 +77,7 @@ class TargetSnapshotPostHandler
     }
 
     @Override
-    boolean requiresAuthentication() {
+    public boolean requiresAuthentication() {
         return true;
     }
 
@@ -38,8 +38,11 @@
 package io.cryostat.platform;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -65,6 +68,7 @@ public abstract class PlatformModule {
 
     static final String PLATFORM_STRATEGY_ENV_VAR = "CRYOSTAT_PLATFORM";
     static final String AUTH_MANAGER_ENV_VAR = "CRYOSTAT_AUTH_MANAGER";
+    static final String DISCOVERY_BATCH_WINDOW_ENV_VAR = "CRYOSTAT_DISCOVERY_NOTIFICATION_BATCH_MS";
 
     @Provides
     @Singleton
@@ -72,11 +76,25 @@ public abstract class PlatformModule {
             NotificationFactory notificationFactory,
             PlatformDetectionStrategy<?> platformStrategy,
             CustomTargetPlatformClient customTargetPlatformClient,
+            Environment env,
             Logger logger) {
+        List<PlatformClient> clients =
+                List.of(customTargetPlatformClient, platformStrategy.getPlatformClient());
+        long batchWindowMs = 0;
+        try {
+            batchWindowMs = Long.parseLong(env.getEnv(DISCOVERY_BATCH_WINDOW_ENV_VAR, "0"));
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+        }
+        if (batchWindowMs <= 0) {
+            return new MergingPlatformClient(notificationFactory, clients);
+        }
+        logger.info("Batching target discovery notifications every {}ms", batchWindowMs);
         return new MergingPlatformClient(
                 notificationFactory,
-                customTargetPlatformClient,
-                platformStrategy.getPlatformClient());
+                Duration.ofMillis(batchWindowMs),
+                Executors.newSingleThreadScheduledExecutor(),
+                clients);
     }
 
     @Provides
@@ -38,14 +38,17 @@
 package io.cryostat.platform.internal;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import io.cryostat.messaging.notifications.NotificationBatcher;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
@@ -54,33 +57,61 @@ import io.cryostat.platform.TargetDiscoveryEvent;
 public class MergingPlatformClient implements PlatformClient, Consumer<TargetDiscoveryEvent> {
 
     static final String NOTIFICATION_CATEGORY = "TargetJvmDiscovery";
+    static final String BATCH_NOTIFICATION_CATEGORY = "TargetJvmDiscoveryBatch";
 
     private final List<PlatformClient> clients;
     private final Set<Consumer<TargetDiscoveryEvent>> listeners;
 
     public MergingPlatformClient(
             NotificationFactory notificationFactory, List<PlatformClient> clients) {
-        this.clients = clients;
-        this.listeners = new HashSet<>();
-        this.clients.forEach(pc -> pc.addTargetDiscoveryListener(this));
-
-        addTargetDiscoveryListener(
+        this(
+                clients,
                 tde ->
                         notificationFactory
                                 .createBuilder()
                                 .metaCategory(NOTIFICATION_CATEGORY)
-                                .message(
-                                        Map.of(
-                                                "event",
-                                                Map.of(
-                                                        "kind",
-                                                        tde.getEventKind(),
-                                                        "serviceRef",
-                                                        tde.getServiceRef())))
+                                .targetId(tde.getServiceRef().getServiceUri().toString())
+                                .message(Map.of("event", toMessage(tde)))
                                 .build()
                                 .send());
     }
 
+    /**
+     * Discovery notifications are collected for batchWindow and sent together as a single
+     * BATCH_NOTIFICATION_CATEGORY notification. A target which is lost and found again, or found
+     * and lost again, within the window is left out of the batch.
+     */
+    public MergingPlatformClient(
+            NotificationFactory notificationFactory,
+            Duration batchWindow,
+            ScheduledExecutorService timer,
+            List<PlatformClient> clients) {
+        this(
+                clients,
+                new NotificationBatcher<TargetDiscoveryEvent>(
+                        notificationFactory,
+                        BATCH_NOTIFICATION_CATEGORY,
+                        batchWindow,
+                        timer,
+                        TargetDiscoveryEvent::getServiceRef,
+                        MergingPlatformClient::coalesce,
+                        batch ->
+                                Map.of(
+                                        "events",
+                                        batch.stream()
+                                                .map(MergingPlatformClient::toMessage)
+                                                .collect(Collectors.toList()))));
+    }
+
+    private MergingPlatformClient(
+            List<PlatformClient> clients, Consumer<TargetDiscoveryEvent> notifier) {
+        this.clients = clients;
+        this.listeners = new HashSet<>();
+        this.clients.forEach(pc -> pc.addTargetDiscoveryListener(this));
+
+        addTargetDiscoveryListener(notifier);
+    }
+
     public MergingPlatformClient(
             NotificationFactory notificationFactory, PlatformClient... clients) {
         this(notificationFactory, Arrays.asList(clients));
@@ -115,4 +146,16 @@ public class MergingPlatformClient implements PlatformClient, Consumer<TargetDis
     public void accept(TargetDiscoveryEvent event) {
         this.listeners.forEach(l -> l.accept(event));
     }
+
+    static TargetDiscoveryEvent coalesce(TargetDiscoveryEvent prev, TargetDiscoveryEvent next) {
+        if (prev.getEventKind() != next.getEventKind()) {
+            // lost then found, or found then lost: the target ends up as it started
+            return null;
+        }
+        return next;
+    }
+
+    private static Map<String, Object> toMessage(TargetDiscoveryEvent tde) {
+        return Map.of("kind", tde.getEventKind(), "serviceRef", tde.getServiceRef());
+    }
 }
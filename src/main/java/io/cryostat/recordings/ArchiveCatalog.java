@@ -0,0 +1,439 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.recordings.storage.ArchiveObject;
+import io.cryostat.recordings.storage.ArchiveStorage;
+
+/**
+ * In-memory catalogue of the archived recordings storage, so that listing archives or checking
+ * whether one exists does not need a directory scan or a remote listing. The catalogue is
+ * populated by {@link #start()}, and then kept current both by Cryostat's own archive writes and
+ * deletions (via {@link #refresh(String)} and {@link #remove(String)}) and, for changes made by
+ * anything else, by watching the directory when archives are stored locally or by periodically
+ * listing the remote storage otherwise.
+ */
+public class ArchiveCatalog {
+
+    // targetName_recordingName_timestamp[.count].jfr, as written by RecordingArchiveHelper
+    private static final Pattern ARCHIVE_NAME_PATTERN =
+            Pattern.compile("([^_]+)_(.+)_(\\d{8}T\\d{6}Z)(\\.\\d+)?\\.jfr");
+    private static final String RULE_RECORDING_PREFIX = "auto_";
+    private static final Comparator<Entry> BY_TIME =
+            Comparator.comparingLong(Entry::getLastModified).thenComparing(Entry::getName);
+    private static final Comparator<Entry> BY_SIZE =
+            Comparator.comparingLong(Entry::getSize).thenComparing(Entry::getName);
+    static final Duration REMOTE_RESCAN_PERIOD = Duration.ofSeconds(60);
+    // files kept alongside the archives which are not archives themselves, such as differential
+    // pieces retained for newer archives after their own archive was deleted, and uploads which
+    // are still being written or checked
+    public static final String HIDDEN_PREFIX = ".";
+
+    private final ArchiveStorage storage;
+    private final Logger logger;
+
+    // entries are sorted by name. The secondary indices are only modified together with this map,
+    // under the catalogue lock, but may be read concurrently
+    private final ConcurrentNavigableMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final NavigableSet<Entry> byTime = new ConcurrentSkipListSet<>(BY_TIME);
+    private final NavigableSet<Entry> bySize = new ConcurrentSkipListSet<>(BY_SIZE);
+    // epoch millis of the last download of each archive since startup
+    private final Map<String, Long> lastAccessed = new ConcurrentHashMap<>();
+    private boolean started;
+
+    ArchiveCatalog(ArchiveStorage storage, Logger logger) {
+        this.storage = storage;
+        this.logger = logger;
+    }
+
+    /** Populate the catalogue from the archive storage and begin watching it for changes. */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        Optional<Path> archivePath = storage.getLocalDirectory();
+        if (archivePath.isPresent()) {
+            if (!Files.isDirectory(archivePath.get())) {
+                logger.warn(
+                        "Archive path {} is not a directory, catalogue is empty",
+                        archivePath.get());
+                return;
+            }
+            // watch first so that nothing written during the initial scan is missed
+            watch(archivePath.get());
+            rescan();
+        } else {
+            ScheduledExecutorService scheduler =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "cryostat-archive-rescan");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            rescan();
+            scheduler.scheduleWithFixedDelay(
+                    this::rescan,
+                    REMOTE_RESCAN_PERIOD.toMillis(),
+                    REMOTE_RESCAN_PERIOD.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        started = true;
+        logger.info("Archive catalogue loaded with {} recordings", entries.size());
+    }
+
+    /** @return all catalogued archives, ordered by name */
+    public List<Entry> list() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public Optional<Entry> get(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /** Record that the named archive has just been read, for least-recently-used eviction. */
+    public void touch(String name) {
+        if (entries.containsKey(name)) {
+            lastAccessed.merge(name, System.currentTimeMillis(), Math::max);
+        }
+    }
+
+    /**
+     * @return the time in epoch milliseconds that the archive was last downloaded or written,
+     *     whichever is later. Downloads are only tracked since startup
+     */
+    public long getLastAccessed(Entry entry) {
+        Long accessed = lastAccessed.get(entry.getName());
+        return accessed == null
+                ? entry.getLastModified()
+                : Math.max(entry.getLastModified(), accessed);
+    }
+
+    /**
+     * Walk the catalogue in the given order, starting just past the given position, and collect up
+     * to limit entries which pass the filter. Only as much of the catalogue as is needed to fill
+     * the page is visited.
+     *
+     * @param after the last entry of the previous page, or null to start from the beginning. Only
+     *     the name and the sort key of this entry are used
+     */
+    public List<Entry> page(
+            SortKey sort, boolean descending, Entry after, Predicate<Entry> filter, int limit) {
+        List<Entry> page = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Entry entry : ordered(sort, descending, after)) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (filter.test(entry)) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    private Iterable<Entry> ordered(SortKey sort, boolean descending, Entry after) {
+        if (sort == SortKey.NAME) {
+            ConcurrentNavigableMap<String, Entry> map =
+                    descending ? entries.descendingMap() : entries;
+            if (after != null) {
+                map = map.tailMap(after.getName(), false);
+            }
+            return map.values();
+        }
+        NavigableSet<Entry> index = sort == SortKey.TIME ? byTime : bySize;
+        if (descending) {
+            index = index.descendingSet();
+        }
+        if (after != null) {
+            index = index.tailSet(after, false);
+        }
+        return index;
+    }
+
+    /**
+     * Update the catalogue entry for the named archive from its current attributes in storage,
+     * adding or removing the entry as needed. Called after Cryostat writes an archive, so that the
+     * catalogue is current without waiting for the directory watcher or the next rescan.
+     */
+    public void refresh(String name) {
+        if (isHidden(name)) {
+            return;
+        }
+        try {
+            Optional<ArchiveObject> object = storage.stat(name);
+            if (object.isEmpty()) {
+                remove(name);
+                return;
+            }
+            put(entryOf(object.get()));
+        } catch (NoSuchFileException e) {
+            remove(name);
+        } catch (IOException e) {
+            logger.warn(e);
+        }
+    }
+
+    private Entry entryOf(ArchiveObject object) throws IOException {
+        long size = object.getSize();
+        List<ArchiveChunkStore.Chunk> chunks = List.of();
+        // deduplicated archives are manifests, so account for the chunks they refer to
+        Optional<Path> path = storage.getLocalPath(object.getName());
+        if (path.isPresent()) {
+            Optional<List<ArchiveChunkStore.Chunk>> manifest =
+                    ArchiveChunkStore.readManifest(path.get());
+            if (manifest.isPresent()) {
+                chunks = manifest.get();
+                size = chunks.stream().mapToLong(ArchiveChunkStore.Chunk::getStoredSize).sum();
+            }
+        }
+        return Entry.of(object.getName(), size, object.getLastModified(), chunks);
+    }
+
+    public static boolean isHidden(String name) {
+        return name.startsWith(HIDDEN_PREFIX);
+    }
+
+    public synchronized void remove(String name) {
+        Entry previous = entries.remove(name);
+        lastAccessed.remove(name);
+        if (previous != null) {
+            byTime.remove(previous);
+            bySize.remove(previous);
+        }
+    }
+
+    private synchronized void put(Entry entry) {
+        Entry previous = entries.put(entry.getName(), entry);
+        if (previous != null) {
+            byTime.remove(previous);
+            bySize.remove(previous);
+        }
+        byTime.add(entry);
+        bySize.add(entry);
+    }
+
+    synchronized void rescan() {
+        try {
+            Map<String, ArchiveObject> objects = new HashMap<>();
+            for (ArchiveObject object : storage.list()) {
+                if (!isHidden(object.getName())) {
+                    objects.put(object.getName(), object);
+                }
+            }
+            for (String name : List.copyOf(entries.keySet())) {
+                if (!objects.containsKey(name)) {
+                    remove(name);
+                }
+            }
+            for (ArchiveObject object : objects.values()) {
+                try {
+                    put(entryOf(object));
+                } catch (NoSuchFileException e) {
+                    // deleted since it was listed
+                    remove(object.getName());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // a failed remote listing must not stop the periodic rescan
+            logger.error(e);
+        }
+    }
+
+    private void watch(Path archivePath) {
+        try {
+            WatchService watchService = archivePath.getFileSystem().newWatchService();
+            archivePath.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            Thread watcher =
+                    new Thread(
+                            () -> pollChanges(archivePath, watchService),
+                            "cryostat-archive-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            // still usable, but only changes made by Cryostat itself will be seen
+            logger.warn("Unable to watch archive path {} for changes", archivePath);
+            logger.warn(e);
+        }
+    }
+
+    private void pollChanges(Path archivePath, WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        logger.info("Archive watch events were lost, rescanning {}", archivePath);
+                        rescan();
+                        continue;
+                    }
+                    String name = event.context().toString();
+                    if (event.kind() == ENTRY_DELETE) {
+                        remove(name);
+                    } else {
+                        refresh(name);
+                    }
+                }
+                if (!key.reset()) {
+                    logger.warn("Archive path {} is no longer watched", archivePath);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public enum SortKey {
+        NAME,
+        TIME,
+        SIZE,
+    }
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final String sourceTarget;
+        private final String rule;
+        private final List<ArchiveChunkStore.Chunk> chunks;
+
+        public Entry(String name, long size, long lastModified, String sourceTarget, String rule) {
+            this(name, size, lastModified, sourceTarget, rule, List.of());
+        }
+
+        Entry(
+                String name,
+                long size,
+                long lastModified,
+                String sourceTarget,
+                String rule,
+                List<ArchiveChunkStore.Chunk> chunks) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sourceTarget = sourceTarget;
+            this.rule = rule;
+            this.chunks = List.copyOf(chunks);
+        }
+
+        static Entry of(
+                String name, long size, long lastModified, List<ArchiveChunkStore.Chunk> chunks) {
+            String sourceTarget = null;
+            String rule = null;
+            Matcher m = ARCHIVE_NAME_PATTERN.matcher(name);
+            if (m.matches()) {
+                sourceTarget = m.group(1);
+                String recordingName = m.group(2);
+                if (recordingName.startsWith(RULE_RECORDING_PREFIX)) {
+                    rule = recordingName.substring(RULE_RECORDING_PREFIX.length());
+                }
+            }
+            return new Entry(name, size, lastModified, sourceTarget, rule, chunks);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the size of the archive. For a deduplicated archive this is the total stored
+         *     size of its chunks, some of which may be shared with other archives
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /** @return the chunks of a deduplicated archive, or an empty list for a plain archive */
+        public List<ArchiveChunkStore.Chunk> getChunks() {
+            return chunks;
+        }
+
+        /** @return the archive's last modification time, in epoch milliseconds */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the alias or hostname of the target the recording was archived from, as encoded
+         *     in the archive name, or empty if the name does not follow the archive naming scheme
+         */
+        public Optional<String> getSourceTarget() {
+            return Optional.ofNullable(sourceTarget);
+        }
+
+        /** @return the name of the automated rule which created the recording, if any */
+        public Optional<String> getRule() {
+            return Optional.ofNullable(rule);
+        }
+    }
+}
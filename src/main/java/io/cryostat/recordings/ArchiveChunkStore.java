@@ -0,0 +1,406 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.cryostat.core.log.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Content-addressed store of JFR chunks beneath the archive directory. When enabled, an archived
+ * recording is written as a small manifest listing the SHA-256 hashes of its chunks, and each
+ * distinct chunk is stored once under {@value #CHUNKS_DIRECTORY}, so the same chunks archived
+ * repeatedly from a continuous recording only occupy disk space once. Chunks are reference counted
+ * across all manifests and deleted when the last archive referring to them is deleted. The
+ * complete recording is only reassembled, by {@link #openArchive(Path)}, when it is downloaded or
+ * analysed.
+ */
+public class ArchiveChunkStore {
+
+    public static final String CHUNKS_DIRECTORY = ".chunks";
+    static final byte[] MANIFEST_MAGIC =
+            "#cryostat-chunked-archive 1\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String TEMP_DIRECTORY = "tmp";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Path archivePath;
+    private final Path chunksPath;
+    private final ArchiveCodec codec;
+    private final boolean enabled;
+    private final Logger logger;
+
+    // chunk hash -> number of manifests referring to it. Guarded by this
+    private final Map<String, Integer> references = new HashMap<>();
+
+    ArchiveChunkStore(Path archivePath, ArchiveCodec codec, boolean enabled, Logger logger) {
+        this.archivePath = archivePath;
+        this.chunksPath = archivePath.resolve(CHUNKS_DIRECTORY);
+        this.codec = codec;
+        this.enabled = enabled;
+        this.logger = logger;
+    }
+
+    /** @return whether newly archived recordings should be written through the store */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rebuild the chunk reference counts from the manifests in the archive directory, and delete
+     * any chunks no longer referred to along with temporary files left behind by an interrupted
+     * write. This is done even if the store is disabled, so that archives written while it was
+     * enabled can still be deleted cleanly.
+     */
+    public synchronized void load() {
+        references.clear();
+        if (!Files.isDirectory(chunksPath)) {
+            return;
+        }
+        try (DirectoryStream<Path> archives = Files.newDirectoryStream(archivePath)) {
+            for (Path archive : archives) {
+                if (!Files.isRegularFile(archive)) {
+                    continue;
+                }
+                for (Chunk chunk : readManifest(archive).orElse(List.of())) {
+                    references.merge(chunk.getHash(), 1, Integer::sum);
+                }
+            }
+        } catch (IOException e) {
+            // without a complete view of the manifests it is not safe to collect anything
+            logger.error(e);
+            return;
+        }
+        int collected = 0;
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(chunksPath)) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) {
+                    continue;
+                }
+                boolean temp = TEMP_DIRECTORY.equals(shard.getFileName().toString());
+                try (DirectoryStream<Path> chunks = Files.newDirectoryStream(shard)) {
+                    for (Path chunk : chunks) {
+                        if (temp || !references.containsKey(chunk.getFileName().toString())) {
+                            Files.deleteIfExists(chunk);
+                            collected++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(e);
+        }
+        logger.info(
+                "Archive chunk store loaded with {} chunks, {} unreferenced files removed",
+                references.size(),
+                collected);
+    }
+
+    /**
+     * Split the recording into its JFR chunks, store any chunks not already present, and write
+     * the manifest to the destination. The destination must not already exist.
+     */
+    public void write(InputStream recording, Path destination) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            JfrChunkReader.forEachChunk(recording, (header, chunk) -> chunks.add(store(chunk)));
+            try (Writer writer =
+                    Files.newBufferedWriter(
+                            destination,
+                            StandardCharsets.US_ASCII,
+                            StandardOpenOption.CREATE_NEW)) {
+                writer.write(new String(MANIFEST_MAGIC, StandardCharsets.US_ASCII));
+                for (Chunk chunk : chunks) {
+                    writer.write(chunk.toString());
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!(e instanceof FileAlreadyExistsException)) {
+                Files.deleteIfExists(destination);
+            }
+            release(chunks);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the chunks listed in the archive's manifest, or an empty list if the archive is a
+     *     plain recording file
+     */
+    public List<Chunk> getChunks(Path archive) throws IOException {
+        return readManifest(archive).orElse(List.of());
+    }
+
+    /**
+     * Delete the archive, which may be a manifest or a plain recording, and release the chunks its
+     * manifest refers to. The chunks are only released by the call which actually removed the
+     * archive, so overlapping deletes of the same archive cannot drop its references twice and
+     * delete chunks which other manifests still use.
+     *
+     * @return whether this call deleted the archive, false if it was already absent
+     */
+    public synchronized boolean delete(Path archive) throws IOException {
+        List<Chunk> chunks;
+        try {
+            chunks = getChunks(archive);
+            Files.delete(archive);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        release(chunks);
+        return true;
+    }
+
+    /** Drop one reference to each chunk, deleting chunks which are no longer referred to. */
+    public synchronized void release(List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            Integer count = references.computeIfPresent(chunk.getHash(), (k, v) -> v - 1);
+            if (count == null || count > 0) {
+                continue;
+            }
+            references.remove(chunk.getHash());
+            try {
+                Files.deleteIfExists(chunkPath(chunksPath, chunk.getHash()));
+            } catch (IOException e) {
+                // left for the next load() to collect
+                logger.warn(e);
+            }
+        }
+    }
+
+    /** @return the number of distinct chunks currently stored */
+    public synchronized int size() {
+        return references.size();
+    }
+
+    private Chunk store(InputStream chunk) throws IOException {
+        Path tempDir = chunksPath.resolve(TEMP_DIRECTORY);
+        Files.createDirectories(tempDir);
+        Path temp = Files.createTempFile(tempDir, "chunk", null);
+        try {
+            MessageDigest digest = newDigest();
+            CountingInputStream counting =
+                    new CountingInputStream(new DigestInputStream(chunk, digest));
+            try (InputStream encoded = codec.encode(counting)) {
+                Files.copy(encoded, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = Hex.encodeHexString(digest.digest());
+            Path path = chunkPath(chunksPath, hash);
+            synchronized (this) {
+                if (!Files.exists(path)) {
+                    Files.createDirectories(path.getParent());
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+                }
+                references.merge(hash, 1, Integer::sum);
+            }
+            return new Chunk(hash, counting.getByteCount(), Files.size(path));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** @return whether the archive file is a chunk manifest rather than a recording */
+    public static boolean isChunked(Path archive) throws IOException {
+        try (InputStream in = Files.newInputStream(archive)) {
+            return Arrays.equals(MANIFEST_MAGIC, in.readNBytes(MANIFEST_MAGIC.length));
+        }
+    }
+
+    /** @return the chunks listed in the manifest, or empty if the archive is not a manifest */
+    public static Optional<List<Chunk>> readManifest(Path archive) throws IOException {
+        try (InputStream in = Files.newInputStream(archive)) {
+            if (!Arrays.equals(MANIFEST_MAGIC, in.readNBytes(MANIFEST_MAGIC.length))) {
+                return Optional.empty();
+            }
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            List<Chunk> chunks = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    chunks.add(Chunk.parse(line));
+                }
+            }
+            return Optional.of(chunks);
+        }
+    }
+
+    /**
+     * Open an archived recording for reading as a plain, uncompressed JFR stream, reassembling it
+     * from the chunk store next to it if the archive is a chunk manifest.
+     */
+    public static InputStream openArchive(Path archive) throws IOException {
+        Optional<List<Chunk>> chunks = readManifest(archive);
+        if (chunks.isEmpty()) {
+            return ArchiveCodec.decode(Files.newInputStream(archive));
+        }
+        Path chunksPath = archive.toAbsolutePath().getParent().resolve(CHUNKS_DIRECTORY);
+        return new ChunkSequenceInputStream(chunksPath, chunks.get().iterator());
+    }
+
+    static Path chunkPath(Path chunksPath, String hash) {
+        return chunksPath.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Chunk {
+        private final String hash;
+        private final long size;
+        private final long storedSize;
+
+        Chunk(String hash, long size, long storedSize) {
+            this.hash = Objects.requireNonNull(hash);
+            this.size = size;
+            this.storedSize = storedSize;
+        }
+
+        static Chunk parse(String line) throws IOException {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 3 || parts[0].length() < 2) {
+                throw new IOException("Invalid chunk manifest line: " + line);
+            }
+            try {
+                return new Chunk(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk manifest line: " + line, e);
+            }
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /** @return the size of the chunk in the reassembled recording */
+        public long getSize() {
+            return size;
+        }
+
+        /** @return the size of the chunk as stored on disk */
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d %d", hash, size, storedSize);
+        }
+    }
+
+    /** Concatenates the decoded chunks, opening each one only once the previous is exhausted. */
+    private static class ChunkSequenceInputStream extends InputStream {
+        private final Path chunksPath;
+        private final Iterator<Chunk> chunks;
+        private InputStream current;
+
+        ChunkSequenceInputStream(Path chunksPath, Iterator<Chunk> chunks) {
+            this.chunksPath = chunksPath;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current == null) {
+                    if (!chunks.hasNext()) {
+                        return -1;
+                    }
+                    Path path = chunkPath(chunksPath, chunks.next().getHash());
+                    current = ArchiveCodec.decode(Files.newInputStream(path));
+                }
+                int n = current.read(b, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
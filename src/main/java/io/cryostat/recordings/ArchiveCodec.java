@@ -0,0 +1,231 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses archived recordings as they are written and decompresses them as they are read.
+ * Archives keep their .jfr names whether or not they are compressed, and compressed archives are
+ * recognized by the gzip magic number, so archives written before compression was enabled (or
+ * with it disabled) remain readable. Both directions stream, so a recording is never held in
+ * memory in full.
+ */
+public class ArchiveCodec {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    private final Compression compression;
+
+    public ArchiveCodec(Compression compression) {
+        this.compression = compression;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /** @return a stream of the encoded form of the given raw recording stream */
+    public InputStream encode(InputStream raw) {
+        switch (compression) {
+            case GZIP:
+                return new GzipEncodingInputStream(raw);
+            case NONE:
+            default:
+                return raw;
+        }
+    }
+
+    /** @return a stream which encodes what is written to it onto the given stream */
+    public OutputStream encode(OutputStream out) throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case NONE:
+            default:
+                return out;
+        }
+    }
+
+    /** @return the raw recording stream for the given stored archive stream */
+    public static InputStream decode(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored, BUFFER_SIZE);
+        if (isCompressed(in)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    /** Check for the gzip magic number without consuming any of the stream. */
+    public static boolean isCompressed(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Stream must support mark");
+        }
+        in.mark(2);
+        try {
+            return in.read() == GZIP_MAGIC_0 && in.read() == GZIP_MAGIC_1;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public static boolean isCompressed(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 2)) {
+            return isCompressed(in);
+        }
+    }
+
+    public enum Compression {
+        NONE,
+        GZIP,
+    }
+
+    /**
+     * Produces the gzip format of the wrapped stream on read: a fixed header, the deflated data,
+     * then a trailer of the CRC and length of the data, which is only known once the wrapped stream
+     * is exhausted.
+     */
+    static class GzipEncodingInputStream extends SequenceInputStream {
+
+        // magic, deflate method, no flags, no modification time, no extra flags, unknown OS
+        private static final byte[] HEADER = {
+            GZIP_MAGIC_0, (byte) GZIP_MAGIC_1, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+        };
+
+        GzipEncodingInputStream(InputStream raw) {
+            super(new Parts(raw));
+        }
+
+        private static class Parts implements Enumeration<InputStream> {
+            private final CrcInputStream raw;
+            private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            private int next;
+
+            Parts(InputStream raw) {
+                this.raw = new CrcInputStream(raw);
+            }
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < 3;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                switch (next++) {
+                    case 0:
+                        return new ByteArrayInputStream(HEADER);
+                    case 1:
+                        return new DeflaterInputStream(raw, deflater, BUFFER_SIZE) {
+                            @Override
+                            public void close() throws IOException {
+                                deflater.end();
+                                super.close();
+                            }
+                        };
+                    case 2:
+                        return new ByteArrayInputStream(raw.trailer());
+                    default:
+                        throw new NoSuchElementException();
+                }
+            }
+        }
+    }
+
+    private static class CrcInputStream extends FilterInputStream {
+        private final CRC32 crc = new CRC32();
+        private long length;
+
+        CrcInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                crc.update(b);
+                length++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                crc.update(b, off, n);
+                length += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        byte[] trailer() {
+            long value = crc.getValue();
+            long size = length & 0xffffffffL;
+            byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (value >>> (8 * i));
+                trailer[i + 4] = (byte) (size >>> (8 * i));
+            }
+            return trailer;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Describes a differential archive: the ordered archived pieces which, concatenated, make up the
+ * complete recording as it was when the archive was taken. The last piece is the archive file
+ * itself, holding only the chunks which were new since the previous archive.
+ */
+public class ArchiveManifest {
+
+    private final List<Piece> pieces;
+
+    ArchiveManifest(List<Piece> pieces) {
+        this.pieces = new ArrayList<>(pieces);
+    }
+
+    public List<Piece> getPieces() {
+        return Collections.unmodifiableList(pieces);
+    }
+
+    boolean lists(String pieceName) {
+        return pieces.stream().anyMatch(piece -> piece.getName().equals(pieceName));
+    }
+
+    /** @return a copy of this manifest with the named piece renamed, keeping its time range */
+    ArchiveManifest renamePiece(String from, String to) {
+        List<Piece> renamed = new ArrayList<>(pieces.size());
+        for (Piece piece : pieces) {
+            renamed.add(
+                    piece.getName().equals(from)
+                            ? new Piece(to, piece.getStartNanos(), piece.getEndNanos())
+                            : piece);
+        }
+        return new ArchiveManifest(renamed);
+    }
+
+    /**
+     * @return a digest of the time ranges of the pieces, which identifies the content of the
+     *     complete recording. Piece names are left out, since pieces are renamed when the archive
+     *     they were saved as is deleted but other differential archives still list them
+     */
+    public String getDigest() {
+        StringBuilder ranges = new StringBuilder();
+        for (Piece piece : pieces) {
+            ranges.append(piece.getStartNanos())
+                    .append('-')
+                    .append(piece.getEndNanos())
+                    .append(';');
+        }
+        return DigestUtils.sha256Hex(ranges.toString());
+    }
+
+    public long getEndNanos() {
+        return pieces.isEmpty() ? Long.MIN_VALUE : pieces.get(pieces.size() - 1).getEndNanos();
+    }
+
+    public static class Piece {
+        private final String name;
+        private final long startNanos;
+        private final long endNanos;
+
+        Piece(String name, long startNanos, long endNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getEndNanos() {
+            return endNanos;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.recordings.ArchiveCatalog.Entry;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Enforces archive retention limits in the background. Each pass works out, from the in-memory
+ * {@link ArchiveCatalog}, which archives must go to bring the archive back within its limits:
+ * archives older than the maximum age, and then the least recently modified (or used) archives
+ * for as long as the archive as a whole, or the archives from a single target, are over their
+ * byte quota or the archive is over its maximum count. At most one batch of archives is deleted
+ * per pass, on the retention engine's own thread, and further passes follow immediately until the
+ * limits are met, so a large backlog is worked through without holding up anything else. Byte
+ * quotas are measured against the space the archives take up on disk, so chunks shared between
+ * deduplicated archives, and pieces shared between differential archives, are only counted once.
+ * Evicting an archive whose file is still a piece of newer differential archives only hides it,
+ * so it reclaims nothing until the last of those archives is evicted too.
+ */
+public class ArchiveRetentionEngine {
+
+    static final String NOTIFICATION_CATEGORY = "ArchiveRetentionEvicted";
+
+    private final ArchiveCatalog catalog;
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final NotificationFactory notificationFactory;
+    private final ScheduledExecutorService timer;
+    private final Clock clock;
+    private final Policy policy;
+    private final Duration period;
+    private final int batchSize;
+    private final Logger logger;
+
+    private boolean started;
+    private long passes;
+    private long evicted;
+    private long reclaimedBytes;
+    private long failures;
+    private long archiveBytes;
+    private int archiveCount;
+
+    ArchiveRetentionEngine(
+            ArchiveCatalog catalog,
+            RecordingArchiveHelper recordingArchiveHelper,
+            NotificationFactory notificationFactory,
+            ScheduledExecutorService timer,
+            Clock clock,
+            Policy policy,
+            Duration period,
+            int batchSize,
+            Logger logger) {
+        this.catalog = catalog;
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.notificationFactory = notificationFactory;
+        this.timer = timer;
+        this.clock = clock;
+        this.policy = policy;
+        this.period = period;
+        this.batchSize = batchSize;
+        this.logger = logger;
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (policy.isUnlimited()) {
+            logger.info("No archive retention limits set");
+            return;
+        }
+        logger.info(
+                "Archive retention: max {} bytes, {} bytes per target, {} recordings, age {},"
+                        + " evicting {} first",
+                policy.maxBytes,
+                policy.maxBytesPerTarget,
+                policy.maxCount,
+                policy.maxAge,
+                policy.eviction == EvictionOrder.LRU ? "least recently used" : "oldest");
+        schedule(0);
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(passes, evicted, reclaimedBytes, failures, archiveBytes, archiveCount);
+    }
+
+    private void schedule(long delayMillis) {
+        timer.schedule(this::runPass, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runPass() {
+        boolean more = false;
+        try {
+            more = enforce();
+        } catch (Exception e) {
+            logger.error(e);
+        } finally {
+            schedule(more ? 0 : period.toMillis());
+        }
+    }
+
+    /**
+     * Evict one batch of archives.
+     *
+     * @return true if there were more archives to evict than fit in the batch
+     */
+    boolean enforce() {
+        List<Entry> entries = catalog.list();
+        Map<String, Map<String, Long>> parts = new HashMap<>();
+        for (Entry entry : entries) {
+            try {
+                parts.put(entry.getName(), recordingArchiveHelper.getStoredParts(entry));
+            } catch (IOException e) {
+                logger.warn(e);
+                parts.put(entry.getName(), storedParts(entry));
+            }
+        }
+        Function<Entry, Map<String, Long>> partsOf = entry -> parts.get(entry.getName());
+        ToLongFunction<Entry> recency =
+                policy.eviction == EvictionOrder.LRU
+                        ? catalog::getLastAccessed
+                        : Entry::getLastModified;
+        List<Eviction> selected =
+                select(
+                        entries,
+                        partsOf,
+                        policy,
+                        clock.now().toEpochMilli(),
+                        recency,
+                        batchSize + 1);
+        boolean more = selected.size() > batchSize;
+        if (more) {
+            selected = selected.subList(0, batchSize);
+        }
+
+        // only released for deletions which succeed, so just the space actually freed is reported
+        Usage usage = new Usage(entries, partsOf);
+        List<String> names = new ArrayList<>();
+        long batchBytes = 0;
+        int batchFailures = 0;
+        for (Eviction eviction : selected) {
+            Entry entry = eviction.getEntry();
+            try {
+                recordingArchiveHelper.deleteArchivedRecording(entry.getName());
+                names.add(entry.getName());
+                long freed = usage.release(entry);
+                batchBytes += freed;
+                new ArchiveEvictedEvent(
+                                entry.getName(),
+                                entry.getSourceTarget().orElse(null),
+                                eviction.getReason().name(),
+                                entry.getSize())
+                        .commit();
+                logger.info(
+                        "Evicted archived recording {} ({} bytes reclaimed, {})",
+                        entry.getName(),
+                        freed,
+                        eviction.getReason());
+            } catch (IOException e) {
+                batchFailures++;
+                logger.warn(e);
+            }
+        }
+
+        synchronized (this) {
+            passes++;
+            evicted += names.size();
+            reclaimedBytes += batchBytes;
+            failures += batchFailures;
+            archiveBytes = usage.getTotalBytes();
+            archiveCount = entries.size() - names.size();
+        }
+
+        if (!names.isEmpty()) {
+            notificationFactory
+                    .createBuilder()
+                    .metaCategory(NOTIFICATION_CATEGORY)
+                    .metaType(HttpMimeType.JSON)
+                    .message(Map.of("recordings", names, "reclaimedBytes", batchBytes))
+                    .build()
+                    .send();
+        }
+        // don't spin on archives which can't be deleted, the next periodic pass will retry them
+        return more && batchFailures < selected.size();
+    }
+
+    /**
+     * @return the parts of an archive which take up space on disk, keyed so that parts shared by
+     *     several archives have the same key, with their stored sizes. A deduplicated archive keeps
+     *     its chunks, and any other archive just its own file
+     */
+    static Map<String, Long> storedParts(Entry entry) {
+        if (entry.getChunks().isEmpty()) {
+            return Map.of(entry.getName(), entry.getSize());
+        }
+        Map<String, Long> parts = new HashMap<>();
+        for (ArchiveChunkStore.Chunk chunk : entry.getChunks()) {
+            // chunk keys contain a separator, so cannot clash with archive names
+            parts.put(
+                    ArchiveChunkStore.CHUNKS_DIRECTORY + "/" + chunk.getHash(),
+                    chunk.getStoredSize());
+        }
+        return parts;
+    }
+
+    /**
+     * Choose which archives to evict, in eviction order, stopping once limit archives have been
+     * chosen.
+     *
+     * @param partsOf the parts of each archive which take up space on disk, as given by {@link
+     *     RecordingArchiveHelper#getStoredParts(Entry)}
+     * @param recency the time, in epoch milliseconds, used to order archives for eviction. The
+     *     least recent archives are evicted first
+     */
+    static List<Eviction> select(
+            List<Entry> entries,
+            Function<Entry, Map<String, Long>> partsOf,
+            Policy policy,
+            long nowMillis,
+            ToLongFunction<Entry> recency,
+            int limit) {
+        List<Entry> ordered = new ArrayList<>(entries);
+        ordered.sort(Comparator.comparingLong(recency).thenComparing(Entry::getName));
+
+        Usage usage = new Usage(ordered, partsOf);
+        int count = ordered.size();
+
+        List<Eviction> evictions = new ArrayList<>();
+        for (Entry entry : ordered) {
+            if (evictions.size() >= limit) {
+                break;
+            }
+            Optional<String> target = entry.getSourceTarget();
+            Reason reason = null;
+            if (policy.maxAge != null
+                    && nowMillis - entry.getLastModified() > policy.maxAge.toMillis()) {
+                reason = Reason.AGE;
+            } else if (policy.maxCount > 0 && count > policy.maxCount) {
+                reason = Reason.COUNT;
+            } else if (policy.maxBytes > 0 && usage.getTotalBytes() > policy.maxBytes) {
+                reason = Reason.SIZE;
+            } else if (policy.maxBytesPerTarget > 0
+                    && target.isPresent()
+                    && usage.getTargetBytes(target.get()) > policy.maxBytesPerTarget) {
+                reason = Reason.TARGET_SIZE;
+            }
+            if (reason == null) {
+                continue;
+            }
+            evictions.add(new Eviction(entry, reason));
+            count--;
+            usage.release(entry);
+        }
+        return evictions;
+    }
+
+    /**
+     * The space a set of archives takes up on disk, overall and for each target. A part shared by
+     * several archives is counted once, and is only freed when the last archive keeping it is
+     * released.
+     */
+    static class Usage {
+        private final Function<Entry, Map<String, Long>> partsOf;
+        // part key -> number of archives keeping it, overall and for each target
+        private final Map<String, Integer> references = new HashMap<>();
+        private final Map<String, Map<String, Integer>> targetReferences = new HashMap<>();
+        private final Map<String, Long> targetBytes = new HashMap<>();
+        private long totalBytes;
+
+        Usage(List<Entry> entries, Function<Entry, Map<String, Long>> partsOf) {
+            this.partsOf = partsOf;
+            for (Entry entry : entries) {
+                Optional<String> target = entry.getSourceTarget();
+                Map<String, Integer> targetRefs =
+                        target.map(t -> targetReferences.computeIfAbsent(t, k -> new HashMap<>()))
+                                .orElse(null);
+                for (Map.Entry<String, Long> part : partsOf.apply(entry).entrySet()) {
+                    if (references.merge(part.getKey(), 1, Integer::sum) == 1) {
+                        totalBytes += part.getValue();
+                    }
+                    if (targetRefs != null
+                            && targetRefs.merge(part.getKey(), 1, Integer::sum) == 1) {
+                        targetBytes.merge(target.get(), part.getValue(), Long::sum);
+                    }
+                }
+            }
+        }
+
+        long getTotalBytes() {
+            return totalBytes;
+        }
+
+        long getTargetBytes(String target) {
+            return targetBytes.getOrDefault(target, 0L);
+        }
+
+        /**
+         * Remove a deleted archive.
+         *
+         * @return the number of bytes freed, counting only the parts no other archive still keeps
+         */
+        long release(Entry entry) {
+            long freed = 0;
+            Optional<String> target = entry.getSourceTarget();
+            for (Map.Entry<String, Long> part : partsOf.apply(entry).entrySet()) {
+                if (unreference(references, part.getKey())) {
+                    freed += part.getValue();
+                }
+                if (target.isPresent()
+                        && unreference(targetReferences.get(target.get()), part.getKey())) {
+                    targetBytes.merge(target.get(), -part.getValue(), Long::sum);
+                }
+            }
+            totalBytes -= freed;
+            return freed;
+        }
+
+        /** @return whether the last reference to the part was dropped */
+        private static boolean unreference(Map<String, Integer> references, String key) {
+            Integer count = references.computeIfPresent(key, (k, v) -> v - 1);
+            if (count == null || count > 0) {
+                return false;
+            }
+            references.remove(key);
+            return true;
+        }
+    }
+
+    public enum EvictionOrder {
+        /** Evict the archives which were written longest ago first. */
+        OLDEST,
+        /** Evict the archives which were downloaded or written longest ago first. */
+        LRU,
+    }
+
+    public enum Reason {
+        AGE,
+        COUNT,
+        SIZE,
+        TARGET_SIZE,
+    }
+
+    /** Retention limits. Limits which are zero, or a null maximum age, are not enforced. */
+    public static class Policy {
+        private final long maxBytes;
+        private final long maxBytesPerTarget;
+        private final int maxCount;
+        private final Duration maxAge;
+        private final EvictionOrder eviction;
+
+        public Policy(
+                long maxBytes,
+                long maxBytesPerTarget,
+                int maxCount,
+                Duration maxAge,
+                EvictionOrder eviction) {
+            this.maxBytes = maxBytes;
+            this.maxBytesPerTarget = maxBytesPerTarget;
+            this.maxCount = maxCount;
+            this.maxAge = maxAge;
+            this.eviction = eviction;
+        }
+
+        boolean isUnlimited() {
+            return maxBytes <= 0 && maxBytesPerTarget <= 0 && maxCount <= 0 && maxAge == null;
+        }
+    }
+
+    static class Eviction {
+        private final Entry entry;
+        private final Reason reason;
+
+        Eviction(Entry entry, Reason reason) {
+            this.entry = entry;
+            this.reason = reason;
+        }
+
+        Entry getEntry() {
+            return entry;
+        }
+
+        Reason getReason() {
+            return reason;
+        }
+    }
+
+    public static class Metrics {
+        private final long passes;
+        private final long evicted;
+        private final long reclaimedBytes;
+        private final long failures;
+        private final long archiveBytes;
+        private final int archiveCount;
+
+        Metrics(
+                long passes,
+                long evicted,
+                long reclaimedBytes,
+                long failures,
+                long archiveBytes,
+                int archiveCount) {
+            this.passes = passes;
+            this.evicted = evicted;
+            this.reclaimedBytes = reclaimedBytes;
+            this.failures = failures;
+            this.archiveBytes = archiveBytes;
+            this.archiveCount = archiveCount;
+        }
+
+        public long getPasses() {
+            return passes;
+        }
+
+        public long getEvicted() {
+            return evicted;
+        }
+
+        public long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /** @return the space the archive took up on disk after the last pass */
+        public long getArchiveBytes() {
+            return archiveBytes;
+        }
+
+        /** @return the number of archived recordings after the last pass */
+        public int getArchiveCount() {
+            return archiveCount;
+        }
+    }
+
+    @Name("io.cryostat.recordings.ArchiveRetentionEngine.ArchiveEvictedEvent")
+    @Label("Archived Recording Eviction")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchiveEvictedEvent extends Event {
+
+        String recordingName;
+        String target;
+        String reason;
+        long size;
+
+        ArchiveEvictedEvent(String recordingName, String target, String reason, long size) {
+            this.recordingName = recordingName;
+            this.target = target;
+            this.reason = reason;
+            this.size = size;
+        }
+    }
+}
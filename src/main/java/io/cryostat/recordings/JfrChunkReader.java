@@ -0,0 +1,183 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Reads a JFR recording stream as its sequence of chunks. Each chunk in a JFR file is
+ * self-contained, so any subset of chunks concatenated in order is itself a valid recording.
+ */
+public class JfrChunkReader {
+
+    public static final int HEADER_SIZE = 68;
+    static final byte[] MAGIC = {'F', 'L', 'R', '\0'};
+
+    private JfrChunkReader() {}
+
+    /**
+     * Invokes the consumer once per chunk, in stream order. The stream passed to the consumer
+     * yields the complete chunk including its header, and does not need to be fully consumed.
+     */
+    public static void forEachChunk(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        while (true) {
+            int read = IOUtils.read(in, header);
+            if (read == 0) {
+                return;
+            }
+            if (read < HEADER_SIZE) {
+                throw new EOFException("Truncated JFR chunk header");
+            }
+            ChunkHeader chunkHeader = ChunkHeader.parse(header);
+            long bodySize = chunkHeader.getSize() - HEADER_SIZE;
+            BoundedInputStream bounded = new BoundedInputStream(in, bodySize);
+            bounded.setPropagateClose(false);
+            CountingInputStream body = new CountingInputStream(bounded);
+            consumer.accept(
+                    chunkHeader,
+                    new SequenceInputStream(new ByteArrayInputStream(header.clone()), body));
+            // skip whatever the consumer left unread so that the next header is aligned
+            IOUtils.skip(body, Long.MAX_VALUE);
+            if (body.getByteCount() < bodySize) {
+                throw new EOFException("Truncated JFR chunk");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(ChunkHeader header, InputStream chunk) throws IOException;
+    }
+
+    public static class ChunkHeader {
+        private final int majorVersion;
+        private final int minorVersion;
+        private final long size;
+        private final long constantPoolOffset;
+        private final long metadataOffset;
+        private final long startNanos;
+        private final long durationNanos;
+        private final long startTicks;
+        private final long ticksPerSecond;
+        private final int features;
+
+        private ChunkHeader(DataInputStream in) throws IOException {
+            this.majorVersion = in.readUnsignedShort();
+            this.minorVersion = in.readUnsignedShort();
+            this.size = in.readLong();
+            this.constantPoolOffset = in.readLong();
+            this.metadataOffset = in.readLong();
+            this.startNanos = in.readLong();
+            this.durationNanos = in.readLong();
+            this.startTicks = in.readLong();
+            this.ticksPerSecond = in.readLong();
+            this.features = in.readInt();
+        }
+
+        static ChunkHeader parse(byte[] header) throws IOException {
+            if (!Arrays.equals(MAGIC, 0, MAGIC.length, header, 0, MAGIC.length)) {
+                throw new IOException("Invalid JFR chunk magic");
+            }
+            DataInputStream in =
+                    new DataInputStream(
+                            new ByteArrayInputStream(
+                                    header, MAGIC.length, HEADER_SIZE - MAGIC.length));
+            ChunkHeader chunkHeader = new ChunkHeader(in);
+            if (chunkHeader.size < HEADER_SIZE) {
+                throw new IOException(
+                        String.format("Invalid JFR chunk size %d", chunkHeader.size));
+            }
+            return chunkHeader;
+        }
+
+        public int getMajorVersion() {
+            return majorVersion;
+        }
+
+        public int getMinorVersion() {
+            return minorVersion;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getConstantPoolOffset() {
+            return constantPoolOffset;
+        }
+
+        public long getMetadataOffset() {
+            return metadataOffset;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getEndNanos() {
+            return startNanos + durationNanos;
+        }
+
+        public long getStartTicks() {
+            return startTicks;
+        }
+
+        public long getTicksPerSecond() {
+            return ticksPerSecond;
+        }
+
+        public int getFeatures() {
+            return features;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks the structure of a JFR recording in a single streaming pass, without parsing its events.
+ * Every chunk must have the JFR magic, a supported format version and a size which the stream
+ * actually contains, and the constant pool and metadata offsets in its header must each point at
+ * an event of the right type which lies wholly inside the chunk. Memory use does not depend on
+ * the size of the recording. Corruption inside event payloads is not detected; loading the
+ * recording's events is needed for that.
+ *
+ * <p>Bytes are pushed in with {@link #update(byte[], int, int)} as they become available, so a
+ * recording can be checked while it is still arriving, and rejected as soon as its first invalid
+ * byte is seen, rather than only once it has been stored in full.
+ */
+public class JfrValidator {
+
+    static final int MIN_MAJOR_VERSION = 1;
+    static final int MAX_MAJOR_VERSION = 2;
+    static final long METADATA_EVENT_TYPE = 0;
+    static final long CHECKPOINT_EVENT_TYPE = 1;
+    static final int COMPRESSED_INTEGERS_FEATURE = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // JFR's compressed integers take at most 9 bytes for a long
+    private static final int MAX_COMPRESSED_LONG_SIZE = 9;
+    private static final int MAX_EVENT_HEADER_SIZE = 2 * MAX_COMPRESSED_LONG_SIZE;
+
+    private final byte[] header = new byte[JfrChunkReader.HEADER_SIZE];
+    private final byte[] eventHeader = new byte[MAX_EVENT_HEADER_SIZE];
+    // the constant pool and metadata offsets of the current chunk, in stream order
+    private final long[] eventOffsets = new long[2];
+    private final long[] eventTypes = new long[2];
+
+    private int chunks;
+    // bytes of the current chunk seen so far
+    private long position;
+    // zero until the current chunk's header has been read
+    private long chunkSize;
+    private boolean compressed;
+    private int nextEvent;
+    private int eventHeaderLength;
+
+    /**
+     * Reads the whole stream, which must be an uncompressed recording, and throws {@link
+     * InvalidRecordingException} at the first structural problem. Other IOExceptions come from
+     * reading the stream itself.
+     */
+    public static void validate(InputStream recording) throws IOException {
+        JfrValidator validator = new JfrValidator();
+        byte[] buf = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = recording.read(buf)) >= 0) {
+            validator.update(buf, 0, n);
+        }
+        validator.finish();
+    }
+
+    /**
+     * @return a stream of the given uncompressed recording which checks it as it is read, and
+     *     throws {@link InvalidRecordingException} from the read which reaches the first
+     *     structural problem, or the end of a stream which is not a complete recording
+     */
+    public static InputStream validating(InputStream recording) {
+        return new ValidatingInputStream(recording);
+    }
+
+    /** Check the next len bytes of the recording. */
+    public void update(byte[] b, int off, int len) throws InvalidRecordingException {
+        int end = off + len;
+        while (off < end) {
+            int n;
+            if (chunkSize == 0) {
+                n = (int) Math.min(end - off, header.length - position);
+                System.arraycopy(b, off, header, (int) position, n);
+                position += n;
+                if (position == header.length) {
+                    startChunk();
+                }
+            } else if (nextEvent < eventOffsets.length && position < eventOffsets[nextEvent]) {
+                n = (int) Math.min(end - off, eventOffsets[nextEvent] - position);
+                position += n;
+            } else if (nextEvent < eventOffsets.length) {
+                n = 1;
+                eventHeader[eventHeaderLength++] = b[off];
+                position++;
+                checkEventHeader();
+            } else {
+                n = (int) Math.min(end - off, chunkSize - position);
+                position += n;
+            }
+            off += n;
+            if (chunkSize > 0 && position == chunkSize) {
+                endChunk();
+            }
+        }
+    }
+
+    /** Check that the recording has ended at a chunk boundary. */
+    public void finish() throws InvalidRecordingException {
+        if (position == 0) {
+            if (chunks == 0) {
+                throw new InvalidRecordingException("empty file");
+            }
+            return;
+        }
+        if (chunkSize == 0) {
+            throw new InvalidRecordingException("truncated chunk header");
+        }
+        throw new InvalidRecordingException("truncated chunk");
+    }
+
+    private void startChunk() throws InvalidRecordingException {
+        JfrChunkReader.ChunkHeader chunkHeader;
+        try {
+            chunkHeader = JfrChunkReader.ChunkHeader.parse(header);
+        } catch (IOException e) {
+            throw new InvalidRecordingException(e.getMessage());
+        }
+        int major = chunkHeader.getMajorVersion();
+        if (major < MIN_MAJOR_VERSION || major > MAX_MAJOR_VERSION) {
+            throw new InvalidRecordingException(
+                    String.format(
+                            "unsupported format version %d.%d",
+                            major, chunkHeader.getMinorVersion()));
+        }
+        long size = chunkHeader.getSize();
+        long constantPool = chunkHeader.getConstantPoolOffset();
+        long metadata = chunkHeader.getMetadataOffset();
+        checkOffset("constant pool", constantPool, size);
+        checkOffset("metadata", metadata, size);
+        if (constantPool == metadata) {
+            throw new InvalidRecordingException("constant pool and metadata offsets coincide");
+        }
+
+        // visit both events in stream order so the chunk is only read once
+        boolean constantPoolFirst = constantPool < metadata;
+        eventOffsets[0] = constantPoolFirst ? constantPool : metadata;
+        eventOffsets[1] = constantPoolFirst ? metadata : constantPool;
+        eventTypes[0] = constantPoolFirst ? CHECKPOINT_EVENT_TYPE : METADATA_EVENT_TYPE;
+        eventTypes[1] = constantPoolFirst ? METADATA_EVENT_TYPE : CHECKPOINT_EVENT_TYPE;
+        compressed = (chunkHeader.getFeatures() & COMPRESSED_INTEGERS_FEATURE) != 0;
+        chunkSize = size;
+    }
+
+    private void endChunk() throws InvalidRecordingException {
+        if (nextEvent < eventOffsets.length) {
+            throw new InvalidRecordingException(
+                    String.format(
+                            "event at offset %d overruns chunk of %d bytes",
+                            eventOffsets[nextEvent], chunkSize));
+        }
+        chunks++;
+        position = 0;
+        chunkSize = 0;
+        nextEvent = 0;
+    }
+
+    private static void checkOffset(String name, long offset, long chunkSize)
+            throws InvalidRecordingException {
+        if (offset < JfrChunkReader.HEADER_SIZE || offset >= chunkSize) {
+            throw new InvalidRecordingException(
+                    String.format(
+                            "%s offset %d outside chunk of %d bytes", name, offset, chunkSize));
+        }
+    }
+
+    /** Check the event header collected so far, once it is complete. */
+    private void checkEventHeader() throws InvalidRecordingException {
+        int headerSize;
+        long eventSize;
+        long type;
+        if (compressed) {
+            int sizeLength = compressedLength(eventHeader, 0, eventHeaderLength);
+            if (sizeLength < 0) {
+                return;
+            }
+            int typeLength = compressedLength(eventHeader, sizeLength, eventHeaderLength);
+            if (typeLength < 0) {
+                return;
+            }
+            headerSize = sizeLength + typeLength;
+            eventSize = decodeCompressed(eventHeader, 0, sizeLength);
+            type = decodeCompressed(eventHeader, sizeLength, typeLength);
+        } else {
+            headerSize = Integer.BYTES + Long.BYTES;
+            if (eventHeaderLength < headerSize) {
+                return;
+            }
+            eventSize = decodeFixed(eventHeader, 0, Integer.BYTES);
+            type = decodeFixed(eventHeader, Integer.BYTES, Long.BYTES);
+        }
+
+        long offset = eventOffsets[nextEvent];
+        long expectedType = eventTypes[nextEvent];
+        if (eventSize < headerSize || eventSize > chunkSize - offset) {
+            throw new InvalidRecordingException(
+                    String.format("event at offset %d has invalid size %d", offset, eventSize));
+        }
+        if (type != expectedType) {
+            throw new InvalidRecordingException(
+                    String.format(
+                            "%s offset %d points at an event of type %d",
+                            expectedType == CHECKPOINT_EVENT_TYPE ? "constant pool" : "metadata",
+                            offset,
+                            type));
+        }
+        if (nextEvent == 0 && offset + eventSize > eventOffsets[1]) {
+            throw new InvalidRecordingException("constant pool and metadata events overlap");
+        }
+        nextEvent++;
+        eventHeaderLength = 0;
+    }
+
+    /** @return the length of the compressed integer at from, or -1 if it is not yet complete */
+    private static int compressedLength(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int length = i - from + 1;
+            if ((buf[i] & 0x80) == 0 || length == MAX_COMPRESSED_LONG_SIZE) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    // JFR's compressed integers are little-endian base-128, with a full ninth byte for longs
+    private static long decodeCompressed(byte[] buf, int from, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            long b = buf[from + i] & 0xFFL;
+            value |= i < MAX_COMPRESSED_LONG_SIZE - 1 ? (b & 0x7F) << (7 * i) : b << 56;
+        }
+        return value;
+    }
+
+    private static long decodeFixed(byte[] buf, int from, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buf[from + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static class ValidatingInputStream extends FilterInputStream {
+        private final JfrValidator validator = new JfrValidator();
+        private boolean finished;
+
+        ValidatingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                if (!finished) {
+                    finished = true;
+                    validator.finish();
+                }
+                return n;
+            }
+            validator.update(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes still need to be checked
+            byte[] buf = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {}
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+    }
+}
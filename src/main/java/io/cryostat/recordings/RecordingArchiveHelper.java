@@ -39,53 +39,124 @@ package io.cryostat.recordings;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
-import javax.inject.Named;
-
+import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
 
-import io.cryostat.MainModule;
 import io.cryostat.core.net.JFRConnection;
 import io.cryostat.core.sys.Clock;
 import io.cryostat.core.sys.FileSystem;
+import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.ConnectionDescriptor;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.reports.ReportService;
+import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.platform.PlatformClient;
+import io.cryostat.recordings.storage.ArchiveStorage;
 import io.cryostat.util.URIUtil;
 
+import com.google.gson.Gson;
+import org.apache.commons.io.input.CountingInputStream;
+
 public class RecordingArchiveHelper {
 
+    private static final String MANIFEST_SUFFIX = ".json";
+    static final String PROGRESS_NOTIFICATION_CATEGORY = "RecordingArchiveProgress";
+    static final long PROGRESS_INTERVAL_BYTES = 16 * 1024 * 1024;
+
     private final TargetConnectionManager targetConnectionManager;
     private final FileSystem fs;
-    private final Path recordingsPath;
+    private final ArchiveStorage storage;
     private final Clock clock;
     private final PlatformClient platformClient;
     private final ReportService reportService;
+    private final Gson gson;
+    private final Path manifestsPath;
+    private final ArchiveCatalog catalog;
+    private final ArchiveCodec codec;
+    private final ArchiveChunkStore chunkStore;
+    private final NotificationFactory notificationFactory;
+    private final Executor archivalExecutor;
+    // archive names chosen for transfers still in flight, which do not exist in storage yet
+    private final Set<String> pendingDestinations = ConcurrentHashMap.newKeySet();
+    // guards reading and rewriting the differential manifests while pieces are deleted
+    private final Object manifestLock = new Object();
+    // the differential manifests and, for each piece, the names of the manifests listing it. Both
+    // are read from disk when first needed and kept up to date under manifestLock from then on
+    private final Map<String, ArchiveManifest> indexedManifests = new HashMap<>();
+    private final Map<String, Set<String>> manifestsByPiece = new HashMap<>();
+    private boolean manifestsIndexed;
 
     RecordingArchiveHelper(
             FileSystem fs,
-            @Named(MainModule.RECORDINGS_PATH) Path recordingsPath,
+            ArchiveStorage storage,
             TargetConnectionManager targetConnectionManager,
             Clock clock,
             PlatformClient platformClient,
-            ReportService reportService) {
+            ReportService reportService,
+            Gson gson,
+            Path manifestsPath,
+            ArchiveCatalog catalog,
+            ArchiveCodec codec,
+            ArchiveChunkStore chunkStore,
+            NotificationFactory notificationFactory,
+            Executor archivalExecutor) {
         this.fs = fs;
-        this.recordingsPath = recordingsPath;
+        this.storage = storage;
         this.targetConnectionManager = targetConnectionManager;
         this.clock = clock;
         this.platformClient = platformClient;
         this.reportService = reportService;
+        this.gson = gson;
+        this.manifestsPath = manifestsPath;
+        this.catalog = catalog;
+        this.codec = codec;
+        this.chunkStore = chunkStore;
+        this.notificationFactory = notificationFactory;
+        this.archivalExecutor = archivalExecutor;
     }
 
     public String saveRecording(ConnectionDescriptor connectionDescriptor, String recordingName)
             throws Exception {
+        return await(saveRecordingAsync(connectionDescriptor, recordingName));
+    }
 
-        String saveName =
+    /**
+     * Archive the named recording without holding the calling thread for the transfer. The
+     * recording is looked up and its archive name chosen before this method returns, so a missing
+     * recording or an unreachable target is still reported by throwing. The copy itself runs on
+     * the archival executor, which bounds the number of transfers in flight across all targets.
+     *
+     * @return a future completed with the archive name once the recording has been written
+     */
+    public CompletableFuture<String> saveRecordingAsync(
+            ConnectionDescriptor connectionDescriptor, String recordingName) throws Exception {
+        String destination =
                 targetConnectionManager.executeConnectedTask(
                         connectionDescriptor,
                         connection -> {
@@ -93,13 +164,340 @@ public class RecordingArchiveHelper {
                                     this.getDescriptorByName(connection, recordingName);
 
                             if (descriptor.isPresent()) {
-                                return writeRecordingToDestination(connection, descriptor.get());
+                                return reserveDestinationName(connection, descriptor.get());
                             } else {
                                 throw new RecordingNotFoundException(recordingName);
                             }
                         });
+        return submitTransfer(connectionDescriptor, recordingName, destination);
+    }
+
+    /**
+     * Archive every recording currently in the target. The recordings are transferred in
+     * parallel, up to the limit of the archival executor.
+     *
+     * @return a future archive name for each recording, keyed by recording name
+     */
+    public Map<String, CompletableFuture<String>> saveAllRecordings(
+            ConnectionDescriptor connectionDescriptor) throws Exception {
+        Map<String, String> destinations =
+                targetConnectionManager.executeConnectedTask(
+                        connectionDescriptor,
+                        connection -> {
+                            Map<String, String> names = new LinkedHashMap<>();
+                            try {
+                                for (IRecordingDescriptor descriptor :
+                                        connection.getService().getAvailableRecordings()) {
+                                    names.put(
+                                            descriptor.getName(),
+                                            reserveDestinationName(connection, descriptor));
+                                }
+                            } catch (Exception e) {
+                                pendingDestinations.removeAll(names.values());
+                                throw e;
+                            }
+                            return names;
+                        });
+        Map<String, CompletableFuture<String>> saves = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : destinations.entrySet()) {
+            saves.put(
+                    entry.getKey(),
+                    submitTransfer(connectionDescriptor, entry.getKey(), entry.getValue()));
+        }
+        return saves;
+    }
+
+    private CompletableFuture<String> submitTransfer(
+            ConnectionDescriptor connectionDescriptor, String recordingName, String destination) {
+        try {
+            return submit(
+                    () -> {
+                        try {
+                            return targetConnectionManager.executeConnectedTask(
+                                    connectionDescriptor,
+                                    connection -> {
+                                        Optional<IRecordingDescriptor> descriptor =
+                                                this.getDescriptorByName(connection, recordingName);
+                                        if (descriptor.isEmpty()) {
+                                            throw new RecordingNotFoundException(recordingName);
+                                        }
+                                        writeRecordingToDestination(
+                                                connectionDescriptor,
+                                                connection,
+                                                descriptor.get(),
+                                                destination);
+                                        return destination;
+                                    });
+                        } finally {
+                            pendingDestinations.remove(destination);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            pendingDestinations.remove(destination);
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        archivalExecutor.execute(
+                () -> {
+                    try {
+                        future.complete(task.call());
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+        return future;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Archive only the JFR chunks of the named recording which are newer than the end of the
+     * previous archive, and record a manifest listing the archived pieces which together make up
+     * the full recording. Pieces ending more than maxAge ago are left out of the manifest. If
+     * there is no usable previous archive the whole recording is written, as by {@link
+     * #saveRecording(ConnectionDescriptor, String)}. Differential archival needs the archives on
+     * local disk, so with remote archive storage the whole recording is always written.
+     *
+     * @return the name of the new archive, or empty if the recording has no new chunks
+     */
+    public Optional<String> saveRecordingDifferential(
+            ConnectionDescriptor connectionDescriptor,
+            String recordingName,
+            Optional<String> previousArchive,
+            Duration maxAge)
+            throws Exception {
+        if (storage.getLocalDirectory().isEmpty()) {
+            return Optional.of(saveRecording(connectionDescriptor, recordingName));
+        }
+        Optional<ArchiveManifest> previousManifest = Optional.empty();
+        if (previousArchive.isPresent()) {
+            previousManifest = getManifest(previousArchive.get());
+        }
+        final Optional<ArchiveManifest> previous = previousManifest;
+        return await(
+                submit(
+                        () ->
+                                targetConnectionManager.executeConnectedTask(
+                                        connectionDescriptor,
+                                        connection -> {
+                                            Optional<IRecordingDescriptor> descriptor =
+                                                    this.getDescriptorByName(
+                                                            connection, recordingName);
+
+                                            if (descriptor.isPresent()) {
+                                                return writeChunksToDestination(
+                                                        connection,
+                                                        descriptor.get(),
+                                                        previous,
+                                                        maxAge);
+                                            } else {
+                                                throw new RecordingNotFoundException(
+                                                        recordingName);
+                                            }
+                                        })));
+    }
+
+    /**
+     * Write the complete recording described by a differential archive's manifest to the given
+     * destination. Fails if any of its pieces is missing, rather than writing a recording with a
+     * gap in it.
+     */
+    public void materialiseArchive(String recordingName, Path destination) throws IOException {
+        try (InputStream stream = openArchive(recordingName)) {
+            fs.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Open an archived recording for reading as a plain, uncompressed JFR stream, wherever it is
+     * stored and however it is encoded. A differential archive is read as the complete recording
+     * its manifest describes, and fails to open if any of its pieces is missing.
+     */
+    public InputStream openArchive(String recordingName) throws IOException {
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            // pieces are only renamed while holding the lock, so hold it until they are all open
+            synchronized (manifestLock) {
+                Optional<ArchiveManifest> manifest = getManifest(recordingName);
+                if (manifest.isEmpty()) {
+                    return openPiece(recordingName);
+                }
+                for (ArchiveManifest.Piece piece : manifest.get().getPieces()) {
+                    if (!storage.exists(piece.getName())) {
+                        throw new NoSuchFileException(
+                                piece.getName(), null, "Missing piece of " + recordingName);
+                    }
+                    streams.add(openPiece(piece.getName()));
+                    catalog.touch(piece.getName());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (InputStream stream : streams) {
+                try {
+                    stream.close();
+                } catch (IOException ioe) {
+                    e.addSuppressed(ioe);
+                }
+            }
+            throw e;
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    private InputStream openPiece(String pieceName) throws IOException {
+        Optional<Path> path = storage.getLocalPath(pieceName);
+        if (path.isPresent()) {
+            return ArchiveChunkStore.openArchive(path.get());
+        }
+        return ArchiveCodec.decode(storage.open(pieceName));
+    }
+
+    /**
+     * @return the parts of the archived recording which take up space on disk, as given by {@link
+     *     ArchiveRetentionEngine#storedParts(ArchiveCatalog.Entry)}. A differential archive also
+     *     keeps every earlier piece its manifest lists, including pieces which are hidden because
+     *     their own archives have been deleted
+     */
+    public Map<String, Long> getStoredParts(ArchiveCatalog.Entry entry) throws IOException {
+        List<String> pieceNames = new ArrayList<>();
+        synchronized (manifestLock) {
+            indexManifests();
+            ArchiveManifest manifest = indexedManifests.get(entry.getName());
+            if (manifest == null) {
+                return ArchiveRetentionEngine.storedParts(entry);
+            }
+            for (ArchiveManifest.Piece piece : manifest.getPieces()) {
+                pieceNames.add(piece.getName());
+            }
+        }
+        Map<String, Long> parts = new HashMap<>();
+        for (String pieceName : pieceNames) {
+            Optional<ArchiveCatalog.Entry> piece =
+                    pieceName.equals(entry.getName()) ? Optional.of(entry) : catalog.get(pieceName);
+            if (piece.isEmpty()) {
+                // hidden pieces are left out of the catalogue
+                piece = statPiece(pieceName);
+            }
+            if (piece.isPresent()) {
+                parts.putAll(ArchiveRetentionEngine.storedParts(piece.get()));
+            }
+        }
+        return parts;
+    }
+
+    private Optional<ArchiveCatalog.Entry> statPiece(String pieceName) throws IOException {
+        // differential archives are only ever taken into local storage
+        Optional<Path> path = storage.getLocalPath(pieceName);
+        if (path.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            List<ArchiveChunkStore.Chunk> chunks = chunkStore.getChunks(path.get());
+            long size =
+                    chunks.isEmpty()
+                            ? Files.size(path.get())
+                            : chunks.stream()
+                                    .mapToLong(ArchiveChunkStore.Chunk::getStoredSize)
+                                    .sum();
+            return Optional.of(new ArchiveCatalog.Entry(pieceName, size, 0, null, null, chunks));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    public Optional<ArchiveManifest> getManifest(String recordingName) throws IOException {
+        Path path = getManifestPath(recordingName);
+        if (!fs.exists(path)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(gson.fromJson(fs.readString(path), ArchiveManifest.class));
+    }
+
+    private Path getManifestPath(String recordingName) {
+        return manifestsPath.resolve(recordingName + MANIFEST_SUFFIX);
+    }
+
+    private void writeManifest(String recordingName, ArchiveManifest manifest) throws IOException {
+        indexManifests();
+        fs.writeString(
+                getManifestPath(recordingName),
+                gson.toJson(manifest),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        unindexManifest(recordingName);
+        indexManifest(recordingName, manifest);
+    }
+
+    private void deleteManifest(String recordingName) throws IOException {
+        indexManifests();
+        fs.deleteIfExists(getManifestPath(recordingName));
+        unindexManifest(recordingName);
+    }
 
-        return saveName;
+    /** @return the manifests of the differential archives which list the named piece */
+    private Map<String, ArchiveManifest> getManifestsListing(String pieceName) throws IOException {
+        indexManifests();
+        Map<String, ArchiveManifest> manifests = new LinkedHashMap<>();
+        for (String name : manifestsByPiece.getOrDefault(pieceName, Set.of())) {
+            manifests.put(name, indexedManifests.get(name));
+        }
+        return manifests;
+    }
+
+    /** Read every manifest on disk into the index, once. Must be called under manifestLock. */
+    private void indexManifests() throws IOException {
+        if (manifestsIndexed) {
+            return;
+        }
+        for (String child : fs.listDirectoryChildren(manifestsPath)) {
+            if (!child.endsWith(MANIFEST_SUFFIX)) {
+                continue;
+            }
+            String name = child.substring(0, child.length() - MANIFEST_SUFFIX.length());
+            Optional<ArchiveManifest> manifest = getManifest(name);
+            if (manifest.isPresent()) {
+                indexManifest(name, manifest.get());
+            }
+        }
+        manifestsIndexed = true;
+    }
+
+    private void indexManifest(String recordingName, ArchiveManifest manifest) {
+        indexedManifests.put(recordingName, manifest);
+        for (ArchiveManifest.Piece piece : manifest.getPieces()) {
+            manifestsByPiece
+                    .computeIfAbsent(piece.getName(), k -> new LinkedHashSet<>())
+                    .add(recordingName);
+        }
+    }
+
+    private void unindexManifest(String recordingName) {
+        ArchiveManifest manifest = indexedManifests.remove(recordingName);
+        if (manifest == null) {
+            return;
+        }
+        for (ArchiveManifest.Piece piece : manifest.getPieces()) {
+            Set<String> names = manifestsByPiece.get(piece.getName());
+            if (names != null) {
+                names.remove(recordingName);
+                if (names.isEmpty()) {
+                    manifestsByPiece.remove(piece.getName());
+                }
+            }
+        }
     }
 
     public void deleteRecording(ConnectionDescriptor connectionDescriptor, String recordingName)
@@ -121,7 +519,204 @@ public class RecordingArchiveHelper {
                 });
     }
 
-    private String writeRecordingToDestination(
+    /**
+     * Delete an archived recording along with its differential manifest, if any, and release the
+     * chunks it refers to. An archive which newer differential archives still list as a piece of
+     * their recordings is only hidden from the catalogue, and is deleted along with the last
+     * manifest which lists it.
+     *
+     * @return whether this call deleted the archive, false if it was already absent
+     */
+    public boolean deleteArchivedRecording(String recordingName) throws IOException {
+        try {
+            synchronized (manifestLock) {
+                Optional<ArchiveManifest> manifest = getManifest(recordingName);
+                deleteManifest(recordingName);
+                boolean deleted = deletePiece(recordingName);
+                if (manifest.isPresent()) {
+                    for (ArchiveManifest.Piece piece : manifest.get().getPieces()) {
+                        if (ArchiveCatalog.isHidden(piece.getName())) {
+                            deletePiece(piece.getName());
+                        }
+                    }
+                }
+                return deleted;
+            }
+        } finally {
+            catalog.remove(recordingName);
+            reportService.delete(recordingName);
+        }
+    }
+
+    private boolean deletePiece(String recordingName) throws IOException {
+        Optional<Path> path = storage.getLocalPath(recordingName);
+        if (path.isEmpty()) {
+            // differential archives are only ever taken into local storage
+            boolean deleted = storage.exists(recordingName);
+            storage.delete(recordingName);
+            return deleted;
+        }
+        Map<String, ArchiveManifest> listing = getManifestsListing(recordingName);
+        if (listing.isEmpty()) {
+            // only the call which removes the file releases its chunks
+            return chunkStore.delete(path.get());
+        }
+        if (ArchiveCatalog.isHidden(recordingName)) {
+            return false;
+        }
+        String hidden = ArchiveCatalog.HIDDEN_PREFIX + recordingName;
+        try {
+            Files.move(path.get(), storage.getLocalPath(hidden).get());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        for (Map.Entry<String, ArchiveManifest> entry : listing.entrySet()) {
+            writeManifest(entry.getKey(), entry.getValue().renamePiece(recordingName, hidden));
+        }
+        return true;
+    }
+
+    private void writeRecordingToDestination(
+            ConnectionDescriptor connectionDescriptor,
+            JFRConnection connection,
+            IRecordingDescriptor descriptor,
+            String destination)
+            throws Exception {
+        try (InputStream stream =
+                new ProgressInputStream(
+                        connection.getService().openStream(descriptor, false),
+                        connectionDescriptor,
+                        destination)) {
+            // the chunk store is only ever enabled when archives are stored locally
+            if (chunkStore.isEnabled()) {
+                chunkStore.write(stream, storage.getLocalPath(destination).get());
+            } else {
+                storage.write(destination, codec.encode(stream));
+            }
+        } finally {
+            catalog.refresh(destination);
+        }
+    }
+
+    private Optional<String> writeChunksToDestination(
+            JFRConnection connection,
+            IRecordingDescriptor descriptor,
+            Optional<ArchiveManifest> previous,
+            Duration maxAge)
+            throws Exception {
+        String destination = reserveDestinationName(connection, descriptor);
+        try {
+            return writeChunksToDestination(connection, descriptor, previous, maxAge, destination);
+        } finally {
+            pendingDestinations.remove(destination);
+        }
+    }
+
+    private Optional<String> writeChunksToDestination(
+            JFRConnection connection,
+            IRecordingDescriptor descriptor,
+            Optional<ArchiveManifest> previous,
+            Duration maxAge,
+            String destination)
+            throws Exception {
+        long since = previous.map(ArchiveManifest::getEndNanos).orElse(Long.MIN_VALUE);
+        Path destinationPath = storage.getLocalPath(destination).get();
+
+        long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+        OutputStream[] out = new OutputStream[1];
+        try (InputStream stream = openStreamSince(connection, descriptor, previous, since)) {
+            JfrChunkReader.forEachChunk(
+                    stream,
+                    (header, chunk) -> {
+                        // the target returns every chunk overlapping the requested range, so
+                        // drop the ones which were already archived
+                        if (header.getStartNanos() < since) {
+                            return;
+                        }
+                        if (out[0] == null) {
+                            out[0] =
+                                    codec.encode(
+                                            Files.newOutputStream(
+                                                    destinationPath,
+                                                    StandardOpenOption.CREATE_NEW));
+                        }
+                        chunk.transferTo(out[0]);
+                        range[0] = Math.min(range[0], header.getStartNanos());
+                        range[1] = Math.max(range[1], header.getEndNanos());
+                    });
+        } catch (Exception e) {
+            if (out[0] != null) {
+                try {
+                    out[0].close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                fs.deleteIfExists(destinationPath);
+            }
+            throw e;
+        }
+        if (out[0] == null) {
+            return Optional.empty();
+        }
+        try {
+            out[0].close();
+        } catch (IOException e) {
+            fs.deleteIfExists(destinationPath);
+            throw e;
+        } finally {
+            catalog.refresh(destination);
+        }
+
+        List<ArchiveManifest.Piece> pieces = new ArrayList<>();
+        if (previous.isPresent()) {
+            long cutoff =
+                    maxAge.isZero() || maxAge.isNegative()
+                            ? Long.MIN_VALUE
+                            : range[1] - maxAge.toNanos();
+            for (ArchiveManifest.Piece piece : previous.get().getPieces()) {
+                if (piece.getEndNanos() >= cutoff) {
+                    pieces.add(piece);
+                }
+            }
+        }
+        pieces.add(new ArchiveManifest.Piece(destination, range[0], range[1]));
+        ArchiveManifest manifest = new ArchiveManifest(pieces);
+        synchronized (manifestLock) {
+            // earlier pieces may have been hidden by a delete while this archive was being taken
+            for (ArchiveManifest.Piece piece : pieces) {
+                String hidden = ArchiveCatalog.HIDDEN_PREFIX + piece.getName();
+                if (!storage.exists(piece.getName()) && storage.exists(hidden)) {
+                    manifest = manifest.renamePiece(piece.getName(), hidden);
+                }
+            }
+            writeManifest(destination, manifest);
+        }
+        return Optional.of(destination);
+    }
+
+    private InputStream openStreamSince(
+            JFRConnection connection,
+            IRecordingDescriptor descriptor,
+            Optional<ArchiveManifest> previous,
+            long sinceNanos)
+            throws Exception {
+        if (previous.isEmpty()) {
+            return connection.getService().openStream(descriptor, false);
+        }
+        return connection
+                .getService()
+                .openStream(
+                        descriptor,
+                        UnitLookup.EPOCH_MS.quantity(sinceNanos / 1_000_000L),
+                        UnitLookup.EPOCH_MS.quantity(clock.now().toEpochMilli()),
+                        false);
+    }
+
+    /**
+     * Choose an unused archive name for the recording and hold it until the caller releases it
+     * from {@link #pendingDestinations}, so that concurrent transfers never pick the same name.
+     */
+    private String reserveDestinationName(
             JFRConnection connection, IRecordingDescriptor descriptor) throws Exception {
         String recordingName = descriptor.getName();
         if (recordingName.endsWith(".jfr")) {
@@ -156,7 +751,8 @@ public class RecordingArchiveHelper {
         // TODO byte-sized rename limit is arbitrary. Probably plenty since recordings are also
         // differentiated by second-resolution timestamp
         byte count = 1;
-        while (fs.exists(recordingsPath.resolve(destination + ".jfr"))) {
+        while (storage.exists(destination + ".jfr")
+                || !pendingDestinations.add(destination + ".jfr")) {
             destination =
                     String.format("%s_%s_%s.%d", targetName, recordingName, timestamp, count++);
             if (count == Byte.MAX_VALUE) {
@@ -164,11 +760,28 @@ public class RecordingArchiveHelper {
                         "Recording could not be savedFile already exists and rename attempts were exhausted.");
             }
         }
-        destination += ".jfr";
-        try (InputStream stream = connection.getService().openStream(descriptor, false)) {
-            fs.copy(stream, recordingsPath.resolve(destination));
-        }
-        return destination;
+        return destination + ".jfr";
+    }
+
+    private void reportProgress(
+            ConnectionDescriptor connectionDescriptor, String destination, long bytes) {
+        // long transfers must not let the connection they are reading from expire
+        targetConnectionManager.markConnectionInUse(connectionDescriptor);
+        notificationFactory
+                .createBuilder()
+                .metaCategory(PROGRESS_NOTIFICATION_CATEGORY)
+                .metaType(HttpMimeType.JSON)
+                .targetId(connectionDescriptor.getTargetId())
+                .message(
+                        Map.of(
+                                "recording",
+                                destination,
+                                "target",
+                                connectionDescriptor.getTargetId(),
+                                "bytes",
+                                bytes))
+                .build()
+                .send();
     }
 
     public Optional<IRecordingDescriptor> getDescriptorByName(
@@ -177,4 +790,27 @@ public class RecordingArchiveHelper {
                 .filter(recording -> recording.getName().equals(recordingName))
                 .findFirst();
     }
+
+    private class ProgressInputStream extends CountingInputStream {
+        private final ConnectionDescriptor connectionDescriptor;
+        private final String destination;
+        private long reported;
+
+        ProgressInputStream(
+                InputStream in, ConnectionDescriptor connectionDescriptor, String destination) {
+            super(in);
+            this.connectionDescriptor = connectionDescriptor;
+            this.destination = destination;
+        }
+
+        @Override
+        protected synchronized void afterRead(int n) {
+            super.afterRead(n);
+            long count = getByteCount();
+            if (count - reported >= PROGRESS_INTERVAL_BYTES) {
+                reported = count;
+                reportProgress(connectionDescriptor, destination, count);
+            }
+        }
+    }
 }
@@ -104,6 +104,7 @@ public class RecordingTargetHelper {
                             .createBuilder()
                             .metaCategory(NOTIFICATION_CATEGORY)
                             .metaType(HttpMimeType.JSON)
+                            .targetId(connectionDescriptor.getTargetId())
                             .message(
                                     Map.of(
                                             "recording",
@@ -37,7 +37,14 @@
  */
 package io.cryostat.recordings;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -46,20 +53,54 @@ import org.openjdk.jmc.flightrecorder.configuration.recording.RecordingOptionsBu
 
 import io.cryostat.MainModule;
 import io.cryostat.core.RecordingOptionsCustomizer;
+import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.core.tui.ClientWriter;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.reports.ReportService;
 import io.cryostat.platform.PlatformClient;
+import io.cryostat.recordings.storage.ArchiveStorage;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
+import io.cryostat.recordings.storage.S3ArchiveStorage;
 
+import com.google.gson.Gson;
 import dagger.Module;
 import dagger.Provides;
 
 @Module
 public abstract class RecordingsModule {
 
+    public static final String ARCHIVE_MANIFESTS_SUBDIRECTORY = "archive_manifests";
+    static final String ARCHIVE_COMPRESSION_ENV_VAR = "CRYOSTAT_ARCHIVE_COMPRESSION";
+    static final String ARCHIVE_DEDUPLICATION_ENV_VAR = "CRYOSTAT_ARCHIVE_DEDUPLICATION";
+    static final String ARCHIVE_MAX_BYTES_ENV_VAR = "CRYOSTAT_ARCHIVE_MAX_BYTES";
+    static final String ARCHIVE_MAX_BYTES_PER_TARGET_ENV_VAR =
+            "CRYOSTAT_ARCHIVE_MAX_BYTES_PER_TARGET";
+    static final String ARCHIVE_MAX_COUNT_ENV_VAR = "CRYOSTAT_ARCHIVE_MAX_COUNT";
+    static final String ARCHIVE_MAX_AGE_ENV_VAR = "CRYOSTAT_ARCHIVE_MAX_AGE_SECONDS";
+    static final String ARCHIVE_EVICTION_ENV_VAR = "CRYOSTAT_ARCHIVE_EVICTION";
+    static final String ARCHIVE_RETENTION_PERIOD_ENV_VAR =
+            "CRYOSTAT_ARCHIVE_RETENTION_PERIOD_SECONDS";
+    static final String ARCHIVE_RETENTION_BATCH_ENV_VAR = "CRYOSTAT_ARCHIVE_RETENTION_BATCH_SIZE";
+    static final long DEFAULT_ARCHIVE_RETENTION_PERIOD_SECONDS = 60;
+    static final int DEFAULT_ARCHIVE_RETENTION_BATCH_SIZE = 16;
+    static final String ARCHIVE_STORAGE_ENV_VAR = "CRYOSTAT_ARCHIVE_STORAGE";
+    static final String ARCHIVE_S3_ENDPOINT_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_ENDPOINT";
+    static final String ARCHIVE_S3_BUCKET_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_BUCKET";
+    static final String ARCHIVE_S3_PREFIX_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_PREFIX";
+    static final String ARCHIVE_S3_REGION_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_REGION";
+    static final String ARCHIVE_S3_ACCESS_KEY_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_ACCESS_KEY";
+    static final String ARCHIVE_S3_SECRET_KEY_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_SECRET_KEY";
+    static final String ARCHIVE_S3_PART_SIZE_ENV_VAR = "CRYOSTAT_ARCHIVE_S3_PART_SIZE";
+    static final String DEFAULT_ARCHIVE_S3_REGION = "us-east-1";
+    static final int DEFAULT_ARCHIVE_S3_PART_SIZE = 8 * 1024 * 1024;
+    static final String ARCHIVE_MAX_CONCURRENT_TRANSFERS_ENV_VAR =
+            "CRYOSTAT_ARCHIVE_MAX_CONCURRENT_TRANSFERS";
+    static final int DEFAULT_ARCHIVE_MAX_CONCURRENT_TRANSFERS = 4;
+
     @Provides
     @Singleton
     static RecordingTargetHelper provideRecordingTargetHelper(
@@ -74,13 +115,209 @@ public abstract class RecordingsModule {
     @Singleton
     static RecordingArchiveHelper provideRecordingArchiveHelper(
             FileSystem fs,
-            @Named(MainModule.RECORDINGS_PATH) Path recordingsPath,
+            ArchiveStorage storage,
             TargetConnectionManager targetConnectionManager,
             Clock clock,
             PlatformClient platformClient,
-            ReportService reportService) {
-        return new RecordingArchiveHelper(
-                fs, recordingsPath, targetConnectionManager, clock, platformClient, reportService);
+            ReportService reportService,
+            Gson gson,
+            @Named(MainModule.CONF_DIR) Path confDir,
+            ArchiveCatalog catalog,
+            ArchiveCodec codec,
+            ArchiveChunkStore chunkStore,
+            NotificationFactory notificationFactory,
+            Environment env,
+            Logger logger) {
+        long maxTransfers =
+                parseLong(
+                        env,
+                        logger,
+                        ARCHIVE_MAX_CONCURRENT_TRANSFERS_ENV_VAR,
+                        DEFAULT_ARCHIVE_MAX_CONCURRENT_TRANSFERS);
+        if (maxTransfers < 1 || maxTransfers > Integer.MAX_VALUE) {
+            logger.warn(
+                    "Invalid {} value {}, using {}",
+                    ARCHIVE_MAX_CONCURRENT_TRANSFERS_ENV_VAR,
+                    maxTransfers,
+                    DEFAULT_ARCHIVE_MAX_CONCURRENT_TRANSFERS);
+            maxTransfers = DEFAULT_ARCHIVE_MAX_CONCURRENT_TRANSFERS;
+        }
+        try {
+            Path manifestsPath = confDir.resolve(ARCHIVE_MANIFESTS_SUBDIRECTORY);
+            if (!fs.isDirectory(manifestsPath)) {
+                Files.createDirectory(manifestsPath);
+            }
+            return new RecordingArchiveHelper(
+                    fs,
+                    storage,
+                    targetConnectionManager,
+                    clock,
+                    platformClient,
+                    reportService,
+                    gson,
+                    manifestsPath,
+                    catalog,
+                    codec,
+                    chunkStore,
+                    notificationFactory,
+                    Executors.newFixedThreadPool(
+                            (int) maxTransfers,
+                            r -> {
+                                Thread t = new Thread(r, "cryostat-archive-transfer");
+                                t.setDaemon(true);
+                                return t;
+                            }));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveCatalog provideArchiveCatalog(ArchiveStorage storage, Logger logger) {
+        return new ArchiveCatalog(storage, logger);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveStorage provideArchiveStorage(
+            FileSystem fs,
+            @Named(MainModule.RECORDINGS_PATH) Path recordingsPath,
+            Environment env,
+            Logger logger) {
+        String kind = env.getEnv(ARCHIVE_STORAGE_ENV_VAR, "local").toLowerCase(Locale.ROOT);
+        if ("s3".equals(kind)) {
+            String endpoint = env.getEnv(ARCHIVE_S3_ENDPOINT_ENV_VAR);
+            String bucket = env.getEnv(ARCHIVE_S3_BUCKET_ENV_VAR);
+            if (endpoint == null || endpoint.isBlank() || bucket == null || bucket.isBlank()) {
+                logger.warn(
+                        "{} and {} must be set for S3 archive storage, using local storage",
+                        ARCHIVE_S3_ENDPOINT_ENV_VAR,
+                        ARCHIVE_S3_BUCKET_ENV_VAR);
+            } else {
+                try {
+                    ArchiveStorage storage =
+                            S3ArchiveStorage.create(
+                                    new URI(endpoint),
+                                    bucket,
+                                    env.getEnv(ARCHIVE_S3_PREFIX_ENV_VAR, ""),
+                                    env.getEnv(
+                                            ARCHIVE_S3_REGION_ENV_VAR, DEFAULT_ARCHIVE_S3_REGION),
+                                    env.getEnv(ARCHIVE_S3_ACCESS_KEY_ENV_VAR, ""),
+                                    env.getEnv(ARCHIVE_S3_SECRET_KEY_ENV_VAR, ""),
+                                    (int)
+                                            parseLong(
+                                                    env,
+                                                    logger,
+                                                    ARCHIVE_S3_PART_SIZE_ENV_VAR,
+                                                    DEFAULT_ARCHIVE_S3_PART_SIZE));
+                    logger.info("Archived recording storage: S3 bucket {} at {}", bucket, endpoint);
+                    return storage;
+                } catch (URISyntaxException use) {
+                    logger.warn(use);
+                }
+            }
+        } else if (!"local".equals(kind)) {
+            logger.warn("Unknown {} \"{}\", using local storage", ARCHIVE_STORAGE_ENV_VAR, kind);
+        }
+        logger.info("Archived recording storage: local directory {}", recordingsPath);
+        return new LocalArchiveStorage(fs, recordingsPath);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveCodec provideArchiveCodec(Environment env, Logger logger) {
+        ArchiveCodec.Compression compression = ArchiveCodec.Compression.GZIP;
+        try {
+            compression =
+                    ArchiveCodec.Compression.valueOf(
+                            env.getEnv(ARCHIVE_COMPRESSION_ENV_VAR, compression.name())
+                                    .toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            logger.warn(iae);
+        }
+        logger.info("Archived recording compression: {}", compression);
+        return new ArchiveCodec(compression);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveChunkStore provideArchiveChunkStore(
+            @Named(MainModule.RECORDINGS_PATH) Path recordingsPath,
+            ArchiveStorage storage,
+            ArchiveCodec codec,
+            Environment env,
+            Logger logger) {
+        boolean enabled = Boolean.parseBoolean(env.getEnv(ARCHIVE_DEDUPLICATION_ENV_VAR));
+        if (enabled && storage.getLocalDirectory().isEmpty()) {
+            logger.warn("Archived recording chunk deduplication requires local archive storage");
+            enabled = false;
+        }
+        logger.info("Archived recording chunk deduplication enabled: {}", enabled);
+        return new ArchiveChunkStore(recordingsPath, codec, enabled, logger);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveRetentionEngine provideArchiveRetentionEngine(
+            ArchiveCatalog catalog,
+            RecordingArchiveHelper recordingArchiveHelper,
+            NotificationFactory notificationFactory,
+            Clock clock,
+            Environment env,
+            Logger logger) {
+        long maxAgeSeconds = parseLong(env, logger, ARCHIVE_MAX_AGE_ENV_VAR, 0);
+        ArchiveRetentionEngine.EvictionOrder eviction = ArchiveRetentionEngine.EvictionOrder.OLDEST;
+        try {
+            eviction =
+                    ArchiveRetentionEngine.EvictionOrder.valueOf(
+                            env.getEnv(ARCHIVE_EVICTION_ENV_VAR, eviction.name())
+                                    .toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            logger.warn(iae);
+        }
+        ArchiveRetentionEngine.Policy policy =
+                new ArchiveRetentionEngine.Policy(
+                        parseLong(env, logger, ARCHIVE_MAX_BYTES_ENV_VAR, 0),
+                        parseLong(env, logger, ARCHIVE_MAX_BYTES_PER_TARGET_ENV_VAR, 0),
+                        (int) parseLong(env, logger, ARCHIVE_MAX_COUNT_ENV_VAR, 0),
+                        maxAgeSeconds > 0 ? Duration.ofSeconds(maxAgeSeconds) : null,
+                        eviction);
+        long periodSeconds =
+                parseLong(
+                        env,
+                        logger,
+                        ARCHIVE_RETENTION_PERIOD_ENV_VAR,
+                        DEFAULT_ARCHIVE_RETENTION_PERIOD_SECONDS);
+        long batchSize =
+                parseLong(
+                        env,
+                        logger,
+                        ARCHIVE_RETENTION_BATCH_ENV_VAR,
+                        DEFAULT_ARCHIVE_RETENTION_BATCH_SIZE);
+        return new ArchiveRetentionEngine(
+                catalog,
+                recordingArchiveHelper,
+                notificationFactory,
+                Executors.newSingleThreadScheduledExecutor(),
+                clock,
+                policy,
+                Duration.ofSeconds(
+                        periodSeconds > 0
+                                ? periodSeconds
+                                : DEFAULT_ARCHIVE_RETENTION_PERIOD_SECONDS),
+                batchSize > 0 ? (int) batchSize : DEFAULT_ARCHIVE_RETENTION_BATCH_SIZE,
+                logger);
+    }
+
+    private static long parseLong(
+            Environment env, Logger logger, String envVar, long defaultValue) {
+        try {
+            return Long.parseLong(env.getEnv(envVar, String.valueOf(defaultValue)));
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return defaultValue;
+        }
     }
 
     @Provides
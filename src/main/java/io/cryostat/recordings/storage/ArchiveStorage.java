@@ -0,0 +1,82 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where archived recordings are kept. Archives are flat, named blobs which are written once, in a
+ * single streaming pass, and may then be read whole or by byte range, listed, and deleted. The
+ * default implementation keeps archives in a local directory, which also allows local-only
+ * optimizations such as zero-copy downloads, the chunk store and the directory watcher.
+ */
+public interface ArchiveStorage {
+
+    /** @return the local directory holding the archives, if they are stored on local disk */
+    Optional<Path> getLocalDirectory();
+
+    /** @return the local file holding the named archive, if archives are stored on local disk */
+    default Optional<Path> getLocalPath(String name) {
+        return getLocalDirectory().map(dir -> dir.resolve(name));
+    }
+
+    List<ArchiveObject> list() throws IOException;
+
+    /** @return the size and modification time of the named archive, or empty if it is absent */
+    Optional<ArchiveObject> stat(String name) throws IOException;
+
+    boolean exists(String name) throws IOException;
+
+    InputStream open(String name) throws IOException;
+
+    /** Open length bytes of the named archive, starting at offset. */
+    InputStream open(String name, long offset, long length) throws IOException;
+
+    /**
+     * Store the content under the given name, streaming it without holding the whole archive in
+     * memory. Fails if an archive of that name already exists, where the backend can tell.
+     */
+    void write(String name, InputStream content) throws IOException;
+
+    /** Delete the named archive, if it exists. */
+    void delete(String name) throws IOException;
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import io.cryostat.core.sys.FileSystem;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/** Keeps archived recordings as files in a local directory, such as a persistent volume. */
+public class LocalArchiveStorage implements ArchiveStorage {
+
+    static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    static final int MAX_POOLED_WRITE_BUFFERS = 4;
+
+    private final FileSystem fs;
+    private final Path directory;
+    // direct buffers, so recordings go to disk in large blocks without an extra copy through a
+    // heap array on the way out. Each is borrowed for one write only, and at most a few are kept
+    // between writes however many threads write, so the native memory held stays bounded
+    private final BlockingQueue<ByteBuffer> writeBuffers =
+            new ArrayBlockingQueue<>(MAX_POOLED_WRITE_BUFFERS);
+
+    public LocalArchiveStorage(FileSystem fs, Path directory) {
+        this.fs = fs;
+        this.directory = directory;
+    }
+
+    @Override
+    public Optional<Path> getLocalDirectory() {
+        return Optional.of(directory);
+    }
+
+    @Override
+    public List<ArchiveObject> list() throws IOException {
+        List<ArchiveObject> objects = new ArrayList<>();
+        for (String name : fs.listDirectoryChildren(directory)) {
+            stat(name).ifPresent(objects::add);
+        }
+        return objects;
+    }
+
+    @Override
+    public Optional<ArchiveObject> stat(String name) throws IOException {
+        try {
+            BasicFileAttributes attrs =
+                    Files.readAttributes(directory.resolve(name), BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(
+                    new ArchiveObject(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return fs.exists(directory.resolve(name));
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        return fs.newInputStream(directory.resolve(name));
+    }
+
+    @Override
+    public InputStream open(String name, long offset, long length) throws IOException {
+        SeekableByteChannel channel =
+                Files.newByteChannel(directory.resolve(name), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void write(String name, InputStream content) throws IOException {
+        Path path = directory.resolve(name);
+        // the source channel is not closed here since it would close the caller's stream
+        ReadableByteChannel source = Channels.newChannel(content);
+        ByteBuffer buffer = borrowWriteBuffer();
+        try (FileChannel out =
+                FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            boolean eof = false;
+            while (!eof) {
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            if (!(e instanceof FileAlreadyExistsException)) {
+                fs.deleteIfExists(path);
+            }
+            throw e;
+        } finally {
+            releaseWriteBuffer(buffer);
+        }
+    }
+
+    private ByteBuffer borrowWriteBuffer() {
+        ByteBuffer buffer = writeBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    }
+
+    // buffers beyond the pool's capacity are left for the garbage collector to free
+    private void releaseWriteBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        writeBuffers.offer(buffer);
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        fs.deleteIfExists(directory.resolve(name));
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps archived recordings as objects in an S3-compatible object store, such as AWS S3 or MinIO,
+ * so that archive capacity is not tied to one pod's volume. Requests use path-style addressing and
+ * are signed with AWS Signature Version 4. Archives larger than one part are streamed up with a
+ * multipart upload holding only one part in memory at a time, and downloads use ranged reads.
+ */
+public class S3ArchiveStorage implements ArchiveStorage {
+
+    /** S3 rejects multipart uploads with parts smaller than this, except for the last part. */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final int ERROR_BODY_LIMIT = 1024;
+
+    private final HttpClient http;
+    private final URI endpoint;
+    private final String bucket;
+    private final String prefix;
+    private final S3RequestSigner signer;
+    private final int partSize;
+
+    S3ArchiveStorage(
+            HttpClient http,
+            URI endpoint,
+            String bucket,
+            String prefix,
+            S3RequestSigner signer,
+            int partSize) {
+        this.http = http;
+        this.endpoint = endpoint;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.signer = signer;
+        this.partSize = partSize;
+    }
+
+    public static S3ArchiveStorage create(
+            URI endpoint,
+            String bucket,
+            String prefix,
+            String region,
+            String accessKey,
+            String secretKey,
+            int partSize) {
+        return new S3ArchiveStorage(
+                HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build(),
+                endpoint,
+                bucket,
+                prefix,
+                new S3RequestSigner(accessKey, secretKey, region),
+                Math.max(MIN_PART_SIZE, partSize));
+    }
+
+    @Override
+    public Optional<Path> getLocalDirectory() {
+        return Optional.empty();
+    }
+
+    @Override
+    public List<ArchiveObject> list() throws IOException {
+        List<ArchiveObject> objects = new ArrayList<>();
+        String continuation = null;
+        do {
+            SortedMap<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            if (continuation != null) {
+                query.put("continuation-token", continuation);
+            }
+            HttpResponse<InputStream> response =
+                    send("GET", null, query, Map.of(), HttpRequest.BodyPublishers.noBody(), null);
+            Document doc = parseXml(checkStatus(response, null));
+            NodeList contents = doc.getElementsByTagName("Contents");
+            for (int i = 0; i < contents.getLength(); i++) {
+                Element object = (Element) contents.item(i);
+                String name = text(object, "Key").substring(prefix.length());
+                // archives are a flat namespace, so ignore anything in "subdirectories"
+                if (name.isEmpty() || name.contains("/")) {
+                    continue;
+                }
+                objects.add(
+                        new ArchiveObject(
+                                name,
+                                Long.parseLong(text(object, "Size")),
+                                Instant.parse(text(object, "LastModified")).toEpochMilli()));
+            }
+            continuation =
+                    Boolean.parseBoolean(text(doc.getDocumentElement(), "IsTruncated"))
+                            ? text(doc.getDocumentElement(), "NextContinuationToken")
+                            : null;
+        } while (continuation != null);
+        return objects;
+    }
+
+    @Override
+    public Optional<ArchiveObject> stat(String name) throws IOException {
+        HttpResponse<InputStream> response =
+                send(
+                        "HEAD",
+                        name,
+                        new TreeMap<>(),
+                        Map.of(),
+                        HttpRequest.BodyPublishers.noBody(),
+                        null);
+        if (response.statusCode() == 404) {
+            response.body().close();
+            return Optional.empty();
+        }
+        checkStatus(response, name).close();
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified =
+                response.headers()
+                        .firstValue("Last-Modified")
+                        .map(S3ArchiveStorage::parseHttpDate)
+                        .orElse(0L);
+        return Optional.of(new ArchiveObject(name, size, lastModified));
+    }
+
+    @Override
+    public boolean exists(String name) throws IOException {
+        return stat(name).isPresent();
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        HttpResponse<InputStream> response =
+                send(
+                        "GET",
+                        name,
+                        new TreeMap<>(),
+                        Map.of(),
+                        HttpRequest.BodyPublishers.noBody(),
+                        null);
+        return checkStatus(response, name);
+    }
+
+    @Override
+    public InputStream open(String name, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        HttpResponse<InputStream> response =
+                send(
+                        "GET",
+                        name,
+                        new TreeMap<>(),
+                        Map.of("range", String.format("bytes=%d-%d", offset, offset + length - 1)),
+                        HttpRequest.BodyPublishers.noBody(),
+                        null);
+        InputStream body = checkStatus(response, name);
+        if (response.statusCode() == 206) {
+            return body;
+        }
+        // the store ignored the range and sent the whole object
+        IOUtils.skipFully(body, offset);
+        return new BoundedInputStream(body, length);
+    }
+
+    @Override
+    public void write(String name, InputStream content) throws IOException {
+        byte[] part = new byte[partSize];
+        int n = IOUtils.read(content, part);
+        if (n < partSize) {
+            // fits in one request, so there is no need for a multipart upload
+            HttpResponse<InputStream> response =
+                    send(
+                            "PUT",
+                            name,
+                            new TreeMap<>(),
+                            Map.of("if-none-match", "*"),
+                            HttpRequest.BodyPublishers.ofByteArray(part, 0, n),
+                            S3RequestSigner.sha256Hex(part, n));
+            checkStatus(response, name).close();
+            return;
+        }
+
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploads", "");
+        HttpResponse<InputStream> created =
+                send("POST", name, query, Map.of(), HttpRequest.BodyPublishers.noBody(), null);
+        String uploadId =
+                text(parseXml(checkStatus(created, name)).getDocumentElement(), "UploadId");
+        try {
+            List<String> etags = new ArrayList<>();
+            while (n > 0) {
+                etags.add(uploadPart(name, uploadId, etags.size() + 1, part, n));
+                n = IOUtils.read(content, part);
+            }
+            completeUpload(name, uploadId, etags);
+        } catch (IOException | RuntimeException e) {
+            try {
+                abortUpload(name, uploadId);
+            } catch (IOException | RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private String uploadPart(String name, String uploadId, int partNumber, byte[] part, int n)
+            throws IOException {
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("partNumber", String.valueOf(partNumber));
+        query.put("uploadId", uploadId);
+        HttpResponse<InputStream> response =
+                send(
+                        "PUT",
+                        name,
+                        query,
+                        Map.of(),
+                        HttpRequest.BodyPublishers.ofByteArray(part, 0, n),
+                        S3RequestSigner.sha256Hex(part, n));
+        checkStatus(response, name).close();
+        return response.headers()
+                .firstValue("ETag")
+                .orElseThrow(() -> new IOException("No ETag for uploaded part of " + name));
+    }
+
+    private void completeUpload(String name, String uploadId, List<String> etags)
+            throws IOException {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>")
+                    .append(i + 1)
+                    .append("</PartNumber><ETag>")
+                    .append(escapeXml(etags.get(i)))
+                    .append("</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        HttpResponse<InputStream> response =
+                send(
+                        "POST",
+                        name,
+                        query,
+                        Map.of("if-none-match", "*"),
+                        HttpRequest.BodyPublishers.ofByteArray(body),
+                        S3RequestSigner.sha256Hex(body));
+        // S3 may report a failure to complete in the body of a 200 response
+        Document doc = parseXml(checkStatus(response, name));
+        if ("Error".equals(doc.getDocumentElement().getTagName())) {
+            throw new IOException(
+                    String.format(
+                            "Completing upload of %s failed: %s",
+                            name, text(doc.getDocumentElement(), "Message")));
+        }
+    }
+
+    private void abortUpload(String name, String uploadId) throws IOException {
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        send("DELETE", name, query, Map.of(), HttpRequest.BodyPublishers.noBody(), null)
+                .body()
+                .close();
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        HttpResponse<InputStream> response =
+                send(
+                        "DELETE",
+                        name,
+                        new TreeMap<>(),
+                        Map.of(),
+                        HttpRequest.BodyPublishers.noBody(),
+                        null);
+        if (response.statusCode() == 404) {
+            response.body().close();
+            return;
+        }
+        checkStatus(response, name).close();
+    }
+
+    /**
+     * @param name the archive to address, or null to address the bucket
+     * @param headers additional headers to sign and send, with lower case names
+     * @param payloadSha256 the hex SHA-256 of the body, or null if there is no body
+     */
+    private HttpResponse<InputStream> send(
+            String method,
+            String name,
+            SortedMap<String, String> query,
+            Map<String, String> headers,
+            HttpRequest.BodyPublisher body,
+            String payloadSha256)
+            throws IOException {
+        String path = "/" + bucket;
+        if (name != null) {
+            path += "/" + prefix + name;
+        }
+        String canonicalUri =
+                S3RequestSigner.uriEncode(endpoint.getPath().replaceAll("/+$", ""), false)
+                        + S3RequestSigner.uriEncode(path, false);
+        String queryString = S3RequestSigner.canonicalQuery(query);
+        URI uri =
+                endpoint.resolve(canonicalUri + (queryString.isEmpty() ? "" : "?" + queryString));
+
+        Instant now = Instant.now();
+        String payload =
+                payloadSha256 == null ? S3RequestSigner.EMPTY_PAYLOAD_SHA256 : payloadSha256;
+        SortedMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", hostHeader(uri));
+        signed.put("x-amz-content-sha256", payload);
+        signed.put("x-amz-date", S3RequestSigner.TIMESTAMP_FORMAT.format(now));
+
+        HttpRequest.Builder request =
+                HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).method(method, body);
+        signed.forEach(
+                (k, v) -> {
+                    // the client sets the Host header itself, from the URI
+                    if (!"host".equals(k)) {
+                        request.header(k, v);
+                    }
+                });
+        request.header(
+                "Authorization",
+                signer.authorization(method, canonicalUri, query, signed, payload, now));
+        try {
+            return http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    // the same value that the HTTP client will send, so that the signature matches
+    static String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort =
+                port == -1
+                        || ("https".equalsIgnoreCase(uri.getScheme()) && port == 443)
+                        || ("http".equalsIgnoreCase(uri.getScheme()) && port == 80);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    private static InputStream checkStatus(HttpResponse<InputStream> response, String name)
+            throws IOException {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            return response.body();
+        }
+        String detail;
+        try (InputStream body = response.body()) {
+            detail =
+                    new String(
+                            IOUtils.toByteArray(new BoundedInputStream(body, ERROR_BODY_LIMIT)),
+                            StandardCharsets.UTF_8);
+        }
+        if (status == 404 && name != null) {
+            throw new NoSuchFileException(name);
+        }
+        if (status == 412 && name != null) {
+            throw new FileAlreadyExistsException(name);
+        }
+        throw new IOException(
+                String.format(
+                        "S3 %s request failed with status %d: %s",
+                        response.request().method(), status, detail));
+    }
+
+    private static Document parseXml(InputStream body) throws IOException {
+        try (body) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(new ByteArrayInputStream(body.readAllBytes()));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String text(Element parent, String tag) throws IOException {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        if (nodes.getLength() == 0) {
+            throw new IOException("S3 response has no " + tag);
+        }
+        return nodes.item(0).getTextContent();
+    }
+
+    private static String escapeXml(String s) {
+        return s.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+    private static long parseHttpDate(String date) {
+        try {
+            return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0L;
+        }
+    }
+}
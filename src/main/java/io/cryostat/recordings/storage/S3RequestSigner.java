@@ -0,0 +1,177 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Hex;
+
+/** Signs S3 requests with AWS Signature Version 4, as accepted by S3 and compatible stores. */
+class S3RequestSigner {
+
+    static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    static final String EMPTY_PAYLOAD_SHA256 =
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final String SERVICE = "s3";
+    private static final String TERMINATOR = "aws4_request";
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String region;
+
+    S3RequestSigner(String accessKey, String secretKey, String region) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.region = region;
+    }
+
+    /**
+     * @param canonicalUri the URI-encoded request path
+     * @param query the query parameters, unencoded
+     * @param headers every header to sign, with lower case names. This must include host,
+     *     x-amz-date and x-amz-content-sha256
+     * @return the value of the Authorization header for the request
+     */
+    String authorization(
+            String method,
+            String canonicalUri,
+            SortedMap<String, String> query,
+            SortedMap<String, String> headers,
+            String payloadSha256,
+            Instant time) {
+        String signedHeaders = String.join(";", headers.keySet());
+        String canonicalRequest =
+                String.join(
+                        "\n",
+                        method,
+                        canonicalUri,
+                        canonicalQuery(query),
+                        headers.entrySet().stream()
+                                .map(e -> e.getKey() + ":" + e.getValue().trim() + "\n")
+                                .collect(Collectors.joining()),
+                        signedHeaders,
+                        payloadSha256);
+        String scope = String.join("/", DATE_FORMAT.format(time), region, SERVICE, TERMINATOR);
+        String stringToSign =
+                String.join(
+                        "\n",
+                        ALGORITHM,
+                        TIMESTAMP_FORMAT.format(time),
+                        scope,
+                        sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] key = ("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8);
+        key = hmac(key, DATE_FORMAT.format(time));
+        key = hmac(key, region);
+        key = hmac(key, SERVICE);
+        key = hmac(key, TERMINATOR);
+        String signature = Hex.encodeHexString(hmac(key, stringToSign));
+
+        return String.format(
+                "%s Credential=%s/%s, SignedHeaders=%s, Signature=%s",
+                ALGORITHM, accessKey, scope, signedHeaders, signature);
+    }
+
+    static String canonicalQuery(SortedMap<String, String> query) {
+        return query.entrySet().stream()
+                .map(e -> uriEncode(e.getKey(), true) + "=" + uriEncode(e.getValue(), true))
+                .collect(Collectors.joining("&"));
+    }
+
+    /** Percent-encode everything but the RFC 3986 unreserved characters, and maybe slashes. */
+    static String uriEncode(String s, boolean encodeSlash) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z')
+                    || (c >= 'a' && c <= 'z')
+                    || (c >= '0' && c <= '9')
+                    || c == '-'
+                    || c == '.'
+                    || c == '_'
+                    || c == '~'
+                    || (c == '/' && !encodeSlash)) {
+                sb.append(c);
+            } else {
+                sb.append(String.format("%%%02X", (int) c));
+            }
+        }
+        return sb.toString();
+    }
+
+    static String sha256Hex(byte[] bytes) {
+        return sha256Hex(bytes, bytes.length);
+    }
+
+    static String sha256Hex(byte[] bytes, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes, 0, length);
+            return Hex.encodeHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            // every Java platform is required to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+}
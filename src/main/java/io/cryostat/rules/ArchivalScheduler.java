@@ -0,0 +1,441 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.platform.ServiceRef;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Schedules periodic rule archival tasks. Each (target, rule) pair is triggered at its rule's
+ * archival period, offset by a jitter derived deterministically from the target and rule so that
+ * targets discovered together do not all archive at the same instant. Triggered archivals are
+ * queued and dispatched to the worker executor subject to a global concurrency limit and a
+ * per-node concurrency limit. A trigger for a pair which is still queued or running is coalesced
+ * into the existing one.
+ */
+class ArchivalScheduler {
+
+    private final ScheduledExecutorService timer;
+    private final Executor workers;
+    private final int maxConcurrent;
+    private final int maxConcurrentPerNode;
+    private final Logger logger;
+
+    private final Queue<Ticket> queue = new ArrayDeque<>();
+    private final Map<Pair<ServiceRef, Rule>, Ticket> pending = new HashMap<>();
+    private final Map<String, Integer> runningPerNode = new HashMap<>();
+    private int running;
+
+    private long completed;
+    private long coalesced;
+    private long lastLagMillis;
+    private long maxLagMillis;
+    private long totalLagMillis;
+
+    ArchivalScheduler(
+            ScheduledExecutorService timer,
+            Executor workers,
+            int maxConcurrent,
+            int maxConcurrentPerNode,
+            Logger logger) {
+        this.timer = timer;
+        this.workers = workers;
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerNode = maxConcurrentPerNode;
+        this.logger = logger;
+    }
+
+    Future<?> schedule(ServiceRef serviceRef, Rule rule, Runnable task) {
+        Pair<ServiceRef, Rule> key = Pair.of(serviceRef, rule);
+        long periodMillis = TimeUnit.SECONDS.toMillis(rule.getArchivalPeriodSeconds());
+        long initialDelayMillis = periodMillis + jitter(serviceRef, rule, periodMillis);
+        logger.trace(
+                "Scheduling archival for rule {} on {} every {}ms after {}ms",
+                rule.getName(),
+                serviceRef.getServiceUri(),
+                periodMillis,
+                initialDelayMillis);
+        ScheduledArchival handle = new ScheduledArchival(key);
+        handle.trigger =
+                timer.scheduleAtFixedRate(
+                        () -> enqueue(handle, nodeOf(serviceRef), task),
+                        initialDelayMillis,
+                        periodMillis,
+                        TimeUnit.MILLISECONDS);
+        return handle;
+    }
+
+    synchronized Metrics getMetrics() {
+        return new Metrics(
+                queue.size(),
+                running,
+                completed,
+                coalesced,
+                lastLagMillis,
+                maxLagMillis,
+                completed > 0 ? totalLagMillis / completed : 0);
+    }
+
+    void emitMetricsEvent() {
+        Metrics metrics = getMetrics();
+        new ArchivalQueueStatistics(
+                        metrics.getQueued(),
+                        metrics.getRunning(),
+                        metrics.getCompleted(),
+                        metrics.getCoalesced(),
+                        metrics.getLastLagMillis(),
+                        metrics.getMaxLagMillis(),
+                        metrics.getMeanLagMillis())
+                .commit();
+    }
+
+    static long jitter(ServiceRef serviceRef, Rule rule, long periodMillis) {
+        if (periodMillis <= 0) {
+            return 0;
+        }
+        String id = serviceRef.getServiceUri().toString() + "/" + rule.getName();
+        return Math.floorMod(mix(id), periodMillis);
+    }
+
+    static String nodeOf(ServiceRef serviceRef) {
+        String host = serviceRef.getCryostatAnnotations().get(ServiceRef.AnnotationKey.HOST);
+        if (host != null) {
+            return host;
+        }
+        return serviceRef.getServiceUri().toString();
+    }
+
+    // FNV-1a over the UTF-8 bytes followed by the MurmurHash3 64-bit finalizer, so that IDs
+    // differing only in a trailing character still land far apart within the period
+    private static long mix(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private synchronized void enqueue(ScheduledArchival handle, String node, Runnable task) {
+        if (handle.cancelled) {
+            return;
+        }
+        Pair<ServiceRef, Rule> key = handle.key;
+        if (pending.containsKey(key)) {
+            coalesced++;
+            logger.trace(
+                    "Archival for rule {} on {} still pending, skipping",
+                    key.getRight().getName(),
+                    key.getLeft().getServiceUri());
+            return;
+        }
+        Ticket ticket = new Ticket(handle, node, task, System.nanoTime());
+        pending.put(key, ticket);
+        queue.add(ticket);
+        dispatch();
+    }
+
+    private synchronized void dispatch() {
+        Iterator<Ticket> it = queue.iterator();
+        while (running < maxConcurrent && it.hasNext()) {
+            Ticket ticket = it.next();
+            int nodeRunning = runningPerNode.getOrDefault(ticket.node, 0);
+            if (nodeRunning >= maxConcurrentPerNode) {
+                continue;
+            }
+            it.remove();
+            running++;
+            runningPerNode.put(ticket.node, nodeRunning + 1);
+            workers.execute(() -> execute(ticket));
+        }
+    }
+
+    private void execute(Ticket ticket) {
+        long lagMillis;
+        synchronized (this) {
+            if (ticket.handle.cancelled) {
+                release(ticket);
+                return;
+            }
+            ticket.thread = Thread.currentThread();
+            lagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.enqueuedNanos);
+        }
+        ArchivalExecutedEvent evt =
+                new ArchivalExecutedEvent(
+                        ticket.key.getRight().getName(),
+                        ticket.key.getLeft().getServiceUri().toString(),
+                        ticket.node,
+                        lagMillis);
+        try {
+            evt.begin();
+            ticket.task.run();
+        } catch (Exception e) {
+            logger.error(e);
+        } finally {
+            evt.end();
+            if (evt.shouldCommit()) {
+                evt.commit();
+            }
+            synchronized (this) {
+                ticket.thread = null;
+                completed++;
+                lastLagMillis = lagMillis;
+                maxLagMillis = Math.max(maxLagMillis, lagMillis);
+                totalLagMillis += lagMillis;
+                release(ticket);
+            }
+        }
+    }
+
+    private synchronized void release(Ticket ticket) {
+        running--;
+        runningPerNode.computeIfPresent(ticket.node, (n, c) -> c > 1 ? c - 1 : null);
+        pending.remove(ticket.key, ticket);
+        dispatch();
+    }
+
+    private synchronized void cancel(ScheduledArchival handle, boolean mayInterruptIfRunning) {
+        handle.cancelled = true;
+        Ticket ticket = pending.get(handle.key);
+        if (ticket == null || ticket.handle != handle) {
+            return;
+        }
+        if (queue.remove(ticket)) {
+            pending.remove(handle.key);
+        } else if (ticket.thread != null && mayInterruptIfRunning) {
+            ticket.thread.interrupt();
+        }
+        // otherwise the ticket has been handed to a worker, which will observe the cancellation
+        // and release its slot without running the task
+    }
+
+    private static class Ticket {
+        private final ScheduledArchival handle;
+        private final Pair<ServiceRef, Rule> key;
+        private final String node;
+        private final Runnable task;
+        private final long enqueuedNanos;
+        private Thread thread;
+
+        Ticket(ScheduledArchival handle, String node, Runnable task, long enqueuedNanos) {
+            this.handle = handle;
+            this.key = handle.key;
+            this.node = node;
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private class ScheduledArchival implements Future<Void> {
+        private final Pair<ServiceRef, Rule> key;
+        private volatile ScheduledFuture<?> trigger;
+        private volatile boolean cancelled;
+
+        ScheduledArchival(Pair<ServiceRef, Rule> key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = trigger.cancel(false);
+            ArchivalScheduler.this.cancel(this, mayInterruptIfRunning);
+            return result;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return trigger.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return trigger.isDone();
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            trigger.get();
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            trigger.get(timeout, unit);
+            return null;
+        }
+    }
+
+    static class Metrics {
+        private final int queued;
+        private final int running;
+        private final long completed;
+        private final long coalesced;
+        private final long lastLagMillis;
+        private final long maxLagMillis;
+        private final long meanLagMillis;
+
+        Metrics(
+                int queued,
+                int running,
+                long completed,
+                long coalesced,
+                long lastLagMillis,
+                long maxLagMillis,
+                long meanLagMillis) {
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.coalesced = coalesced;
+            this.lastLagMillis = lastLagMillis;
+            this.maxLagMillis = maxLagMillis;
+            this.meanLagMillis = meanLagMillis;
+        }
+
+        int getQueued() {
+            return queued;
+        }
+
+        int getRunning() {
+            return running;
+        }
+
+        long getCompleted() {
+            return completed;
+        }
+
+        long getCoalesced() {
+            return coalesced;
+        }
+
+        long getLastLagMillis() {
+            return lastLagMillis;
+        }
+
+        long getMaxLagMillis() {
+            return maxLagMillis;
+        }
+
+        long getMeanLagMillis() {
+            return meanLagMillis;
+        }
+    }
+
+    @Name("io.cryostat.rules.ArchivalScheduler.ArchivalExecutedEvent")
+    @Label("Rule Archival Execution")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchivalExecutedEvent extends Event {
+
+        String ruleName;
+        String target;
+        String node;
+        long queueLagMillis;
+
+        ArchivalExecutedEvent(String ruleName, String target, String node, long queueLagMillis) {
+            this.ruleName = ruleName;
+            this.target = target;
+            this.node = node;
+            this.queueLagMillis = queueLagMillis;
+        }
+    }
+
+    @Name("io.cryostat.rules.ArchivalScheduler.ArchivalQueueStatistics")
+    @Label("Rule Archival Queue Statistics")
+    @Category("Cryostat")
+    @Period("10 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchivalQueueStatistics extends Event {
+
+        int queued;
+        int running;
+        long completed;
+        long coalesced;
+        long lastLagMillis;
+        long maxLagMillis;
+        long meanLagMillis;
+
+        ArchivalQueueStatistics(
+                int queued,
+                int running,
+                long completed,
+                long coalesced,
+                long lastLagMillis,
+                long maxLagMillis,
+                long meanLagMillis) {
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.coalesced = coalesced;
+            this.lastLagMillis = lastLagMillis;
+            this.maxLagMillis = maxLagMillis;
+            this.meanLagMillis = meanLagMillis;
+        }
+    }
+}
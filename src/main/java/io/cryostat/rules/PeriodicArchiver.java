@@ -37,8 +37,11 @@
  */
 package io.cryostat.rules;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.Deque;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -62,28 +65,33 @@ class PeriodicArchiver implements Runnable {
     private final CredentialsManager credentialsManager;
     private final Rule rule;
     private final RecordingArchiveHelper recordingArchiveHelper;
+    private final RuleArchiveIndex archiveIndex;
+    private final boolean differential;
     private final Function<Pair<ServiceRef, Rule>, Void> failureNotifier;
     private final Logger logger;
 
-    private final Queue<String> previousRecordings;
+    private final Deque<String> previousRecordings;
 
     PeriodicArchiver(
             ServiceRef serviceRef,
             CredentialsManager credentialsManager,
             Rule rule,
             RecordingArchiveHelper recordingArchiveHelper,
+            RuleArchiveIndex archiveIndex,
+            boolean differential,
             Function<Pair<ServiceRef, Rule>, Void> failureNotifier,
             Logger logger) {
         this.serviceRef = serviceRef;
         this.credentialsManager = credentialsManager;
         this.recordingArchiveHelper = recordingArchiveHelper;
+        this.archiveIndex = archiveIndex;
+        this.differential = differential;
         this.rule = rule;
         this.failureNotifier = failureNotifier;
         this.logger = logger;
 
-        // FIXME this needs to be populated at startup by scanning the existing archived recordings,
-        // in case we have been restarted and already previously processed archival for this rule
-        this.previousRecordings = new ArrayDeque<>(this.rule.getPreservedArchives());
+        // restore archives created before a restart so that they are still pruned in order
+        this.previousRecordings = new ArrayDeque<>(archiveIndex.getArchives(serviceRef, rule));
     }
 
     @Override
@@ -121,9 +129,26 @@ class PeriodicArchiver implements Runnable {
                     new ConnectionDescriptor(
                             serviceRef, credentialsManager.getCredentials(serviceRef));
 
-            String saveName =
-                    recordingArchiveHelper.saveRecording(connectionDescriptor, recordingName);
+            String saveName;
+            if (differential) {
+                Optional<String> differentialName =
+                        recordingArchiveHelper.saveRecordingDifferential(
+                                connectionDescriptor,
+                                recordingName,
+                                Optional.ofNullable(this.previousRecordings.peekLast()),
+                                Duration.ofSeconds(rule.getMaxAgeSeconds()));
+                if (differentialName.isEmpty()) {
+                    logger.trace("No new chunks in {}, skipping archival", recordingName);
+                    future.complete(false);
+                    return future;
+                }
+                saveName = differentialName.get();
+            } else {
+                saveName =
+                        recordingArchiveHelper.saveRecording(connectionDescriptor, recordingName);
+            }
             this.previousRecordings.add(saveName);
+            this.archiveIndex.addArchive(serviceRef, rule, saveName);
             future.complete(true);
         } catch (RecordingNotFoundException e) {
             future.completeExceptionally(e);
@@ -137,11 +162,11 @@ class PeriodicArchiver implements Runnable {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
 
         try {
-            ConnectionDescriptor connectionDescriptor = new ConnectionDescriptor(serviceRef);
-            recordingArchiveHelper.deleteRecording(connectionDescriptor, recordingName);
+            recordingArchiveHelper.deleteArchivedRecording(recordingName);
             previousRecordings.remove(recordingName);
+            archiveIndex.removeArchive(serviceRef, rule, recordingName);
             future.complete(true);
-        } catch (RecordingNotFoundException e) {
+        } catch (IOException e) {
             future.completeExceptionally(e);
         }
         return future;
@@ -48,9 +48,13 @@ import org.apache.commons.lang3.tuple.Pair;
 
 class PeriodicArchiverFactory {
 
+    private final RuleArchiveIndex archiveIndex;
+    private final boolean differential;
     private final Logger logger;
 
-    PeriodicArchiverFactory(Logger logger) {
+    PeriodicArchiverFactory(RuleArchiveIndex archiveIndex, boolean differential, Logger logger) {
+        this.archiveIndex = archiveIndex;
+        this.differential = differential;
         this.logger = logger;
     }
 
@@ -65,6 +69,8 @@ class PeriodicArchiverFactory {
                 credentialsManager,
                 rule,
                 recordingArchiveHelper,
+                archiveIndex,
+                differential,
                 failureNotifier,
                 logger);
     }
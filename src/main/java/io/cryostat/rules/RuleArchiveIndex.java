@@ -0,0 +1,186 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.platform.ServiceRef;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Tracks the archived recordings produced by each (target, rule) pair, in the order they were
+ * created, so that {@link PeriodicArchiver} can prune the oldest archives after a restart without
+ * scanning the archive directory. The index is persisted as an append-only journal of tab-separated
+ * {@code +} (added) and {@code -} (removed) entries, which is compacted into a snapshot on load.
+ */
+class RuleArchiveIndex {
+
+    static final String INDEX_FILENAME = "rule_archives.idx";
+
+    private static final String ADDED = "+";
+    private static final String REMOVED = "-";
+    private static final String SEPARATOR = "\t";
+
+    private final Path indexFile;
+    private final FileSystem fs;
+    private final Logger logger;
+
+    private final Map<Pair<String, String>, Set<String>> archives = new HashMap<>();
+
+    RuleArchiveIndex(Path indexFile, FileSystem fs, Logger logger) {
+        this.indexFile = indexFile;
+        this.fs = fs;
+        this.logger = logger;
+    }
+
+    synchronized void load() throws IOException {
+        archives.clear();
+        if (!fs.isRegularFile(indexFile)) {
+            return;
+        }
+        int journalEntries = 0;
+        try (BufferedReader reader = fs.readFile(indexFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR, -1);
+                if (parts.length != 4) {
+                    logger.warn("Skipping malformed rule archive index entry: {}", line);
+                    continue;
+                }
+                journalEntries++;
+                Pair<String, String> key = Pair.of(parts[1], parts[2]);
+                if (ADDED.equals(parts[0])) {
+                    archives.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(parts[3]);
+                } else if (REMOVED.equals(parts[0])) {
+                    Set<String> names = archives.get(key);
+                    if (names != null) {
+                        names.remove(parts[3]);
+                        if (names.isEmpty()) {
+                            archives.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        int liveEntries = archives.values().stream().mapToInt(Set::size).sum();
+        logger.trace(
+                "Loaded {} rule archive index entries from {} journal entries",
+                liveEntries,
+                journalEntries);
+        if (journalEntries > liveEntries) {
+            compact();
+        }
+    }
+
+    synchronized List<String> getArchives(ServiceRef serviceRef, Rule rule) {
+        return new ArrayList<>(archives.getOrDefault(keyOf(serviceRef, rule), Set.of()));
+    }
+
+    synchronized void addArchive(ServiceRef serviceRef, Rule rule, String archiveName)
+            throws IOException {
+        Pair<String, String> key = keyOf(serviceRef, rule);
+        if (archives.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(archiveName)) {
+            append(ADDED, key, archiveName);
+        }
+    }
+
+    synchronized void removeArchive(ServiceRef serviceRef, Rule rule, String archiveName)
+            throws IOException {
+        Pair<String, String> key = keyOf(serviceRef, rule);
+        Set<String> names = archives.get(key);
+        if (names == null || !names.remove(archiveName)) {
+            return;
+        }
+        if (names.isEmpty()) {
+            archives.remove(key);
+        }
+        append(REMOVED, key, archiveName);
+    }
+
+    private void append(String op, Pair<String, String> key, String archiveName)
+            throws IOException {
+        fs.writeString(
+                indexFile,
+                entry(op, key, archiveName),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void compact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        archives.forEach((key, names) -> names.forEach(n -> sb.append(entry(ADDED, key, n))));
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        fs.writeString(
+                tmp,
+                sb.toString(),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        Files.move(
+                tmp,
+                indexFile,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String entry(String op, Pair<String, String> key, String archiveName) {
+        return String.join(SEPARATOR, op, key.getLeft(), key.getRight(), archiveName)
+                + System.lineSeparator();
+    }
+
+    private static Pair<String, String> keyOf(ServiceRef serviceRef, Rule rule) {
+        return Pair.of(
+                Objects.requireNonNull(serviceRef.getServiceUri()).toString(), rule.getName());
+    }
+}
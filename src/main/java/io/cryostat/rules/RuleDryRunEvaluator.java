@@ -0,0 +1,177 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.ScriptException;
+
+import io.cryostat.platform.PlatformClient;
+import io.cryostat.platform.ServiceRef;
+
+/**
+ * Evaluates a candidate rule against the currently discovered targets without activating it, so
+ * that its reach and archival cost can be assessed before the rule is created.
+ */
+public class RuleDryRunEvaluator {
+
+    private final PlatformClient platformClient;
+    private final RuleMatcher ruleMatcher;
+
+    RuleDryRunEvaluator(PlatformClient platformClient, RuleMatcher ruleMatcher) {
+        this.platformClient = platformClient;
+        this.ruleMatcher = ruleMatcher;
+    }
+
+    public DryRunResult evaluate(Rule rule) throws ScriptException {
+        List<TargetEvaluation> evaluations = new ArrayList<>();
+        for (ServiceRef serviceRef : platformClient.listDiscoverableServices()) {
+            // rules are never applied to targets without an alias, see RuleRegistry#getRules
+            if (!serviceRef.getAlias().isPresent()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            boolean matched = ruleMatcher.applies(rule, serviceRef);
+            long elapsed = System.nanoTime() - start;
+            evaluations.add(new TargetEvaluation(serviceRef, matched, elapsed));
+        }
+        return new DryRunResult(rule, evaluations);
+    }
+
+    /**
+     * The upper bound on bytes archived per hour for one matching target: each archival copies
+     * the recording, which the rule caps at maxSizeBytes. Returns -1 if the rule sets no size cap
+     * or no archival period, in which case the volume cannot be projected.
+     */
+    static long projectArchivalBytesPerHour(Rule rule) {
+        if (rule.getMaxSizeBytes() <= 0 || rule.getArchivalPeriodSeconds() <= 0) {
+            return -1;
+        }
+        return (long) rule.getMaxSizeBytes() * 3600L / rule.getArchivalPeriodSeconds();
+    }
+
+    public static class DryRunResult {
+        private final String matchExpression;
+        private final int evaluatedCount;
+        private final int matchedCount;
+        private final long totalEvaluationNanos;
+        private final long projectedArchivalBytesPerHourPerTarget;
+        private final long projectedArchivalBytesPerHour;
+        private final List<ServiceRef> matchedTargets;
+        private final List<TargetEvaluation> evaluations;
+
+        DryRunResult(Rule rule, List<TargetEvaluation> evaluations) {
+            this.matchExpression = rule.getMatchExpression();
+            this.evaluations = new ArrayList<>(evaluations);
+            this.matchedTargets = new ArrayList<>();
+            long total = 0;
+            for (TargetEvaluation evaluation : evaluations) {
+                total += evaluation.getEvaluationNanos();
+                if (evaluation.isMatched()) {
+                    matchedTargets.add(evaluation.getTarget());
+                }
+            }
+            this.evaluatedCount = evaluations.size();
+            this.matchedCount = matchedTargets.size();
+            this.totalEvaluationNanos = total;
+            this.projectedArchivalBytesPerHourPerTarget = projectArchivalBytesPerHour(rule);
+            this.projectedArchivalBytesPerHour =
+                    projectedArchivalBytesPerHourPerTarget < 0
+                            ? -1
+                            : projectedArchivalBytesPerHourPerTarget * matchedCount;
+        }
+
+        public String getMatchExpression() {
+            return matchExpression;
+        }
+
+        public int getEvaluatedCount() {
+            return evaluatedCount;
+        }
+
+        public int getMatchedCount() {
+            return matchedCount;
+        }
+
+        public long getTotalEvaluationNanos() {
+            return totalEvaluationNanos;
+        }
+
+        public long getProjectedArchivalBytesPerHourPerTarget() {
+            return projectedArchivalBytesPerHourPerTarget;
+        }
+
+        public long getProjectedArchivalBytesPerHour() {
+            return projectedArchivalBytesPerHour;
+        }
+
+        public List<ServiceRef> getMatchedTargets() {
+            return Collections.unmodifiableList(matchedTargets);
+        }
+
+        public List<TargetEvaluation> getEvaluations() {
+            return Collections.unmodifiableList(evaluations);
+        }
+    }
+
+    public static class TargetEvaluation {
+        private final ServiceRef target;
+        private final boolean matched;
+        private final long evaluationNanos;
+
+        TargetEvaluation(ServiceRef target, boolean matched, long evaluationNanos) {
+            this.target = target;
+            this.matched = matched;
+            this.evaluationNanos = evaluationNanos;
+        }
+
+        public ServiceRef getTarget() {
+            return target;
+        }
+
+        public boolean isMatched() {
+            return matched;
+        }
+
+        public long getEvaluationNanos() {
+            return evaluationNanos;
+        }
+    }
+}
@@ -42,8 +42,6 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.openjdk.jmc.flightrecorder.configuration.recording.RecordingOptionsBuilder;
@@ -71,7 +69,7 @@ public class RuleProcessor
 
     private final PlatformClient platformClient;
     private final RuleRegistry registry;
-    private final ScheduledExecutorService scheduler;
+    private final ArchivalScheduler archivalScheduler;
     private final CredentialsManager credentialsManager;
     private final RecordingOptionsBuilderFactory recordingOptionsBuilderFactory;
     private final TargetConnectionManager targetConnectionManager;
@@ -85,7 +83,7 @@ public class RuleProcessor
     RuleProcessor(
             PlatformClient platformClient,
             RuleRegistry registry,
-            ScheduledExecutorService scheduler,
+            ArchivalScheduler archivalScheduler,
             CredentialsManager credentialsManager,
             RecordingOptionsBuilderFactory recordingOptionsBuilderFactory,
             TargetConnectionManager targetConnectionManager,
@@ -95,7 +93,7 @@ public class RuleProcessor
             Logger logger) {
         this.platformClient = platformClient;
         this.registry = registry;
-        this.scheduler = scheduler;
+        this.archivalScheduler = archivalScheduler;
         this.credentialsManager = credentialsManager;
         this.recordingOptionsBuilderFactory = recordingOptionsBuilderFactory;
         this.targetConnectionManager = targetConnectionManager;
@@ -167,16 +165,15 @@ public class RuleProcessor
         }
         tasks.put(
                 Pair.of(serviceRef, rule),
-                scheduler.scheduleAtFixedRate(
+                archivalScheduler.schedule(
+                        serviceRef,
+                        rule,
                         periodicArchiverFactory.create(
                                 serviceRef,
                                 credentialsManager,
                                 rule,
                                 recordingArchiveHelper,
-                                this::archivalFailureHandler),
-                        rule.getArchivalPeriodSeconds(),
-                        rule.getArchivalPeriodSeconds(),
-                        TimeUnit.SECONDS));
+                                this::archivalFailureHandler)));
     }
 
     private void deactivate(Rule rule, ServiceRef serviceRef) {
@@ -37,13 +37,17 @@
  */
 package io.cryostat.rules;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import javax.script.ScriptException;
@@ -56,13 +60,17 @@ import io.cryostat.util.events.AbstractEventEmitter;
 import io.cryostat.util.events.EventType;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
 
+    static final String RULE_FILE_SUFFIX = ".json";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
     private final Path rulesDir;
     private final RuleMatcher ruleMatcher;
     private final FileSystem fs;
-    private final Set<Rule> rules;
+    private final ConcurrentMap<String, Rule> rules;
     private final Gson gson;
     private final Logger logger;
 
@@ -72,52 +80,67 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
         this.fs = fs;
         this.gson = gson;
         this.logger = logger;
-        this.rules = new HashSet<>();
+        this.rules = new ConcurrentHashMap<>();
     }
 
     public void loadRules() throws IOException {
-        this.fs.listDirectoryChildren(rulesDir).stream()
-                .peek(n -> logger.trace("Rules file: {}", n))
-                .map(rulesDir::resolve)
-                .map(
-                        path -> {
-                            try {
-                                return fs.readFile(path);
-                            } catch (IOException e) {
-                                logger.warn(e);
-                                return null;
-                            }
-                        })
-                .filter(Objects::nonNull)
-                .map(reader -> gson.fromJson(reader, Rule.class))
-                .forEach(rules::add);
+        for (String child : this.fs.listDirectoryChildren(rulesDir)) {
+            logger.trace("Rules file: {}", child);
+            if (child.endsWith(TEMP_FILE_SUFFIX)) {
+                // left behind by a write interrupted before its atomic rename
+                continue;
+            }
+            try (BufferedReader reader = fs.readFile(rulesDir.resolve(child))) {
+                Rule rule = gson.fromJson(reader, Rule.class);
+                if (rule != null) {
+                    rules.put(rule.getName(), rule);
+                }
+            } catch (IOException | JsonParseException e) {
+                logger.warn(e);
+            }
+        }
     }
 
     public Rule addRule(Rule rule) throws IOException {
-        if (hasRuleByName(rule.getName())) {
+        // reserve the name first so that concurrent additions of the same rule cannot both win
+        if (rules.putIfAbsent(rule.getName(), rule) != null) {
             throw new RuleException(
                     String.format(
                             "Rule with name \"%s\" already exists; refusing to overwrite",
                             rule.getName()));
         }
-        Path destination = rulesDir.resolve(rule.getName() + ".json");
+        try {
+            writeRule(rule);
+        } catch (IOException | RuntimeException e) {
+            rules.remove(rule.getName(), rule);
+            throw e;
+        }
+        emit(RuleEvent.ADDED, rule);
+        return rule;
+    }
+
+    private void writeRule(Rule rule) throws IOException {
+        Path destination = rulesDir.resolve(rule.getName() + RULE_FILE_SUFFIX);
+        Path tmp = rulesDir.resolve(rule.getName() + RULE_FILE_SUFFIX + TEMP_FILE_SUFFIX);
         this.fs.writeString(
-                destination,
+                tmp,
                 gson.toJson(rule),
                 StandardOpenOption.WRITE,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING);
-        loadRules();
-        emit(RuleEvent.ADDED, rule);
-        return rule;
+        Files.move(
+                tmp,
+                destination,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
     }
 
     public boolean hasRuleByName(String name) {
-        return getRule(name).isPresent();
+        return this.rules.containsKey(name);
     }
 
     public Optional<Rule> getRule(String name) {
-        return this.rules.stream().filter(r -> Objects.equals(r.getName(), name)).findFirst();
+        return Optional.ofNullable(this.rules.get(name));
     }
 
     public boolean applies(Rule rule, ServiceRef serviceRef) {
@@ -138,11 +161,13 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
         if (!serviceRef.getAlias().isPresent()) {
             return Set.of();
         }
-        return rules.stream().filter(r -> applies(r, serviceRef)).collect(Collectors.toSet());
+        return rules.values().stream()
+                .filter(r -> applies(r, serviceRef))
+                .collect(Collectors.toSet());
     }
 
     public Set<Rule> getRules() {
-        return new HashSet<>(rules);
+        return new HashSet<>(rules.values());
     }
 
     public void deleteRule(Rule rule) throws IOException {
@@ -150,20 +175,11 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
     }
 
     public void deleteRule(String name) throws IOException {
-        for (String child : this.fs.listDirectoryChildren(rulesDir)) {
-            if (!Objects.equals(child, name + ".json")) {
-                continue;
-            }
-            fs.deleteIfExists(rulesDir.resolve(child));
+        fs.deleteIfExists(rulesDir.resolve(name + RULE_FILE_SUFFIX));
+        Rule rule = this.rules.remove(name);
+        if (rule != null) {
+            emit(RuleEvent.REMOVED, rule);
         }
-        this.rules.stream()
-                .filter(r -> Objects.equals(r.getName(), name))
-                .findFirst()
-                .ifPresent(
-                        rule -> {
-                            emit(RuleEvent.REMOVED, rule);
-                            this.rules.remove(rule);
-                        });
     }
 
     public void deleteRules(ServiceRef serviceRef) throws IOException {
@@ -47,10 +47,12 @@ import java.util.function.Function;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import io.cryostat.MainModule;
 import io.cryostat.configuration.ConfigurationModule;
 import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.net.Credentials;
+import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.NetworkConfiguration;
@@ -68,6 +70,7 @@ import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
+import jdk.jfr.FlightRecorder;
 import org.apache.commons.codec.binary.Base64;
 
 @Module
@@ -76,6 +79,13 @@ public abstract class RulesModule {
     public static final String RULES_WEB_CLIENT = "RULES_WEB_CLIENT";
     public static final String RULES_HEADERS_FACTORY = "RULES_HEADERS_FACTORY";
 
+    static final String MAX_CONCURRENT_ARCHIVALS_ENV_VAR = "CRYOSTAT_MAX_CONCURRENT_ARCHIVALS";
+    static final String MAX_CONCURRENT_ARCHIVALS_PER_NODE_ENV_VAR =
+            "CRYOSTAT_MAX_CONCURRENT_ARCHIVALS_PER_NODE";
+    static final int DEFAULT_MAX_CONCURRENT_ARCHIVALS = 4;
+    static final int DEFAULT_MAX_CONCURRENT_ARCHIVALS_PER_NODE = 1;
+    static final String DIFFERENTIAL_ARCHIVAL_ENV_VAR = "CRYOSTAT_DIFFERENTIAL_ARCHIVAL";
+
     @Provides
     @Singleton
     static RuleRegistry provideRuleRegistry(
@@ -101,6 +111,13 @@ public abstract class RulesModule {
         return new RuleMatcher();
     }
 
+    @Provides
+    @Singleton
+    static RuleDryRunEvaluator provideRuleDryRunEvaluator(
+            PlatformClient platformClient, RuleMatcher ruleMatcher) {
+        return new RuleDryRunEvaluator(platformClient, ruleMatcher);
+    }
+
     @Provides
     @Singleton
     static RuleProcessor provideRuleProcessor(
@@ -112,11 +129,12 @@ public abstract class RulesModule {
             RecordingArchiveHelper recordingArchiveHelper,
             RecordingTargetHelper recordingTargetHelper,
             PeriodicArchiverFactory periodicArchiverFactory,
+            ArchivalScheduler archivalScheduler,
             Logger logger) {
         return new RuleProcessor(
                 platformClient,
                 registry,
-                Executors.newScheduledThreadPool(1),
+                archivalScheduler,
                 credentialsManager,
                 recordingOptionsBuilderFactory,
                 targetConnectionManager,
@@ -126,12 +144,77 @@ public abstract class RulesModule {
                 logger);
     }
 
+    @Provides
+    @Singleton
+    static ArchivalScheduler provideArchivalScheduler(Environment env, Logger logger) {
+        int maxConcurrent =
+                parsePositiveInt(
+                        env,
+                        logger,
+                        MAX_CONCURRENT_ARCHIVALS_ENV_VAR,
+                        DEFAULT_MAX_CONCURRENT_ARCHIVALS);
+        int maxConcurrentPerNode =
+                parsePositiveInt(
+                        env,
+                        logger,
+                        MAX_CONCURRENT_ARCHIVALS_PER_NODE_ENV_VAR,
+                        DEFAULT_MAX_CONCURRENT_ARCHIVALS_PER_NODE);
+        logger.info(
+                "Max concurrent rule archivals: {} ({} per node)",
+                maxConcurrent,
+                maxConcurrentPerNode);
+        ArchivalScheduler scheduler =
+                new ArchivalScheduler(
+                        Executors.newScheduledThreadPool(1),
+                        Executors.newFixedThreadPool(maxConcurrent),
+                        maxConcurrent,
+                        maxConcurrentPerNode,
+                        logger);
+        FlightRecorder.addPeriodicEvent(
+                ArchivalScheduler.ArchivalQueueStatistics.class, scheduler::emitMetricsEvent);
+        return scheduler;
+    }
+
+    private static int parsePositiveInt(
+            Environment env, Logger logger, String envVar, int defaultValue) {
+        try {
+            int value = Integer.parseInt(env.getEnv(envVar, String.valueOf(defaultValue)));
+            if (value < 1) {
+                logger.info("Requested {} value {} is too small.", envVar, value);
+                return defaultValue;
+            }
+            return value;
+        } catch (NumberFormatException nfe) {
+            logger.warn(nfe);
+            return defaultValue;
+        }
+    }
+
     @Provides
     @Singleton
     static PeriodicArchiverFactory providePeriodicArchivedFactory(
             @Named(RULES_HEADERS_FACTORY) Function<Credentials, MultiMap> headersFactory,
+            RuleArchiveIndex archiveIndex,
+            Environment env,
             Logger logger) {
-        return new PeriodicArchiverFactory(logger);
+        boolean differential = Boolean.parseBoolean(env.getEnv(DIFFERENTIAL_ARCHIVAL_ENV_VAR));
+        logger.info("Differential rule archival {}", differential ? "enabled" : "disabled");
+        return new PeriodicArchiverFactory(archiveIndex, differential, logger);
+    }
+
+    @Provides
+    @Singleton
+    static RuleArchiveIndex provideRuleArchiveIndex(
+            @Named(MainModule.CONF_DIR) Path confDir, FileSystem fs, Logger logger) {
+        try {
+            RuleArchiveIndex index =
+                    new RuleArchiveIndex(
+                            confDir.resolve(RuleArchiveIndex.INDEX_FILENAME), fs, logger);
+            index.load();
+            return index;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Provides
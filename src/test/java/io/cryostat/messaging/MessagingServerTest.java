@@ -37,10 +37,8 @@
  */
 package io.cryostat.messaging;
 
-import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -49,18 +47,15 @@ import java.net.UnknownHostException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.AbstractExecutorService;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.Environment;
@@ -71,6 +66,8 @@ import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.http.HttpMimeType;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import io.vertx.core.Handler;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.net.SocketAddress;
@@ -100,7 +97,7 @@ class MessagingServerTest {
     @Mock NotificationFactory notificationFactory;
     @Mock Notification notification;
     @Mock Notification.Builder notificationBuilder;
-    TestExecutorService executor = new TestExecutorService();
+    @Mock ScheduledExecutorService timer;
 
     @BeforeEach
     void setup() {
@@ -124,7 +121,11 @@ class MessagingServerTest {
                         authManager,
                         notificationFactory,
                         1,
-                        executor,
+                        2,
+                        WsClient.SlowConsumerPolicy.DROP,
+                        3,
+                        Duration.ZERO,
+                        timer,
                         logger,
                         gson);
     }
@@ -132,9 +133,7 @@ class MessagingServerTest {
     @Test
     void repeatConnectionShouldNotClosePrevious() {
         server.addConnection(wsClient1);
-        executor.tick();
         server.addConnection(wsClient2);
-        executor.tick();
 
         verify(wsClient1, Mockito.never()).close();
         verify(wsClient2, Mockito.never()).close();
@@ -143,47 +142,10 @@ class MessagingServerTest {
     @Test
     void clientShouldPropagateClose() throws IOException {
         server.addConnection(wsClient1);
-        executor.tick();
         server.close();
-        executor.tick();
         verify(wsClient1).close();
     }
 
-    @Test
-    void clientShouldBlockUntilConnected() {
-        String expectedText = "hello world";
-        long expectedDelta = TimeUnit.SECONDS.toNanos(1);
-        int maxErrorFactor = 10;
-        assertTimeoutPreemptively(
-                Duration.ofNanos(expectedDelta * maxErrorFactor),
-                () -> {
-                    when(wsClient2.readMessage()).thenReturn(expectedText);
-                    Executors.newSingleThreadScheduledExecutor()
-                            .schedule(
-                                    () -> {
-                                        server.addConnection(wsClient1);
-                                        server.addConnection(wsClient2);
-                                        executor.tick();
-                                    },
-                                    expectedDelta,
-                                    TimeUnit.NANOSECONDS);
-
-                    long start = System.nanoTime();
-                    String res = server.readMessage();
-                    long delta = System.nanoTime() - start;
-                    MatcherAssert.assertThat(res, Matchers.equalTo(expectedText));
-                    MatcherAssert.assertThat(
-                            delta,
-                            Matchers.allOf(
-                                    // actual should never be less than expected, but since this is
-                                    // relying on a real wall-clock timer, allow for some error in
-                                    // that direction. Allow much more error in the greater-than
-                                    // direction to account for system scheduling etc.
-                                    Matchers.greaterThan((long) (expectedDelta * 0.9)),
-                                    Matchers.lessThan((long) (expectedDelta * maxErrorFactor))));
-                });
-    }
-
     @Test
     void webSocketCloseHandlerShouldRemoveConnection()
             throws SocketException, UnknownHostException {
@@ -191,6 +153,9 @@ class MessagingServerTest {
         when(addr.toString()).thenReturn("mockaddr");
         when(sws.remoteAddress()).thenReturn(addr);
         when(sws.path()).thenReturn("/api/v1/notifications");
+        when(sws.subProtocol()).thenReturn("proto");
+        when(authManager.validateWebSocketSubProtocol(Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
         server.start();
 
         ArgumentCaptor<Handler> websocketHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
@@ -199,197 +164,379 @@ class MessagingServerTest {
 
         ArgumentCaptor<Handler> closeHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
         InOrder inOrder = Mockito.inOrder(sws);
+        inOrder.verify(sws).drainHandler(Mockito.any(Handler.class));
         inOrder.verify(sws).closeHandler(closeHandlerCaptor.capture());
         inOrder.verify(sws).textMessageHandler(Mockito.any(Handler.class));
         inOrder.verify(sws).accept();
+        inOrder.verify(sws).subProtocol();
+        inOrder.verify(sws).query();
         inOrder.verifyNoMoreInteractions();
+        MatcherAssert.assertThat(server.getMetrics().getConnections(), Matchers.equalTo(1));
+
         closeHandlerCaptor.getValue().handle(null);
-        // TODO verify that the WsClient is closed and removed
+        MatcherAssert.assertThat(server.getMetrics().getConnections(), Matchers.equalTo(0));
     }
 
     @Test
-    void shouldHandleRemovedConnections() throws Exception {
-        String expectedText = "hello world";
-        when(wsClient2.readMessage()).thenReturn(expectedText).thenReturn(null);
+    void sessionShouldBeAuthenticatedOnceNotPerMessage()
+            throws SocketException, UnknownHostException {
+        connectClient(null, true);
+
+        ArgumentCaptor<Handler<String>> textHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(sws).textMessageHandler(textHandlerCaptor.capture());
+        textHandlerCaptor.getValue().handle("hello");
+        textHandlerCaptor.getValue().handle("world");
+
+        verify(sws, Mockito.times(2)).writeTextMessage(MessagingServer.UNSUPPORTED_MESSAGE_REPLY);
+        verify(authManager, Mockito.times(1)).validateWebSocketSubProtocol(Mockito.any());
+    }
+
+    @Test
+    void messagesSentBeforeAuthenticationCompletesShouldBeHandledAfterwards()
+            throws SocketException, UnknownHostException {
+        CompletableFuture<Boolean> validation = new CompletableFuture<>();
+        connectClient(null, validation);
+
+        ArgumentCaptor<Handler<String>> textHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(sws).textMessageHandler(textHandlerCaptor.capture());
+        textHandlerCaptor.getValue().handle("hello");
+        verify(sws, Mockito.never()).writeTextMessage(MessagingServer.UNSUPPORTED_MESSAGE_REPLY);
+
+        validation.complete(true);
+
+        verify(sws).writeTextMessage(MessagingServer.UNSUPPORTED_MESSAGE_REPLY);
+    }
 
+    @Test
+    void unauthenticatedSessionShouldBeClosedAndNotAdded()
+            throws SocketException, UnknownHostException {
+        connectClient(null, false);
+
+        verify(sws).close(Mockito.eq((short) 1002), Mockito.anyString());
+        MatcherAssert.assertThat(server.getMetrics().getConnections(), Matchers.equalTo(0));
+
+        ArgumentCaptor<Handler<String>> textHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(sws).textMessageHandler(textHandlerCaptor.capture());
+        textHandlerCaptor.getValue().handle("hello");
+        verify(sws, Mockito.never()).writeTextMessage(MessagingServer.UNSUPPORTED_MESSAGE_REPLY);
+    }
+
+    @Test
+    void revalidationShouldCloseSessionsWithInvalidCredentials() {
+        when(wsClient1.getSubProtocol()).thenReturn("proto1");
+        when(wsClient2.getSubProtocol()).thenReturn("proto2");
+        when(authManager.validateWebSocketSubProtocol(Mockito.any()))
+                .thenAnswer(
+                        invocation -> {
+                            Supplier<String> proto = invocation.getArgument(0);
+                            return CompletableFuture.completedFuture(
+                                    "proto1".equals(proto.get()));
+                        });
         server.addConnection(wsClient1);
         server.addConnection(wsClient2);
-        executor.tick();
 
-        MatcherAssert.assertThat(server.readMessage(), Matchers.equalTo(expectedText));
-        verify(wsClient2, Mockito.atLeastOnce()).readMessage();
+        server.revalidateConnections();
+
+        verify(wsClient1, Mockito.never())
+                .closeSocket(Mockito.anyShort(), Mockito.anyString());
+        verify(wsClient2).closeSocket(Mockito.eq((short) 1008), Mockito.anyString());
+    }
+
+    @Test
+    void startShouldScheduleRevalidation() throws SocketException, UnknownHostException {
+        server =
+                new MessagingServer(
+                        httpServer,
+                        env,
+                        authManager,
+                        notificationFactory,
+                        1,
+                        2,
+                        WsClient.SlowConsumerPolicy.DROP,
+                        3,
+                        Duration.ofSeconds(30),
+                        timer,
+                        logger,
+                        gson);
+
+        server.start();
+
+        verify(timer)
+                .scheduleAtFixedRate(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(30_000L),
+                        Mockito.eq(30_000L),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldHandleRemovedConnections() throws Exception {
+        server.addConnection(wsClient1);
+        server.addConnection(wsClient2);
 
         TestMessage successResponseMessage = new TestMessage("msgId", "test", "message");
         server.writeMessage(successResponseMessage);
-        executor.tick();
 
         verify(wsClient1, Mockito.times(1)).writeMessage(gson.toJson(successResponseMessage));
         verify(wsClient2, Mockito.times(1)).writeMessage(gson.toJson(successResponseMessage));
 
         server.removeConnection(wsClient2);
-        executor.tick();
         verify(wsClient2, Mockito.times(1)).close();
 
-        String newText = "another message";
-        when(wsClient1.readMessage()).thenReturn(newText).thenReturn(null);
-        executor.tick();
-
-        MatcherAssert.assertThat(server.readMessage(), Matchers.equalTo(newText));
-        verify(wsClient1, Mockito.atLeastOnce()).readMessage();
-        verifyNoMoreInteractions(wsClient2);
-
         TestMessage failureResponseMessage = new TestMessage("msgId", "test", "failure");
         server.writeMessage(failureResponseMessage);
-        executor.tick();
 
         ArgumentCaptor<String> failureCaptor = ArgumentCaptor.forClass(String.class);
         verify(wsClient1, Mockito.times(2)).writeMessage(failureCaptor.capture());
         MatcherAssert.assertThat(
                 failureCaptor.getValue(), Matchers.equalTo(gson.toJson(failureResponseMessage)));
-        verifyNoMoreInteractions(wsClient2);
+        verify(wsClient2, Mockito.times(1)).writeMessage(Mockito.anyString());
+    }
+
+    @Test
+    void writeMessageShouldSerializeOnceForAllClients() {
+        server.addConnection(wsClient1);
+        server.addConnection(wsClient2);
+
+        TestMessage message = new TestMessage("msgId", "test", "message");
+        server.writeMessage(message);
+
+        verify(gson, Mockito.times(1)).toJson(message);
+        ArgumentCaptor<String> captor1 = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> captor2 = ArgumentCaptor.forClass(String.class);
+        verify(wsClient1).writeMessage(captor1.capture());
+        verify(wsClient2).writeMessage(captor2.capture());
+        MatcherAssert.assertThat(captor1.getValue(), Matchers.sameInstance(captor2.getValue()));
+    }
+
+    @Test
+    void metricsShouldIncludeRemovedConnections() {
+        when(wsClient1.getSentCount()).thenReturn(3L);
+        when(wsClient1.getDroppedCount()).thenReturn(1L);
+        when(wsClient1.getQueuedCount()).thenReturn(2);
+        when(wsClient2.getSentCount()).thenReturn(5L);
+        when(wsClient2.getDroppedCount()).thenReturn(4L);
+        when(wsClient2.isSlowConsumerDisconnected()).thenReturn(true);
+        server.addConnection(wsClient1);
+        server.addConnection(wsClient2);
+
+        server.removeConnection(wsClient2);
+        MessagingServer.Metrics metrics = server.getMetrics();
+
+        MatcherAssert.assertThat(metrics.getConnections(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(metrics.getQueuedMessages(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(metrics.getSentMessages(), Matchers.equalTo(8L));
+        MatcherAssert.assertThat(metrics.getDroppedMessages(), Matchers.equalTo(5L));
+        MatcherAssert.assertThat(metrics.getSlowConsumerDisconnects(), Matchers.equalTo(1L));
     }
 
     @Test
     void serverWriteShouldDelegateToAllClientWriters() {
         server.addConnection(wsClient1);
         server.addConnection(wsClient2);
-        executor.tick();
         TestMessage message = new TestMessage("msgId", "test", "message");
         server.writeMessage(message);
-        executor.tick();
         verify(wsClient1).writeMessage(gson.toJson(message));
         verify(wsClient2).writeMessage(gson.toJson(message));
     }
 
-    static class TestExecutorService extends AbstractExecutorService
-            implements ScheduledExecutorService {
+    @Test
+    void onlyUnsupportedMessagesShouldBeRejected() {
+        when(gson.fromJson(Mockito.anyString(), Mockito.eq(Subscription.Request.class)))
+                .thenAnswer(
+                        invocation ->
+                                new Gson()
+                                        .fromJson(
+                                                (String) invocation.getArgument(0),
+                                                Subscription.Request.class));
+        server.addConnection(wsClient1);
 
-        private final Map<Runnable, ControlledFuture> futures = new HashMap<>();
-        private final List<Runnable> runnables = new ArrayList<>();
+        server.handleInbound(
+                wsClient1,
+                "{\"type\":\"subscribe\",\"categories\":[\"RecordingCreated\"],"
+                        + "\"targetIds\":[\"localhost:9091\"]}");
+        verify(wsClient1, Mockito.never()).writeMessage(Mockito.anyString());
 
-        public void tick() {
-            runnables.forEach(Runnable::run);
-        }
+        server.handleInbound(wsClient1, "hello world");
+        verify(wsClient1).writeMessage(MessagingServer.UNSUPPORTED_MESSAGE_REPLY);
+    }
 
-        public ControlledFuture<?> getFuture(Runnable runnable) {
-            return futures.get(runnable);
-        }
+    @Test
+    void nonNotificationMessagesShouldIgnoreSubscriptions() {
+        server.addConnection(wsClient1);
+        server.addConnection(wsClient2);
+        server.handleInbound(
+                wsClient1, "{\"type\":\"subscribe\",\"categories\":[\"RecordingCreated\"]}");
 
-        @Override
-        public boolean awaitTermination(long arg0, TimeUnit arg1) throws InterruptedException {
-            return false;
-        }
+        TestMessage message = new TestMessage("msgId", "test", "message");
+        server.writeMessage(message);
 
-        @Override
-        public boolean isShutdown() {
-            return false;
-        }
+        verify(wsClient1).writeMessage(gson.toJson(message));
+        verify(wsClient2).writeMessage(gson.toJson(message));
+    }
 
-        @Override
-        public boolean isTerminated() {
-            return false;
-        }
+    @Test
+    void notificationsShouldBeSequenced() {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        server.addConnection(wsClient1);
 
-        @Override
-        public void shutdown() {
-            this.runnables.clear();
-        }
+        server.writeMessage(notification);
+        server.writeMessage(notification);
 
-        @Override
-        public List<Runnable> shutdownNow() {
-            shutdown();
-            return List.of();
-        }
+        InOrder inOrder = Mockito.inOrder(wsClient1);
+        inOrder.verify(wsClient1).writeMessage(sequenced(1));
+        inOrder.verify(wsClient1).writeMessage(sequenced(2));
+    }
 
-        @Override
-        public void execute(Runnable runnable) {
-            runnable.run();
-        }
+    @Test
+    void notificationsFromConcurrentWritersShouldBeDeliveredInSequenceOrder() throws Exception {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        when(wsClient1.writeMessage(Mockito.anyString()))
+                .thenAnswer(
+                        invocation -> {
+                            String json = invocation.getArgument(0);
+                            int start = json.indexOf(':', json.indexOf("seq")) + 1;
+                            received.add(Long.parseLong(json.substring(start, json.indexOf(','))));
+                            return true;
+                        });
+        server.addConnection(wsClient1);
 
-        @Override
-        public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
-            runnables.add(runnable);
-            futures.putIfAbsent(runnable, new ControlledFuture<>(unit.toMillis(delay)));
-            return futures.get(runnable);
+        int writers = 4;
+        int perWriter = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                writes.add(
+                        CompletableFuture.runAsync(
+                                () -> {
+                                    for (int j = 0; j < perWriter; j++) {
+                                        server.writeMessage(notification);
+                                    }
+                                },
+                                executor));
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                    .get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
         }
 
-        @Override
-        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
-            Runnable runnable =
-                    () -> {
-                        try {
-                            callable.call();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            throw new RuntimeException(e);
-                        }
-                    };
-            runnables.add(runnable);
-            futures.putIfAbsent(runnable, new ControlledFuture<>(unit.toMillis(delay)));
-            return futures.get(runnable);
+        List<Long> expected = new ArrayList<>();
+        for (long seq = 1; seq <= writers * perWriter; seq++) {
+            expected.add(seq);
         }
+        MatcherAssert.assertThat(received, Matchers.equalTo(expected));
+    }
 
-        @Override
-        public ScheduledFuture<?> scheduleAtFixedRate(
-                Runnable runnable, long delay, long period, TimeUnit unit) {
-            runnables.add(runnable);
-            futures.putIfAbsent(runnable, new ControlledFuture<>(unit.toMillis(delay)));
-            return futures.get(runnable);
+    @Test
+    void reconnectingClientShouldReceiveMissedNotifications()
+            throws SocketException, UnknownHostException {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        for (int i = 0; i < 3; i++) {
+            server.writeMessage(notification);
         }
 
-        @Override
-        public ScheduledFuture<?> scheduleWithFixedDelay(
-                Runnable runnable, long delay, long period, TimeUnit unit) {
-            runnables.add(runnable);
-            futures.putIfAbsent(runnable, new ControlledFuture<>(unit.toMillis(delay)));
-            return futures.get(runnable);
-        }
+        connectClient("since=1&epoch=" + server.getNotificationEpoch(), true);
+
+        InOrder inOrder = Mockito.inOrder(sws);
+        inOrder.verify(sws).writeTextMessage(sequenced(2));
+        inOrder.verify(sws).writeTextMessage(sequenced(3));
+        verify(sws, Mockito.never()).writeTextMessage(sequenced(1));
     }
 
-    static class ControlledFuture<T> implements ScheduledFuture<T> {
+    @Test
+    void reconnectingClientShouldBeToldToResyncAfterOverflow()
+            throws SocketException, UnknownHostException {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        // one more than the log holds
+        for (int i = 0; i < 5; i++) {
+            server.writeMessage(notification);
+        }
 
-        long delay;
-        T v;
+        connectClient("since=1&epoch=" + server.getNotificationEpoch(), true);
 
-        ControlledFuture(long delay) {
-            this.delay = delay;
-        }
+        verify(notificationBuilder).metaCategory(MessagingServer.RESYNC_NOTIFICATION_CATEGORY);
+        verify(notificationBuilder).message(Map.of("since", 1L, "last", 5L));
+        verify(sws).writeTextMessage(sequenced(5));
+        verify(sws, Mockito.never()).writeTextMessage(sequenced(3));
+    }
 
-        @Override
-        public long getDelay(TimeUnit unit) {
-            return unit.toMillis(delay);
+    @Test
+    void reconnectingClientShouldBeToldToResyncIfReplayExceedsQueue()
+            throws SocketException, UnknownHostException {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        // all still in the log, but one more than a client may have queued
+        for (int i = 0; i < 3; i++) {
+            server.writeMessage(notification);
         }
 
-        @Override
-        public int compareTo(Delayed delayed) {
-            return 0;
-        }
+        connectClient("since=0&epoch=" + server.getNotificationEpoch(), true);
 
-        @Override
-        public boolean cancel(boolean force) {
-            return false;
-        }
+        verify(notificationBuilder).metaCategory(MessagingServer.RESYNC_NOTIFICATION_CATEGORY);
+        verify(notificationBuilder).message(Map.of("since", 0L, "last", 3L));
+        verify(sws).writeTextMessage(sequenced(3));
+        verify(sws, Mockito.never()).writeTextMessage(sequenced(1));
+    }
 
-        @Override
-        public T get() throws InterruptedException, ExecutionException {
-            return v;
+    @Test
+    void clientFromEarlierEpochShouldBeToldToResync()
+            throws SocketException, UnknownHostException {
+        stubNotificationSerialization();
+        when(notification.getCategory()).thenReturn("TestCategory");
+        for (int i = 0; i < 3; i++) {
+            server.writeMessage(notification);
         }
 
-        @Override
-        public T get(long period, TimeUnit unit)
-                throws InterruptedException, ExecutionException, TimeoutException {
-            return v;
-        }
+        // the server has restarted and reached the client's sequence number again
+        connectClient("since=1&epoch=earlier", true);
 
-        @Override
-        public boolean isCancelled() {
-            return false;
-        }
+        verify(notificationBuilder).metaCategory(MessagingServer.RESYNC_NOTIFICATION_CATEGORY);
+        verify(notificationBuilder).message(Map.of("since", 1L, "last", 3L));
+        verify(sws).writeTextMessage(sequenced(3));
+        verify(sws, Mockito.never()).writeTextMessage(sequenced(2));
+    }
 
-        @Override
-        public boolean isDone() {
-            return false;
-        }
+    private String sequenced(long seq) {
+        return String.format(
+                "{\"meta\":{\"seq\":%d,\"epoch\":\"%s\"}}", seq, server.getNotificationEpoch());
+    }
+
+    private void stubNotificationSerialization() {
+        when(gson.toJsonTree(Mockito.any()))
+                .thenAnswer(
+                        invocation -> {
+                            JsonObject tree = new JsonObject();
+                            tree.add("meta", new JsonObject());
+                            return tree;
+                        });
+        when(gson.toJson(Mockito.any(JsonElement.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0).toString());
+    }
+
+    private void connectClient(String query, boolean authenticated)
+            throws SocketException, UnknownHostException {
+        connectClient(query, CompletableFuture.completedFuture(authenticated));
+    }
+
+    private void connectClient(String query, CompletableFuture<Boolean> validation)
+            throws SocketException, UnknownHostException {
+        SocketAddress addr = Mockito.mock(SocketAddress.class);
+        when(sws.remoteAddress()).thenReturn(addr);
+        when(sws.path()).thenReturn("/api/v1/notifications");
+        lenient().when(sws.query()).thenReturn(query);
+        when(authManager.validateWebSocketSubProtocol(Mockito.any())).thenReturn(validation);
+        server.start();
+
+        ArgumentCaptor<Handler> websocketHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(httpServer).websocketHandler(websocketHandlerCaptor.capture());
+        websocketHandlerCaptor.getValue().handle(sws);
     }
 
     static class TestMessage extends WsMessage {
@@ -0,0 +1,121 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+class NotificationLogTest {
+
+    static final String EPOCH = "epoch";
+
+    NotificationLog log = new NotificationLog(3, EPOCH);
+
+    void send(String message) {
+        log.append(log.nextSequence(), message);
+    }
+
+    @Test
+    void sequenceNumbersShouldIncrease() {
+        MatcherAssert.assertThat(log.getLastSequence(), Matchers.equalTo(0L));
+        MatcherAssert.assertThat(log.nextSequence(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(log.nextSequence(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(log.getLastSequence(), Matchers.equalTo(2L));
+    }
+
+    @Test
+    void sinceShouldReturnMissedMessagesInOrder() {
+        send("a");
+        send("b");
+        send("c");
+
+        MatcherAssert.assertThat(
+                log.since(EPOCH, 1), Matchers.equalTo(Optional.of(List.of("b", "c"))));
+        MatcherAssert.assertThat(
+                log.since(EPOCH, 0), Matchers.equalTo(Optional.of(List.of("a", "b", "c"))));
+    }
+
+    @Test
+    void sinceLatestShouldReturnNothing() {
+        send("a");
+
+        MatcherAssert.assertThat(log.since(EPOCH, 1), Matchers.equalTo(Optional.of(List.of())));
+    }
+
+    @Test
+    void sinceShouldBeEmptyAfterOverflow() {
+        send("a");
+        send("b");
+        send("c");
+        send("d");
+
+        MatcherAssert.assertThat(log.since(EPOCH, 0), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(
+                log.since(EPOCH, 1), Matchers.equalTo(Optional.of(List.of("b", "c", "d"))));
+    }
+
+    @Test
+    void sinceShouldBeEmptyForUnknownSequence() {
+        send("a");
+
+        MatcherAssert.assertThat(log.since(EPOCH, 5), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(log.since(EPOCH, -1), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void sinceShouldBeEmptyForOtherEpoch() {
+        send("a");
+        send("b");
+
+        MatcherAssert.assertThat(log.since("other", 1), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(log.since(null, 1), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void zeroCapacityShouldOnlyAllowUpToDateClients() {
+        log = new NotificationLog(0, EPOCH);
+        send("a");
+
+        MatcherAssert.assertThat(log.since(EPOCH, 0), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(log.since(EPOCH, 1), Matchers.equalTo(Optional.of(List.of())));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging;
+
+import java.util.List;
+import java.util.Set;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionIndexTest {
+
+    SubscriptionIndex index;
+    @Mock WsClient clientA;
+    @Mock WsClient clientB;
+    @Mock WsClient clientC;
+
+    @BeforeEach
+    void setup() {
+        index = new SubscriptionIndex();
+    }
+
+    @Test
+    void shouldBeEmptyInitially() {
+        MatcherAssert.assertThat(index.lookup("RecordingCreated", "foo"), Matchers.empty());
+    }
+
+    @Test
+    void allSubscriptionShouldMatchEverything() {
+        index.put(clientA, Subscription.ALL);
+
+        MatcherAssert.assertThat(
+                index.lookup("RecordingCreated", "foo"), Matchers.contains(clientA));
+        MatcherAssert.assertThat(
+                index.lookup("TargetJvmDiscovery", null), Matchers.contains(clientA));
+    }
+
+    @Test
+    void shouldFilterByCategory() {
+        index.put(clientA, new Subscription(Set.of("RecordingCreated"), Set.of()));
+        index.put(clientB, new Subscription(Set.of("TargetJvmDiscovery"), Set.of()));
+        index.put(clientC, Subscription.ALL);
+
+        MatcherAssert.assertThat(
+                index.lookup("RecordingCreated", "foo"),
+                Matchers.containsInAnyOrder(clientA, clientC));
+        MatcherAssert.assertThat(
+                index.lookup("TargetJvmDiscovery", "foo"),
+                Matchers.containsInAnyOrder(clientB, clientC));
+        MatcherAssert.assertThat(
+                index.lookup("WS_CLIENT_ACTIVITY", null), Matchers.contains(clientC));
+    }
+
+    @Test
+    void shouldFilterByTarget() {
+        index.put(clientA, new Subscription(Set.of(), Set.of("foo")));
+        index.put(clientB, new Subscription(Set.of("RecordingCreated"), Set.of("bar")));
+
+        MatcherAssert.assertThat(
+                index.lookup("RecordingCreated", "foo"), Matchers.contains(clientA));
+        MatcherAssert.assertThat(
+                index.lookup("RecordingCreated", "bar"), Matchers.contains(clientB));
+        MatcherAssert.assertThat(index.lookup("RecordingDeleted", "bar"), Matchers.empty());
+    }
+
+    @Test
+    void targetFiltersShouldNotApplyToUntargetedMessages() {
+        index.put(clientA, new Subscription(Set.of(), Set.of("foo")));
+
+        MatcherAssert.assertThat(
+                index.lookup("WS_CLIENT_ACTIVITY", null), Matchers.contains(clientA));
+    }
+
+    @Test
+    void putShouldReplacePreviousSubscription() {
+        index.put(clientA, new Subscription(Set.of("RecordingCreated"), Set.of()));
+        index.put(clientA, new Subscription(Set.of("RecordingDeleted"), Set.of()));
+
+        MatcherAssert.assertThat(index.lookup("RecordingCreated", "foo"), Matchers.empty());
+        MatcherAssert.assertThat(
+                index.lookup("RecordingDeleted", "foo"), Matchers.contains(clientA));
+    }
+
+    @Test
+    void removeShouldUnsubscribe() {
+        index.put(clientA, Subscription.ALL);
+        index.put(clientB, Subscription.ALL);
+
+        index.remove(clientA);
+
+        MatcherAssert.assertThat(
+                index.lookup("RecordingCreated", "foo"), Matchers.contains(clientB));
+        MatcherAssert.assertThat(index.get(clientA), Matchers.nullValue());
+    }
+
+    @Test
+    void clearShouldUnsubscribeAll() {
+        index.put(clientA, Subscription.ALL);
+        index.put(clientB, Subscription.ALL);
+
+        index.clear();
+
+        MatcherAssert.assertThat(index.lookup("RecordingCreated", "foo"), Matchers.empty());
+    }
+
+    @Test
+    void subscriptionRequestShouldNormalizeTargetIds() {
+        Subscription.Request request = new Subscription.Request();
+        request.type = Subscription.Request.TYPE;
+        request.targetIds = List.of("localhost:9091");
+        index.put(clientA, request.toSubscription());
+
+        MatcherAssert.assertThat(
+                index.lookup(
+                        "RecordingCreated", "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi"),
+                Matchers.contains(clientA));
+    }
+}
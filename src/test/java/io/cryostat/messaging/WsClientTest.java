@@ -37,17 +37,16 @@
  */
 package io.cryostat.messaging;
 
-import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.time.Duration;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 import io.cryostat.TestBase;
 import io.cryostat.core.log.Logger;
 
+import io.vertx.core.Handler;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.net.SocketAddress;
 import org.hamcrest.MatcherAssert;
@@ -55,7 +54,10 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
@@ -64,54 +66,171 @@ class WsClientTest extends TestBase {
     WsClient wsClient;
     @Mock Logger logger;
     @Mock ServerWebSocket sws;
+    List<String> received;
 
     @BeforeEach
     void setup() {
-        wsClient = new WsClient(logger, sws);
+        received = new ArrayList<>();
+        wsClient =
+                new WsClient(
+                        logger,
+                        sws,
+                        (client, msg) -> received.add(msg),
+                        2,
+                        WsClient.SlowConsumerPolicy.DROP);
     }
 
     @Test
-    void readMessageShouldBlockUntilClosed() {
-        long expectedDelta = TimeUnit.SECONDS.toNanos(1);
-        int maxErrorFactor = 10;
-        assertTimeoutPreemptively(
-                Duration.ofNanos(expectedDelta * maxErrorFactor),
-                () -> {
-                    Executors.newSingleThreadScheduledExecutor()
-                            .schedule(wsClient::close, expectedDelta, TimeUnit.NANOSECONDS);
-
-                    long start = System.nanoTime();
-                    String res = wsClient.readMessage();
-                    long delta = System.nanoTime() - start;
-                    MatcherAssert.assertThat(res, Matchers.nullValue());
-                    MatcherAssert.assertThat(
-                            delta,
-                            Matchers.allOf(
-                                    // actual should never be less than expected, but since this is
-                                    // relying on a real wall-clock timer, allow for some error in
-                                    // that direction. Allow much more error in the greater-than
-                                    // direction to account for system scheduling etc.
-                                    Matchers.greaterThan((long) (expectedDelta * 0.9)),
-                                    Matchers.lessThan((long) (expectedDelta * maxErrorFactor))));
-                });
+    void handleShouldForwardToListener() {
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+
+        wsClient.handle("hello world");
+        wsClient.handle("goodbye");
+
+        MatcherAssert.assertThat(received, Matchers.contains("hello world", "goodbye"));
+    }
+
+    @Test
+    void handleShouldIgnoreMessagesAfterClose() {
+        wsClient.close();
+
+        wsClient.handle("hello world");
+
+        MatcherAssert.assertThat(received, Matchers.empty());
+        Mockito.verify(sws).drainHandler(Mockito.any());
+        Mockito.verifyNoMoreInteractions(sws);
+    }
+
+    @Test
+    void writeMessageShouldSkipClosedSocket() {
+        when(sws.isClosed()).thenReturn(true);
+
+        wsClient.writeMessage("hello world");
+
+        Mockito.verify(sws, Mockito.never()).writeTextMessage(Mockito.anyString());
+    }
+
+    @Test
+    void writeMessageShouldSendImmediatelyWhenSocketWritable() {
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+
+        MatcherAssert.assertThat(wsClient.writeMessage("hello world"), Matchers.is(true));
+
+        Mockito.verify(sws).writeTextMessage("hello world");
+        MatcherAssert.assertThat(wsClient.getSentCount(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(wsClient.getQueuedCount(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void writeMessageShouldQueueWhileSocketWriteQueueFull() {
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+        ArgumentCaptor<Handler<Void>> drainCaptor = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(sws).drainHandler(drainCaptor.capture());
+        when(sws.writeQueueFull()).thenReturn(true);
+
+        MatcherAssert.assertThat(wsClient.writeMessage("first"), Matchers.is(true));
+        MatcherAssert.assertThat(wsClient.writeMessage("second"), Matchers.is(true));
+
+        Mockito.verify(sws, Mockito.never()).writeTextMessage(Mockito.anyString());
+        MatcherAssert.assertThat(wsClient.getQueuedCount(), Matchers.equalTo(2));
+
+        when(sws.writeQueueFull()).thenReturn(false);
+        drainCaptor.getValue().handle(null);
+
+        InOrder inOrder = Mockito.inOrder(sws);
+        inOrder.verify(sws).writeTextMessage("first");
+        inOrder.verify(sws).writeTextMessage("second");
+        MatcherAssert.assertThat(wsClient.getQueuedCount(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(wsClient.getSentCount(), Matchers.equalTo(2L));
+    }
+
+    @Test
+    void writeMessageShouldDropWhenQueueFullUnderDropPolicy() {
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+        when(sws.writeQueueFull()).thenReturn(true);
+
+        wsClient.writeMessage("first");
+        wsClient.writeMessage("second");
+        MatcherAssert.assertThat(wsClient.writeMessage("third"), Matchers.is(false));
+
+        MatcherAssert.assertThat(wsClient.getDroppedCount(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(wsClient.getQueuedCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(wsClient.isSlowConsumerDisconnected(), Matchers.is(false));
+        Mockito.verify(sws, Mockito.never()).close(Mockito.anyShort(), Mockito.anyString());
+    }
+
+    @Test
+    void writeMessageShouldDisconnectWhenQueueFullUnderDisconnectPolicy() {
+        wsClient =
+                new WsClient(
+                        logger,
+                        sws,
+                        (client, msg) -> received.add(msg),
+                        1,
+                        WsClient.SlowConsumerPolicy.DISCONNECT);
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+        when(sws.writeQueueFull()).thenReturn(true);
+
+        wsClient.writeMessage("first");
+        MatcherAssert.assertThat(wsClient.writeMessage("second"), Matchers.is(false));
+
+        Mockito.verify(sws)
+                .close(Mockito.eq(WsClient.SLOW_CONSUMER_CLOSE_CODE), Mockito.anyString());
+        MatcherAssert.assertThat(wsClient.isSlowConsumerDisconnected(), Matchers.is(true));
+        MatcherAssert.assertThat(wsClient.getQueuedCount(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(wsClient.writeMessage("third"), Matchers.is(false));
+        MatcherAssert.assertThat(wsClient.getDroppedCount(), Matchers.equalTo(1L));
+    }
+
+    @Test
+    void authenticatedShouldBindCredentials() {
+        wsClient.authenticated("proto");
+
+        MatcherAssert.assertThat(wsClient.getSubProtocol(), Matchers.equalTo("proto"));
+    }
+
+    @Test
+    void receiveShouldHoldMessagesUntilAccepted() {
+        when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
+
+        wsClient.receive("first");
+        wsClient.receive("second");
+        MatcherAssert.assertThat(received, Matchers.empty());
+
+        wsClient.acceptInbound();
+        wsClient.receive("third");
+
+        MatcherAssert.assertThat(received, Matchers.contains("first", "second", "third"));
     }
 
     @Test
-    void readMessageShouldBlockUntilTextReceived() {
+    void receiveShouldRejectMessagesBeyondPendingLimit() {
         when(sws.remoteAddress()).thenReturn(mock(SocketAddress.class));
 
-        long expectedDelta = 500L;
-        assertTimeoutPreemptively(
-                Duration.ofMillis(expectedDelta * 3),
-                () -> {
-                    String expected = "hello world";
-                    Executors.newSingleThreadScheduledExecutor()
-                            .schedule(
-                                    () -> wsClient.handle(expected),
-                                    expectedDelta,
-                                    TimeUnit.MILLISECONDS);
-
-                    MatcherAssert.assertThat(wsClient.readMessage(), Matchers.equalTo(expected));
-                });
+        for (int i = 0; i <= WsClient.MAX_PENDING_INBOUND; i++) {
+            wsClient.receive("msg" + i);
+        }
+
+        Mockito.verify(sws).writeTextMessage(WsClient.PENDING_INBOUND_OVERFLOW_REPLY);
+        wsClient.acceptInbound();
+        MatcherAssert.assertThat(received.size(), Matchers.equalTo(WsClient.MAX_PENDING_INBOUND));
+    }
+
+    @Test
+    void receiveShouldDiscardMessagesHeldWhenClosed() {
+        wsClient.receive("hello");
+        wsClient.close();
+
+        wsClient.acceptInbound();
+
+        MatcherAssert.assertThat(received, Matchers.empty());
+    }
+
+    @Test
+    void closeSocketShouldCloseClientAndSocket() {
+        wsClient.closeSocket((short) 1008, "reason");
+
+        MatcherAssert.assertThat(wsClient.isClosed(), Matchers.is(true));
+        Mockito.verify(sws).close((short) 1008, "reason");
     }
 }
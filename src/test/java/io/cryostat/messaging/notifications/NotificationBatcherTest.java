@@ -0,0 +1,162 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging.notifications;
+
+import static org.mockito.Mockito.lenient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationBatcherTest {
+
+    NotificationBatcher<String> batcher;
+    @Mock NotificationFactory notificationFactory;
+    @Mock Notification.Builder<Object> builder;
+    @Mock Notification<Object> notification;
+    @Mock ScheduledExecutorService timer;
+
+    @BeforeEach
+    void setup() {
+        lenient().when(notificationFactory.createBuilder()).thenReturn(builder);
+        lenient().when(builder.metaCategory(Mockito.any())).thenReturn(builder);
+        lenient().when(builder.message(Mockito.any())).thenReturn(builder);
+        lenient().when(builder.build()).thenReturn(notification);
+        // events are "<key><sign>", ex. "a+" and "a-", and opposite signs cancel out
+        batcher =
+                new NotificationBatcher<>(
+                        notificationFactory,
+                        "TestBatch",
+                        Duration.ofMillis(100),
+                        timer,
+                        e -> e.charAt(0),
+                        (prev, next) -> prev.charAt(1) == next.charAt(1) ? next : null,
+                        batch -> batch);
+    }
+
+    @Test
+    void shouldScheduleOneFlushPerWindow() {
+        batcher.accept("a+");
+        batcher.accept("b+");
+        batcher.accept("c+");
+
+        Mockito.verify(timer, Mockito.times(1))
+                .schedule(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(100L),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
+
+    @Test
+    void flushShouldSendBatchAsSingleNotification() {
+        batcher.accept("a+");
+        batcher.accept("b+");
+        batcher.flush();
+
+        Mockito.verify(notificationFactory, Mockito.times(1)).createBuilder();
+        Mockito.verify(builder).metaCategory("TestBatch");
+        Mockito.verify(builder).message(List.of("a+", "b+"));
+        Mockito.verify(notification, Mockito.times(1)).send();
+    }
+
+    @Test
+    void shouldCoalesceEventsWithSameKey() {
+        batcher.accept("a+");
+        batcher.accept("b+");
+        batcher.accept("a+");
+        batcher.flush();
+
+        Mockito.verify(builder).message(List.of("b+", "a+"));
+    }
+
+    @Test
+    void cancellingEventsShouldBeDropped() {
+        batcher.accept("a-");
+        batcher.accept("b+");
+        batcher.accept("a+");
+        batcher.flush();
+
+        Mockito.verify(builder).message(List.of("b+"));
+    }
+
+    @Test
+    void flushShouldNotSendEmptyBatch() {
+        batcher.accept("a-");
+        batcher.accept("a+");
+        batcher.flush();
+
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
+
+    @Test
+    void shouldScheduleNewFlushAfterPreviousFlush() {
+        batcher.accept("a+");
+        batcher.flush();
+        batcher.accept("b+");
+
+        Mockito.verify(timer, Mockito.times(2))
+                .schedule(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(100L),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void scheduledTaskShouldFlush() {
+        batcher.accept("a+");
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(timer)
+                .schedule(captor.capture(), Mockito.anyLong(), Mockito.any(TimeUnit.class));
+        captor.getValue().run();
+
+        Mockito.verify(builder).message(List.of("a+"));
+        Mockito.verify(notification).send();
+    }
+}
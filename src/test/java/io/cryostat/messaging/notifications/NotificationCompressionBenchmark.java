@@ -0,0 +1,276 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.messaging.notifications;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
+
+import io.cryostat.MainModule;
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.net.discovery.JvmDiscoveryClient.EventKind;
+import io.cryostat.jmc.serialization.HyperlinkedSerializableRecordingDescriptor;
+import io.cryostat.net.NetworkConfiguration;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.ServiceRef.AnnotationKey;
+import io.cryostat.platform.TargetDiscoveryEvent;
+
+import com.google.gson.Gson;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Compares the size and CPU cost of sending notifications as plain JSON and compressed with
+ * WebSocket permessage-deflate, on a stream of TargetJvmDiscovery notifications and on
+ * recording lists. Each message is deflated as permessage-deflate does: raw deflate, ended with a
+ * sync flush whose trailing empty block is left off, either keeping the compression context from
+ * one message to the next as Cryostat does, or starting afresh for every message as a client
+ * asking for no context takeover would get. Not run with the unit tests, since the timings are
+ * only meaningful on a quiet machine. Run it on its own with:
+ *
+ * <pre>mvn test -Dtest=NotificationCompressionBenchmark</pre>
+ */
+class NotificationCompressionBenchmark {
+
+    static final int MESSAGES = 500;
+    static final int WARMUP_ROUNDS = 20;
+    static final int MEASURED_ROUNDS = 20;
+    static final int RECORDINGS_PER_LIST = 20;
+    // the trailer of a sync flush, which permessage-deflate leaves off each message
+    static final int SYNC_FLUSH_TRAILER = 4;
+    static final String API_URL = "https://cryostat.example.com:8181/api/v1/targets/%s/%s/%s";
+
+    final Gson gson = MainModule.provideGson(Logger.INSTANCE);
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void compareEncodings() throws Exception {
+        int defaultLevel =
+                Mockito.mock(NetworkConfiguration.class, Mockito.CALLS_REAL_METHODS)
+                        .getDefaultWebSocketCompressionLevel();
+        Map<String, List<byte[]>> payloads =
+                Map.of(
+                        "TargetJvmDiscovery", discoveryNotifications(),
+                        "recording lists", recordingLists());
+        for (Map.Entry<String, List<byte[]>> payload : payloads.entrySet()) {
+            List<byte[]> messages = payload.getValue();
+            Result plain = new Result(total(messages), 0);
+            System.out.println(
+                    String.format(
+                            "%s: %d messages, plain JSON %d B/msg",
+                            payload.getKey(), messages.size(), plain.bytes / messages.size()));
+            for (int level : new int[] {1, defaultLevel, 9}) {
+                for (boolean takeover : new boolean[] {false, true}) {
+                    Result deflated = measure(messages, level, takeover);
+                    System.out.println(
+                            String.format(
+                                    "  level %d, %-21s %6d B/msg (%4.1f%%), %7.2f us/msg CPU",
+                                    level,
+                                    takeover ? "context takeover:" : "no context takeover:",
+                                    deflated.bytes / messages.size(),
+                                    100.0 * deflated.bytes / plain.bytes,
+                                    deflated.cpuNanos / 1000.0 / messages.size()));
+                    MatcherAssert.assertThat(deflated.bytes, Matchers.lessThan(plain.bytes));
+                }
+            }
+            // the repeated structure of consecutive messages is where most of the saving is
+            MatcherAssert.assertThat(
+                    measure(messages, defaultLevel, true).bytes,
+                    Matchers.lessThan(measure(messages, defaultLevel, false).bytes));
+        }
+    }
+
+    /** @return the compressed size of the messages and the mean CPU time to compress them */
+    Result measure(List<byte[]> messages, int level, boolean contextTakeover) {
+        long bytes = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            bytes = deflateAll(messages, level, contextTakeover);
+        }
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            deflateAll(messages, level, contextTakeover);
+        }
+        long cpuNanos = (threads.getCurrentThreadCpuTime() - start) / MEASURED_ROUNDS;
+        return new Result(bytes, cpuNanos);
+    }
+
+    static long deflateAll(List<byte[]> messages, int level, boolean contextTakeover) {
+        Deflater deflater = new Deflater(level, true);
+        byte[] buf = new byte[8192];
+        long total = 0;
+        try {
+            for (byte[] message : messages) {
+                if (!contextTakeover) {
+                    deflater.reset();
+                }
+                deflater.setInput(message);
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    total += n;
+                } while (n == buf.length);
+                total -= SYNC_FLUSH_TRAILER;
+            }
+        } finally {
+            deflater.end();
+        }
+        return total;
+    }
+
+    static long total(List<byte[]> messages) {
+        return messages.stream().mapToLong(m -> m.length).sum();
+    }
+
+    /** Targets found across a namespace, as they would be announced to a dashboard. */
+    List<byte[]> discoveryNotifications() throws Exception {
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            String host = String.format("10.128.%d.%d", i / 250, i % 250 + 2);
+            ServiceRef serviceRef =
+                    new ServiceRef(
+                            new URI(
+                                    String.format(
+                                            "service:jmx:rmi:///jndi/rmi://%s:9091/jmxrmi", host)),
+                            String.format("quarkus-sample-app-5f7d9c8b6-%05d", i));
+            serviceRef.setLabels(
+                    Map.of(
+                            "app", "quarkus-sample-app",
+                            "pod-template-hash", "5f7d9c8b6",
+                            "deployment", "quarkus-sample-app"));
+            serviceRef.setPlatformAnnotations(
+                    Map.of(
+                            "openshift.io/scc", "restricted",
+                            "k8s.v1.cni.cncf.io/network-status", "[]"));
+            serviceRef.setCryostatAnnotations(
+                    Map.of(
+                            AnnotationKey.HOST, host,
+                            AnnotationKey.PORT, "9091",
+                            AnnotationKey.NAMESPACE, "my-namespace",
+                            AnnotationKey.POD_NAME, serviceRef.getAlias().get()));
+            TargetDiscoveryEvent event = new TargetDiscoveryEvent(EventKind.FOUND, serviceRef);
+            messages.add(
+                    encode(
+                            "TargetJvmDiscovery",
+                            Map.of(
+                                    "event",
+                                    Map.of(
+                                            "kind",
+                                            event.getEventKind(),
+                                            "serviceRef",
+                                            event.getServiceRef()))));
+        }
+        return messages;
+    }
+
+    /** The recordings of each of a number of targets, as a dashboard polling them would get. */
+    List<byte[]> recordingLists() throws Exception {
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES / 10; i++) {
+            String target = String.format("10.128.0.%d:9091", i + 2);
+            List<HyperlinkedSerializableRecordingDescriptor> recordings = new ArrayList<>();
+            for (int j = 0; j < RECORDINGS_PER_LIST; j++) {
+                String name = j == 0 ? "continuous" : String.format("auto_rule_%d", j);
+                recordings.add(
+                        new HyperlinkedSerializableRecordingDescriptor(
+                                descriptor(j, name, 1_650_000_000_000L + 60_000L * (i + j)),
+                                String.format(API_URL, target, "recordings", name),
+                                String.format(API_URL, target, "reports", name)));
+            }
+            messages.add(gson.toJson(recordings).getBytes(StandardCharsets.UTF_8));
+        }
+        return messages;
+    }
+
+    byte[] encode(String category, Object message) {
+        Notification<Object> notification =
+                new Notification.Builder<Object>(null)
+                        .metaCategory(category)
+                        .metaType(HttpMimeType.JSON)
+                        .message(message)
+                        .build();
+        return gson.toJson(notification).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static IRecordingDescriptor descriptor(long id, String name, long startTime)
+            throws Exception {
+        IRecordingDescriptor descriptor = Mockito.mock(IRecordingDescriptor.class);
+        Mockito.when(descriptor.getId()).thenReturn(id);
+        Mockito.when(descriptor.getName()).thenReturn(name);
+        Mockito.when(descriptor.getState())
+                .thenReturn(IRecordingDescriptor.RecordingState.RUNNING);
+        IQuantity start = quantity(startTime);
+        Mockito.when(descriptor.getStartTime()).thenReturn(start);
+        IQuantity zero = quantity(0);
+        Mockito.when(descriptor.getDuration()).thenReturn(zero);
+        Mockito.when(descriptor.isContinuous()).thenReturn(true);
+        Mockito.when(descriptor.getToDisk()).thenReturn(true);
+        IQuantity maxSize = quantity(50 * 1024 * 1024);
+        Mockito.when(descriptor.getMaxSize()).thenReturn(maxSize);
+        IQuantity maxAge = quantity(3_600_000);
+        Mockito.when(descriptor.getMaxAge()).thenReturn(maxAge);
+        return descriptor;
+    }
+
+    static IQuantity quantity(long value) throws Exception {
+        IQuantity quantity = Mockito.mock(IQuantity.class);
+        Mockito.when(quantity.longValueIn(Mockito.any())).thenReturn(value);
+        return quantity;
+    }
+
+    static class Result {
+        final long bytes;
+        final long cpuNanos;
+
+        Result(long bytes, long cpuNanos) {
+            this.bytes = bytes;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+}
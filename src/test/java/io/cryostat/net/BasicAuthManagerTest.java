@@ -243,6 +243,93 @@ class BasicAuthManagerTest {
         }
     }
 
+    @Nested
+    class ConfigCachingTest {
+        Path mockPath;
+
+        @BeforeEach
+        void setup() {
+            mockPath = Mockito.mock(Path.class);
+            Mockito.when(
+                            fs.pathOf(
+                                    System.getProperty("user.home"),
+                                    BasicAuthManager.USER_PROPERTIES_FILENAME))
+                    .thenReturn(mockPath);
+            Mockito.when(fs.exists(mockPath)).thenReturn(true);
+            Mockito.when(fs.isRegularFile(mockPath)).thenReturn(true);
+            Mockito.when(fs.isReadable(mockPath)).thenReturn(true);
+        }
+
+        @Test
+        void shouldReadPropertiesOnlyOnce() throws Exception {
+            BufferedReader props =
+                    new BufferedReader(
+                            new StringReader(
+                                    "user:d74ff0ee8da3b9806b18c877dbf29bbde50b5bd8e4dad7a3a725000feb82e8f1"));
+            Mockito.when(fs.readFile(mockPath)).thenReturn(props);
+
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+            Assertions.assertTrue(mgr.validateHttpHeader(() -> "Basic dXNlcjpwYXNz").get());
+            Assertions.assertFalse(mgr.validateToken(() -> "user:sass").get());
+
+            Mockito.verify(fs, Mockito.times(1)).readFile(mockPath);
+        }
+
+        @Test
+        void shouldNotPassVerifiedCredentialsRemovedOnReload() throws Exception {
+            BufferedReader props1 =
+                    new BufferedReader(
+                            new StringReader(
+                                    "user:d74ff0ee8da3b9806b18c877dbf29bbde50b5bd8e4dad7a3a725000feb82e8f1"));
+            BufferedReader props2 =
+                    new BufferedReader(
+                            new StringReader(
+                                    "admin=8c6976e5b5410415bde908bd4dee15dfb167a9c873fc4bb8a81f6f2ab448a918"));
+            Mockito.when(fs.readFile(mockPath)).thenReturn(props1).thenReturn(props2);
+
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+
+            mgr.loadConfig();
+
+            Assertions.assertFalse(mgr.validateToken(() -> "user:pass").get());
+            Assertions.assertTrue(mgr.validateToken(() -> "admin:admin").get());
+        }
+
+        @Test
+        void shouldKeepPreviousUsersIfReloadFails() throws Exception {
+            BufferedReader props =
+                    new BufferedReader(
+                            new StringReader(
+                                    "user:d74ff0ee8da3b9806b18c877dbf29bbde50b5bd8e4dad7a3a725000feb82e8f1"));
+            IOException ex = new IOException("foo");
+            Mockito.when(fs.readFile(mockPath)).thenReturn(props).thenThrow(ex);
+
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+
+            mgr.loadConfig();
+
+            Mockito.verify(logger).error(ex);
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+        }
+
+        @Test
+        void shouldRemoveAllUsersIfPropertiesDeleted() throws Exception {
+            BufferedReader props =
+                    new BufferedReader(
+                            new StringReader(
+                                    "user:d74ff0ee8da3b9806b18c877dbf29bbde50b5bd8e4dad7a3a725000feb82e8f1"));
+            Mockito.when(fs.readFile(mockPath)).thenReturn(props);
+
+            Assertions.assertTrue(mgr.validateToken(() -> "user:pass").get());
+
+            Mockito.when(fs.exists(mockPath)).thenReturn(false);
+            mgr.loadConfig();
+
+            Assertions.assertFalse(mgr.validateToken(() -> "user:pass").get());
+        }
+    }
+
     @Nested
     class HttpHeaderValidationTest {
         @Test
@@ -40,6 +40,7 @@ package io.cryostat.net;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 
+import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.Environment;
 
 import org.hamcrest.MatcherAssert;
@@ -57,11 +58,12 @@ class NetworkConfigurationTest {
 
     @Mock NetworkResolver resolver;
     @Mock Environment env;
+    @Mock Logger logger;
     NetworkConfiguration conf;
 
     @BeforeEach
     void setup() {
-        this.conf = new NetworkConfiguration(env, resolver);
+        this.conf = new NetworkConfiguration(env, resolver, logger);
     }
 
     @Test
@@ -98,6 +100,37 @@ class NetworkConfigurationTest {
         Mockito.verify(env).getEnv("CRYOSTAT_WEB_PORT", "8181");
     }
 
+    @Test
+    void testDefaultWebSocketCompressionLevel() {
+        MatcherAssert.assertThat(conf.getDefaultWebSocketCompressionLevel(), Matchers.equalTo(6));
+    }
+
+    @Test
+    void shouldReportWebSocketCompressionLevel() {
+        Mockito.when(env.getEnv(Mockito.eq("CRYOSTAT_WS_COMPRESSION_LEVEL"), Mockito.anyString()))
+                .thenReturn("1");
+        MatcherAssert.assertThat(conf.getWebSocketCompressionLevel(), Matchers.equalTo(1));
+        Mockito.verify(env).getEnv("CRYOSTAT_WS_COMPRESSION_LEVEL", "6");
+    }
+
+    @Test
+    void shouldClampWebSocketCompressionLevel() {
+        Mockito.when(env.getEnv(Mockito.eq("CRYOSTAT_WS_COMPRESSION_LEVEL"), Mockito.anyString()))
+                .thenReturn("12", "-1");
+        MatcherAssert.assertThat(conf.getWebSocketCompressionLevel(), Matchers.equalTo(9));
+        MatcherAssert.assertThat(conf.getWebSocketCompressionLevel(), Matchers.equalTo(0));
+        Mockito.verify(logger, Mockito.times(2))
+                .warn(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    void shouldFallBackToDefaultWebSocketCompressionLevelIfNotANumber() {
+        Mockito.when(env.getEnv(Mockito.eq("CRYOSTAT_WS_COMPRESSION_LEVEL"), Mockito.anyString()))
+                .thenReturn("fast");
+        MatcherAssert.assertThat(conf.getWebSocketCompressionLevel(), Matchers.equalTo(6));
+        Mockito.verify(logger).warn(Mockito.any(NumberFormatException.class));
+    }
+
     @Test
     void shouldReportSslNotProxiedWhenVarUnset() {
         Mockito.when(env.hasEnv("CRYOSTAT_SSL_PROXIED")).thenReturn(false);
@@ -0,0 +1,177 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.FileSystem;
+
+import io.fabric8.kubernetes.api.model.ListOptions;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.openshift.client.OpenShiftClient;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class OpenShiftAuthManagerTest {
+
+    static final String NAMESPACE = "mynamespace";
+
+    OpenShiftAuthManager mgr;
+    @Mock Logger logger;
+    @Mock FileSystem fs;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    OpenShiftClient client;
+
+    AtomicLong clock;
+    int clientsCreated;
+
+    @BeforeEach
+    void setup() throws Exception {
+        clock = new AtomicLong();
+        clientsCreated = 0;
+        Mockito.lenient()
+                .when(fs.readFile(Mockito.any()))
+                .thenAnswer(invocation -> new BufferedReader(new StringReader(NAMESPACE)));
+        mgr =
+                new OpenShiftAuthManager(
+                        logger,
+                        fs,
+                        token -> {
+                            clientsCreated++;
+                            return client;
+                        },
+                        Duration.ofSeconds(60),
+                        Duration.ofSeconds(10),
+                        2,
+                        clock::get);
+    }
+
+    @Test
+    void shouldRejectBlankTokens() throws Exception {
+        MatcherAssert.assertThat(mgr.validateToken(() -> "").get(), Matchers.is(false));
+        MatcherAssert.assertThat(clientsCreated, Matchers.equalTo(0));
+    }
+
+    @Test
+    void shouldAcceptTokenPermittedToListRoutes() throws Exception {
+        MatcherAssert.assertThat(mgr.validateToken(() -> "token").get(), Matchers.is(true));
+        Mockito.verify(client.routes().inNamespace(NAMESPACE))
+                .list(Mockito.any(ListOptions.class));
+    }
+
+    @Test
+    void shouldCacheValidTokens() throws Exception {
+        mgr.validateToken(() -> "token").get();
+        mgr.validateToken(() -> "token").get();
+        MatcherAssert.assertThat(clientsCreated, Matchers.equalTo(1));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        MatcherAssert.assertThat(mgr.validateToken(() -> "token").get(), Matchers.is(true));
+        MatcherAssert.assertThat(clientsCreated, Matchers.equalTo(2));
+    }
+
+    @Test
+    void shouldCacheRejectedTokensBriefly() throws Exception {
+        Mockito.when(
+                        client.routes()
+                                .inNamespace(NAMESPACE)
+                                .list(Mockito.any(ListOptions.class)))
+                .thenThrow(new KubernetesClientException("Unauthorized", 401, null));
+
+        MatcherAssert.assertThat(mgr.validateToken(() -> "bad").get(), Matchers.is(false));
+        MatcherAssert.assertThat(mgr.validateToken(() -> "bad").get(), Matchers.is(false));
+        MatcherAssert.assertThat(clientsCreated, Matchers.equalTo(1));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        mgr.validateToken(() -> "bad").get();
+        MatcherAssert.assertThat(clientsCreated, Matchers.equalTo(2));
+    }
+
+    @Test
+    void shouldNotCacheFailedChecks() throws Exception {
+        Mockito.when(
+                        client.routes()
+                                .inNamespace(NAMESPACE)
+                                .list(Mockito.any(ListOptions.class)))
+                .thenThrow(new KubernetesClientException("Service Unavailable", 503, null))
+                .thenReturn(null);
+
+        MatcherAssert.assertThat(mgr.validateToken(() -> "token").get(), Matchers.is(false));
+
+        // the failed check is evicted once it completes, which may race with the first caller,
+        // but the fake clock never advances so a cached negative result would never expire
+        boolean valid = false;
+        for (int i = 0; i < 100 && !valid; i++) {
+            valid = mgr.validateToken(() -> "token").get();
+            if (!valid) {
+                Thread.sleep(10);
+            }
+        }
+        MatcherAssert.assertThat(valid, Matchers.is(true));
+    }
+
+    @Test
+    void shouldReadNamespaceOnce() throws Exception {
+        mgr.validateToken(() -> "token1").get();
+        mgr.validateToken(() -> "token2").get();
+
+        Mockito.verify(fs, Mockito.times(1)).readFile(Mockito.any());
+    }
+
+    @Test
+    void shouldValidateBearerHeader() throws Exception {
+        MatcherAssert.assertThat(
+                mgr.validateHttpHeader(() -> "Bearer token").get(), Matchers.is(true));
+        MatcherAssert.assertThat(
+                mgr.validateHttpHeader(() -> "Basic token").get(), Matchers.is(false));
+    }
+}
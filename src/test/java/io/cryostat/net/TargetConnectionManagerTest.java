@@ -210,4 +210,21 @@ class TargetConnectionManagerTest {
         JFRConnection conn2 = mgr.executeConnectedTask(desc, a -> a);
         MatcherAssert.assertThat(conn1, Matchers.not(Matchers.sameInstance(conn2)));
     }
+
+    @Test
+    void shouldNormalizeTargetIdsToJmxServiceUrls() {
+        String url = "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi";
+
+        MatcherAssert.assertThat(
+                TargetConnectionManager.normalizeTargetId(url), Matchers.equalTo(url));
+        MatcherAssert.assertThat(
+                TargetConnectionManager.normalizeTargetId("localhost:9091"), Matchers.equalTo(url));
+        MatcherAssert.assertThat(
+                TargetConnectionManager.normalizeTargetId("localhost"), Matchers.equalTo(url));
+        MatcherAssert.assertThat(
+                TargetConnectionManager.normalizeTargetId("not a target"),
+                Matchers.equalTo("not a target"));
+        MatcherAssert.assertThat(
+                TargetConnectionManager.normalizeTargetId(null), Matchers.nullValue());
+    }
 }
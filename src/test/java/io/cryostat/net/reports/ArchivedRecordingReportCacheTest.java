@@ -37,10 +37,13 @@
  */
 package io.cryostat.net.reports;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
-import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
@@ -49,6 +52,10 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveManifest;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
 
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -72,6 +79,8 @@ class ArchivedRecordingReportCacheTest {
     @Mock CompletableFuture<Path> pathFuture;
     @Mock Path destinationFile;
     @Mock FileSystem fs;
+    @Mock ArchiveCatalog catalog;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
     @Mock SubprocessReportGenerator subprocessReportGenerator;
     @Mock ReentrantLock generationLock;
     @Mock Logger logger;
@@ -80,9 +89,11 @@ class ArchivedRecordingReportCacheTest {
     void setup() {
         this.cache =
                 new ArchivedRecordingReportCache(
-                        savedRecordingsPath,
+                        new LocalArchiveStorage(fs, savedRecordingsPath),
                         webServerTempPath,
                         fs,
+                        catalog,
+                        () -> recordingArchiveHelper,
                         () -> subprocessReportGenerator,
                         generationLock,
                         logger);
@@ -119,7 +130,7 @@ class ArchivedRecordingReportCacheTest {
         Mockito.when(destinationFile.toAbsolutePath()).thenReturn(destinationFile);
         Mockito.when(fs.isReadable(Mockito.any())).thenReturn(false);
 
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of());
+        Mockito.when(catalog.contains("foo")).thenReturn(false);
 
         Assertions.assertThrows(ExecutionException.class, () -> cache.get("foo").get());
 
@@ -138,7 +149,7 @@ class ArchivedRecordingReportCacheTest {
         Mockito.when(destinationFile.toAbsolutePath()).thenReturn(destinationFile);
         Mockito.when(fs.isReadable(Mockito.any())).thenReturn(false);
 
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of("foo"));
+        Mockito.when(catalog.contains("foo")).thenReturn(true);
 
         Mockito.when(pathFuture.get()).thenReturn(destinationFile);
         Mockito.when(
@@ -158,6 +169,38 @@ class ArchivedRecordingReportCacheTest {
         lockOrder.verify(generationLock).unlock();
     }
 
+    @Test
+    void getShouldGenerateReportFromCompleteDifferentialArchive() throws Exception {
+        Path recording = Mockito.mock(Path.class);
+        Path download = Mockito.mock(Path.class);
+        Mockito.when(savedRecordingsPath.resolve(Mockito.anyString())).thenReturn(recording);
+        Mockito.when(webServerTempPath.resolve("foo.report.html")).thenReturn(destinationFile);
+        Mockito.when(destinationFile.toAbsolutePath()).thenReturn(destinationFile);
+        Mockito.when(webServerTempPath.resolve("foo.download")).thenReturn(download);
+        Mockito.when(download.toAbsolutePath()).thenReturn(download);
+        Mockito.when(fs.isReadable(Mockito.any())).thenReturn(false);
+        Mockito.when(catalog.contains("foo")).thenReturn(true);
+        Mockito.when(recordingArchiveHelper.getManifest("foo"))
+                .thenReturn(Optional.of(Mockito.mock(ArchiveManifest.class)));
+        InputStream complete = new ByteArrayInputStream(new byte[0]);
+        Mockito.when(recordingArchiveHelper.openArchive("foo")).thenReturn(complete);
+
+        Mockito.when(pathFuture.get()).thenReturn(destinationFile);
+        Mockito.when(
+                        subprocessReportGenerator.exec(
+                                Mockito.any(Path.class),
+                                Mockito.any(Path.class),
+                                Mockito.any(Duration.class)))
+                .thenReturn(pathFuture);
+
+        MatcherAssert.assertThat(cache.get("foo").get(), Matchers.sameInstance(destinationFile));
+
+        Mockito.verify(fs).copy(complete, download, StandardCopyOption.REPLACE_EXISTING);
+        Mockito.verify(subprocessReportGenerator)
+                .exec(Mockito.eq(download), Mockito.eq(destinationFile), Mockito.any());
+        Mockito.verify(fs).deleteIfExists(download);
+    }
+
     @Test
     void getShouldReturnCachedFileIfAvailable() throws Exception {
         Path dest = Mockito.mock(Path.class);
@@ -183,7 +226,7 @@ class ArchivedRecordingReportCacheTest {
         Mockito.when(destinationFile.toAbsolutePath()).thenReturn(destinationFile);
         Mockito.when(fs.isReadable(Mockito.any())).thenReturn(false);
 
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of("foo"));
+        Mockito.when(catalog.contains("foo")).thenReturn(true);
 
         Mockito.when(
                         subprocessReportGenerator.exec(
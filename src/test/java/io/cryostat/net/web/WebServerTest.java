@@ -69,6 +69,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
@@ -133,6 +134,18 @@ class WebServerTest {
                 exporter.getHostUrl(), Matchers.equalTo(new URL("http", "foo", 1234, "")));
     }
 
+    @Test
+    void shouldResolveHostOnlyOnce() throws Exception {
+        when(netConf.getWebServerHost()).thenReturn("example.com");
+        when(netConf.getExternalWebServerPort()).thenReturn(8181);
+
+        exporter.getArchivedDownloadURL("foo");
+        exporter.getArchivedReportURL("foo");
+        exporter.getHostUrl();
+
+        Mockito.verify(netConf, Mockito.times(1)).getWebServerHost();
+    }
+
     @ParameterizedTest()
     @ValueSource(
             strings = {"foo", "bar.jfr", "some-recording.jfr", "another_recording", "alpha123"})
@@ -101,6 +101,17 @@ class AbstractAuthenticatedRequestHandlerTest {
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(500));
     }
 
+    @Test
+    void shouldUseAuthorizationResultFromFilter() {
+        when(ctx.get(AuthenticationFilter.AUTHORIZATION_RESULT_KEY))
+                .thenReturn(CompletableFuture.completedFuture(false));
+
+        HttpStatusException ex =
+                Assertions.assertThrows(HttpStatusException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(401));
+        Mockito.verifyNoInteractions(auth);
+    }
+
     @Nested
     class WithHandlerThrownException {
 
@@ -0,0 +1,138 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import io.cryostat.net.AuthManager;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class AuthenticationFilterTest {
+
+    AuthenticationFilter filter;
+    @Mock AuthManager auth;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock Vertx vertx;
+    @Mock Context context;
+
+    @BeforeEach
+    void setup() {
+        Mockito.lenient().when(ctx.request()).thenReturn(req);
+        Mockito.lenient().when(ctx.vertx()).thenReturn(vertx);
+        Mockito.lenient().when(vertx.getOrCreateContext()).thenReturn(context);
+        this.filter = new AuthenticationFilter(auth);
+    }
+
+    @Test
+    void shouldStoreCompletedResultAndContinue() {
+        Future<Boolean> result = CompletableFuture.completedFuture(true);
+        when(auth.validateHttpHeader(Mockito.any())).thenReturn(result);
+
+        filter.handle(ctx);
+
+        InOrder inOrder = Mockito.inOrder(ctx);
+        inOrder.verify(ctx).put(AuthenticationFilter.AUTHORIZATION_RESULT_KEY, result);
+        inOrder.verify(ctx).next();
+        Mockito.verify(req, Mockito.never()).pause();
+    }
+
+    @Test
+    void shouldStoreFailedResultAndContinue() {
+        Future<Boolean> result = CompletableFuture.completedFuture(false);
+        when(auth.validateHttpHeader(Mockito.any())).thenReturn(result);
+
+        filter.handle(ctx);
+
+        Mockito.verify(ctx).put(AuthenticationFilter.AUTHORIZATION_RESULT_KEY, result);
+        Mockito.verify(ctx).next();
+    }
+
+    @Test
+    void shouldReuseResultAlreadyOnContext() {
+        when(ctx.get(AuthenticationFilter.AUTHORIZATION_RESULT_KEY))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        filter.handle(ctx);
+
+        Mockito.verify(ctx).next();
+        Mockito.verifyNoInteractions(auth);
+    }
+
+    @Test
+    void shouldPauseRequestUntilPendingResultCompletes() {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        when(auth.validateHttpHeader(Mockito.any())).thenReturn(result);
+
+        filter.handle(ctx);
+
+        Mockito.verify(req).pause();
+        Mockito.verify(ctx, Mockito.never()).next();
+        Mockito.verifyNoInteractions(context);
+
+        result.complete(true);
+
+        ArgumentCaptor<Handler<Void>> captor = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(context).runOnContext(captor.capture());
+        Mockito.verify(ctx, Mockito.never()).next();
+
+        captor.getValue().handle(null);
+
+        InOrder inOrder = Mockito.inOrder(ctx, req);
+        inOrder.verify(ctx).put(AuthenticationFilter.AUTHORIZATION_RESULT_KEY, result);
+        inOrder.verify(req).resume();
+        inOrder.verify(ctx).next();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import static org.mockito.Mockito.lenient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class InputStreamReadStreamTest {
+
+    static final byte[] DATA = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock Context context;
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    int buffers;
+    int ends;
+    Throwable failure;
+    boolean closed;
+
+    @BeforeEach
+    void setup() {
+        // run the blocking code, and then its result handler, straight away
+        lenient()
+                .doAnswer(
+                        invocation -> {
+                            Handler<Promise<Object>> blocking = invocation.getArgument(0);
+                            Handler<AsyncResult<Object>> result = invocation.getArgument(2);
+                            Promise<Object> promise = Promise.promise();
+                            blocking.handle(promise);
+                            if (result != null) {
+                                result.handle(promise.future());
+                            }
+                            return null;
+                        })
+                .when(context)
+                .executeBlocking(Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+    }
+
+    InputStreamReadStream stream(long length) {
+        InputStreamReadStream stream =
+                new InputStreamReadStream(
+                        context,
+                        () ->
+                                new ByteArrayInputStream(DATA) {
+                                    @Override
+                                    public void close() {
+                                        closed = true;
+                                    }
+                                },
+                        length,
+                        4);
+        stream.endHandler(v -> ends++);
+        stream.exceptionHandler(t -> failure = t);
+        return stream;
+    }
+
+    void receive(Buffer buffer) {
+        buffers++;
+        received.writeBytes(buffer.getBytes());
+    }
+
+    @Test
+    void shouldReadWholeStreamInBuffers() {
+        stream(-1).handler(this::receive);
+
+        MatcherAssert.assertThat(received.toByteArray(), Matchers.equalTo(DATA));
+        MatcherAssert.assertThat(buffers, Matchers.equalTo(3));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(1));
+        MatcherAssert.assertThat(failure, Matchers.nullValue());
+        MatcherAssert.assertThat(closed, Matchers.equalTo(true));
+    }
+
+    @Test
+    void shouldReadOnlyRequestedLength() {
+        stream(6).handler(this::receive);
+
+        MatcherAssert.assertThat(
+                new String(received.toByteArray(), StandardCharsets.US_ASCII),
+                Matchers.equalTo("012345"));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(1));
+        MatcherAssert.assertThat(closed, Matchers.equalTo(true));
+    }
+
+    @Test
+    void shouldFailIfStreamIsShorterThanLength() {
+        stream(DATA.length + 1).handler(this::receive);
+
+        MatcherAssert.assertThat(failure, Matchers.instanceOf(EOFException.class));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(0));
+        MatcherAssert.assertThat(closed, Matchers.equalTo(true));
+    }
+
+    @Test
+    void shouldNotReadWhilePaused() {
+        InputStreamReadStream stream = stream(-1);
+        stream.handler(
+                buffer -> {
+                    receive(buffer);
+                    stream.pause();
+                });
+
+        MatcherAssert.assertThat(buffers, Matchers.equalTo(1));
+        Mockito.verify(context, Mockito.times(1))
+                .executeBlocking(Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+
+        stream.fetch(1);
+
+        MatcherAssert.assertThat(buffers, Matchers.equalTo(2));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(0));
+
+        stream.handler(this::receive);
+        stream.resume();
+
+        MatcherAssert.assertThat(received.toByteArray(), Matchers.equalTo(DATA));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(1));
+    }
+
+    @Test
+    void shouldStopReadingWhenClosed() {
+        InputStreamReadStream stream = stream(-1);
+        stream.handler(
+                buffer -> {
+                    receive(buffer);
+                    stream.close();
+                });
+
+        MatcherAssert.assertThat(buffers, Matchers.equalTo(1));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(0));
+        MatcherAssert.assertThat(closed, Matchers.equalTo(true));
+    }
+
+    @Test
+    void shouldReportFailureToOpen() {
+        IOException cause = new IOException("missing");
+        InputStreamReadStream stream =
+                new InputStreamReadStream(
+                        context,
+                        () -> {
+                            throw cause;
+                        },
+                        -1,
+                        4);
+        stream.exceptionHandler(t -> failure = t);
+        stream.endHandler(v -> ends++);
+
+        stream.handler(this::receive);
+
+        MatcherAssert.assertThat(failure, Matchers.sameInstance(cause));
+        MatcherAssert.assertThat(buffers, Matchers.equalTo(0));
+        MatcherAssert.assertThat(ends, Matchers.equalTo(0));
+    }
+}
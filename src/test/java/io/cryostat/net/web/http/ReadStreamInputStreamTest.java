@@ -0,0 +1,162 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http;
+
+import static org.mockito.Mockito.lenient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ReadStreamInputStreamTest {
+
+    ReadStreamInputStream in;
+    @Mock ReadStream<Buffer> stream;
+    @Mock Context context;
+    Handler<Buffer> dataHandler;
+    Handler<Void> endHandler;
+    Handler<Throwable> exceptionHandler;
+
+    @BeforeEach
+    void setup() {
+        lenient()
+                .doAnswer(
+                        invocation -> {
+                            Handler<Void> task = invocation.getArgument(0);
+                            task.handle(null);
+                            return null;
+                        })
+                .when(context)
+                .runOnContext(Mockito.any());
+
+        in = new ReadStreamInputStream(stream, context, 8);
+
+        ArgumentCaptor<Handler<Buffer>> data = ArgumentCaptor.forClass(Handler.class);
+        ArgumentCaptor<Handler<Void>> end = ArgumentCaptor.forClass(Handler.class);
+        ArgumentCaptor<Handler<Throwable>> exception = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(stream).handler(data.capture());
+        Mockito.verify(stream).endHandler(end.capture());
+        Mockito.verify(stream).exceptionHandler(exception.capture());
+        dataHandler = data.getValue();
+        endHandler = end.getValue();
+        exceptionHandler = exception.getValue();
+    }
+
+    static Buffer buffer(String s) {
+        return Buffer.buffer(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldReadDataInOrderUntilEnd() throws IOException {
+        dataHandler.handle(buffer("abc"));
+        dataHandler.handle(buffer("def"));
+        endHandler.handle(null);
+
+        MatcherAssert.assertThat(
+                new String(in.readAllBytes(), StandardCharsets.UTF_8), Matchers.equalTo("abcdef"));
+        MatcherAssert.assertThat(in.read(), Matchers.equalTo(-1));
+    }
+
+    @Test
+    void shouldPauseStreamAboveHighWaterMark() {
+        dataHandler.handle(buffer("abcdef"));
+        Mockito.verify(stream, Mockito.never()).pause();
+
+        dataHandler.handle(buffer("ghijkl"));
+        Mockito.verify(stream).pause();
+        MatcherAssert.assertThat(in.available(), Matchers.equalTo(12));
+    }
+
+    @Test
+    void shouldResumeStreamOnceReaderCatchesUp() throws IOException {
+        dataHandler.handle(buffer("abcdef"));
+        dataHandler.handle(buffer("ghijkl"));
+        Mockito.verify(stream).pause();
+
+        in.read(new byte[6]);
+        Mockito.verify(stream, Mockito.never()).resume();
+
+        in.read(new byte[6]);
+        Mockito.verify(stream).resume();
+    }
+
+    @Test
+    void shouldThrowStreamFailure() {
+        dataHandler.handle(buffer("abc"));
+        exceptionHandler.handle(new IOException("connection reset"));
+
+        IOException ex = Assertions.assertThrows(IOException.class, () -> in.read());
+        MatcherAssert.assertThat(ex.getMessage(), Matchers.equalTo("connection reset"));
+    }
+
+    @Test
+    void shouldWrapOtherFailures() {
+        in.fail(new IllegalStateException("closed"));
+
+        IOException ex = Assertions.assertThrows(IOException.class, () -> in.read());
+        MatcherAssert.assertThat(ex.getCause(), Matchers.instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    void closeShouldDiscardDataAndResumeStream() {
+        dataHandler.handle(buffer("abcdefghijkl"));
+        Mockito.verify(stream).pause();
+
+        in.close();
+        dataHandler.handle(buffer("mnop"));
+
+        Mockito.verify(stream).resume();
+        MatcherAssert.assertThat(in.available(), Matchers.equalTo(0));
+        Assertions.assertThrows(IOException.class, () -> in.read());
+    }
+}
@@ -40,17 +40,16 @@ package io.cryostat.net.web.http.api.v1;
 import static org.mockito.Mockito.lenient;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
-import io.cryostat.core.sys.FileSystem;
 import io.cryostat.messaging.notifications.Notification;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.AuthManager;
-import io.cryostat.net.reports.ReportService;
 import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.RecordingArchiveHelper;
 
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerResponse;
@@ -71,9 +70,8 @@ class RecordingDeleteHandlerTest {
 
     RecordingDeleteHandler handler;
     @Mock AuthManager auth;
-    @Mock ReportService reportService;
-    @Mock FileSystem fs;
-    @Mock Path savedRecordingsPath;
+    @Mock ArchiveCatalog catalog;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
     @Mock NotificationFactory notificationFactory;
     @Mock Notification notification;
     @Mock Notification.Builder notificationBuilder;
@@ -97,7 +95,7 @@ class RecordingDeleteHandlerTest {
         lenient().when(notificationBuilder.build()).thenReturn(notification);
         this.handler =
                 new RecordingDeleteHandler(
-                        auth, reportService, fs, notificationFactory, savedRecordingsPath);
+                        auth, catalog, recordingArchiveHelper, notificationFactory);
     }
 
     @Test
@@ -116,32 +114,49 @@ class RecordingDeleteHandlerTest {
         Mockito.when(auth.validateHttpHeader(Mockito.any()))
                 .thenReturn(CompletableFuture.completedFuture(true));
 
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of());
+        Mockito.when(catalog.get(Mockito.any())).thenReturn(Optional.empty());
 
         HttpStatusException ex =
                 Assertions.assertThrows(HttpStatusException.class, () -> handler.handle(ctx));
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        Mockito.verifyNoInteractions(recordingArchiveHelper);
     }
 
     @Test
-    void shouldDeleteIfRecordingFound() throws Exception {
+    void shouldThrow404IfRecordingAlreadyDeleted() throws Exception {
         Mockito.when(auth.validateHttpHeader(Mockito.any()))
                 .thenReturn(CompletableFuture.completedFuture(true));
 
         String recordingName = "someRecording";
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of(recordingName));
+        Mockito.when(catalog.get(recordingName))
+                .thenReturn(Optional.of(new ArchiveCatalog.Entry(recordingName, 0, 0, null, null)));
+        Mockito.when(recordingArchiveHelper.deleteArchivedRecording(recordingName))
+                .thenReturn(false);
+        Mockito.when(ctx.pathParam("recordingName")).thenReturn(recordingName);
 
-        Path path = Mockito.mock(Path.class);
-        Mockito.when(savedRecordingsPath.resolve(Mockito.anyString())).thenReturn(path);
-        Mockito.when(fs.exists(path)).thenReturn(true);
+        HttpStatusException ex =
+                Assertions.assertThrows(HttpStatusException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
+
+    @Test
+    void shouldDeleteIfRecordingFound() throws Exception {
+        Mockito.when(auth.validateHttpHeader(Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        String recordingName = "someRecording";
+        Mockito.when(catalog.get(recordingName))
+                .thenReturn(Optional.of(new ArchiveCatalog.Entry(recordingName, 0, 0, null, null)));
+        Mockito.when(recordingArchiveHelper.deleteArchivedRecording(recordingName))
+                .thenReturn(true);
 
         Mockito.when(ctx.response()).thenReturn(resp);
         Mockito.when(ctx.pathParam("recordingName")).thenReturn(recordingName);
 
         handler.handle(ctx);
 
-        Mockito.verify(fs).deleteIfExists(path);
-        Mockito.verify(reportService).delete(recordingName);
+        Mockito.verify(recordingArchiveHelper).deleteArchivedRecording(recordingName);
         Mockito.verify(resp).setStatusCode(200);
         Mockito.verify(resp).end();
 
@@ -159,19 +174,16 @@ class RecordingDeleteHandlerTest {
                 .thenReturn(CompletableFuture.completedFuture(true));
 
         String recordingName = "someRecording";
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of(recordingName));
-
-        Path path = Mockito.mock(Path.class);
-        Mockito.when(savedRecordingsPath.resolve(Mockito.anyString())).thenReturn(path);
-        Mockito.when(fs.exists(path)).thenReturn(true);
-        Mockito.when(fs.deleteIfExists(path)).thenThrow(IOException.class);
+        Mockito.when(catalog.get(recordingName))
+                .thenReturn(Optional.of(new ArchiveCatalog.Entry(recordingName, 0, 0, null, null)));
+        Mockito.when(recordingArchiveHelper.deleteArchivedRecording(recordingName))
+                .thenThrow(IOException.class);
 
         Mockito.when(ctx.pathParam("recordingName")).thenReturn(recordingName);
 
         HttpStatusException ex =
                 Assertions.assertThrows(HttpStatusException.class, () -> handler.handle(ctx));
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(500));
-
-        Mockito.verify(reportService).delete(recordingName);
+        Mockito.verifyNoInteractions(notificationFactory);
     }
 }
@@ -39,27 +39,50 @@ package io.cryostat.net.web.http.api.v1;
 
 import java.nio.file.Path;
 
+import io.cryostat.core.log.Logger;
 import io.cryostat.net.AuthManager;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.ArchiveStorage;
 
 import io.vertx.core.http.HttpMethod;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
 class RecordingGetHandlerTest {
 
+    // 2021-09-01T12:00:00.250Z
+    static final long LAST_MODIFIED = 1630497600250L;
+
     RecordingGetHandler handler;
     @Mock AuthManager authManager;
-    @Mock Path savedRecordingsPath;
+    @Mock ArchiveStorage storage;
+    @Mock Path webServerTempPath;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock ArchiveCatalog catalog;
+    @Mock Logger logger;
 
     @BeforeEach
     void setup() {
-        this.handler = new RecordingGetHandler(authManager, savedRecordingsPath);
+        this.handler =
+                new RecordingGetHandler(
+                        authManager,
+                        storage,
+                        webServerTempPath,
+                        recordingArchiveHelper,
+                        catalog,
+                        logger);
     }
 
     @Test
@@ -72,4 +95,118 @@ class RecordingGetHandlerTest {
         MatcherAssert.assertThat(
                 handler.path(), Matchers.equalTo("/api/v1/recordings/:recordingName"));
     }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "deflate, gzip", "GZIP;q=0.5", "br, *", "identity, gzip;q=1.0"})
+    void shouldAcceptGzip(String acceptEncoding) {
+        Assertions.assertTrue(RecordingGetHandler.acceptsGzip(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"identity", "deflate, br", "gzip;q=0", "gzip;q=0.0, identity"})
+    void shouldNotAcceptGzip(String acceptEncoding) {
+        Assertions.assertFalse(RecordingGetHandler.acceptsGzip(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "'bytes=0-99', 0, 99",
+        "'bytes=100-', 100, 999",
+        "'bytes=900-2000', 900, 999",
+        "'bytes=-100', 900, 999",
+        "'bytes=-5000', 0, 999",
+        "'BYTES= 5-5', 5, 5",
+    })
+    void shouldParseSatisfiableRanges(String header, long start, long end) {
+        RecordingGetHandler.ByteRange range = RecordingGetHandler.ByteRange.parse(header, 1000);
+        MatcherAssert.assertThat(range.start, Matchers.equalTo(start));
+        MatcherAssert.assertThat(range.end, Matchers.equalTo(end));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes=1000-", "bytes=1000-1999", "bytes=-0"})
+    void shouldRejectUnsatisfiableRanges(String header) {
+        MatcherAssert.assertThat(
+                RecordingGetHandler.ByteRange.parse(header, 1000),
+                Matchers.sameInstance(RecordingGetHandler.ByteRange.UNSATISFIABLE));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"items=0-9", "bytes=9-0", "bytes=a-b", "bytes=0-9,20-29", "bytes=5"})
+    void shouldIgnoreInvalidOrMultipleRanges(String header) {
+        MatcherAssert.assertThat(
+                RecordingGetHandler.ByteRange.parse(header, 1000), Matchers.nullValue());
+    }
+
+    @Test
+    void shouldTreatMatchingEntityTagAsNotModified() {
+        String etag = RecordingGetHandler.etag(LAST_MODIFIED, 1234, false);
+        Assertions.assertTrue(RecordingGetHandler.isNotModified(etag, null, etag, LAST_MODIFIED));
+        Assertions.assertTrue(
+                RecordingGetHandler.isNotModified(
+                        "\"other\", W/" + etag, null, etag, LAST_MODIFIED));
+        Assertions.assertTrue(RecordingGetHandler.isNotModified("*", null, etag, LAST_MODIFIED));
+        Assertions.assertFalse(
+                RecordingGetHandler.isNotModified("\"other\"", null, etag, LAST_MODIFIED));
+    }
+
+    @Test
+    void entityTagShouldDependOnEncoding() {
+        MatcherAssert.assertThat(
+                RecordingGetHandler.etag(LAST_MODIFIED, 1234, true),
+                Matchers.not(
+                        Matchers.equalTo(RecordingGetHandler.etag(LAST_MODIFIED, 1234, false))));
+    }
+
+    @Test
+    void ifNoneMatchShouldTakePrecedenceOverIfModifiedSince() {
+        String etag = RecordingGetHandler.etag(LAST_MODIFIED, 1234, false);
+        String date = RecordingGetHandler.formatHttpDate(LAST_MODIFIED);
+        Assertions.assertFalse(
+                RecordingGetHandler.isNotModified("\"other\"", date, etag, LAST_MODIFIED));
+    }
+
+    @Test
+    void shouldCompareModificationDatesToTheSecond() {
+        String etag = RecordingGetHandler.etag(LAST_MODIFIED, 1234, false);
+        Assertions.assertTrue(
+                RecordingGetHandler.isNotModified(
+                        null,
+                        RecordingGetHandler.formatHttpDate(LAST_MODIFIED),
+                        etag,
+                        LAST_MODIFIED));
+        Assertions.assertFalse(
+                RecordingGetHandler.isNotModified(
+                        null,
+                        RecordingGetHandler.formatHttpDate(LAST_MODIFIED - 1000),
+                        etag,
+                        LAST_MODIFIED));
+        Assertions.assertFalse(
+                RecordingGetHandler.isNotModified(null, "yesterday", etag, LAST_MODIFIED));
+    }
+
+    @Test
+    void shouldFormatHttpDates() {
+        MatcherAssert.assertThat(
+                RecordingGetHandler.formatHttpDate(LAST_MODIFIED),
+                Matchers.equalTo("Wed, 01 Sep 2021 12:00:00 GMT"));
+    }
+
+    @Test
+    void ifRangeShouldRequireExactValidator() {
+        String etag = RecordingGetHandler.etag(LAST_MODIFIED, 1234, false);
+        String date = RecordingGetHandler.formatHttpDate(LAST_MODIFIED);
+        Assertions.assertTrue(RecordingGetHandler.ifRangeMatches(null, etag, LAST_MODIFIED));
+        Assertions.assertTrue(RecordingGetHandler.ifRangeMatches(etag, etag, LAST_MODIFIED));
+        Assertions.assertTrue(RecordingGetHandler.ifRangeMatches(date, etag, LAST_MODIFIED));
+        Assertions.assertFalse(
+                RecordingGetHandler.ifRangeMatches("W/" + etag, etag, LAST_MODIFIED));
+        Assertions.assertFalse(
+                RecordingGetHandler.ifRangeMatches(
+                        RecordingGetHandler.formatHttpDate(LAST_MODIFIED + 5000),
+                        etag,
+                        LAST_MODIFIED));
+    }
 }
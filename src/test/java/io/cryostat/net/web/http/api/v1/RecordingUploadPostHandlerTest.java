@@ -43,6 +43,9 @@ import java.util.concurrent.CompletableFuture;
 import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.AuthManager;
+import io.cryostat.recordings.ArchiveChunkStore;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -79,6 +82,9 @@ class RecordingUploadPostHandlerTest {
     @Mock WebClient webClient;
     @Mock FileSystem fs;
     @Mock Path savedRecordingsPath;
+    @Mock Path webServerTempPath;
+    @Mock ArchiveChunkStore chunkStore;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
 
     @Mock RoutingContext ctx;
 
@@ -87,7 +93,15 @@ class RecordingUploadPostHandlerTest {
     @BeforeEach
     void setup() {
         this.handler =
-                new RecordingUploadPostHandler(auth, env, webClient, fs, savedRecordingsPath);
+                new RecordingUploadPostHandler(
+                        auth,
+                        env,
+                        webClient,
+                        fs,
+                        new LocalArchiveStorage(fs, savedRecordingsPath),
+                        webServerTempPath,
+                        chunkStore,
+                        recordingArchiveHelper);
     }
 
     @Test
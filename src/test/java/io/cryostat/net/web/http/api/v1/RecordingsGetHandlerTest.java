@@ -47,6 +47,8 @@ import io.cryostat.core.log.Logger;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.web.WebServer;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
 
 import com.google.gson.Gson;
 import io.vertx.core.http.HttpMethod;
@@ -73,6 +75,7 @@ class RecordingsGetHandlerTest {
     @Mock AuthManager auth;
     @Mock Path savedRecordingsPath;
     @Mock FileSystem fs;
+    @Mock ArchiveCatalog catalog;
     @Mock WebServer webServer;
     @Mock Logger logger;
     Gson gson = MainModule.provideGson(logger);
@@ -81,7 +84,13 @@ class RecordingsGetHandlerTest {
     void setup() {
         this.handler =
                 new RecordingsGetHandler(
-                        auth, savedRecordingsPath, fs, () -> webServer, gson, logger);
+                        auth,
+                        new LocalArchiveStorage(fs, savedRecordingsPath),
+                        fs,
+                        catalog,
+                        () -> webServer,
+                        gson,
+                        logger);
     }
 
     @Test
@@ -134,15 +143,20 @@ class RecordingsGetHandlerTest {
     }
 
     @Test
-    void shouldRespondWithInternalErrorIfExceptionThrown() throws IOException {
+    void shouldListFromCatalogWithoutScanningDirectory() throws Exception {
         RoutingContext ctx = Mockito.mock(RoutingContext.class);
+        HttpServerResponse resp = Mockito.mock(HttpServerResponse.class);
+        Mockito.when(ctx.response()).thenReturn(resp);
 
         Mockito.when(fs.exists(Mockito.any())).thenReturn(true);
         Mockito.when(fs.isReadable(Mockito.any())).thenReturn(true);
         Mockito.when(fs.isDirectory(Mockito.any())).thenReturn(true);
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenThrow(IOException.class);
+        Mockito.when(catalog.list()).thenReturn(List.of());
+
+        handler.handleAuthenticated(ctx);
 
-        Assertions.assertThrows(IOException.class, () -> handler.handleAuthenticated(ctx));
+        Mockito.verify(fs, Mockito.never()).listDirectoryChildren(Mockito.any());
+        Mockito.verify(resp).end("[]");
     }
 
     @Test
@@ -154,8 +168,11 @@ class RecordingsGetHandlerTest {
         Mockito.when(fs.exists(Mockito.any())).thenReturn(true);
         Mockito.when(fs.isReadable(Mockito.any())).thenReturn(true);
         Mockito.when(fs.isDirectory(Mockito.any())).thenReturn(true);
-        List<String> names = List.of("recordingA", "123recording");
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(names);
+        Mockito.when(catalog.list())
+                .thenReturn(
+                        List.of(
+                                new ArchiveCatalog.Entry("recordingA", 1, 2, null, null),
+                                new ArchiveCatalog.Entry("123recording", 3, 4, null, null)));
 
         Mockito.when(webServer.getArchivedReportURL(Mockito.anyString()))
                 .thenAnswer(
@@ -38,13 +38,16 @@
 package io.cryostat.net.web.http.api.v1;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 import io.cryostat.MainModule;
@@ -56,21 +59,31 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.RequestHandler;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveCodec;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
 
+import com.google.gson.Gson;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerFileUpload;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
-import io.vertx.ext.web.FileUpload;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.impl.HttpStatusException;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InOrder;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -78,19 +91,28 @@ import org.mockito.junit.jupiter.MockitoExtension;
 @ExtendWith(MockitoExtension.class)
 class RecordingsPostHandlerTest {
 
+    static final String BASENAME = "localhost_test_20191219T213834Z";
+    static final int HEADER_SIZE = 68;
+
     RecordingsPostHandler handler;
     @Mock AuthManager authManager;
     @Mock HttpServer httpServer;
     @Mock Vertx vertx;
+    @Mock Context context;
     @Mock FileSystem cryoFs;
-    @Mock Path recordingsPath;
+    @Mock ArchiveCatalog catalog;
     @Mock Logger logger;
     @Mock NotificationFactory notificationFactory;
     @Mock Notification notification;
     @Mock Notification.Builder notificationBuilder;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+    @TempDir Path archiveDir;
+    Gson gson;
 
     @BeforeEach
-    void setup() {
+    void setup() throws Exception {
         lenient().when(notificationFactory.createBuilder()).thenReturn(notificationBuilder);
         lenient()
                 .when(notificationBuilder.metaCategory(Mockito.any()))
@@ -103,18 +125,109 @@ class RecordingsPostHandlerTest {
                 .thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.message(Mockito.any())).thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.build()).thenReturn(notification);
+
+        lenient().when(ctx.request()).thenReturn(req);
+        lenient().when(ctx.response()).thenReturn(resp);
+        lenient()
+                .when(resp.putHeader(any(CharSequence.class), any(CharSequence.class)))
+                .thenReturn(resp);
+        lenient().when(vertx.getOrCreateContext()).thenReturn(context);
+
+        lenient().when(cryoFs.isDirectory(archiveDir)).thenReturn(true);
+        lenient()
+                .when(cryoFs.exists(any(Path.class)))
+                .thenAnswer(invocation -> Files.exists(invocation.getArgument(0)));
+        lenient()
+                .when(cryoFs.deleteIfExists(any(Path.class)))
+                .thenAnswer(invocation -> Files.deleteIfExists(invocation.getArgument(0)));
+
         when(httpServer.getVertx()).thenReturn(vertx);
+        this.gson = MainModule.provideGson(logger);
         this.handler =
                 new RecordingsPostHandler(
                         authManager,
                         httpServer,
                         cryoFs,
-                        recordingsPath,
-                        MainModule.provideGson(logger),
+                        new LocalArchiveStorage(cryoFs, archiveDir),
+                        catalog,
+                        new ArchiveCodec(ArchiveCodec.Compression.NONE),
+                        gson,
                         logger,
                         notificationFactory);
     }
 
+    // a single chunk holding just a constant pool event and a metadata event
+    static byte[] recording() {
+        byte[] checkpoint = {5, 1, 0, 0, 0};
+        byte[] metadata = {6, 0, 0, 0, 0, 0};
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + checkpoint.length + metadata.length);
+        buf.put(new byte[] {'F', 'L', 'R', 0});
+        buf.putShort((short) 2);
+        buf.putShort((short) 0);
+        buf.putLong(buf.capacity());
+        buf.putLong(HEADER_SIZE);
+        buf.putLong(HEADER_SIZE + checkpoint.length);
+        buf.putLong(0L);
+        buf.putLong(0L);
+        buf.putLong(0L);
+        buf.putLong(1_000_000_000L);
+        buf.putInt(1);
+        buf.put(checkpoint);
+        buf.put(metadata);
+        return buf.array();
+    }
+
+    void handleRequest() {
+        when(authManager.validateHttpHeader(any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        handler.handle(ctx);
+        Mockito.verify(req).setExpectMultipart(true);
+    }
+
+    HttpServerFileUpload startUpload(String name, String filename) {
+        HttpServerFileUpload upload = mock(HttpServerFileUpload.class);
+        lenient().when(upload.name()).thenReturn(name);
+        lenient().when(upload.filename()).thenReturn(filename);
+
+        ArgumentCaptor<Handler<HttpServerFileUpload>> uploadHandler =
+                ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(req).uploadHandler(uploadHandler.capture());
+        uploadHandler.getValue().handle(upload);
+        return upload;
+    }
+
+    void send(HttpServerFileUpload upload, byte[]... data) {
+        ArgumentCaptor<Handler<Buffer>> dataHandler = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(upload).handler(dataHandler.capture());
+        for (byte[] d : data) {
+            dataHandler.getValue().handle(Buffer.buffer(d));
+        }
+    }
+
+    void end(HttpServerFileUpload upload) {
+        ArgumentCaptor<Handler<Void>> endHandler = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(upload).endHandler(endHandler.capture());
+        endHandler.getValue().handle(null);
+    }
+
+    void runArchiveWrite() {
+        ArgumentCaptor<Handler<Promise<Object>>> blocking = ArgumentCaptor.forClass(Handler.class);
+        ArgumentCaptor<Handler<AsyncResult<Object>>> result =
+                ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(vertx)
+                .executeBlocking(blocking.capture(), Mockito.eq(false), result.capture());
+        Promise<Object> promise = Promise.promise();
+        blocking.getValue().handle(promise);
+        result.getValue().handle(promise.future());
+    }
+
+    int failureStatus() {
+        ArgumentCaptor<Throwable> captor = ArgumentCaptor.forClass(Throwable.class);
+        Mockito.verify(ctx).fail(captor.capture());
+        MatcherAssert.assertThat(captor.getValue(), Matchers.instanceOf(HttpStatusException.class));
+        return ((HttpStatusException) captor.getValue()).getStatusCode();
+    }
+
     @Test
     void shouldBeLowerPriority() {
         MatcherAssert.assertThat(
@@ -122,141 +235,131 @@ class RecordingsPostHandlerTest {
     }
 
     @Test
-    void shouldHandleRecordingUploadRequest() throws Exception {
-        String basename = "localhost_test_20191219T213834Z";
-        String filename = basename + ".jfr";
-        String savePath = "/some/path/";
-
-        RoutingContext ctx = mock(RoutingContext.class);
+    void shouldBeAsyncSoUploadIsNotSpooled() {
+        MatcherAssert.assertThat(handler.isAsync(), Matchers.is(true));
+    }
 
-        when(authManager.validateHttpHeader(any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-
-        Set<FileUpload> uploads = new HashSet<>();
-        FileUpload upload = mock(FileUpload.class);
-        uploads.add(upload);
-        when(ctx.fileUploads()).thenReturn(uploads);
-        when(upload.name()).thenReturn("recording");
-        when(upload.fileName()).thenReturn(filename);
-        when(upload.uploadedFileName()).thenReturn("foo");
-
-        Path filePath = mock(Path.class);
-        when(filePath.toString()).thenReturn(savePath + filename);
-        when(recordingsPath.resolve(filename)).thenReturn(filePath);
-
-        io.vertx.core.file.FileSystem vertxFs = mock(io.vertx.core.file.FileSystem.class);
-        when(vertx.fileSystem()).thenReturn(vertxFs);
-
-        doAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<Boolean>> handler = invocation.getArgument(1);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public Boolean result() {
-                                            return false;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        })
-                .when(vertx)
-                .executeBlocking(any(Handler.class), any(Handler.class));
-
-        when(vertxFs.exists(Mockito.eq(savePath + filename), any(Handler.class)))
-                .thenAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<Boolean>> handler = invocation.getArgument(1);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public Boolean result() {
-                                            return false;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        });
-
-        when(vertxFs.move(Mockito.eq("foo"), Mockito.eq(savePath + filename), any(Handler.class)))
-                .thenAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<Boolean>> handler = invocation.getArgument(2);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public Boolean result() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        });
-
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
+    @Test
+    void shouldRespond503IfArchiveIsUnavailable() {
+        when(cryoFs.isDirectory(archiveDir)).thenReturn(false);
 
-        handler.handle(ctx);
+        HttpStatusException ex =
+                Assertions.assertThrows(
+                        HttpStatusException.class, () -> handler.handleAuthenticated(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(503));
+    }
 
-        InOrder inOrder = Mockito.inOrder(rep);
-        inOrder.verify(rep).putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
-        inOrder.verify(rep).end("{\"name\":\"" + filename + "\"}");
+    @Test
+    void shouldStreamUploadIntoArchive() throws Exception {
+        byte[] recording = recording();
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("recording", BASENAME + ".jfr");
+        send(
+                upload,
+                Arrays.copyOfRange(recording, 0, 10),
+                Arrays.copyOfRange(recording, 10, recording.length));
+        end(upload);
+        runArchiveWrite();
+
+        String name = BASENAME + ".jfr";
+        MatcherAssert.assertThat(
+                Files.readAllBytes(archiveDir.resolve(name)), Matchers.equalTo(recording));
+        // the hidden upload file was renamed into place
+        try (var files = Files.list(archiveDir)) {
+            MatcherAssert.assertThat(files.count(), Matchers.equalTo(1L));
+        }
+        Mockito.verify(catalog).refresh(name);
+        Mockito.verify(resp).end(gson.toJson(Map.of("name", name)));
+        Mockito.verify(ctx, Mockito.never()).fail(Mockito.any(Throwable.class));
 
         Mockito.verify(notificationFactory).createBuilder();
         Mockito.verify(notificationBuilder).metaCategory("RecordingSaved");
         Mockito.verify(notificationBuilder).metaType(HttpMimeType.JSON);
-        Mockito.verify(notificationBuilder).message(Map.of("recording", filename));
-        Mockito.verify(notificationBuilder).build();
+        Mockito.verify(notificationBuilder).message(Map.of("recording", name));
         Mockito.verify(notification).send();
     }
+
+    @Test
+    void shouldCountUpFromTakenName() throws Exception {
+        Files.write(archiveDir.resolve(BASENAME + ".jfr"), new byte[0]);
+        Files.write(archiveDir.resolve(BASENAME + ".2.jfr"), new byte[0]);
+
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("recording", BASENAME + ".1.jfr");
+        send(upload, recording());
+        end(upload);
+        runArchiveWrite();
+
+        String name = BASENAME + ".3.jfr";
+        MatcherAssert.assertThat(Files.exists(archiveDir.resolve(name)), Matchers.is(true));
+        Mockito.verify(resp).end(gson.toJson(Map.of("name", name)));
+    }
+
+    @Test
+    void shouldRejectUploadWhichIsNotJfr() throws Exception {
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("recording", BASENAME + ".jfr");
+        send(upload, "not a recording".getBytes(StandardCharsets.UTF_8));
+        end(upload);
+        runArchiveWrite();
+
+        MatcherAssert.assertThat(failureStatus(), Matchers.equalTo(400));
+        try (var files = Files.list(archiveDir)) {
+            MatcherAssert.assertThat(files.count(), Matchers.equalTo(0L));
+        }
+        Mockito.verify(catalog, Mockito.never()).refresh(Mockito.any());
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
+
+    @Test
+    void shouldRejectInvalidUploadBeforeItEnds() throws Exception {
+        byte[] header = Arrays.copyOf(recording(), HEADER_SIZE);
+        header[0] = 'X';
+
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("recording", BASENAME + ".jfr");
+        send(upload, header);
+        runArchiveWrite();
+
+        MatcherAssert.assertThat(failureStatus(), Matchers.equalTo(400));
+        try (var files = Files.list(archiveDir)) {
+            MatcherAssert.assertThat(files.count(), Matchers.equalTo(0L));
+        }
+        // the rest of the upload is not read
+        Mockito.verify(resp).putHeader(HttpHeaders.CONNECTION, "close");
+        Mockito.verify(ctx).addBodyEndHandler(Mockito.any());
+    }
+
+    @Test
+    void shouldRejectIncorrectFileNamePattern() {
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("recording", "foo.jfr");
+
+        MatcherAssert.assertThat(failureStatus(), Matchers.equalTo(400));
+        Mockito.verify(upload, Mockito.never()).handler(Mockito.any());
+        Mockito.verify(vertx, Mockito.never())
+                .executeBlocking(Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+    }
+
+    @Test
+    void shouldIgnoreUnrecognizedFormFields() {
+        handleRequest();
+        HttpServerFileUpload upload = startUpload("other", BASENAME + ".jfr");
+
+        Mockito.verify(upload, Mockito.never()).handler(Mockito.any());
+        Mockito.verify(ctx, Mockito.never()).fail(Mockito.any(Throwable.class));
+    }
+
+    @Test
+    void shouldRejectRequestWithoutRecording() {
+        handleRequest();
+        when(req.isEnded()).thenReturn(true);
+
+        ArgumentCaptor<Handler<Void>> endHandler = ArgumentCaptor.forClass(Handler.class);
+        Mockito.verify(req).endHandler(endHandler.capture());
+        endHandler.getValue().handle(null);
+
+        MatcherAssert.assertThat(failureStatus(), Matchers.equalTo(400));
+        Mockito.verify(ctx, Mockito.never()).addBodyEndHandler(Mockito.any());
+    }
 }
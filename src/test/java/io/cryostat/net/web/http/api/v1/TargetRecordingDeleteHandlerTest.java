@@ -97,6 +97,9 @@ class TargetRecordingDeleteHandlerTest {
         lenient()
                 .when(notificationBuilder.metaType(Mockito.any(HttpMimeType.class)))
                 .thenReturn(notificationBuilder);
+        lenient()
+                .when(notificationBuilder.targetId(Mockito.any()))
+                .thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.message(Mockito.any())).thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.build()).thenReturn(notification);
         this.handler =
@@ -132,6 +135,7 @@ class TargetRecordingDeleteHandlerTest {
         Mockito.verify(notificationFactory).createBuilder();
         Mockito.verify(notificationBuilder).metaCategory("RecordingDeleted");
         Mockito.verify(notificationBuilder).metaType(HttpMimeType.JSON);
+        Mockito.verify(notificationBuilder).targetId("fooTarget");
         Mockito.verify(notificationBuilder)
                 .message(Map.of("recording", "someRecording", "target", "fooTarget"));
         Mockito.verify(notificationBuilder).build();
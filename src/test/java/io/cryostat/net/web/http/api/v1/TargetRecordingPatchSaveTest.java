@@ -39,10 +39,12 @@ package io.cryostat.net.web.http.api.v1;
 
 import static org.mockito.Mockito.lenient;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.openjdk.jmc.rjmx.services.jfr.IFlightRecorderService;
 
@@ -59,9 +61,13 @@ import io.cryostat.recordings.RecordingArchiveHelper;
 
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.impl.HttpStatusException;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -103,6 +109,9 @@ class TargetRecordingPatchSaveTest {
         lenient()
                 .when(notificationBuilder.metaType(Mockito.any(HttpMimeType.class)))
                 .thenReturn(notificationBuilder);
+        lenient()
+                .when(notificationBuilder.targetId(Mockito.any()))
+                .thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.message(Mockito.any())).thenReturn(notificationBuilder);
         lenient().when(notificationBuilder.build()).thenReturn(notification);
     }
@@ -114,8 +123,10 @@ class TargetRecordingPatchSaveTest {
         Instant now = Instant.now();
         String timestamp = now.truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
 
-        Mockito.when(recordingArchiveHelper.saveRecording(Mockito.any(), Mockito.any()))
-                .thenReturn("some-Alias-2_someRecording_" + timestamp + ".jfr");
+        Mockito.when(recordingArchiveHelper.saveRecordingAsync(Mockito.any(), Mockito.any()))
+                .thenReturn(
+                        CompletableFuture.completedFuture(
+                                "some-Alias-2_someRecording_" + timestamp + ".jfr"));
 
         patchSave.handle(ctx, new ConnectionDescriptor(targetId));
 
@@ -126,6 +137,7 @@ class TargetRecordingPatchSaveTest {
         Mockito.verify(notificationFactory).createBuilder();
         Mockito.verify(notificationBuilder).metaCategory("RecordingArchived");
         Mockito.verify(notificationBuilder).metaType(HttpMimeType.JSON);
+        Mockito.verify(notificationBuilder).targetId(targetId);
         Mockito.verify(notificationBuilder)
                 .message(
                         Map.of(
@@ -136,4 +148,39 @@ class TargetRecordingPatchSaveTest {
         Mockito.verify(notificationBuilder).build();
         Mockito.verify(notification).send();
     }
+
+    @Test
+    void shouldRespondAfterTransferCompletes() throws Exception {
+        CompletableFuture<String> save = new CompletableFuture<>();
+        Mockito.when(recordingArchiveHelper.saveRecordingAsync(Mockito.any(), Mockito.any()))
+                .thenReturn(save);
+
+        patchSave.handle(ctx, new ConnectionDescriptor(targetId));
+
+        Mockito.verifyNoInteractions(resp);
+        Mockito.verifyNoInteractions(notificationFactory);
+
+        Mockito.when(ctx.response()).thenReturn(resp);
+        save.complete("someRecording.jfr");
+
+        Mockito.verify(resp).setStatusCode(200);
+        Mockito.verify(resp).end("someRecording.jfr");
+        Mockito.verify(notification).send();
+    }
+
+    @Test
+    void shouldFailContextIfTransferFails() throws Exception {
+        IOException cause = new IOException("disk full");
+        Mockito.when(recordingArchiveHelper.saveRecordingAsync(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.failedFuture(cause));
+
+        patchSave.handle(ctx, new ConnectionDescriptor(targetId));
+
+        ArgumentCaptor<Throwable> captor = ArgumentCaptor.forClass(Throwable.class);
+        Mockito.verify(ctx).fail(captor.capture());
+        MatcherAssert.assertThat(captor.getValue(), Matchers.instanceOf(HttpStatusException.class));
+        MatcherAssert.assertThat(
+                ((HttpStatusException) captor.getValue()).getStatusCode(), Matchers.equalTo(500));
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
 }
@@ -51,6 +51,7 @@ import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.ConnectionDescriptor;
+import io.cryostat.net.web.http.AuthenticationFilter;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.RequestHandler;
 import io.cryostat.net.web.http.api.ApiVersion;
@@ -112,6 +113,16 @@ class AbstractV2RequestHandlerTest {
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(401));
     }
 
+    @Test
+    void shouldUseAuthorizationResultFromFilter() {
+        when(ctx.get(AuthenticationFilter.AUTHORIZATION_RESULT_KEY))
+                .thenReturn(CompletableFuture.completedFuture(false));
+
+        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(401));
+        Mockito.verifyNoInteractions(auth);
+    }
+
     @Test
     void shouldThrow500IfAuthThrows() {
         when(auth.validateHttpHeader(Mockito.any()))
@@ -326,7 +337,7 @@ class AbstractV2RequestHandlerTest {
         }
 
         @Override
-        boolean requiresAuthentication() {
+        public boolean requiresAuthentication() {
             return true;
         }
 
@@ -0,0 +1,277 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import io.cryostat.MainModule;
+import io.cryostat.core.log.Logger;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.web.WebServer;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.ArchiveCatalog;
+import io.cryostat.recordings.ArchiveCatalog.Entry;
+import io.cryostat.recordings.ArchiveCatalog.SortKey;
+
+import com.google.gson.Gson;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchivedRecordingsGetHandlerTest {
+
+    ArchivedRecordingsGetHandler handler;
+    @Mock AuthManager auth;
+    @Mock ArchiveCatalog catalog;
+    @Mock WebServer webServer;
+    @Mock Logger logger;
+    Gson gson = MainModule.provideGson(logger);
+
+    @BeforeEach
+    void setup() {
+        this.handler = new ArchivedRecordingsGetHandler(auth, catalog, () -> webServer, gson);
+    }
+
+    @Nested
+    class BasicHandlerDefinition {
+        @Test
+        void shouldRequireAuthentication() {
+            Assertions.assertTrue(handler.requiresAuthentication());
+        }
+
+        @Test
+        void shouldBeV2Handler() {
+            MatcherAssert.assertThat(handler.apiVersion(), Matchers.equalTo(ApiVersion.V2));
+        }
+
+        @Test
+        void shouldBeGETHandler() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.GET));
+        }
+
+        @Test
+        void shouldHaveExpectedApiPath() {
+            MatcherAssert.assertThat(handler.path(), Matchers.equalTo("/api/v2/recordings"));
+        }
+
+        @Test
+        void shouldHaveJsonMimeType() {
+            MatcherAssert.assertThat(handler.mimeType(), Matchers.equalTo(HttpMimeType.JSON));
+        }
+    }
+
+    @Nested
+    class Requests {
+        @Mock RequestParameters params;
+        MultiMap queryParams;
+
+        Entry first = new Entry("first.jfr", 10, 1000, "localhost", null);
+        Entry second = new Entry("second.jfr", 20, 2000, "localhost", "myRule");
+        Entry third = new Entry("third.jfr", 30, 3000, "other", null);
+
+        @BeforeEach
+        void setup() throws Exception {
+            queryParams = MultiMap.caseInsensitiveMultiMap();
+            Mockito.lenient().when(params.getQueryParams()).thenReturn(queryParams);
+            Mockito.lenient()
+                    .when(webServer.getArchivedDownloadURL(Mockito.anyString()))
+                    .thenAnswer(inv -> "http://example.com/download/" + inv.getArgument(0));
+            Mockito.lenient()
+                    .when(webServer.getArchivedReportURL(Mockito.anyString()))
+                    .thenAnswer(inv -> "http://example.com/report/" + inv.getArgument(0));
+        }
+
+        @Test
+        void shouldReturnFirstPageWithDefaults() throws Exception {
+            Mockito.when(
+                            catalog.page(
+                                    Mockito.eq(SortKey.NAME),
+                                    Mockito.eq(false),
+                                    Mockito.isNull(),
+                                    Mockito.any(),
+                                    Mockito.eq(ArchivedRecordingsGetHandler.DEFAULT_LIMIT + 1)))
+                    .thenReturn(List.of(first, second));
+
+            IntermediateResponse<ArchivedRecordingsGetHandler.ArchivedRecordingsPage> response =
+                    handler.handle(params);
+
+            MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
+            MatcherAssert.assertThat(
+                    gson.toJson(response.getBody()),
+                    Matchers.equalTo(
+                            "{\"recordings\":["
+                                    + "{\"name\":\"first.jfr\","
+                                    + "\"downloadUrl\":\"http://example.com/download/first.jfr\","
+                                    + "\"reportUrl\":\"http://example.com/report/first.jfr\","
+                                    + "\"size\":10,\"lastModified\":1000,"
+                                    + "\"sourceTarget\":\"localhost\",\"rule\":null},"
+                                    + "{\"name\":\"second.jfr\","
+                                    + "\"downloadUrl\":\"http://example.com/download/second.jfr\","
+                                    + "\"reportUrl\":\"http://example.com/report/second.jfr\","
+                                    + "\"size\":20,\"lastModified\":2000,"
+                                    + "\"sourceTarget\":\"localhost\",\"rule\":\"myRule\"}],"
+                                    + "\"nextCursor\":null}"));
+        }
+
+        @Test
+        void shouldReturnCursorWhenMoreResultsRemain() throws Exception {
+            queryParams.set("limit", "2");
+            queryParams.set("sort", "size");
+            queryParams.set("order", "desc");
+            Mockito.when(
+                            catalog.page(
+                                    Mockito.eq(SortKey.SIZE),
+                                    Mockito.eq(true),
+                                    Mockito.isNull(),
+                                    Mockito.any(),
+                                    Mockito.eq(3)))
+                    .thenReturn(List.of(third, second, first));
+
+            ArchivedRecordingsGetHandler.ArchivedRecordingsPage page =
+                    handler.handle(params).getBody();
+
+            MatcherAssert.assertThat(page.recordings, Matchers.hasSize(2));
+            MatcherAssert.assertThat(
+                    page.nextCursor,
+                    Matchers.equalTo(ArchivedRecordingsGetHandler.encodeCursor(second)));
+        }
+
+        @Test
+        void shouldResumeFromCursor() throws Exception {
+            queryParams.set("sort", "time");
+            queryParams.set("cursor", ArchivedRecordingsGetHandler.encodeCursor(second));
+            Mockito.when(
+                            catalog.page(
+                                    Mockito.any(),
+                                    Mockito.anyBoolean(),
+                                    Mockito.any(),
+                                    Mockito.any(),
+                                    Mockito.anyInt()))
+                    .thenReturn(List.of(third));
+
+            handler.handle(params);
+
+            ArgumentCaptor<Entry> cursorCaptor = ArgumentCaptor.forClass(Entry.class);
+            Mockito.verify(catalog)
+                    .page(
+                            Mockito.eq(SortKey.TIME),
+                            Mockito.eq(false),
+                            cursorCaptor.capture(),
+                            Mockito.any(),
+                            Mockito.anyInt());
+            Entry cursor = cursorCaptor.getValue();
+            MatcherAssert.assertThat(cursor.getName(), Matchers.equalTo("second.jfr"));
+            MatcherAssert.assertThat(cursor.getSize(), Matchers.equalTo(20L));
+            MatcherAssert.assertThat(cursor.getLastModified(), Matchers.equalTo(2000L));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void shouldFilterByQueryParameters() throws Exception {
+            queryParams.set("target", "localhost");
+            queryParams.set("rule", "myRule");
+            queryParams.set("prefix", "sec");
+            queryParams.set("since", "2000");
+            queryParams.set("until", "3000");
+            Mockito.when(
+                            catalog.page(
+                                    Mockito.any(),
+                                    Mockito.anyBoolean(),
+                                    Mockito.any(),
+                                    Mockito.any(),
+                                    Mockito.anyInt()))
+                    .thenReturn(List.of());
+
+            handler.handle(params);
+
+            ArgumentCaptor<Predicate<Entry>> filterCaptor =
+                    ArgumentCaptor.forClass(Predicate.class);
+            Mockito.verify(catalog)
+                    .page(
+                            Mockito.any(),
+                            Mockito.anyBoolean(),
+                            Mockito.any(),
+                            filterCaptor.capture(),
+                            Mockito.anyInt());
+            Predicate<Entry> filter = filterCaptor.getValue();
+            Assertions.assertFalse(filter.test(first));
+            Assertions.assertTrue(filter.test(second));
+            Assertions.assertFalse(filter.test(third));
+            Assertions.assertFalse(
+                    filter.test(new Entry("second.jfr", 20, 3000, "localhost", "myRule")));
+        }
+
+        @ParameterizedTest
+        @ValueSource(
+                strings = {
+                    "limit=0",
+                    "limit=1001",
+                    "limit=ten",
+                    "sort=color",
+                    "order=sideways",
+                    "since=yesterday",
+                    "until=tomorrow",
+                    "cursor=%%%",
+                    "cursor=Zm9v",
+                })
+        void shouldRejectInvalidParameters(String param) {
+            String[] kv = param.split("=", 2);
+            queryParams.set(kv[0], kv[1]);
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(params));
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(catalog);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import static org.mockito.Mockito.lenient;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import io.cryostat.MainModule;
+import io.cryostat.core.log.Logger;
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.ConnectionDescriptor;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.RecordingArchiveHelper;
+
+import com.google.gson.Gson;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class TargetRecordingsArchivePostHandlerTest {
+
+    TargetRecordingsArchivePostHandler handler;
+    @Mock AuthManager auth;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock NotificationFactory notificationFactory;
+    @Mock Notification notification;
+    @Mock Notification.Builder notificationBuilder;
+    @Mock RequestParameters params;
+    @Mock Logger logger;
+    Gson gson = MainModule.provideGson(logger);
+
+    @BeforeEach
+    void setup() {
+        lenient().when(notificationFactory.createBuilder()).thenReturn(notificationBuilder);
+        lenient()
+                .when(notificationBuilder.metaCategory(Mockito.any()))
+                .thenReturn(notificationBuilder);
+        lenient()
+                .when(notificationBuilder.metaType(Mockito.any(HttpMimeType.class)))
+                .thenReturn(notificationBuilder);
+        lenient()
+                .when(notificationBuilder.targetId(Mockito.any()))
+                .thenReturn(notificationBuilder);
+        lenient().when(notificationBuilder.message(Mockito.any())).thenReturn(notificationBuilder);
+        lenient().when(notificationBuilder.build()).thenReturn(notification);
+        lenient().when(params.getPathParams()).thenReturn(Map.of("targetId", "fooHost:9091"));
+        lenient().when(params.getHeaders()).thenReturn(MultiMap.caseInsensitiveMultiMap());
+        this.handler =
+                new TargetRecordingsArchivePostHandler(
+                        auth, recordingArchiveHelper, notificationFactory, gson);
+    }
+
+    @Test
+    void shouldHandlePOST() {
+        MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.POST));
+    }
+
+    @Test
+    void shouldHandleCorrectPath() {
+        MatcherAssert.assertThat(
+                handler.path(), Matchers.equalTo("/api/v2/targets/:targetId/archive"));
+    }
+
+    @Test
+    void shouldBeV2Handler() {
+        MatcherAssert.assertThat(handler.apiVersion(), Matchers.equalTo(ApiVersion.V2));
+    }
+
+    @Test
+    void shouldHaveJsonMimeType() {
+        MatcherAssert.assertThat(handler.mimeType(), Matchers.equalTo(HttpMimeType.JSON));
+    }
+
+    @Test
+    void shouldConnectOffTheEventLoop() {
+        Assertions.assertFalse(handler.isAsync());
+    }
+
+    @Test
+    void shouldRespondOnlyOnceAllTransfersComplete() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        Map<String, CompletableFuture<String>> saves = new LinkedHashMap<>();
+        saves.put("foo", CompletableFuture.completedFuture("fooHost_foo_20210101T000000Z.jfr"));
+        saves.put("bar", pending);
+        Mockito.when(recordingArchiveHelper.saveAllRecordings(Mockito.any())).thenReturn(saves);
+
+        CompletableFuture<IntermediateResponse<Map<String, String>>> response =
+                handler.handleAsync(params);
+
+        MatcherAssert.assertThat(response.isDone(), Matchers.equalTo(false));
+        pending.complete("fooHost_bar_20210101T000000Z.jfr");
+        MatcherAssert.assertThat(response.get().getBody().size(), Matchers.equalTo(2));
+    }
+
+    @Test
+    void shouldRequireAuthentication() {
+        Assertions.assertTrue(handler.requiresAuthentication());
+    }
+
+    @Test
+    void shouldRespondWithArchiveNamesAndNotifyEach() throws Exception {
+        Map<String, CompletableFuture<String>> saves = new LinkedHashMap<>();
+        saves.put("foo", CompletableFuture.completedFuture("fooHost_foo_20210101T000000Z.jfr"));
+        saves.put("bar", CompletableFuture.completedFuture("fooHost_bar_20210101T000000Z.jfr"));
+        Mockito.when(recordingArchiveHelper.saveAllRecordings(Mockito.any())).thenReturn(saves);
+
+        IntermediateResponse<Map<String, String>> response = handler.handleAsync(params).get();
+
+        MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
+        MatcherAssert.assertThat(
+                response.getBody(),
+                Matchers.equalTo(
+                        Map.of(
+                                "foo", "fooHost_foo_20210101T000000Z.jfr",
+                                "bar", "fooHost_bar_20210101T000000Z.jfr")));
+        ArgumentCaptor<ConnectionDescriptor> cdCaptor =
+                ArgumentCaptor.forClass(ConnectionDescriptor.class);
+        Mockito.verify(recordingArchiveHelper).saveAllRecordings(cdCaptor.capture());
+        MatcherAssert.assertThat(
+                cdCaptor.getValue().getTargetId(), Matchers.equalTo("fooHost:9091"));
+        Mockito.verify(notificationBuilder, Mockito.times(2)).metaCategory("RecordingArchived");
+        Mockito.verify(notificationBuilder)
+                .message(
+                        Map.of(
+                                "recording",
+                                "fooHost_foo_20210101T000000Z.jfr",
+                                "target",
+                                "fooHost:9091"));
+        Mockito.verify(notification, Mockito.times(2)).send();
+    }
+
+    @Test
+    void shouldFailIfAnyTransferFailsAfterAllComplete() throws Exception {
+        Map<String, CompletableFuture<String>> saves = new LinkedHashMap<>();
+        saves.put("foo", CompletableFuture.failedFuture(new IOException("disk full")));
+        saves.put("bar", CompletableFuture.completedFuture("fooHost_bar_20210101T000000Z.jfr"));
+        Mockito.when(recordingArchiveHelper.saveAllRecordings(Mockito.any())).thenReturn(saves);
+
+        ExecutionException failure =
+                Assertions.assertThrows(
+                        ExecutionException.class, () -> handler.handleAsync(params).get());
+
+        ApiException ex = (ApiException) failure.getCause();
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(500));
+        MatcherAssert.assertThat(ex.getFailureReason(), Matchers.containsString("foo"));
+        Mockito.verify(notification, Mockito.times(1)).send();
+    }
+}
@@ -44,9 +44,11 @@ import java.util.List;
 
 import javax.management.remote.JMXServiceURL;
 
+import io.cryostat.core.net.discovery.JvmDiscoveryClient.EventKind;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.TargetDiscoveryEvent;
 import io.cryostat.util.URIUtil;
 
 import org.hamcrest.MatcherAssert;
@@ -107,4 +109,23 @@ class MergingPlatformClientTest {
         Mockito.verify(clientA).listDiscoverableServices();
         Mockito.verify(clientB).listDiscoverableServices();
     }
+
+    @Test
+    void coalesceShouldCancelOppositeEvents() throws Exception {
+        ServiceRef serviceRef =
+                new ServiceRef(
+                        URIUtil.convert(
+                                new JMXServiceURL(
+                                        "service:jmx:rmi:///jndi/rmi://cryostat:9098/jmxrmi")),
+                        "ServiceA");
+        TargetDiscoveryEvent lost = new TargetDiscoveryEvent(EventKind.LOST, serviceRef);
+        TargetDiscoveryEvent found = new TargetDiscoveryEvent(EventKind.FOUND, serviceRef);
+
+        MatcherAssert.assertThat(
+                MergingPlatformClient.coalesce(lost, found), Matchers.nullValue());
+        MatcherAssert.assertThat(
+                MergingPlatformClient.coalesce(found, lost), Matchers.nullValue());
+        MatcherAssert.assertThat(
+                MergingPlatformClient.coalesce(found, found), Matchers.sameInstance(found));
+    }
 }
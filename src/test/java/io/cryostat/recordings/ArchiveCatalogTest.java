@@ -0,0 +1,298 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.recordings.ArchiveCatalog.Entry;
+import io.cryostat.recordings.ArchiveCatalog.SortKey;
+import io.cryostat.recordings.storage.ArchiveObject;
+import io.cryostat.recordings.storage.ArchiveStorage;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveCatalogTest {
+
+    @TempDir Path archivePath;
+    @Mock Logger logger;
+    ArchiveCatalog catalog;
+
+    @BeforeEach
+    void setup() {
+        this.catalog =
+                new ArchiveCatalog(new LocalArchiveStorage(new FileSystem(), archivePath), logger);
+    }
+
+    @Test
+    void shouldPopulateFromDirectoryOnStart() throws Exception {
+        Files.write(archivePath.resolve("b.jfr"), new byte[10]);
+        Files.write(archivePath.resolve("a.jfr"), new byte[20]);
+        Files.createDirectory(archivePath.resolve("subdir"));
+
+        catalog.start();
+
+        MatcherAssert.assertThat(
+                catalog.list().stream()
+                        .map(ArchiveCatalog.Entry::getName)
+                        .collect(Collectors.toList()),
+                Matchers.contains("a.jfr", "b.jfr"));
+        MatcherAssert.assertThat(catalog.get("a.jfr").get().getSize(), Matchers.equalTo(20L));
+        long mtime = Files.getLastModifiedTime(archivePath.resolve("a.jfr")).toMillis();
+        MatcherAssert.assertThat(
+                catalog.get("a.jfr").get().getLastModified(), Matchers.equalTo(mtime));
+        MatcherAssert.assertThat(catalog.contains("subdir"), Matchers.is(false));
+    }
+
+    @Test
+    void shouldIgnoreHiddenFiles() throws Exception {
+        Files.write(archivePath.resolve("a.jfr"), new byte[10]);
+        Files.write(archivePath.resolve(".upload"), new byte[10]);
+
+        catalog.start();
+        catalog.refresh(".upload");
+
+        MatcherAssert.assertThat(
+                catalog.list().stream()
+                        .map(ArchiveCatalog.Entry::getName)
+                        .collect(Collectors.toList()),
+                Matchers.contains("a.jfr"));
+    }
+
+    @Test
+    void refreshShouldAddAndUpdateEntries() throws Exception {
+        catalog.start();
+        Path file = archivePath.resolve("foo.jfr");
+
+        Files.write(file, new byte[5]);
+        catalog.refresh("foo.jfr");
+        MatcherAssert.assertThat(catalog.get("foo.jfr").get().getSize(), Matchers.equalTo(5L));
+
+        Files.write(file, new byte[50]);
+        catalog.refresh("foo.jfr");
+        MatcherAssert.assertThat(catalog.get("foo.jfr").get().getSize(), Matchers.equalTo(50L));
+    }
+
+    @Test
+    void refreshShouldRemoveEntriesForMissingFiles() throws Exception {
+        Path file = archivePath.resolve("foo.jfr");
+        Files.write(file, new byte[5]);
+        catalog.start();
+
+        Files.delete(file);
+        catalog.refresh("foo.jfr");
+
+        MatcherAssert.assertThat(catalog.contains("foo.jfr"), Matchers.is(false));
+    }
+
+    @Test
+    void removeShouldRemoveEntry() throws Exception {
+        Files.write(archivePath.resolve("foo.jfr"), new byte[5]);
+        catalog.start();
+
+        catalog.remove("foo.jfr");
+
+        MatcherAssert.assertThat(catalog.get("foo.jfr"), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void shouldPickUpExternalChanges() throws Exception {
+        catalog.start();
+
+        Files.write(archivePath.resolve("external.jfr"), new byte[5]);
+
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!catalog.contains("external.jfr") && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        MatcherAssert.assertThat(catalog.contains("external.jfr"), Matchers.is(true));
+    }
+
+    @Test
+    void shouldParseSourceTargetAndRuleFromArchiveName() throws Exception {
+        String ruleArchive = "some-Alias-2_auto_myRule_20210102T030405Z.jfr";
+        String manualArchive = "localhost_my_recording_20210102T030405Z.2.jfr";
+        String uploaded = "upload.jfr";
+        Files.write(archivePath.resolve(ruleArchive), new byte[1]);
+        Files.write(archivePath.resolve(manualArchive), new byte[1]);
+        Files.write(archivePath.resolve(uploaded), new byte[1]);
+
+        catalog.start();
+
+        ArchiveCatalog.Entry rule = catalog.get(ruleArchive).get();
+        MatcherAssert.assertThat(
+                rule.getSourceTarget(), Matchers.equalTo(Optional.of("some-Alias-2")));
+        MatcherAssert.assertThat(rule.getRule(), Matchers.equalTo(Optional.of("myRule")));
+
+        ArchiveCatalog.Entry manual = catalog.get(manualArchive).get();
+        MatcherAssert.assertThat(
+                manual.getSourceTarget(), Matchers.equalTo(Optional.of("localhost")));
+        MatcherAssert.assertThat(manual.getRule(), Matchers.equalTo(Optional.empty()));
+
+        ArchiveCatalog.Entry other = catalog.get(uploaded).get();
+        MatcherAssert.assertThat(other.getSourceTarget(), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(other.getRule(), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void pageShouldWalkSizeIndexFromCursor() throws Exception {
+        write("a.jfr", 30, 1000);
+        write("b.jfr", 10, 3000);
+        write("c.jfr", 20, 2000);
+        catalog.start();
+
+        List<Entry> first = catalog.page(SortKey.SIZE, false, null, e -> true, 2);
+        MatcherAssert.assertThat(names(first), Matchers.contains("b.jfr", "c.jfr"));
+
+        List<Entry> second = catalog.page(SortKey.SIZE, false, first.get(1), e -> true, 2);
+        MatcherAssert.assertThat(names(second), Matchers.contains("a.jfr"));
+    }
+
+    @Test
+    void pageShouldWalkTimeIndexInDescendingOrder() throws Exception {
+        write("a.jfr", 30, 1000);
+        write("b.jfr", 10, 3000);
+        write("c.jfr", 20, 2000);
+        catalog.start();
+
+        List<Entry> page = catalog.page(SortKey.TIME, true, null, e -> true, 10);
+
+        MatcherAssert.assertThat(names(page), Matchers.contains("b.jfr", "c.jfr", "a.jfr"));
+    }
+
+    @Test
+    void pageShouldApplyFilterBeforeLimit() throws Exception {
+        write("a.jfr", 1, 1000);
+        write("b.jfr", 2, 2000);
+        write("c.jfr", 3, 3000);
+        catalog.start();
+
+        List<Entry> page =
+                catalog.page(SortKey.NAME, true, null, e -> !e.getName().equals("c.jfr"), 1);
+
+        MatcherAssert.assertThat(names(page), Matchers.contains("b.jfr"));
+    }
+
+    @Test
+    void indicesShouldFollowUpdates() throws Exception {
+        write("a.jfr", 10, 1000);
+        write("b.jfr", 20, 2000);
+        catalog.start();
+
+        write("a.jfr", 30, 3000);
+        catalog.refresh("a.jfr");
+        catalog.remove("b.jfr");
+
+        MatcherAssert.assertThat(
+                names(catalog.page(SortKey.SIZE, false, null, e -> true, 10)),
+                Matchers.contains("a.jfr"));
+        MatcherAssert.assertThat(
+                names(catalog.page(SortKey.TIME, false, null, e -> true, 10)),
+                Matchers.contains("a.jfr"));
+    }
+
+    @Test
+    void touchShouldAdvanceLastAccessedButNotModificationOrder() throws Exception {
+        write("a.jfr", 10, 1000);
+        write("b.jfr", 10, 2000);
+        catalog.start();
+
+        catalog.touch("a.jfr");
+        catalog.touch("missing.jfr");
+
+        Entry a = catalog.get("a.jfr").get();
+        MatcherAssert.assertThat(
+                catalog.getLastAccessed(a), Matchers.greaterThan(a.getLastModified()));
+        Entry b = catalog.get("b.jfr").get();
+        MatcherAssert.assertThat(catalog.getLastAccessed(b), Matchers.equalTo(2000L));
+        MatcherAssert.assertThat(
+                names(catalog.page(SortKey.TIME, false, null, e -> true, 10)),
+                Matchers.contains("a.jfr", "b.jfr"));
+    }
+
+    @Test
+    void shouldPopulateFromRemoteStorageOnStart() throws Exception {
+        ArchiveStorage remote = Mockito.mock(ArchiveStorage.class);
+        Mockito.when(remote.getLocalDirectory()).thenReturn(Optional.empty());
+        Mockito.when(remote.getLocalPath(Mockito.anyString())).thenReturn(Optional.empty());
+        Mockito.when(remote.list())
+                .thenReturn(
+                        List.of(
+                                new ArchiveObject("b.jfr", 10, 2000),
+                                new ArchiveObject("a.jfr", 20, 1000)));
+        Mockito.when(remote.stat("a.jfr")).thenReturn(Optional.empty());
+        catalog = new ArchiveCatalog(remote, logger);
+
+        catalog.start();
+
+        MatcherAssert.assertThat(
+                names(catalog.page(SortKey.TIME, false, null, e -> true, 10)),
+                Matchers.contains("a.jfr", "b.jfr"));
+        MatcherAssert.assertThat(catalog.get("b.jfr").get().getSize(), Matchers.equalTo(10L));
+
+        catalog.refresh("a.jfr");
+
+        MatcherAssert.assertThat(names(catalog.list()), Matchers.contains("b.jfr"));
+    }
+
+    private void write(String name, int size, long lastModified) throws Exception {
+        Path file = archivePath.resolve(name);
+        Files.write(file, new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
+    private static List<String> names(List<Entry> entries) {
+        return entries.stream().map(Entry::getName).collect(Collectors.toList());
+    }
+}
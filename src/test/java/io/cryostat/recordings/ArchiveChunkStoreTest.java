@@ -0,0 +1,202 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import io.cryostat.core.log.Logger;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveChunkStoreTest {
+
+    ArchiveChunkStore store;
+    @Mock Logger logger;
+    @TempDir Path archives;
+
+    static final byte[] FIRST = JfrChunkReaderTest.chunk(1_000, 1_000, new byte[4096]);
+    static final byte[] SECOND = JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2);
+    static final byte[] THIRD = JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3);
+
+    @BeforeEach
+    void setup() {
+        store =
+                new ArchiveChunkStore(
+                        archives,
+                        new ArchiveCodec(ArchiveCodec.Compression.GZIP),
+                        true,
+                        logger);
+    }
+
+    @Test
+    void shouldWriteManifestAndReassemble() throws IOException {
+        Path archive = archives.resolve("a.jfr");
+        write(archive, FIRST, SECOND);
+
+        MatcherAssert.assertThat(ArchiveChunkStore.isChunked(archive), Matchers.equalTo(true));
+        MatcherAssert.assertThat(store.getChunks(archive), Matchers.hasSize(2));
+        MatcherAssert.assertThat(
+                store.getChunks(archive).get(0).getSize(), Matchers.equalTo((long) FIRST.length));
+        // the first chunk is mostly zeroes, so compresses well
+        MatcherAssert.assertThat(
+                store.getChunks(archive).get(0).getStoredSize(),
+                Matchers.lessThan((long) FIRST.length));
+        Assertions.assertArrayEquals(JfrChunkReaderTest.concat(FIRST, SECOND), read(archive));
+    }
+
+    @Test
+    void shouldStoreSharedChunksOnce() throws IOException {
+        write(archives.resolve("a.jfr"), FIRST, SECOND);
+        write(archives.resolve("b.jfr"), FIRST, SECOND, THIRD);
+
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(3));
+        Assertions.assertArrayEquals(
+                JfrChunkReaderTest.concat(FIRST, SECOND, THIRD), read(archives.resolve("b.jfr")));
+    }
+
+    @Test
+    void shouldDeleteChunksOnlyWhenUnreferenced() throws IOException {
+        Path a = archives.resolve("a.jfr");
+        Path b = archives.resolve("b.jfr");
+        write(a, FIRST, SECOND);
+        write(b, SECOND, THIRD);
+
+        List<ArchiveChunkStore.Chunk> chunks = store.getChunks(a);
+        Files.delete(a);
+        store.release(chunks);
+
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(2));
+        Assertions.assertArrayEquals(JfrChunkReaderTest.concat(SECOND, THIRD), read(b));
+        Path firstChunk =
+                ArchiveChunkStore.chunkPath(
+                        archives.resolve(ArchiveChunkStore.CHUNKS_DIRECTORY),
+                        chunks.get(0).getHash());
+        MatcherAssert.assertThat(Files.exists(firstChunk), Matchers.equalTo(false));
+    }
+
+    @Test
+    void deleteShouldReleaseChunksOnce() throws IOException {
+        Path a = archives.resolve("a.jfr");
+        Path b = archives.resolve("b.jfr");
+        write(a, FIRST, SECOND);
+        write(b, SECOND, THIRD);
+
+        MatcherAssert.assertThat(store.delete(a), Matchers.equalTo(true));
+        // a second, overlapping delete of the same archive must not release its chunks again
+        MatcherAssert.assertThat(store.delete(a), Matchers.equalTo(false));
+
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(2));
+        Assertions.assertArrayEquals(JfrChunkReaderTest.concat(SECOND, THIRD), read(b));
+    }
+
+    @Test
+    void deleteShouldRemovePlainArchives() throws IOException {
+        Path plain = Files.write(archives.resolve("plain.jfr"), SECOND);
+
+        MatcherAssert.assertThat(store.delete(plain), Matchers.equalTo(true));
+        MatcherAssert.assertThat(Files.exists(plain), Matchers.equalTo(false));
+    }
+
+    @Test
+    void loadShouldRebuildReferencesAndCollectOrphans() throws IOException {
+        Path a = archives.resolve("a.jfr");
+        write(a, FIRST, SECOND);
+        write(archives.resolve("b.jfr"), THIRD);
+        Files.delete(archives.resolve("b.jfr"));
+
+        ArchiveChunkStore reloaded =
+                new ArchiveChunkStore(
+                        archives,
+                        new ArchiveCodec(ArchiveCodec.Compression.GZIP),
+                        false,
+                        logger);
+        reloaded.load();
+
+        MatcherAssert.assertThat(reloaded.size(), Matchers.equalTo(2));
+        Assertions.assertArrayEquals(JfrChunkReaderTest.concat(FIRST, SECOND), read(a));
+        List<ArchiveChunkStore.Chunk> chunks = reloaded.getChunks(a);
+        Files.delete(a);
+        reloaded.release(chunks);
+        MatcherAssert.assertThat(reloaded.size(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void shouldNotOverwriteExistingArchive() throws IOException {
+        Path a = archives.resolve("a.jfr");
+        write(a, FIRST);
+
+        Assertions.assertThrows(FileAlreadyExistsException.class, () -> write(a, SECOND));
+
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(1));
+        Assertions.assertArrayEquals(FIRST, read(a));
+    }
+
+    @Test
+    void shouldReadPlainArchives() throws IOException {
+        Path plain = Files.write(archives.resolve("plain.jfr"), SECOND);
+
+        MatcherAssert.assertThat(ArchiveChunkStore.isChunked(plain), Matchers.equalTo(false));
+        MatcherAssert.assertThat(store.getChunks(plain), Matchers.empty());
+        Assertions.assertArrayEquals(SECOND, read(plain));
+    }
+
+    private void write(Path archive, byte[]... chunks) throws IOException {
+        store.write(new ByteArrayInputStream(JfrChunkReaderTest.concat(chunks)), archive);
+    }
+
+    private static byte[] read(Path archive) throws IOException {
+        try (InputStream stream = ArchiveChunkStore.openArchive(archive)) {
+            return stream.readAllBytes();
+        }
+    }
+}
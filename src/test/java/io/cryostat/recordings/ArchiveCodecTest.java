@@ -0,0 +1,138 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ArchiveCodecTest {
+
+    ArchiveCodec gzip = new ArchiveCodec(ArchiveCodec.Compression.GZIP);
+    ArchiveCodec none = new ArchiveCodec(ArchiveCodec.Compression.NONE);
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 1024, 3 * ArchiveCodec.BUFFER_SIZE + 7})
+    void encodedStreamShouldBeStandardGzip(int size) throws Exception {
+        byte[] raw = compressible(size);
+
+        byte[] encoded = gzip.encode(new ByteArrayInputStream(raw)).readAllBytes();
+
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(encoded))) {
+            Assertions.assertArrayEquals(raw, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void encodedStreamShouldBeSmaller() throws Exception {
+        byte[] raw = compressible(100_000);
+
+        byte[] encoded = gzip.encode(new ByteArrayInputStream(raw)).readAllBytes();
+
+        MatcherAssert.assertThat(encoded.length, Matchers.lessThan(raw.length / 2));
+    }
+
+    @Test
+    void decodeShouldRoundTripOutputStreamEncoding() throws Exception {
+        byte[] raw = compressible(10_000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = gzip.encode(baos)) {
+            out.write(raw);
+        }
+
+        try (InputStream stream =
+                ArchiveCodec.decode(new ByteArrayInputStream(baos.toByteArray()))) {
+            Assertions.assertArrayEquals(raw, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void decodeShouldPassThroughUncompressedArchives() throws Exception {
+        byte[] raw = "FLR\0 not compressed".getBytes();
+
+        try (InputStream stream = ArchiveCodec.decode(new ByteArrayInputStream(raw))) {
+            Assertions.assertArrayEquals(raw, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void noneShouldNotEncode() throws Exception {
+        InputStream raw = new ByteArrayInputStream(new byte[1]);
+        OutputStream out = new ByteArrayOutputStream();
+
+        Assertions.assertSame(raw, none.encode(raw));
+        Assertions.assertSame(out, none.encode(out));
+    }
+
+    @Test
+    void shouldDetectCompressedFiles(@TempDir Path tempDir) throws Exception {
+        Path compressed = tempDir.resolve("compressed.jfr");
+        Path uncompressed = tempDir.resolve("uncompressed.jfr");
+        Path empty = tempDir.resolve("empty.jfr");
+        byte[] raw = compressible(100);
+        Files.write(compressed, gzip.encode(new ByteArrayInputStream(raw)).readAllBytes());
+        Files.write(uncompressed, raw);
+        Files.write(empty, new byte[0]);
+
+        Assertions.assertTrue(ArchiveCodec.isCompressed(compressed));
+        Assertions.assertFalse(ArchiveCodec.isCompressed(uncompressed));
+        Assertions.assertFalse(ArchiveCodec.isCompressed(empty));
+    }
+
+    private static byte[] compressible(int size) {
+        byte[] bytes = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) random.nextInt(8);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import static org.mockito.Mockito.lenient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.recordings.ArchiveCatalog.Entry;
+import io.cryostat.recordings.ArchiveRetentionEngine.EvictionOrder;
+import io.cryostat.recordings.ArchiveRetentionEngine.Eviction;
+import io.cryostat.recordings.ArchiveRetentionEngine.Policy;
+import io.cryostat.recordings.ArchiveRetentionEngine.Reason;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveRetentionEngineTest {
+
+    static final long NOW = 1_000_000L;
+
+    Entry oldA = new Entry("a1.jfr", 100, NOW - 5000, "a", null);
+    Entry oldB = new Entry("b1.jfr", 100, NOW - 4000, "b", null);
+    Entry newA = new Entry("a2.jfr", 100, NOW - 3000, "a", null);
+    Entry upload = new Entry("upload.jfr", 100, NOW - 2000, null, null);
+
+    @Nested
+    class Selection {
+
+        List<Entry> entries = List.of(newA, upload, oldB, oldA);
+
+        @Test
+        void shouldSelectNothingWithinLimits() {
+            Policy policy = new Policy(400, 200, 4, Duration.ofSeconds(10), EvictionOrder.OLDEST);
+
+            MatcherAssert.assertThat(select(policy, 10), Matchers.empty());
+        }
+
+        @Test
+        void shouldEvictByAge() {
+            Policy policy = new Policy(0, 0, 0, Duration.ofMillis(3500), EvictionOrder.OLDEST);
+
+            List<Eviction> evictions = select(policy, 10);
+
+            MatcherAssert.assertThat(names(evictions), Matchers.contains("a1.jfr", "b1.jfr"));
+            MatcherAssert.assertThat(
+                    reasons(evictions), Matchers.everyItem(Matchers.equalTo(Reason.AGE)));
+        }
+
+        @Test
+        void shouldEvictOldestFirstUntilUnderCount() {
+            Policy policy = new Policy(0, 0, 2, null, EvictionOrder.OLDEST);
+
+            List<Eviction> evictions = select(policy, 10);
+
+            MatcherAssert.assertThat(names(evictions), Matchers.contains("a1.jfr", "b1.jfr"));
+            MatcherAssert.assertThat(
+                    reasons(evictions), Matchers.everyItem(Matchers.equalTo(Reason.COUNT)));
+        }
+
+        @Test
+        void shouldEvictOldestFirstUntilUnderTotalSize() {
+            Policy policy = new Policy(350, 0, 0, null, EvictionOrder.OLDEST);
+
+            List<Eviction> evictions = select(policy, 10);
+
+            MatcherAssert.assertThat(names(evictions), Matchers.contains("a1.jfr"));
+            MatcherAssert.assertThat(reasons(evictions), Matchers.contains(Reason.SIZE));
+        }
+
+        @Test
+        void shouldOnlyEvictFromTargetsOverQuota() {
+            Policy policy = new Policy(0, 150, 0, null, EvictionOrder.OLDEST);
+
+            List<Eviction> evictions = select(policy, 10);
+
+            MatcherAssert.assertThat(names(evictions), Matchers.contains("a1.jfr"));
+            MatcherAssert.assertThat(reasons(evictions), Matchers.contains(Reason.TARGET_SIZE));
+        }
+
+        @Test
+        void shouldOrderByRecencyFunction() {
+            Policy policy = new Policy(0, 0, 3, null, EvictionOrder.LRU);
+            // a1 was downloaded recently, so b1 becomes the least recently used
+            Map<String, Long> accessed = Map.of("a1.jfr", NOW);
+
+            List<Eviction> evictions =
+                    ArchiveRetentionEngine.select(
+                            entries,
+                            ArchiveRetentionEngine::storedParts,
+                            policy,
+                            NOW,
+                            e -> accessed.getOrDefault(e.getName(), e.getLastModified()),
+                            10);
+
+            MatcherAssert.assertThat(names(evictions), Matchers.contains("b1.jfr"));
+        }
+
+        @Test
+        void shouldStopAtLimit() {
+            Policy policy = new Policy(0, 0, 1, null, EvictionOrder.OLDEST);
+
+            MatcherAssert.assertThat(
+                    names(select(policy, 2)), Matchers.contains("a1.jfr", "b1.jfr"));
+        }
+
+        @Test
+        void shouldCountChunksSharedByDeduplicatedArchivesOnce() {
+            ArchiveChunkStore.Chunk shared = new ArchiveChunkStore.Chunk("aa", 200, 100);
+            entries =
+                    List.of(
+                            new Entry("a1.jfr", 200, NOW - 5000, "a", null, List.of(shared)),
+                            new Entry(
+                                    "a2.jfr",
+                                    300,
+                                    NOW - 3000,
+                                    "a",
+                                    null,
+                                    List.of(shared, new ArchiveChunkStore.Chunk("bb", 200, 100))));
+
+            // 200 bytes are on disk, though the archives' chunks add up to 300
+            MatcherAssert.assertThat(
+                    select(new Policy(200, 200, 0, null, EvictionOrder.OLDEST), 10),
+                    Matchers.empty());
+            // evicting a1 frees nothing, since a2 still keeps its chunk
+            MatcherAssert.assertThat(
+                    names(select(new Policy(150, 0, 0, null, EvictionOrder.OLDEST), 10)),
+                    Matchers.contains("a1.jfr", "a2.jfr"));
+        }
+
+        private List<Eviction> select(Policy policy, int limit) {
+            return ArchiveRetentionEngine.select(
+                    entries,
+                    ArchiveRetentionEngine::storedParts,
+                    policy,
+                    NOW,
+                    Entry::getLastModified,
+                    limit);
+        }
+    }
+
+    @Nested
+    class Enforcement {
+
+        ArchiveRetentionEngine engine;
+        @Mock ArchiveCatalog catalog;
+        @Mock RecordingArchiveHelper recordingArchiveHelper;
+        @Mock NotificationFactory notificationFactory;
+        @Mock Notification.Builder<Object> builder;
+        @Mock Notification<Object> notification;
+        @Mock ScheduledExecutorService timer;
+        @Mock Clock clock;
+        @Mock Logger logger;
+
+        @BeforeEach
+        void setup() {
+            lenient().when(notificationFactory.createBuilder()).thenReturn(builder);
+            lenient().when(builder.metaCategory(Mockito.any())).thenReturn(builder);
+            lenient().when(builder.metaType(Mockito.any())).thenReturn(builder);
+            lenient().when(builder.message(Mockito.any())).thenReturn(builder);
+            lenient().when(builder.build()).thenReturn(notification);
+            lenient().when(clock.now()).thenReturn(Instant.ofEpochMilli(NOW));
+            lenient().when(catalog.list()).thenReturn(List.of(oldA, oldB, newA, upload));
+            lenient()
+                    .when(recordingArchiveHelper.getStoredParts(Mockito.any()))
+                    .thenAnswer(inv -> ArchiveRetentionEngine.storedParts(inv.getArgument(0)));
+        }
+
+        ArchiveRetentionEngine createEngine(Policy policy, int batchSize) {
+            return new ArchiveRetentionEngine(
+                    catalog,
+                    recordingArchiveHelper,
+                    notificationFactory,
+                    timer,
+                    clock,
+                    policy,
+                    Duration.ofSeconds(30),
+                    batchSize,
+                    logger);
+        }
+
+        @Test
+        void shouldNotScheduleWithoutLimits() {
+            createEngine(new Policy(0, 0, 0, null, EvictionOrder.OLDEST), 10).start();
+
+            Mockito.verifyNoInteractions(timer);
+        }
+
+        @Test
+        void shouldScheduleFirstPassOnStart() {
+            createEngine(new Policy(0, 0, 1, null, EvictionOrder.OLDEST), 10).start();
+
+            Mockito.verify(timer)
+                    .schedule(
+                            Mockito.any(Runnable.class),
+                            Mockito.eq(0L),
+                            Mockito.eq(TimeUnit.MILLISECONDS));
+        }
+
+        @Test
+        void shouldDeleteOneBatchAndReportMore() throws Exception {
+            engine = createEngine(new Policy(0, 0, 1, null, EvictionOrder.OLDEST), 2);
+
+            Assertions.assertTrue(engine.enforce());
+
+            Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("a1.jfr");
+            Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("b1.jfr");
+            Mockito.verify(recordingArchiveHelper, Mockito.times(4))
+                    .getStoredParts(Mockito.any());
+            Mockito.verifyNoMoreInteractions(recordingArchiveHelper);
+            Mockito.verify(builder).metaCategory(ArchiveRetentionEngine.NOTIFICATION_CATEGORY);
+            Mockito.verify(builder)
+                    .message(
+                            Map.of(
+                                    "recordings",
+                                    List.of("a1.jfr", "b1.jfr"),
+                                    "reclaimedBytes",
+                                    200L));
+            Mockito.verify(notification).send();
+
+            ArchiveRetentionEngine.Metrics metrics = engine.getMetrics();
+            MatcherAssert.assertThat(metrics.getPasses(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(metrics.getEvicted(), Matchers.equalTo(2L));
+            MatcherAssert.assertThat(metrics.getReclaimedBytes(), Matchers.equalTo(200L));
+            MatcherAssert.assertThat(metrics.getArchiveBytes(), Matchers.equalTo(200L));
+            MatcherAssert.assertThat(metrics.getArchiveCount(), Matchers.equalTo(2));
+        }
+
+        @Test
+        void shouldReportNoMoreWhenBatchCoversEvictions() throws Exception {
+            engine = createEngine(new Policy(0, 0, 2, null, EvictionOrder.OLDEST), 2);
+
+            Assertions.assertFalse(engine.enforce());
+        }
+
+        @Test
+        void shouldNotNotifyWhenNothingEvicted() throws Exception {
+            engine = createEngine(new Policy(0, 0, 10, null, EvictionOrder.OLDEST), 2);
+
+            Assertions.assertFalse(engine.enforce());
+
+            Mockito.verify(recordingArchiveHelper, Mockito.never())
+                    .deleteArchivedRecording(Mockito.any());
+            Mockito.verifyNoInteractions(notificationFactory);
+        }
+
+        @Test
+        void shouldCountFailedDeletions() throws Exception {
+            engine = createEngine(new Policy(0, 0, 3, null, EvictionOrder.OLDEST), 2);
+            Mockito.doThrow(IOException.class)
+                    .when(recordingArchiveHelper)
+                    .deleteArchivedRecording("a1.jfr");
+
+            Assertions.assertFalse(engine.enforce());
+
+            MatcherAssert.assertThat(engine.getMetrics().getFailures(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(engine.getMetrics().getEvicted(), Matchers.equalTo(0L));
+            Mockito.verifyNoInteractions(notificationFactory);
+        }
+
+        @Test
+        void shouldOnlyReportSpaceActuallyReclaimed() throws Exception {
+            ArchiveChunkStore.Chunk shared = new ArchiveChunkStore.Chunk("aa", 200, 100);
+            Entry older = new Entry("a1.jfr", 100, NOW - 5000, "a", null, List.of(shared));
+            Entry newer = new Entry("a2.jfr", 100, NOW - 3000, "a", null, List.of(shared));
+            Mockito.when(catalog.list()).thenReturn(List.of(older, newer));
+            engine = createEngine(new Policy(0, 0, 1, null, EvictionOrder.OLDEST), 2);
+
+            engine.enforce();
+
+            Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("a1.jfr");
+            Mockito.verify(builder)
+                    .message(Map.of("recordings", List.of("a1.jfr"), "reclaimedBytes", 0L));
+            MatcherAssert.assertThat(engine.getMetrics().getReclaimedBytes(), Matchers.equalTo(0L));
+            MatcherAssert.assertThat(engine.getMetrics().getArchiveBytes(), Matchers.equalTo(100L));
+        }
+
+        @Test
+        void shouldNotReportHiddenDifferentialPiecesAsReclaimed() throws Exception {
+            // a2 is differential, so deleting a1 only hides it while a2 still lists it
+            Mockito.when(catalog.list()).thenReturn(List.of(oldA, newA));
+            Mockito.when(recordingArchiveHelper.getStoredParts(newA))
+                    .thenReturn(Map.of("a1.jfr", 100L, "a2.jfr", 100L));
+            engine = createEngine(new Policy(150, 0, 0, null, EvictionOrder.OLDEST), 1);
+
+            Assertions.assertTrue(engine.enforce());
+
+            Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("a1.jfr");
+            Mockito.verify(builder)
+                    .message(Map.of("recordings", List.of("a1.jfr"), "reclaimedBytes", 0L));
+            MatcherAssert.assertThat(engine.getMetrics().getArchiveBytes(), Matchers.equalTo(200L));
+        }
+
+        @Test
+        void shouldUseCatalogAccessTimesForLru() throws Exception {
+            engine = createEngine(new Policy(0, 0, 3, null, EvictionOrder.LRU), 2);
+            Mockito.when(catalog.getLastAccessed(Mockito.any()))
+                    .thenAnswer(
+                            inv -> {
+                                Entry e = inv.getArgument(0);
+                                return e == oldA ? NOW : e.getLastModified();
+                            });
+
+            engine.enforce();
+
+            Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("b1.jfr");
+            Mockito.verify(recordingArchiveHelper, Mockito.times(4))
+                    .getStoredParts(Mockito.any());
+            Mockito.verifyNoMoreInteractions(recordingArchiveHelper);
+        }
+    }
+
+    private static List<String> names(List<Eviction> evictions) {
+        return evictions.stream().map(e -> e.getEntry().getName()).collect(Collectors.toList());
+    }
+
+    private static List<Reason> reasons(List<Eviction> evictions) {
+        return evictions.stream().map(Eviction::getReason).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class JfrChunkReaderTest {
+
+    static byte[] chunk(long startNanos, long durationNanos, byte... body) {
+        ByteBuffer buf = ByteBuffer.allocate(JfrChunkReader.HEADER_SIZE + body.length);
+        buf.put(JfrChunkReader.MAGIC);
+        buf.putShort((short) 2);
+        buf.putShort((short) 0);
+        buf.putLong(JfrChunkReader.HEADER_SIZE + body.length);
+        buf.putLong(0L);
+        buf.putLong(0L);
+        buf.putLong(startNanos);
+        buf.putLong(durationNanos);
+        buf.putLong(0L);
+        buf.putLong(1_000_000_000L);
+        buf.putInt(0);
+        buf.put(body);
+        return buf.array();
+    }
+
+    static byte[] concat(byte[]... chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.writeBytes(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void shouldReadEachChunk() throws IOException {
+        byte[] first = chunk(100, 50, (byte) 1, (byte) 2, (byte) 3);
+        byte[] second = chunk(150, 25);
+        List<Long> starts = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+
+        JfrChunkReader.forEachChunk(
+                new ByteArrayInputStream(concat(first, second)),
+                (header, chunk) -> {
+                    starts.add(header.getStartNanos());
+                    contents.add(chunk.readAllBytes());
+                });
+
+        MatcherAssert.assertThat(starts, Matchers.contains(100L, 150L));
+        Assertions.assertArrayEquals(first, contents.get(0));
+        Assertions.assertArrayEquals(second, contents.get(1));
+    }
+
+    @Test
+    void shouldParseHeaderFields() throws IOException {
+        List<JfrChunkReader.ChunkHeader> headers = new ArrayList<>();
+
+        JfrChunkReader.forEachChunk(
+                new ByteArrayInputStream(chunk(100, 50, (byte) 1)),
+                (header, chunk) -> headers.add(header));
+
+        MatcherAssert.assertThat(headers, Matchers.hasSize(1));
+        JfrChunkReader.ChunkHeader header = headers.get(0);
+        MatcherAssert.assertThat(header.getMajorVersion(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(header.getMinorVersion(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(
+                header.getSize(), Matchers.equalTo((long) JfrChunkReader.HEADER_SIZE + 1));
+        MatcherAssert.assertThat(header.getEndNanos(), Matchers.equalTo(150L));
+        MatcherAssert.assertThat(header.getTicksPerSecond(), Matchers.equalTo(1_000_000_000L));
+    }
+
+    @Test
+    void shouldSkipUnreadChunkBodies() throws IOException {
+        List<Long> starts = new ArrayList<>();
+
+        JfrChunkReader.forEachChunk(
+                new ByteArrayInputStream(
+                        concat(chunk(1, 1, new byte[512]), chunk(2, 1, new byte[16]))),
+                (header, chunk) -> starts.add(header.getStartNanos()));
+
+        MatcherAssert.assertThat(starts, Matchers.contains(1L, 2L));
+    }
+
+    @Test
+    void shouldAcceptEmptyStream() throws IOException {
+        List<Long> starts = new ArrayList<>();
+
+        JfrChunkReader.forEachChunk(
+                new ByteArrayInputStream(new byte[0]),
+                (header, chunk) -> starts.add(header.getStartNanos()));
+
+        MatcherAssert.assertThat(starts, Matchers.empty());
+    }
+
+    @Test
+    void shouldRejectInvalidMagic() {
+        byte[] chunk = chunk(1, 1);
+        chunk[0] = 'X';
+
+        Assertions.assertThrows(
+                IOException.class,
+                () ->
+                        JfrChunkReader.forEachChunk(
+                                new ByteArrayInputStream(chunk), (header, c) -> {}));
+    }
+
+    @Test
+    void shouldRejectTruncatedChunk() {
+        byte[] chunk = chunk(1, 1, new byte[32]);
+        byte[] truncated = Arrays.copyOf(chunk, chunk.length - 8);
+
+        Assertions.assertThrows(
+                EOFException.class,
+                () ->
+                        JfrChunkReader.forEachChunk(
+                                new ByteArrayInputStream(truncated), (header, c) -> {}));
+    }
+
+    @Test
+    void shouldRejectTruncatedHeader() {
+        byte[] truncated = Arrays.copyOf(chunk(1, 1), JfrChunkReader.HEADER_SIZE - 1);
+
+        Assertions.assertThrows(
+                EOFException.class,
+                () ->
+                        JfrChunkReader.forEachChunk(
+                                new ByteArrayInputStream(truncated), (header, c) -> {}));
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class JfrValidatorTest {
+
+    // a constant pool event of 5 bytes followed by a metadata event of 6, with compressed ints
+    static final byte[] CHECKPOINT = {5, 1, 0, 0, 0};
+    static final byte[] METADATA = {6, 0, 0, 0, 0, 0};
+
+    static byte[] chunk(
+            int major, long constantPoolOffset, long metadataOffset, int features, byte... body) {
+        ByteBuffer buf = ByteBuffer.allocate(JfrChunkReader.HEADER_SIZE + body.length);
+        buf.put(JfrChunkReader.MAGIC);
+        buf.putShort((short) major);
+        buf.putShort((short) 0);
+        buf.putLong(JfrChunkReader.HEADER_SIZE + body.length);
+        buf.putLong(constantPoolOffset);
+        buf.putLong(metadataOffset);
+        buf.putLong(0L);
+        buf.putLong(0L);
+        buf.putLong(0L);
+        buf.putLong(1_000_000_000L);
+        buf.putInt(features);
+        buf.put(body);
+        return buf.array();
+    }
+
+    static byte[] validChunk() {
+        return chunk(
+                2,
+                JfrChunkReader.HEADER_SIZE,
+                JfrChunkReader.HEADER_SIZE + CHECKPOINT.length,
+                JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                JfrChunkReaderTest.concat(CHECKPOINT, METADATA));
+    }
+
+    static String invalidReason(byte[] recording) {
+        InvalidRecordingException e =
+                Assertions.assertThrows(
+                        InvalidRecordingException.class,
+                        () -> JfrValidator.validate(new ByteArrayInputStream(recording)));
+        return e.getMessage();
+    }
+
+    @Test
+    void shouldAcceptValidChunks() throws IOException {
+        JfrValidator.validate(
+                new ByteArrayInputStream(JfrChunkReaderTest.concat(validChunk(), validChunk())));
+    }
+
+    @Test
+    void shouldAcceptMetadataBeforeConstantPool() throws IOException {
+        JfrValidator.validate(
+                new ByteArrayInputStream(
+                        chunk(
+                                2,
+                                JfrChunkReader.HEADER_SIZE + METADATA.length,
+                                JfrChunkReader.HEADER_SIZE,
+                                JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                                JfrChunkReaderTest.concat(METADATA, CHECKPOINT))));
+    }
+
+    @Test
+    void shouldAcceptUncompressedIntegers() throws IOException {
+        byte[] checkpoint = ByteBuffer.allocate(12).putInt(12).putLong(1).array();
+        byte[] metadata = ByteBuffer.allocate(16).putInt(16).putLong(0).array();
+        JfrValidator.validate(
+                new ByteArrayInputStream(
+                        chunk(
+                                1,
+                                JfrChunkReader.HEADER_SIZE,
+                                JfrChunkReader.HEADER_SIZE + checkpoint.length,
+                                0,
+                                JfrChunkReaderTest.concat(checkpoint, metadata))));
+    }
+
+    @Test
+    void shouldReadStreamOnce() throws IOException {
+        int[] reads = {0};
+        InputStream stream =
+                new ByteArrayInputStream(validChunk()) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        reads[0]++;
+                        return super.read(b, off, len);
+                    }
+                };
+
+        JfrValidator.validate(stream);
+
+        MatcherAssert.assertThat(stream.available(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(reads[0], Matchers.lessThanOrEqualTo(2));
+    }
+
+    @Test
+    void shouldRejectEmptyFile() {
+        MatcherAssert.assertThat(invalidReason(new byte[0]), Matchers.containsString("empty"));
+    }
+
+    @Test
+    void shouldRejectInvalidMagic() {
+        byte[] chunk = validChunk();
+        chunk[0] = 'X';
+
+        MatcherAssert.assertThat(invalidReason(chunk), Matchers.containsString("magic"));
+    }
+
+    @Test
+    void shouldRejectUnsupportedVersion() {
+        byte[] chunk = validChunk();
+        chunk[5] = 9;
+
+        MatcherAssert.assertThat(invalidReason(chunk), Matchers.containsString("version 9.0"));
+    }
+
+    @Test
+    void shouldRejectTruncatedChunk() {
+        byte[] chunk = validChunk();
+
+        MatcherAssert.assertThat(
+                invalidReason(Arrays.copyOf(chunk, chunk.length - 1)),
+                Matchers.containsString("truncated"));
+    }
+
+    @Test
+    void shouldRejectTruncatedHeader() {
+        MatcherAssert.assertThat(
+                invalidReason(
+                        JfrChunkReaderTest.concat(
+                                validChunk(),
+                                Arrays.copyOf(validChunk(), JfrChunkReader.HEADER_SIZE - 1))),
+                Matchers.containsString("truncated chunk header"));
+    }
+
+    @Test
+    void shouldRejectOffsetOutsideChunk() {
+        byte[] chunk =
+                chunk(
+                        2,
+                        JfrChunkReader.HEADER_SIZE,
+                        1_000,
+                        JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                        JfrChunkReaderTest.concat(CHECKPOINT, METADATA));
+
+        MatcherAssert.assertThat(
+                invalidReason(chunk), Matchers.containsString("metadata offset 1000"));
+    }
+
+    @Test
+    void shouldRejectOffsetIntoHeader() {
+        byte[] chunk =
+                chunk(
+                        2,
+                        0,
+                        JfrChunkReader.HEADER_SIZE + CHECKPOINT.length,
+                        JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                        JfrChunkReaderTest.concat(CHECKPOINT, METADATA));
+
+        MatcherAssert.assertThat(
+                invalidReason(chunk), Matchers.containsString("constant pool offset 0"));
+    }
+
+    @Test
+    void shouldRejectOffsetToWrongEventType() {
+        byte[] chunk =
+                chunk(
+                        2,
+                        JfrChunkReader.HEADER_SIZE + CHECKPOINT.length,
+                        JfrChunkReader.HEADER_SIZE,
+                        JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                        JfrChunkReaderTest.concat(CHECKPOINT, METADATA));
+
+        MatcherAssert.assertThat(
+                invalidReason(chunk), Matchers.containsString("points at an event of type"));
+    }
+
+    @Test
+    void shouldRejectEventOverrunningChunk() {
+        byte[] checkpoint = {100, 1, 0, 0, 0};
+        byte[] chunk =
+                chunk(
+                        2,
+                        JfrChunkReader.HEADER_SIZE + METADATA.length,
+                        JfrChunkReader.HEADER_SIZE,
+                        JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                        JfrChunkReaderTest.concat(METADATA, checkpoint));
+
+        MatcherAssert.assertThat(invalidReason(chunk), Matchers.containsString("invalid size"));
+    }
+
+    @Test
+    void shouldRejectOverlappingEvents() {
+        byte[] checkpoint = {11, 1, 0, 0, 0};
+        byte[] chunk =
+                chunk(
+                        2,
+                        JfrChunkReader.HEADER_SIZE,
+                        JfrChunkReader.HEADER_SIZE + checkpoint.length,
+                        JfrValidator.COMPRESSED_INTEGERS_FEATURE,
+                        JfrChunkReaderTest.concat(checkpoint, METADATA));
+
+        MatcherAssert.assertThat(invalidReason(chunk), Matchers.containsString("overlap"));
+    }
+
+    @Test
+    void shouldAcceptRecordingPushedOneByteAtATime() throws IOException {
+        byte[] recording = JfrChunkReaderTest.concat(validChunk(), validChunk());
+        JfrValidator validator = new JfrValidator();
+        for (int i = 0; i < recording.length; i++) {
+            validator.update(recording, i, 1);
+        }
+        validator.finish();
+    }
+
+    @Test
+    void shouldRejectAsSoonAsHeaderIsInvalid() throws IOException {
+        byte[] chunk = validChunk();
+        chunk[5] = 9;
+        JfrValidator validator = new JfrValidator();
+        validator.update(chunk, 0, JfrChunkReader.HEADER_SIZE - 1);
+
+        Assertions.assertThrows(
+                InvalidRecordingException.class,
+                () -> validator.update(chunk, JfrChunkReader.HEADER_SIZE - 1, 1));
+    }
+
+    @Test
+    void validatingStreamShouldPassRecordingThrough() throws IOException {
+        byte[] recording = JfrChunkReaderTest.concat(validChunk(), validChunk());
+        InputStream stream = JfrValidator.validating(new ByteArrayInputStream(recording));
+
+        MatcherAssert.assertThat(stream.readAllBytes(), Matchers.equalTo(recording));
+    }
+
+    @Test
+    void validatingStreamShouldFailReadOfInvalidChunk() {
+        byte[] chunk = validChunk();
+        chunk[0] = 'X';
+        InputStream stream = JfrValidator.validating(new ByteArrayInputStream(chunk));
+
+        Assertions.assertThrows(
+                InvalidRecordingException.class,
+                () -> stream.read(new byte[JfrChunkReader.HEADER_SIZE]));
+    }
+
+    @Test
+    void validatingStreamShouldFailAtEndOfTruncatedRecording() throws IOException {
+        byte[] chunk = validChunk();
+        InputStream stream =
+                JfrValidator.validating(
+                        new ByteArrayInputStream(Arrays.copyOf(chunk, chunk.length - 1)));
+        stream.read(new byte[chunk.length]);
+
+        Assertions.assertThrows(InvalidRecordingException.class, stream::read);
+    }
+}
@@ -37,11 +37,22 @@
  */
 package io.cryostat.recordings;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.management.remote.JMXServiceURL;
 
@@ -50,22 +61,31 @@ import org.openjdk.jmc.common.unit.QuantityConversionException;
 import org.openjdk.jmc.rjmx.services.jfr.IFlightRecorderService;
 import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
 
+import io.cryostat.core.log.Logger;
 import io.cryostat.core.net.JFRConnection;
 import io.cryostat.core.sys.Clock;
 import io.cryostat.core.sys.FileSystem;
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.ConnectionDescriptor;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.reports.ReportService;
+import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
+import io.cryostat.recordings.storage.LocalArchiveStorage;
 import io.cryostat.util.URIUtil;
 
+import com.google.gson.Gson;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -82,6 +102,11 @@ class RecordingArchiveHelperTest {
     @Mock Clock clock;
     @Mock PlatformClient platformClient;
     @Mock ReportService reportService;
+    @Mock Path manifestsPath;
+    @Mock ArchiveCatalog catalog;
+    @Mock ArchiveChunkStore chunkStore;
+    @Mock NotificationFactory notificationFactory;
+    @TempDir Path archiveDir;
 
     @Mock JFRConnection connection;
     @Mock IFlightRecorderService service;
@@ -94,11 +119,18 @@ class RecordingArchiveHelperTest {
         this.recordingArchiveHelper =
                 new RecordingArchiveHelper(
                         fs,
-                        recordingsPath,
+                        new LocalArchiveStorage(fs, recordingsPath),
                         targetConnectionManager,
                         clock,
                         platformClient,
-                        reportService);
+                        reportService,
+                        new Gson(),
+                        manifestsPath,
+                        catalog,
+                        new ArchiveCodec(ArchiveCodec.Compression.NONE),
+                        chunkStore,
+                        notificationFactory,
+                        Runnable::run);
     }
 
     @Test
@@ -177,10 +209,11 @@ class RecordingArchiveHelperTest {
         Instant now = Instant.now();
         Mockito.when(clock.now()).thenReturn(now);
         Mockito.when(fs.exists(Mockito.any())).thenReturn(false);
-        InputStream stream = Mockito.mock(InputStream.class);
-        Mockito.when(service.openStream(descriptor, false)).thenReturn(stream);
-        Path destination = Mockito.mock(Path.class);
-        Mockito.when(recordingsPath.resolve(Mockito.anyString())).thenReturn(destination);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
 
         String saveName =
                 recordingArchiveHelper.saveRecording(
@@ -189,7 +222,8 @@ class RecordingArchiveHelperTest {
         String timestamp = now.truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
         MatcherAssert.assertThat(
                 saveName, Matchers.equalTo("some-Alias-2_someRecording_" + timestamp + ".jfr"));
-        Mockito.verify(fs).copy(Mockito.eq(stream), Mockito.eq(destination));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
+        Mockito.verify(catalog).refresh(saveName);
     }
 
     @Test
@@ -242,10 +276,11 @@ class RecordingArchiveHelperTest {
         Instant now = Instant.now();
         Mockito.when(clock.now()).thenReturn(now);
         Mockito.when(fs.exists(Mockito.any())).thenReturn(false);
-        InputStream stream = Mockito.mock(InputStream.class);
-        Mockito.when(service.openStream(descriptor, false)).thenReturn(stream);
-        Path destination = Mockito.mock(Path.class);
-        Mockito.when(recordingsPath.resolve(Mockito.anyString())).thenReturn(destination);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
 
         String saveName =
                 recordingArchiveHelper.saveRecording(
@@ -255,7 +290,7 @@ class RecordingArchiveHelperTest {
         MatcherAssert.assertThat(
                 saveName,
                 Matchers.equalTo("some-hostname-local_someRecording_" + timestamp + ".jfr"));
-        Mockito.verify(fs).copy(Mockito.eq(stream), Mockito.eq(destination));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
     }
 
     @Test
@@ -302,10 +337,11 @@ class RecordingArchiveHelperTest {
         Instant now = Instant.now();
         Mockito.when(clock.now()).thenReturn(now);
         Mockito.when(fs.exists(Mockito.any())).thenReturn(false);
-        InputStream stream = Mockito.mock(InputStream.class);
-        Mockito.when(service.openStream(descriptor, false)).thenReturn(stream);
-        Path destination = Mockito.mock(Path.class);
-        Mockito.when(recordingsPath.resolve(Mockito.anyString())).thenReturn(destination);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
 
         String saveName =
                 recordingArchiveHelper.saveRecording(
@@ -315,7 +351,7 @@ class RecordingArchiveHelperTest {
         MatcherAssert.assertThat(
                 saveName,
                 Matchers.equalTo("some-hostname-local_someRecording_" + timestamp + ".jfr"));
-        Mockito.verify(fs).copy(Mockito.eq(stream), Mockito.eq(destination));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
     }
 
     @Test
@@ -368,10 +404,11 @@ class RecordingArchiveHelperTest {
         Instant now = Instant.now();
         Mockito.when(clock.now()).thenReturn(now);
         Mockito.when(fs.exists(Mockito.any())).thenReturn(false);
-        InputStream stream = Mockito.mock(InputStream.class);
-        Mockito.when(service.openStream(descriptor, false)).thenReturn(stream);
-        Path destination = Mockito.mock(Path.class);
-        Mockito.when(recordingsPath.resolve(Mockito.anyString())).thenReturn(destination);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
 
         String saveName =
                 recordingArchiveHelper.saveRecording(
@@ -380,7 +417,7 @@ class RecordingArchiveHelperTest {
         String timestamp = now.truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
         MatcherAssert.assertThat(
                 saveName, Matchers.equalTo("some-Alias-2_someRecording_" + timestamp + ".jfr"));
-        Mockito.verify(fs).copy(Mockito.eq(stream), Mockito.eq(destination));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
     }
 
     @Test
@@ -432,10 +469,11 @@ class RecordingArchiveHelperTest {
         Instant now = Instant.now();
         Mockito.when(clock.now()).thenReturn(now);
         Mockito.when(fs.exists(Mockito.any())).thenReturn(true).thenReturn(false);
-        InputStream stream = Mockito.mock(InputStream.class);
-        Mockito.when(service.openStream(descriptor, false)).thenReturn(stream);
-        Path destination = Mockito.mock(Path.class);
-        Mockito.when(recordingsPath.resolve(Mockito.anyString())).thenReturn(destination);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
 
         String saveName =
                 recordingArchiveHelper.saveRecording(
@@ -444,7 +482,132 @@ class RecordingArchiveHelperTest {
         String timestamp = now.truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
         MatcherAssert.assertThat(
                 saveName, Matchers.equalTo("some-Alias-2_someRecording_" + timestamp + ".1.jfr"));
-        Mockito.verify(fs).copy(Mockito.eq(stream), Mockito.eq(destination));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
+    }
+
+    @Test
+    void saveRecordingAsyncShouldTransferOnArchivalExecutor() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        RecordingArchiveHelper asyncHelper =
+                new RecordingArchiveHelper(
+                        fs,
+                        new LocalArchiveStorage(fs, archiveDir),
+                        targetConnectionManager,
+                        clock,
+                        platformClient,
+                        reportService,
+                        new Gson(),
+                        manifestsPath,
+                        catalog,
+                        new ArchiveCodec(ArchiveCodec.Compression.NONE),
+                        chunkStore,
+                        notificationFactory,
+                        queued::add);
+        IRecordingDescriptor descriptor = mockConnectedRecordings(recordingName).get(0);
+        byte[] content = new byte[] {1, 2, 3};
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(content));
+
+        CompletableFuture<String> save =
+                asyncHelper.saveRecordingAsync(new ConnectionDescriptor(targetId), recordingName);
+
+        MatcherAssert.assertThat(save.isDone(), Matchers.equalTo(false));
+        Mockito.verify(service, Mockito.never()).openStream(descriptor, false);
+        MatcherAssert.assertThat(queued, Matchers.hasSize(1));
+
+        queued.get(0).run();
+
+        String saveName = save.get();
+        MatcherAssert.assertThat(
+                saveName, Matchers.startsWith("some-hostname-local_someRecording_"));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(archiveDir.resolve(saveName)));
+        Mockito.verify(catalog).refresh(saveName);
+    }
+
+    @Test
+    void saveAllRecordingsShouldArchiveEachRecordingUnderItsOwnName() throws Exception {
+        List<IRecordingDescriptor> descriptors = mockConnectedRecordings("foo", "bar");
+        Mockito.when(service.openStream(descriptors.get(0), false))
+                .thenReturn(new ByteArrayInputStream(new byte[] {1}));
+        Mockito.when(service.openStream(descriptors.get(1), false))
+                .thenReturn(new ByteArrayInputStream(new byte[] {2}));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
+
+        Map<String, CompletableFuture<String>> saves =
+                recordingArchiveHelper.saveAllRecordings(new ConnectionDescriptor(targetId));
+
+        MatcherAssert.assertThat(saves.keySet(), Matchers.contains("foo", "bar"));
+        String foo = saves.get("foo").get();
+        String bar = saves.get("bar").get();
+        MatcherAssert.assertThat(foo, Matchers.startsWith("some-hostname-local_foo_"));
+        MatcherAssert.assertThat(bar, Matchers.startsWith("some-hostname-local_bar_"));
+        Assertions.assertArrayEquals(new byte[] {1}, Files.readAllBytes(archiveDir.resolve(foo)));
+        Assertions.assertArrayEquals(new byte[] {2}, Files.readAllBytes(archiveDir.resolve(bar)));
+    }
+
+    @Test
+    void concurrentSavesOfOneRecordingShouldNotShareAName() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        RecordingArchiveHelper asyncHelper =
+                new RecordingArchiveHelper(
+                        fs,
+                        new LocalArchiveStorage(fs, archiveDir),
+                        targetConnectionManager,
+                        clock,
+                        platformClient,
+                        reportService,
+                        new Gson(),
+                        manifestsPath,
+                        catalog,
+                        new ArchiveCodec(ArchiveCodec.Compression.NONE),
+                        chunkStore,
+                        notificationFactory,
+                        queued::add);
+        IRecordingDescriptor descriptor = mockConnectedRecordings(recordingName).get(0);
+        Mockito.when(service.openStream(descriptor, false))
+                .thenAnswer(invocation -> new ByteArrayInputStream(new byte[] {1}));
+
+        ConnectionDescriptor connectionDescriptor = new ConnectionDescriptor(targetId);
+        CompletableFuture<String> first =
+                asyncHelper.saveRecordingAsync(connectionDescriptor, recordingName);
+        CompletableFuture<String> second =
+                asyncHelper.saveRecordingAsync(connectionDescriptor, recordingName);
+        queued.forEach(Runnable::run);
+
+        MatcherAssert.assertThat(second.get(), Matchers.not(Matchers.equalTo(first.get())));
+        MatcherAssert.assertThat(second.get(), Matchers.endsWith(".1.jfr"));
+        MatcherAssert.assertThat(Files.exists(archiveDir.resolve(first.get())), Matchers.is(true));
+        MatcherAssert.assertThat(Files.exists(archiveDir.resolve(second.get())), Matchers.is(true));
+    }
+
+    @Test
+    void shouldReportProgressOfLongTransfers() throws Exception {
+        Notification.Builder builder = Mockito.mock(Notification.Builder.class);
+        Notification notification = Mockito.mock(Notification.class);
+        Mockito.when(notificationFactory.createBuilder()).thenReturn(builder);
+        Mockito.when(builder.metaCategory(Mockito.any())).thenReturn(builder);
+        Mockito.when(builder.metaType(Mockito.any(HttpMimeType.class))).thenReturn(builder);
+        Mockito.when(builder.targetId(Mockito.any())).thenReturn(builder);
+        Mockito.when(builder.message(Mockito.any())).thenReturn(builder);
+        Mockito.when(builder.build()).thenReturn(notification);
+        IRecordingDescriptor descriptor = mockConnectedRecordings(recordingName).get(0);
+        int length = (int) (2 * RecordingArchiveHelper.PROGRESS_INTERVAL_BYTES + 1);
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(new byte[length]));
+        Mockito.when(recordingsPath.resolve(Mockito.anyString()))
+                .thenAnswer(invocation -> archiveDir.resolve((String) invocation.getArgument(0)));
+
+        ConnectionDescriptor connectionDescriptor = new ConnectionDescriptor(targetId);
+        String saveName = recordingArchiveHelper.saveRecording(connectionDescriptor, recordingName);
+
+        MatcherAssert.assertThat(
+                Files.size(archiveDir.resolve(saveName)), Matchers.equalTo((long) length));
+        Mockito.verify(targetConnectionManager, Mockito.times(2))
+                .markConnectionInUse(connectionDescriptor);
+        Mockito.verify(builder, Mockito.times(2))
+                .metaCategory(RecordingArchiveHelper.PROGRESS_NOTIFICATION_CATEGORY);
+        Mockito.verify(notification, Mockito.times(2)).send();
     }
 
     @Test
@@ -503,6 +666,35 @@ class RecordingArchiveHelperTest {
                 () -> recordingArchiveHelper.deleteRecording(connectionDescriptor, recordingName));
     }
 
+    @Test
+    void deleteArchivedRecordingShouldDeleteFileAndReport() throws Exception {
+        Path destination = Mockito.mock(Path.class);
+        Mockito.when(recordingsPath.resolve(recordingName)).thenReturn(destination);
+
+        Mockito.when(chunkStore.delete(destination)).thenReturn(true);
+
+        MatcherAssert.assertThat(
+                recordingArchiveHelper.deleteArchivedRecording(recordingName),
+                Matchers.equalTo(true));
+
+        Mockito.verify(chunkStore).delete(destination);
+        Mockito.verify(reportService).delete(recordingName);
+        Mockito.verify(catalog).remove(recordingName);
+    }
+
+    @Test
+    void deleteArchivedRecordingShouldReportAlreadyDeletedArchive() throws Exception {
+        Path destination = Mockito.mock(Path.class);
+        Mockito.when(recordingsPath.resolve(recordingName)).thenReturn(destination);
+        Mockito.when(chunkStore.delete(destination)).thenReturn(false);
+
+        MatcherAssert.assertThat(
+                recordingArchiveHelper.deleteArchivedRecording(recordingName),
+                Matchers.equalTo(false));
+
+        Mockito.verify(catalog).remove(recordingName);
+    }
+
     private static IRecordingDescriptor createDescriptor(String name)
             throws QuantityConversionException {
         IQuantity zeroQuantity = Mockito.mock(IQuantity.class);
@@ -520,4 +712,350 @@ class RecordingArchiveHelperTest {
         Mockito.lenient().when(descriptor.getMaxAge()).thenReturn(zeroQuantity);
         return descriptor;
     }
+
+    @ParameterizedTest
+    @EnumSource(ArchiveCodec.Compression.class)
+    void shouldArchiveOnlyNewChunksDifferentially(
+            ArchiveCodec.Compression compression, @TempDir Path tempDir) throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        RecordingArchiveHelper differentialHelper =
+                differentialHelper(compression, archives, tempDir);
+        byte[] first = JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1);
+        byte[] second = JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2);
+        byte[] third = JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3);
+        String[] names = archiveDifferentially(differentialHelper, first, second, third);
+        String full = names[0];
+        String delta = names[1];
+        Optional<String> unchanged =
+                differentialHelper.saveRecordingDifferential(
+                        new ConnectionDescriptor(targetId),
+                        recordingName,
+                        Optional.of(delta),
+                        Duration.ZERO);
+
+        Assertions.assertArrayEquals(
+                JfrChunkReaderTest.concat(first, second), readArchive(archives.resolve(full)));
+        Assertions.assertArrayEquals(third, readArchive(archives.resolve(delta)));
+        MatcherAssert.assertThat(
+                ArchiveCodec.isCompressed(archives.resolve(delta)),
+                Matchers.equalTo(compression == ArchiveCodec.Compression.GZIP));
+        MatcherAssert.assertThat(unchanged.isPresent(), Matchers.equalTo(false));
+        MatcherAssert.assertThat(
+                differentialHelper.getManifest(delta).isPresent(), Matchers.equalTo(true));
+
+        Path materialised = tempDir.resolve("materialised.jfr");
+        differentialHelper.materialiseArchive(delta, materialised);
+        Assertions.assertArrayEquals(
+                JfrChunkReaderTest.concat(first, second, third), Files.readAllBytes(materialised));
+        try (InputStream stream = differentialHelper.openArchive(delta)) {
+            Assertions.assertArrayEquals(
+                    JfrChunkReaderTest.concat(first, second, third), stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void shouldKeepPiecesListedByNewerDifferentialArchives(@TempDir Path tempDir)
+            throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        RecordingArchiveHelper differentialHelper =
+                differentialHelper(ArchiveCodec.Compression.GZIP, archives, tempDir);
+        byte[] first = JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1);
+        byte[] second = JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2);
+        byte[] third = JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3);
+        String[] names = archiveDifferentially(differentialHelper, first, second, third);
+        String full = names[0];
+        String delta = names[1];
+        String digest = differentialHelper.getManifest(delta).get().getDigest();
+
+        MatcherAssert.assertThat(
+                differentialHelper.deleteArchivedRecording(full), Matchers.equalTo(true));
+
+        MatcherAssert.assertThat(Files.exists(archives.resolve(full)), Matchers.equalTo(false));
+        Mockito.verify(catalog).remove(full);
+        MatcherAssert.assertThat(
+                differentialHelper.getManifest(delta).get().getDigest(), Matchers.equalTo(digest));
+        Path materialised = tempDir.resolve("materialised.jfr");
+        differentialHelper.materialiseArchive(delta, materialised);
+        Assertions.assertArrayEquals(
+                JfrChunkReaderTest.concat(first, second, third), Files.readAllBytes(materialised));
+
+        MatcherAssert.assertThat(
+                differentialHelper.deleteArchivedRecording(delta), Matchers.equalTo(true));
+
+        try (Stream<Path> remaining = Files.list(archives)) {
+            MatcherAssert.assertThat(
+                    remaining.collect(Collectors.toList()), Matchers.equalTo(List.of()));
+        }
+    }
+
+    @Test
+    void storedPartsOfDifferentialArchiveShouldIncludeHiddenPieces(@TempDir Path tempDir)
+            throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        RecordingArchiveHelper differentialHelper =
+                differentialHelper(ArchiveCodec.Compression.GZIP, archives, tempDir);
+        String[] names =
+                archiveDifferentially(
+                        differentialHelper,
+                        JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1),
+                        JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2),
+                        JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3));
+        differentialHelper.deleteArchivedRecording(names[0]);
+        String hidden = ArchiveCatalog.HIDDEN_PREFIX + names[0];
+        long deltaSize = Files.size(archives.resolve(names[1]));
+
+        Map<String, Long> parts =
+                differentialHelper.getStoredParts(
+                        new ArchiveCatalog.Entry(names[1], deltaSize, 0, null, null));
+
+        MatcherAssert.assertThat(
+                parts,
+                Matchers.equalTo(
+                        Map.of(
+                                hidden,
+                                Files.size(archives.resolve(hidden)),
+                                names[1],
+                                deltaSize)));
+    }
+
+    @Test
+    void shouldKeepPiecesListedByManifestsWrittenBeforeRestart(@TempDir Path tempDir)
+            throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        RecordingArchiveHelper differentialHelper =
+                differentialHelper(ArchiveCodec.Compression.GZIP, archives, tempDir);
+        byte[] first = JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1);
+        byte[] second = JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2);
+        byte[] third = JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3);
+        String[] names = archiveDifferentially(differentialHelper, first, second, third);
+        RecordingArchiveHelper restarted =
+                restartedHelper(
+                        ArchiveCodec.Compression.GZIP, archives, tempDir.resolve("manifests"));
+
+        MatcherAssert.assertThat(
+                restarted.deleteArchivedRecording(names[0]), Matchers.equalTo(true));
+
+        MatcherAssert.assertThat(
+                Files.exists(archives.resolve(ArchiveCatalog.HIDDEN_PREFIX + names[0])),
+                Matchers.equalTo(true));
+        Path materialised = tempDir.resolve("materialised.jfr");
+        restarted.materialiseArchive(names[1], materialised);
+        Assertions.assertArrayEquals(
+                JfrChunkReaderTest.concat(first, second, third), Files.readAllBytes(materialised));
+    }
+
+    @Test
+    void shouldFailToMaterialiseArchiveWithMissingPiece(@TempDir Path tempDir) throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        RecordingArchiveHelper differentialHelper =
+                differentialHelper(ArchiveCodec.Compression.GZIP, archives, tempDir);
+        String[] names =
+                archiveDifferentially(
+                        differentialHelper,
+                        JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1),
+                        JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2),
+                        JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3));
+        Files.delete(archives.resolve(names[0]));
+
+        Path materialised = tempDir.resolve("materialised.jfr");
+        Assertions.assertThrows(
+                NoSuchFileException.class,
+                () -> differentialHelper.materialiseArchive(names[1], materialised));
+        MatcherAssert.assertThat(Files.exists(materialised), Matchers.equalTo(false));
+    }
+
+    private RecordingArchiveHelper differentialHelper(
+            ArchiveCodec.Compression compression, Path archives, Path tempDir)
+            throws IOException {
+        return restartedHelper(
+                compression, archives, Files.createDirectory(tempDir.resolve("manifests")));
+    }
+
+    private RecordingArchiveHelper restartedHelper(
+            ArchiveCodec.Compression compression, Path archives, Path manifests) {
+        return new RecordingArchiveHelper(
+                new FileSystem(),
+                new LocalArchiveStorage(new FileSystem(), archives),
+                targetConnectionManager,
+                clock,
+                platformClient,
+                reportService,
+                new Gson(),
+                manifests,
+                catalog,
+                new ArchiveCodec(compression),
+                new ArchiveChunkStore(
+                        archives, new ArchiveCodec(compression), false, Mockito.mock(Logger.class)),
+                notificationFactory,
+                Runnable::run);
+    }
+
+    /**
+     * Take a full archive of the first two chunks, then a differential one while the target
+     * serves the last two.
+     *
+     * @return the names of the full and the differential archive
+     */
+    private String[] archiveDifferentially(
+            RecordingArchiveHelper differentialHelper, byte[] first, byte[] second, byte[] third)
+            throws Exception {
+        Mockito.when(
+                        targetConnectionManager.executeConnectedTask(
+                                Mockito.any(),
+                                Mockito.any(TargetConnectionManager.ConnectedTask.class)))
+                .thenAnswer(
+                        new Answer<>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) throws Throwable {
+                                TargetConnectionManager.ConnectedTask task =
+                                        (TargetConnectionManager.ConnectedTask)
+                                                invocation.getArgument(1);
+                                return task.execute(connection);
+                            }
+                        });
+        Mockito.when(connection.getService()).thenReturn(service);
+        IRecordingDescriptor descriptor = Mockito.mock(IRecordingDescriptor.class);
+        Mockito.when(descriptor.getName()).thenReturn(recordingName);
+        Mockito.when(service.getAvailableRecordings()).thenReturn(List.of(descriptor));
+        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of());
+        Mockito.when(connection.getHost()).thenReturn("some-hostname.local");
+        Instant now = Instant.now();
+        Mockito.when(clock.now())
+                .thenReturn(now, now.plusSeconds(10), now.plusSeconds(10), now.plusSeconds(20));
+
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(new ByteArrayInputStream(JfrChunkReaderTest.concat(first, second)));
+        Mockito.when(
+                        service.openStream(
+                                Mockito.eq(descriptor),
+                                Mockito.any(IQuantity.class),
+                                Mockito.any(IQuantity.class),
+                                Mockito.eq(false)))
+                .thenAnswer(
+                        invocation ->
+                                new ByteArrayInputStream(
+                                        JfrChunkReaderTest.concat(second, third)));
+
+        ConnectionDescriptor connectionDescriptor = new ConnectionDescriptor(targetId);
+        String full =
+                differentialHelper
+                        .saveRecordingDifferential(
+                                connectionDescriptor,
+                                recordingName,
+                                Optional.empty(),
+                                Duration.ZERO)
+                        .get();
+        String delta =
+                differentialHelper
+                        .saveRecordingDifferential(
+                                connectionDescriptor,
+                                recordingName,
+                                Optional.of(full),
+                                Duration.ZERO)
+                        .get();
+        return new String[] {full, delta};
+    }
+
+    @Test
+    void shouldShareChunksBetweenDeduplicatedArchives(@TempDir Path tempDir) throws Exception {
+        Path archives = Files.createDirectory(tempDir.resolve("archives"));
+        ArchiveCodec codec = new ArchiveCodec(ArchiveCodec.Compression.GZIP);
+        ArchiveChunkStore store =
+                new ArchiveChunkStore(archives, codec, true, Mockito.mock(Logger.class));
+        RecordingArchiveHelper dedupHelper =
+                new RecordingArchiveHelper(
+                        new FileSystem(),
+                        new LocalArchiveStorage(new FileSystem(), archives),
+                        targetConnectionManager,
+                        clock,
+                        platformClient,
+                        reportService,
+                        new Gson(),
+                        tempDir,
+                        catalog,
+                        codec,
+                        store,
+                        notificationFactory,
+                        Runnable::run);
+        Mockito.when(
+                        targetConnectionManager.executeConnectedTask(
+                                Mockito.any(),
+                                Mockito.any(TargetConnectionManager.ConnectedTask.class)))
+                .thenAnswer(
+                        new Answer<>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) throws Throwable {
+                                TargetConnectionManager.ConnectedTask task =
+                                        (TargetConnectionManager.ConnectedTask)
+                                                invocation.getArgument(1);
+                                return task.execute(connection);
+                            }
+                        });
+        Mockito.when(connection.getService()).thenReturn(service);
+        IRecordingDescriptor descriptor = Mockito.mock(IRecordingDescriptor.class);
+        Mockito.when(descriptor.getName()).thenReturn(recordingName);
+        Mockito.when(service.getAvailableRecordings()).thenReturn(List.of(descriptor));
+        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of());
+        Mockito.when(connection.getHost()).thenReturn("some-hostname.local");
+        Mockito.when(clock.now()).thenReturn(Instant.now());
+
+        byte[] first = JfrChunkReaderTest.chunk(1_000, 1_000, (byte) 1);
+        byte[] second = JfrChunkReaderTest.chunk(2_000, 1_000, (byte) 2);
+        byte[] third = JfrChunkReaderTest.chunk(3_000, 1_000, (byte) 3);
+        Mockito.when(service.openStream(descriptor, false))
+                .thenReturn(
+                        new ByteArrayInputStream(JfrChunkReaderTest.concat(first, second)),
+                        new ByteArrayInputStream(JfrChunkReaderTest.concat(first, second, third)));
+
+        ConnectionDescriptor connectionDescriptor = new ConnectionDescriptor(targetId);
+        String older = dedupHelper.saveRecording(connectionDescriptor, recordingName);
+        String newer = dedupHelper.saveRecording(connectionDescriptor, recordingName);
+
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(3));
+        MatcherAssert.assertThat(
+                ArchiveChunkStore.isChunked(archives.resolve(newer)), Matchers.equalTo(true));
+        try (InputStream stream = ArchiveChunkStore.openArchive(archives.resolve(newer))) {
+            Assertions.assertArrayEquals(
+                    JfrChunkReaderTest.concat(first, second, third), stream.readAllBytes());
+        }
+
+        dedupHelper.deleteArchivedRecording(older);
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(3));
+        try (InputStream stream = ArchiveChunkStore.openArchive(archives.resolve(newer))) {
+            Assertions.assertArrayEquals(
+                    JfrChunkReaderTest.concat(first, second, third), stream.readAllBytes());
+        }
+
+        dedupHelper.deleteArchivedRecording(newer);
+        MatcherAssert.assertThat(store.size(), Matchers.equalTo(0));
+    }
+
+    private List<IRecordingDescriptor> mockConnectedRecordings(String... names) throws Exception {
+        Mockito.when(
+                        targetConnectionManager.executeConnectedTask(
+                                Mockito.any(),
+                                Mockito.any(TargetConnectionManager.ConnectedTask.class)))
+                .thenAnswer(
+                        invocation ->
+                                ((TargetConnectionManager.ConnectedTask) invocation.getArgument(1))
+                                        .execute(connection));
+        Mockito.when(connection.getService()).thenReturn(service);
+        Mockito.when(connection.getHost()).thenReturn("some-hostname.local");
+        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of());
+        Mockito.when(clock.now()).thenReturn(Instant.now());
+        List<IRecordingDescriptor> descriptors = new ArrayList<>();
+        for (String name : names) {
+            IRecordingDescriptor descriptor = Mockito.mock(IRecordingDescriptor.class);
+            Mockito.when(descriptor.getName()).thenReturn(name);
+            descriptors.add(descriptor);
+        }
+        Mockito.when(service.getAvailableRecordings()).thenReturn(descriptors);
+        return descriptors;
+    }
+
+    private static byte[] readArchive(Path path) throws IOException {
+        try (InputStream stream = ArchiveCodec.decode(Files.newInputStream(path))) {
+            return stream.readAllBytes();
+        }
+    }
 }
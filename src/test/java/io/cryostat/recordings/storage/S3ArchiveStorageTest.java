@@ -0,0 +1,342 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.recordings.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class S3ArchiveStorageTest {
+
+    static final String BUCKET = "archives";
+    static final String PREFIX = "cryostat/";
+    static final int PART_SIZE = 16;
+
+    FakeS3 s3;
+    S3ArchiveStorage storage;
+
+    @BeforeEach
+    void setup() throws IOException {
+        s3 = new FakeS3();
+        storage =
+                new S3ArchiveStorage(
+                        HttpClient.newHttpClient(),
+                        URI.create("http://localhost:" + s3.server.getAddress().getPort()),
+                        BUCKET,
+                        PREFIX,
+                        new S3RequestSigner("access", "secret", "us-east-1"),
+                        PART_SIZE);
+    }
+
+    @AfterEach
+    void teardown() {
+        s3.server.stop(0);
+    }
+
+    @Test
+    void shouldPutSmallArchivesInOneRequest() throws IOException {
+        byte[] content = bytes(10);
+
+        storage.write("small.jfr", new ByteArrayInputStream(content));
+
+        Assertions.assertArrayEquals(content, s3.objects.get(PREFIX + "small.jfr"));
+        MatcherAssert.assertThat(s3.completedUploads, Matchers.equalTo(0));
+        MatcherAssert.assertThat(
+                s3.authorizations,
+                Matchers.everyItem(Matchers.startsWith(S3RequestSigner.ALGORITHM)));
+    }
+
+    @Test
+    void shouldStreamLargeArchivesAsMultipartUpload() throws IOException {
+        byte[] content = bytes(PART_SIZE * 3 + 5);
+
+        storage.write("large.jfr", new ByteArrayInputStream(content));
+
+        Assertions.assertArrayEquals(content, s3.objects.get(PREFIX + "large.jfr"));
+        MatcherAssert.assertThat(s3.completedUploads, Matchers.equalTo(1));
+        MatcherAssert.assertThat(s3.maxPartSize, Matchers.equalTo(PART_SIZE));
+        MatcherAssert.assertThat(s3.uploads.isEmpty(), Matchers.is(true));
+    }
+
+    @Test
+    void shouldAbortMultipartUploadIfStreamFails() {
+        InputStream failing =
+                new InputStream() {
+                    int read;
+
+                    @Override
+                    public int read() throws IOException {
+                        if (read++ > PART_SIZE * 2) {
+                            throw new IOException("connection reset");
+                        }
+                        return 1;
+                    }
+                };
+
+        Assertions.assertThrows(IOException.class, () -> storage.write("broken.jfr", failing));
+
+        MatcherAssert.assertThat(s3.objects.containsKey(PREFIX + "broken.jfr"), Matchers.is(false));
+        MatcherAssert.assertThat(s3.uploads.isEmpty(), Matchers.is(true));
+    }
+
+    @Test
+    void shouldNotOverwriteExistingArchive() throws IOException {
+        storage.write("a.jfr", new ByteArrayInputStream(bytes(4)));
+
+        Assertions.assertThrows(
+                FileAlreadyExistsException.class,
+                () -> storage.write("a.jfr", new ByteArrayInputStream(bytes(8))));
+    }
+
+    @Test
+    void shouldReadWholeAndRanges() throws IOException {
+        byte[] content = bytes(100);
+        storage.write("a.jfr", new ByteArrayInputStream(content));
+
+        try (InputStream stream = storage.open("a.jfr")) {
+            Assertions.assertArrayEquals(content, stream.readAllBytes());
+        }
+        try (InputStream stream = storage.open("a.jfr", 10, 20)) {
+            Assertions.assertArrayEquals(
+                    Arrays.copyOfRange(content, 10, 30), stream.readAllBytes());
+        }
+        Assertions.assertThrows(NoSuchFileException.class, () -> storage.open("missing.jfr"));
+    }
+
+    @Test
+    void shouldStatListAndDelete() throws IOException {
+        storage.write("a.jfr", new ByteArrayInputStream(bytes(3)));
+        storage.write("b.jfr", new ByteArrayInputStream(bytes(5)));
+        storage.write("c.jfr", new ByteArrayInputStream(bytes(7)));
+        s3.objects.put(PREFIX + "nested/d.jfr", bytes(1));
+        s3.objects.put("elsewhere.jfr", bytes(1));
+
+        MatcherAssert.assertThat(storage.stat("b.jfr").get().getSize(), Matchers.equalTo(5L));
+        MatcherAssert.assertThat(storage.stat("missing.jfr"), Matchers.equalTo(Optional.empty()));
+        MatcherAssert.assertThat(
+                storage.list().stream().map(ArchiveObject::getName).collect(Collectors.toList()),
+                Matchers.contains("a.jfr", "b.jfr", "c.jfr"));
+
+        storage.delete("b.jfr");
+        storage.delete("missing.jfr");
+
+        MatcherAssert.assertThat(storage.exists("b.jfr"), Matchers.is(false));
+        MatcherAssert.assertThat(storage.exists("a.jfr"), Matchers.is(true));
+    }
+
+    static byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; i++) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    /** Just enough of the S3 API, with pages of two keys to exercise listing continuation. */
+    static class FakeS3 {
+        final HttpServer server;
+        final Map<String, byte[]> objects = new TreeMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        final List<String> authorizations = new ArrayList<>();
+        int completedUploads;
+        int maxPartSize;
+        int nextUpload;
+
+        FakeS3() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/" + BUCKET, this::handle);
+            server.start();
+        }
+
+        synchronized void handle(HttpExchange exchange) throws IOException {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String key =
+                    path.length() > BUCKET.length() + 2
+                            ? path.substring(BUCKET.length() + 2)
+                            : null;
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            boolean ifNoneMatch =
+                    "*".equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+
+            if (key == null) {
+                list(exchange, query);
+            } else if ("POST".equals(method) && query.containsKey("uploads")) {
+                String id = "upload-" + nextUpload++;
+                uploads.put(id, new TreeMap<>());
+                respond(
+                        exchange,
+                        200,
+                        "<InitiateMultipartUploadResult><UploadId>"
+                                + id
+                                + "</UploadId></InitiateMultipartUploadResult>");
+            } else if ("PUT".equals(method) && query.containsKey("partNumber")) {
+                int part = Integer.parseInt(query.get("partNumber"));
+                uploads.get(query.get("uploadId")).put(part, body);
+                maxPartSize = Math.max(maxPartSize, body.length);
+                exchange.getResponseHeaders().add("ETag", "\"etag-" + part + "\"");
+                respond(exchange, 200, "");
+            } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                if (ifNoneMatch && objects.containsKey(key)) {
+                    respond(exchange, 412, "");
+                    return;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                parts.values().forEach(out::writeBytes);
+                objects.put(key, out.toByteArray());
+                completedUploads++;
+                respond(exchange, 200, "<CompleteMultipartUploadResult/>");
+            } else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                respond(exchange, 204, null);
+            } else if ("PUT".equals(method)) {
+                if (ifNoneMatch && objects.containsKey(key)) {
+                    respond(exchange, 412, "");
+                    return;
+                }
+                objects.put(key, body);
+                respond(exchange, 200, "");
+            } else if ("DELETE".equals(method)) {
+                objects.remove(key);
+                respond(exchange, 204, null);
+            } else if (!objects.containsKey(key)) {
+                respond(exchange, 404, "HEAD".equals(method) ? null : "<Error/>");
+            } else if ("HEAD".equals(method)) {
+                exchange.getResponseHeaders().add("Last-Modified", "Wed, 01 Sep 2021 12:00:00 GMT");
+                exchange.getResponseHeaders()
+                        .add("Content-Length", String.valueOf(objects.get(key).length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            } else {
+                byte[] content = objects.get(key);
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                int status = 200;
+                if (range != null) {
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    int start = Integer.parseInt(bounds[0]);
+                    int end = Integer.parseInt(bounds[1]);
+                    content = Arrays.copyOfRange(content, start, end + 1);
+                    status = 206;
+                }
+                exchange.sendResponseHeaders(status, content.length);
+                exchange.getResponseBody().write(content);
+                exchange.close();
+            }
+        }
+
+        void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+            String prefix = query.getOrDefault("prefix", "");
+            List<String> keys =
+                    objects.keySet().stream()
+                            .filter(k -> k.startsWith(prefix))
+                            .collect(Collectors.toList());
+            int start = Integer.parseInt(query.getOrDefault("continuation-token", "0"));
+            int end = Math.min(keys.size(), start + 2);
+            StringBuilder xml = new StringBuilder("<ListBucketResult>");
+            for (String key : keys.subList(start, end)) {
+                xml.append("<Contents><Key>")
+                        .append(key)
+                        .append("</Key><Size>")
+                        .append(objects.get(key).length)
+                        .append("</Size><LastModified>2021-09-01T12:00:00.000Z</LastModified>")
+                        .append("</Contents>");
+            }
+            xml.append("<IsTruncated>").append(end < keys.size()).append("</IsTruncated>");
+            if (end < keys.size()) {
+                xml.append("<NextContinuationToken>")
+                        .append(end)
+                        .append("</NextContinuationToken>");
+            }
+            respond(exchange, 200, xml.append("</ListBucketResult>").toString());
+        }
+
+        static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            if (body == null || body.isEmpty()) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+            exchange.close();
+        }
+
+        static Map<String, String> query(String raw) {
+            Map<String, String> query = new HashMap<>();
+            if (raw == null) {
+                return query;
+            }
+            for (String param : raw.split("&")) {
+                String[] kv = param.split("=", 2);
+                query.put(
+                        URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                        kv.length > 1 ? URLDecoder.decode(kv[1], StandardCharsets.UTF_8) : "");
+            }
+            return query;
+        }
+    }
+}
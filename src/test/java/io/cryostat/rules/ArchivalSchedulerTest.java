@@ -0,0 +1,257 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.platform.ServiceRef;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchivalSchedulerTest {
+
+    ArchivalScheduler scheduler;
+    @Mock ScheduledExecutorService timer;
+    @Mock ScheduledFuture trigger;
+    @Mock Logger logger;
+    List<Runnable> submitted;
+    AtomicInteger runs;
+    Rule rule;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.submitted = new ArrayList<>();
+        this.runs = new AtomicInteger();
+        this.scheduler = new ArchivalScheduler(timer, submitted::add, 2, 1, logger);
+        this.rule =
+                new Rule.Builder()
+                        .name("Test Rule")
+                        .matchExpression("true")
+                        .eventSpecifier("template=Continuous")
+                        .archivalPeriodSeconds(60)
+                        .build();
+        Mockito.lenient()
+                .when(
+                        timer.scheduleAtFixedRate(
+                                Mockito.any(Runnable.class),
+                                Mockito.anyLong(),
+                                Mockito.anyLong(),
+                                Mockito.any(TimeUnit.class)))
+                .thenReturn(trigger);
+    }
+
+    ServiceRef serviceRef(String host, int port) throws Exception {
+        ServiceRef ref =
+                new ServiceRef(
+                        new URI(
+                                String.format(
+                                        "service:jmx:rmi:///jndi/rmi://%s:%d/jmxrmi", host, port)),
+                        host + ":" + port);
+        ref.setCryostatAnnotations(Map.of(ServiceRef.AnnotationKey.HOST, host));
+        return ref;
+    }
+
+    Runnable scheduleAndCaptureTrigger(ServiceRef serviceRef) {
+        scheduler.schedule(serviceRef, rule, runs::incrementAndGet);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(timer, Mockito.atLeastOnce())
+                .scheduleAtFixedRate(
+                        captor.capture(),
+                        Mockito.anyLong(),
+                        Mockito.anyLong(),
+                        Mockito.any(TimeUnit.class));
+        return captor.getValue();
+    }
+
+    @Test
+    void testJitterIsDeterministicAndWithinPeriod() throws Exception {
+        long period = TimeUnit.SECONDS.toMillis(60);
+        for (int i = 0; i < 100; i++) {
+            ServiceRef ref = serviceRef("host", 9000 + i);
+            long jitter = ArchivalScheduler.jitter(ref, rule, period);
+            MatcherAssert.assertThat(jitter, Matchers.greaterThanOrEqualTo(0L));
+            MatcherAssert.assertThat(jitter, Matchers.lessThan(period));
+            MatcherAssert.assertThat(
+                    ArchivalScheduler.jitter(serviceRef("host", 9000 + i), rule, period),
+                    Matchers.equalTo(jitter));
+        }
+    }
+
+    @Test
+    void testJitterSpreadsSimilarTargets() throws Exception {
+        long period = TimeUnit.SECONDS.toMillis(60);
+        long a = ArchivalScheduler.jitter(serviceRef("host", 9091), rule, period);
+        long b = ArchivalScheduler.jitter(serviceRef("host", 9092), rule, period);
+        MatcherAssert.assertThat(Math.abs(a - b), Matchers.greaterThan(1000L));
+    }
+
+    @Test
+    void testScheduleUsesPeriodPlusJitter() throws Exception {
+        ServiceRef ref = serviceRef("host", 9091);
+        long period = TimeUnit.SECONDS.toMillis(60);
+        long jitter = ArchivalScheduler.jitter(ref, rule, period);
+
+        scheduleAndCaptureTrigger(ref);
+
+        Mockito.verify(timer)
+                .scheduleAtFixedRate(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(period + jitter),
+                        Mockito.eq(period),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testPerNodeConcurrencyIsLimited() throws Exception {
+        Runnable first = scheduleAndCaptureTrigger(serviceRef("nodeA", 9091));
+        Runnable second = scheduleAndCaptureTrigger(serviceRef("nodeA", 9092));
+
+        first.run();
+        second.run();
+
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(1));
+        MatcherAssert.assertThat(scheduler.getMetrics().getQueued(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(scheduler.getMetrics().getRunning(), Matchers.equalTo(1));
+
+        submitted.get(0).run();
+
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(2));
+        MatcherAssert.assertThat(scheduler.getMetrics().getQueued(), Matchers.equalTo(0));
+
+        submitted.get(1).run();
+
+        MatcherAssert.assertThat(runs.get(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(scheduler.getMetrics().getCompleted(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(scheduler.getMetrics().getRunning(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void testGlobalConcurrencyIsLimited() throws Exception {
+        Runnable first = scheduleAndCaptureTrigger(serviceRef("nodeA", 9091));
+        Runnable second = scheduleAndCaptureTrigger(serviceRef("nodeB", 9091));
+        Runnable third = scheduleAndCaptureTrigger(serviceRef("nodeC", 9091));
+
+        first.run();
+        second.run();
+        third.run();
+
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(2));
+        MatcherAssert.assertThat(scheduler.getMetrics().getQueued(), Matchers.equalTo(1));
+    }
+
+    @Test
+    void testPendingTriggerIsCoalesced() throws Exception {
+        Runnable first = scheduleAndCaptureTrigger(serviceRef("nodeA", 9091));
+
+        first.run();
+        first.run();
+
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(1));
+        MatcherAssert.assertThat(scheduler.getMetrics().getCoalesced(), Matchers.equalTo(1L));
+    }
+
+    @Test
+    void testCancelRemovesQueuedArchival() throws Exception {
+        Runnable first = scheduleAndCaptureTrigger(serviceRef("nodeA", 9091));
+        first.run();
+        Future<?> handle = scheduler.schedule(serviceRef("nodeA", 9092), rule, () -> {});
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(timer, Mockito.times(2))
+                .scheduleAtFixedRate(
+                        captor.capture(),
+                        Mockito.anyLong(),
+                        Mockito.anyLong(),
+                        Mockito.any(TimeUnit.class));
+        captor.getValue().run();
+        MatcherAssert.assertThat(scheduler.getMetrics().getQueued(), Matchers.equalTo(1));
+
+        handle.cancel(true);
+
+        Mockito.verify(trigger).cancel(false);
+        MatcherAssert.assertThat(scheduler.getMetrics().getQueued(), Matchers.equalTo(0));
+
+        submitted.get(0).run();
+
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(1));
+        MatcherAssert.assertThat(runs.get(), Matchers.equalTo(1));
+    }
+
+    @Test
+    void testCancelledArchivalIsNotRun() throws Exception {
+        Future<?> first =
+                scheduler.schedule(serviceRef("nodeA", 9091), rule, runs::incrementAndGet);
+        scheduler.schedule(serviceRef("nodeA", 9092), rule, runs::incrementAndGet);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(timer, Mockito.times(2))
+                .scheduleAtFixedRate(
+                        captor.capture(),
+                        Mockito.anyLong(),
+                        Mockito.anyLong(),
+                        Mockito.any(TimeUnit.class));
+        captor.getAllValues().get(0).run();
+        captor.getAllValues().get(1).run();
+
+        first.cancel(true);
+        submitted.get(0).run();
+
+        MatcherAssert.assertThat(runs.get(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(submitted, Matchers.hasSize(2));
+
+        submitted.get(1).run();
+
+        MatcherAssert.assertThat(runs.get(), Matchers.equalTo(1));
+    }
+}
@@ -38,6 +38,9 @@
 package io.cryostat.rules;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -66,6 +69,7 @@ class PeriodicArchiverTest {
     @Mock CredentialsManager credentialsManager;
     Rule rule;
     @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock RuleArchiveIndex archiveIndex;
     AtomicInteger failureCounter;
     @Mock Logger logger;
     @Mock Queue<String> previousRecordings;
@@ -91,6 +95,8 @@ class PeriodicArchiverTest {
                         credentialsManager,
                         rule,
                         recordingArchiveHelper,
+                        archiveIndex,
+                        false,
                         p -> {
                             failureCounter.incrementAndGet();
                             return null;
@@ -108,6 +114,7 @@ class PeriodicArchiverTest {
 
         Mockito.verify(credentialsManager).getCredentials(serviceRef);
         Mockito.verify(recordingArchiveHelper).saveRecording(Mockito.any(), Mockito.anyString());
+        Mockito.verify(archiveIndex).addArchive(serviceRef, rule, "someRecording.jfr");
     }
 
     @Test
@@ -141,9 +148,106 @@ class PeriodicArchiverTest {
         // get the archiver into a state where it is tracking a previously-archived recording
         testPerformArchival();
 
-        boolean result = archiver.pruneArchive(rule.getRecordingName() + "_1").get();
+        boolean result = archiver.pruneArchive("someRecording.jfr").get();
 
         Assertions.assertTrue(result);
-        Mockito.verify(recordingArchiveHelper).deleteRecording(Mockito.any(), Mockito.anyString());
+        Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("someRecording.jfr");
+        Mockito.verify(archiveIndex).removeArchive(serviceRef, rule, "someRecording.jfr");
+    }
+
+    @Test
+    void testPreviousArchivesAreRestoredFromIndex() throws Exception {
+        Mockito.when(archiveIndex.getArchives(serviceRef, rule))
+                .thenReturn(List.of("first.jfr", "second.jfr"));
+        Mockito.when(recordingArchiveHelper.saveRecording(Mockito.any(), Mockito.anyString()))
+                .thenReturn("third.jfr");
+        PeriodicArchiver restored =
+                new PeriodicArchiver(
+                        serviceRef,
+                        credentialsManager,
+                        rule,
+                        recordingArchiveHelper,
+                        archiveIndex,
+                        false,
+                        p -> {
+                            failureCounter.incrementAndGet();
+                            return null;
+                        },
+                        logger);
+
+        restored.run();
+
+        // preservedArchives is 2, so the oldest restored archive is pruned to make room
+        Mockito.verify(recordingArchiveHelper).deleteArchivedRecording("first.jfr");
+        Mockito.verify(recordingArchiveHelper, Mockito.never())
+                .deleteArchivedRecording("second.jfr");
+        Mockito.verify(archiveIndex).addArchive(serviceRef, rule, "third.jfr");
+        MatcherAssert.assertThat(failureCounter.intValue(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void testDifferentialArchivalContinuesFromPreviousArchive() throws Exception {
+        Mockito.when(archiveIndex.getArchives(serviceRef, rule)).thenReturn(List.of("first.jfr"));
+        Mockito.when(
+                        recordingArchiveHelper.saveRecordingDifferential(
+                                Mockito.any(),
+                                Mockito.anyString(),
+                                Mockito.any(),
+                                Mockito.any()))
+                .thenReturn(Optional.of("second.jfr"));
+        PeriodicArchiver differential =
+                new PeriodicArchiver(
+                        serviceRef,
+                        credentialsManager,
+                        rule,
+                        recordingArchiveHelper,
+                        archiveIndex,
+                        true,
+                        p -> {
+                            failureCounter.incrementAndGet();
+                            return null;
+                        },
+                        logger);
+
+        MatcherAssert.assertThat(differential.performArchival().get(), Matchers.equalTo(true));
+
+        Mockito.verify(recordingArchiveHelper)
+                .saveRecordingDifferential(
+                        Mockito.any(),
+                        Mockito.eq(rule.getRecordingName()),
+                        Mockito.eq(Optional.of("first.jfr")),
+                        Mockito.eq(Duration.ofSeconds(30)));
+        Mockito.verify(recordingArchiveHelper, Mockito.never())
+                .saveRecording(Mockito.any(), Mockito.anyString());
+        Mockito.verify(archiveIndex).addArchive(serviceRef, rule, "second.jfr");
+    }
+
+    @Test
+    void testDifferentialArchivalSkipsWhenNoNewChunks() throws Exception {
+        Mockito.when(
+                        recordingArchiveHelper.saveRecordingDifferential(
+                                Mockito.any(),
+                                Mockito.anyString(),
+                                Mockito.any(),
+                                Mockito.any()))
+                .thenReturn(Optional.empty());
+        PeriodicArchiver differential =
+                new PeriodicArchiver(
+                        serviceRef,
+                        credentialsManager,
+                        rule,
+                        recordingArchiveHelper,
+                        archiveIndex,
+                        true,
+                        p -> {
+                            failureCounter.incrementAndGet();
+                            return null;
+                        },
+                        logger);
+
+        MatcherAssert.assertThat(differential.performArchival().get(), Matchers.equalTo(false));
+
+        Mockito.verify(archiveIndex, Mockito.never())
+                .addArchive(Mockito.any(), Mockito.any(), Mockito.any());
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import io.cryostat.core.log.Logger;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.platform.ServiceRef;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RuleArchiveIndexTest {
+
+    @TempDir Path confDir;
+    @Mock Logger logger;
+    FileSystem fs;
+    Path indexFile;
+    RuleArchiveIndex index;
+    ServiceRef serviceRef;
+    Rule rule;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.fs = new FileSystem();
+        this.indexFile = confDir.resolve(RuleArchiveIndex.INDEX_FILENAME);
+        this.index = new RuleArchiveIndex(indexFile, fs, logger);
+        this.serviceRef =
+                new ServiceRef(
+                        new URI("service:jmx:rmi:///jndi/rmi://fooHost:9091/jmxrmi"),
+                        "com.example.App");
+        this.rule =
+                new Rule.Builder()
+                        .name("Test Rule")
+                        .matchExpression("true")
+                        .eventSpecifier("template=Continuous")
+                        .build();
+    }
+
+    @Test
+    void shouldBeEmptyWithoutIndexFile() throws Exception {
+        index.load();
+        MatcherAssert.assertThat(index.getArchives(serviceRef, rule), Matchers.empty());
+    }
+
+    @Test
+    void shouldRestoreArchivesInOrderAfterReload() throws Exception {
+        index.load();
+        index.addArchive(serviceRef, rule, "first.jfr");
+        index.addArchive(serviceRef, rule, "second.jfr");
+        index.addArchive(serviceRef, rule, "third.jfr");
+        index.removeArchive(serviceRef, rule, "second.jfr");
+
+        RuleArchiveIndex reloaded = new RuleArchiveIndex(indexFile, fs, logger);
+        reloaded.load();
+
+        MatcherAssert.assertThat(
+                reloaded.getArchives(serviceRef, rule),
+                Matchers.equalTo(List.of("first.jfr", "third.jfr")));
+    }
+
+    @Test
+    void shouldKeepArchivesSeparatePerTargetAndRule() throws Exception {
+        ServiceRef other =
+                new ServiceRef(
+                        new URI("service:jmx:rmi:///jndi/rmi://barHost:9091/jmxrmi"),
+                        "com.example.Other");
+        index.load();
+        index.addArchive(serviceRef, rule, "foo.jfr");
+        index.addArchive(other, rule, "bar.jfr");
+
+        MatcherAssert.assertThat(
+                index.getArchives(serviceRef, rule), Matchers.equalTo(List.of("foo.jfr")));
+        MatcherAssert.assertThat(
+                index.getArchives(other, rule), Matchers.equalTo(List.of("bar.jfr")));
+    }
+
+    @Test
+    void shouldCompactJournalOnLoad() throws Exception {
+        index.load();
+        index.addArchive(serviceRef, rule, "first.jfr");
+        index.addArchive(serviceRef, rule, "second.jfr");
+        index.removeArchive(serviceRef, rule, "first.jfr");
+        MatcherAssert.assertThat(Files.readAllLines(indexFile), Matchers.hasSize(3));
+
+        RuleArchiveIndex reloaded = new RuleArchiveIndex(indexFile, fs, logger);
+        reloaded.load();
+
+        MatcherAssert.assertThat(Files.readAllLines(indexFile), Matchers.hasSize(1));
+        MatcherAssert.assertThat(
+                reloaded.getArchives(serviceRef, rule), Matchers.equalTo(List.of("second.jfr")));
+    }
+
+    @Test
+    void shouldIgnoreRemovalOfUnknownArchive() throws Exception {
+        index.load();
+        index.removeArchive(serviceRef, rule, "unknown.jfr");
+        MatcherAssert.assertThat(Files.exists(indexFile), Matchers.is(false));
+    }
+}
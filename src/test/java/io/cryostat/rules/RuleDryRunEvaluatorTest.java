@@ -0,0 +1,130 @@
+/*
+ * Copyright The Cryostat Authors
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or data
+ * (collectively the "Software"), free of charge and under any and all copyright
+ * rights in the Software, and any and all patent rights owned or freely
+ * licensable by each licensor hereunder covering either (i) the unmodified
+ * Software as contributed to or provided by such licensor, or (ii) the Larger
+ * Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software (each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at
+ * a minimum a reference to the UPL must be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.util.List;
+
+import javax.script.ScriptException;
+
+import io.cryostat.platform.PlatformClient;
+import io.cryostat.platform.ServiceRef;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RuleDryRunEvaluatorTest {
+
+    RuleDryRunEvaluator evaluator;
+    @Mock PlatformClient platformClient;
+    @Mock RuleMatcher ruleMatcher;
+
+    ServiceRef matching;
+    ServiceRef nonMatching;
+    ServiceRef unaliased;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.evaluator = new RuleDryRunEvaluator(platformClient, ruleMatcher);
+        this.matching = new ServiceRef(new URI("service:jmx:rmi:///jndi/rmi://a:9091/jmxrmi"), "a");
+        this.nonMatching =
+                new ServiceRef(new URI("service:jmx:rmi:///jndi/rmi://b:9091/jmxrmi"), "b");
+        this.unaliased =
+                new ServiceRef(new URI("service:jmx:rmi:///jndi/rmi://c:9091/jmxrmi"), null);
+    }
+
+    Rule rule(int archivalPeriodSeconds, int maxSizeBytes) throws Exception {
+        return new Rule.Builder()
+                .name("dry run")
+                .matchExpression("target.alias == 'a'")
+                .eventSpecifier("template=Continuous")
+                .archivalPeriodSeconds(archivalPeriodSeconds)
+                .maxSizeBytes(maxSizeBytes)
+                .build();
+    }
+
+    @Test
+    void shouldReportMatchingTargetsAndProjection() throws Exception {
+        Rule rule = rule(60, 1024);
+        Mockito.when(platformClient.listDiscoverableServices())
+                .thenReturn(List.of(matching, nonMatching, unaliased));
+        Mockito.when(ruleMatcher.applies(rule, matching)).thenReturn(true);
+        Mockito.when(ruleMatcher.applies(rule, nonMatching)).thenReturn(false);
+
+        RuleDryRunEvaluator.DryRunResult result = evaluator.evaluate(rule);
+
+        MatcherAssert.assertThat(result.getEvaluatedCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(result.getMatchedCount(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(result.getMatchedTargets(), Matchers.contains(matching));
+        MatcherAssert.assertThat(result.getEvaluations(), Matchers.hasSize(2));
+        MatcherAssert.assertThat(
+                result.getProjectedArchivalBytesPerHourPerTarget(), Matchers.equalTo(61440L));
+        MatcherAssert.assertThat(
+                result.getProjectedArchivalBytesPerHour(), Matchers.equalTo(61440L));
+        Mockito.verify(ruleMatcher, Mockito.never()).applies(rule, unaliased);
+    }
+
+    @Test
+    void shouldNotProjectUnboundedRecordings() throws Exception {
+        Rule rule = rule(60, -1);
+        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of(matching));
+        Mockito.when(ruleMatcher.applies(rule, matching)).thenReturn(true);
+
+        RuleDryRunEvaluator.DryRunResult result = evaluator.evaluate(rule);
+
+        MatcherAssert.assertThat(result.getMatchedCount(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(result.getProjectedArchivalBytesPerHour(), Matchers.equalTo(-1L));
+    }
+
+    @Test
+    void shouldPropagateEvaluationFailure() throws Exception {
+        Rule rule = rule(60, 1024);
+        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of(matching));
+        Mockito.when(ruleMatcher.applies(rule, matching)).thenThrow(ScriptException.class);
+
+        Assertions.assertThrows(ScriptException.class, () -> evaluator.evaluate(rule));
+    }
+}
@@ -39,9 +39,7 @@ package io.cryostat.rules;
 
 import java.net.URI;
 import java.util.Set;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
 import org.openjdk.jmc.common.unit.IConstrainedMap;
@@ -80,7 +78,7 @@ class RuleProcessorTest {
     RuleProcessor processor;
     @Mock PlatformClient platformClient;
     @Mock RuleRegistry registry;
-    @Mock ScheduledExecutorService scheduler;
+    @Mock ArchivalScheduler archivalScheduler;
     @Mock CredentialsManager credentialsManager;
     @Mock RecordingOptionsBuilderFactory recordingOptionsBuilderFactory;
     @Mock TargetConnectionManager targetConnectionManager;
@@ -98,7 +96,7 @@ class RuleProcessorTest {
                 new RuleProcessor(
                         platformClient,
                         registry,
-                        scheduler,
+                        archivalScheduler,
                         credentialsManager,
                         recordingOptionsBuilderFactory,
                         targetConnectionManager,
@@ -221,7 +219,7 @@ class RuleProcessorTest {
 
         MatcherAssert.assertThat(templateTypeCaptor.getValue(), Matchers.nullValue());
 
-        Mockito.verify(scheduler).scheduleAtFixedRate(periodicArchiver, 67, 67, TimeUnit.SECONDS);
+        Mockito.verify(archivalScheduler).schedule(serviceRef, rule, periodicArchiver);
     }
 
     @Test
@@ -258,18 +256,17 @@ class RuleProcessorTest {
                                 Mockito.any()))
                 .thenReturn(periodicArchiver);
 
-        ScheduledFuture task = Mockito.mock(ScheduledFuture.class);
+        Future task = Mockito.mock(Future.class);
         Mockito.when(
-                        scheduler.scheduleAtFixedRate(
-                                Mockito.any(Runnable.class),
-                                Mockito.anyLong(),
-                                Mockito.anyLong(),
-                                Mockito.any(TimeUnit.class)))
+                        archivalScheduler.schedule(
+                                Mockito.any(ServiceRef.class),
+                                Mockito.any(Rule.class),
+                                Mockito.any(Runnable.class)))
                 .thenReturn(task);
 
         processor.accept(tde);
 
-        Mockito.verify(scheduler).scheduleAtFixedRate(periodicArchiver, 67, 67, TimeUnit.SECONDS);
+        Mockito.verify(archivalScheduler).schedule(serviceRef, rule, periodicArchiver);
 
         ArgumentCaptor<Function<Pair<ServiceRef, Rule>, Void>> functionCaptor =
                 ArgumentCaptor.forClass(Function.class);
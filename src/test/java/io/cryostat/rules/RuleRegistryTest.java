@@ -37,14 +37,19 @@
  */
 package io.cryostat.rules;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.cryostat.MainModule;
 import io.cryostat.core.log.Logger;
@@ -58,7 +63,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InOrder;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -67,15 +72,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 class RuleRegistryTest {
 
     RuleRegistry registry;
-    @Mock Path rulesDir;
+    @TempDir Path rulesDir;
     @Mock RuleMatcher ruleMatcher;
-    @Mock FileSystem fs;
+    FileSystem fs = Mockito.spy(new FileSystem());
     @Mock Logger logger;
     Gson gson = Mockito.spy(MainModule.provideGson(logger));
 
     Rule testRule;
     String ruleJson;
-    BufferedReader fileReader;
 
     @BeforeEach
     void setup() throws Exception {
@@ -92,79 +96,94 @@ class RuleRegistryTest {
                         .maxAgeSeconds(78)
                         .build();
         this.ruleJson = MainModule.provideGson(logger).toJson(testRule);
-        this.fileReader = new BufferedReader(new StringReader(ruleJson));
     }
 
     @Test
-    void loadRulesShouldDoNothingIfFileEmpty() throws Exception {
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenReturn(List.of());
-
+    void loadRulesShouldDoNothingIfDirectoryEmpty() throws Exception {
         registry.loadRules();
 
         Mockito.verify(fs).listDirectoryChildren(rulesDir);
-        Mockito.verifyNoMoreInteractions(fs);
         Mockito.verifyNoInteractions(gson);
+        MatcherAssert.assertThat(registry.getRules(), Matchers.empty());
+    }
+
+    @Test
+    void testLoadRules() throws Exception {
+        Files.writeString(rulesDir.resolve("test_rule.json"), ruleJson);
+
+        registry.loadRules();
+
+        MatcherAssert.assertThat(
+                registry.getRule("test_rule"), Matchers.equalTo(Optional.of(testRule)));
     }
 
     @Test
     void testLoadRulesSkipsFilesWhenExceptionThrown() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(Mockito.any()))
-                .thenReturn(List.of(testRule.getName()));
-        Mockito.when(fs.readFile(rulePath)).thenThrow(IOException.class);
+        Path rulePath = rulesDir.resolve("test_rule.json");
+        Files.writeString(rulePath, ruleJson);
+        Mockito.doThrow(IOException.class).when(fs).readFile(rulePath);
 
         registry.loadRules();
 
-        Mockito.verify(fs).listDirectoryChildren(rulesDir);
         Mockito.verify(fs).readFile(rulePath);
         Mockito.verifyNoInteractions(gson);
+        MatcherAssert.assertThat(registry.getRules(), Matchers.empty());
+    }
+
+    @Test
+    void testLoadRulesSkipsMalformedAndTemporaryFiles() throws Exception {
+        Files.writeString(rulesDir.resolve("broken.json"), "{ \"name\": ");
+        Files.writeString(rulesDir.resolve("other.json.tmp"), ruleJson);
+        Files.writeString(rulesDir.resolve("test_rule.json"), ruleJson);
+
+        registry.loadRules();
+
+        MatcherAssert.assertThat(registry.getRules(), Matchers.equalTo(Set.of(testRule)));
     }
 
     @Test
     void testAddRule() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
+        registry.addRule(testRule);
 
+        Path rulePath = rulesDir.resolve("test_rule.json");
+        MatcherAssert.assertThat(
+                Files.readString(rulePath, StandardCharsets.UTF_8), Matchers.equalTo(ruleJson));
+        MatcherAssert.assertThat(
+                Files.exists(rulesDir.resolve("test_rule.json.tmp")), Matchers.equalTo(false));
+        // adding a rule must not re-read every persisted rule
+        Mockito.verify(fs, Mockito.never()).listDirectoryChildren(Mockito.any());
+        Mockito.verify(fs, Mockito.never()).readFile(Mockito.any());
+    }
+
+    @Test
+    void testAddedRulesSurviveReload() throws Exception {
         registry.addRule(testRule);
 
-        InOrder inOrder = Mockito.inOrder(gson, fs);
+        RuleRegistry reloaded = new RuleRegistry(rulesDir, ruleMatcher, fs, gson, logger);
+        reloaded.loadRules();
 
-        inOrder.verify(gson).toJson(testRule);
-        inOrder.verify(fs)
-                .writeString(
-                        rulePath,
-                        ruleJson,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING);
-        inOrder.verify(fs).listDirectoryChildren(rulesDir);
+        MatcherAssert.assertThat(reloaded.getRules(), Matchers.equalTo(Set.of(testRule)));
     }
 
     @Test
     void testAddRulePropagatesException() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(
-                        fs.writeString(
-                                Mockito.any(Path.class),
-                                Mockito.any(String.class),
-                                Mockito.eq(StandardOpenOption.WRITE),
-                                Mockito.eq(StandardOpenOption.CREATE),
-                                Mockito.eq(StandardOpenOption.TRUNCATE_EXISTING)))
-                .thenThrow(IOException.class);
+        Mockito.doThrow(IOException.class)
+                .when(fs)
+                .writeString(
+                        Mockito.any(Path.class),
+                        Mockito.any(String.class),
+                        Mockito.eq(StandardOpenOption.WRITE),
+                        Mockito.eq(StandardOpenOption.CREATE),
+                        Mockito.eq(StandardOpenOption.TRUNCATE_EXISTING));
 
         Assertions.assertThrows(IOException.class, () -> registry.addRule(testRule));
+        MatcherAssert.assertThat(
+                registry.hasRuleByName(testRule.getName()), Matchers.equalTo(false));
     }
 
     @Test
     void testAddRuleThrowsExceptionOnDuplicateName() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
+        Files.writeString(rulesDir.resolve("test_rule.json"), ruleJson);
 
         registry.loadRules();
 
@@ -172,12 +191,36 @@ class RuleRegistryTest {
     }
 
     @Test
-    void testGetRulebyName() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
+    void testConcurrentAddsOfSameRuleOnlySucceedOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                tasks.add(
+                        () -> {
+                            try {
+                                registry.addRule(testRule);
+                                return true;
+                            } catch (RuleException e) {
+                                return false;
+                            }
+                        });
+            }
+            int successes = 0;
+            for (Future<Boolean> f : executor.invokeAll(tasks)) {
+                if (f.get()) {
+                    successes++;
+                }
+            }
+            MatcherAssert.assertThat(successes, Matchers.equalTo(1));
+            MatcherAssert.assertThat(registry.getRules(), Matchers.equalTo(Set.of(testRule)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    @Test
+    void testGetRulebyName() throws Exception {
         registry.addRule(testRule);
         Optional<Rule> getResult = registry.getRule("test_rule");
         MatcherAssert.assertThat(getResult.get(), Matchers.equalTo(testRule));
@@ -185,11 +228,6 @@ class RuleRegistryTest {
 
     @Test
     void testGetAllRules() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
-
         registry.addRule(testRule);
 
         MatcherAssert.assertThat(registry.getRules(), Matchers.equalTo(Set.of(testRule)));
@@ -197,11 +235,6 @@ class RuleRegistryTest {
 
     @Test
     void testGetRulesByServiceRef() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
-
         Mockito.when(ruleMatcher.applies(Mockito.any(), Mockito.any())).thenReturn(true);
 
         registry.addRule(testRule);
@@ -213,11 +246,6 @@ class RuleRegistryTest {
 
     @Test
     void testGetRulesReturnsCopy() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
-
         registry.addRule(testRule);
 
         Set<Rule> firstSet = registry.getRules();
@@ -231,42 +259,30 @@ class RuleRegistryTest {
     void testDeleteRuleDoesNothingIfNoneAdded() throws Exception {
         registry.deleteRule(testRule.getName());
         Mockito.verifyNoInteractions(gson);
-        Mockito.verify(fs).listDirectoryChildren(Mockito.any());
+        Mockito.verify(fs).deleteIfExists(rulesDir.resolve("test_rule.json"));
         Mockito.verifyNoMoreInteractions(fs);
-        Mockito.verifyNoInteractions(rulesDir);
     }
 
     @Test
     void testDelete() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
-
         registry.addRule(testRule);
 
         registry.deleteRule(testRule.getName());
 
         MatcherAssert.assertThat(registry.getRules(), Matchers.emptyCollectionOf(Rule.class));
-    }
-
-    @Test
-    void testDeletePropagatesListingException() throws Exception {
-        Mockito.when(fs.listDirectoryChildren(Mockito.any())).thenThrow(IOException.class);
-
-        Assertions.assertThrows(IOException.class, () -> registry.deleteRule(testRule.getName()));
+        MatcherAssert.assertThat(
+                Files.exists(rulesDir.resolve("test_rule.json")), Matchers.equalTo(false));
     }
 
     @Test
     void testDeletePropagatesFileDeletionException() throws Exception {
-        Path rulePath = Mockito.mock(Path.class);
-        Mockito.when(rulesDir.resolve(Mockito.anyString())).thenReturn(rulePath);
-        Mockito.when(fs.listDirectoryChildren(rulesDir)).thenReturn(List.of("test_rule.json"));
-        Mockito.when(fs.readFile(rulePath)).thenReturn(fileReader);
-        Mockito.when(fs.deleteIfExists(rulePath)).thenThrow(IOException.class);
+        Path rulePath = rulesDir.resolve("test_rule.json");
+        Mockito.doThrow(IOException.class).when(fs).deleteIfExists(rulePath);
 
         registry.addRule(testRule);
 
         Assertions.assertThrows(IOException.class, () -> registry.deleteRule(testRule.getName()));
+        MatcherAssert.assertThat(
+                registry.hasRuleByName(testRule.getName()), Matchers.equalTo(true));
     }
 }